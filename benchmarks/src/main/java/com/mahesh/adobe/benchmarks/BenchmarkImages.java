@@ -0,0 +1,64 @@
+package com.mahesh.adobe.benchmarks;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic images for the benchmarks: smooth gradients with a little noise
+ * and some hard edges, so codecs and filters see photo-like rather than flat content.
+ */
+final class BenchmarkImages {
+
+    private BenchmarkImages() {
+    }
+
+    /**
+     * A 4:3 image of about {@code megapixels} million pixels
+     *
+     * @param type "INT_RGB", "3BYTE_BGR", "BYTE_GRAY" or "INT_ARGB"
+     */
+    static BufferedImage create(double megapixels, String type) {
+        int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000 * 4 / 3));
+        int height = (int) Math.round(width * 3.0 / 4);
+        return create(width, height, imageType(type));
+    }
+
+    static BufferedImage create(int width, int height, int imageType) {
+        boolean alpha = imageType == BufferedImage.TYPE_INT_ARGB;
+        BufferedImage argb = new BufferedImage(width, height,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(16);
+                int r = (x * 255 / width + noise) & 0xFF;
+                int g = (y * 255 / height + noise) & 0xFF;
+                // Checkerboard of hard edges every 64 pixels
+                int b = (((x >> 6) + (y >> 6)) & 1) == 0 ? 40 + noise : 200 + noise;
+                int a = alpha ? 128 + ((x + y) & 0x7F) : 0xFF;
+                row[x] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+            argb.setRGB(0, y, width, 1, row, 0, width);
+        }
+        if (argb.getType() == imageType) {
+            return argb;
+        }
+        BufferedImage converted = new BufferedImage(width, height, imageType);
+        Graphics2D g2d = converted.createGraphics();
+        g2d.drawImage(argb, 0, 0, null);
+        g2d.dispose();
+        return converted;
+    }
+
+    static int imageType(String type) {
+        switch (type) {
+            case "INT_RGB": return BufferedImage.TYPE_INT_RGB;
+            case "3BYTE_BGR": return BufferedImage.TYPE_3BYTE_BGR;
+            case "BYTE_GRAY": return BufferedImage.TYPE_BYTE_GRAY;
+            case "INT_ARGB": return BufferedImage.TYPE_INT_ARGB;
+            default: throw new IllegalArgumentException("Unknown image type: " + type);
+        }
+    }
+}
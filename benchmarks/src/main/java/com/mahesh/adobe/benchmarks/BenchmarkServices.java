@@ -0,0 +1,45 @@
+package com.mahesh.adobe.benchmarks;
+
+import com.mahesh.adobe.upload.imaging.ConvolutionEngine;
+import com.mahesh.adobe.upload.imaging.EdgeDetector;
+import com.mahesh.adobe.upload.imaging.EncodeOptions;
+import com.mahesh.adobe.upload.imaging.GeometryEngine;
+import com.mahesh.adobe.upload.imaging.ImageEncoder;
+import com.mahesh.adobe.upload.imaging.PixelKernels;
+import com.mahesh.adobe.upload.imaging.PointProcessor;
+import com.mahesh.adobe.upload.imaging.RasterPool;
+import com.mahesh.adobe.upload.imaging.Resampler;
+import com.mahesh.adobe.upload.service.ImageProcessingService;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Builds the services the way ImagingConfig wires them, without a Spring context
+ */
+final class BenchmarkServices {
+
+    private BenchmarkServices() {
+    }
+
+    static ForkJoinPool imagingPool() {
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    static ImageProcessingService imageProcessingService(ForkJoinPool pool) {
+        return imageProcessingService(pool, PixelKernels.best());
+    }
+
+    static ImageProcessingService imageProcessingService(ForkJoinPool pool, PixelKernels kernels) {
+        // imaging.pool.max-retained default: a sixteenth of the heap
+        RasterPool rasterPool = new RasterPool(Runtime.getRuntime().maxMemory() / 16);
+        ConvolutionEngine convolutionEngine = new ConvolutionEngine(pool, rasterPool);
+        ImageProcessingService service = new ImageProcessingService(convolutionEngine,
+                new EdgeDetector(pool, rasterPool, convolutionEngine), new Resampler(pool, rasterPool),
+                new PointProcessor(pool, rasterPool, kernels), new GeometryEngine(pool, rasterPool), rasterPool,
+                new ImageEncoder(rasterPool, EncodeOptions.Preset.BALANCED.options()));
+        // Defaults from application.yml
+        service.setDefaultResizeFilter(Resampler.Filter.LANCZOS3);
+        service.setMaxPipelineSteps(20);
+        return service;
+    }
+}
@@ -0,0 +1,62 @@
+package com.mahesh.adobe.benchmarks;
+
+import com.mahesh.adobe.upload.service.ImageProcessingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blur cost against intensity; the box blur's running sum should keep it flat
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class BlurBenchmark {
+
+    @Param({"2", "12"})
+    public double megapixels;
+
+    @Param({"INT_RGB", "3BYTE_BGR"})
+    public String type;
+
+    @Param({"0.5", "1.0", "2.0", "5.0", "10.0"})
+    public float intensity;
+
+    private ForkJoinPool pool;
+    private ImageProcessingService service;
+    private BufferedImage image;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = BenchmarkServices.imagingPool();
+        service = BenchmarkServices.imageProcessingService(pool);
+        image = BenchmarkImages.create(megapixels, type);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public BufferedImage blur() {
+        return service.applyBlur(image, intensity);
+    }
+}
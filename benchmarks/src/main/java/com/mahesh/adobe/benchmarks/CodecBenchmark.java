@@ -0,0 +1,74 @@
+package com.mahesh.adobe.benchmarks;
+
+import com.mahesh.adobe.upload.imaging.EncodeOptions;
+import com.mahesh.adobe.upload.service.ImageProcessingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * imageToByteArray / byteArrayToImage for JPEG and PNG, encoding with each preset
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class CodecBenchmark {
+
+    @Param({"0.3", "2", "12", "48"})
+    public double megapixels;
+
+    @Param({"INT_RGB", "3BYTE_BGR", "BYTE_GRAY", "INT_ARGB"})
+    public String type;
+
+    @Param({"jpg", "png"})
+    public String format;
+
+    @Param({"FAST", "BALANCED", "SMALL"})
+    public EncodeOptions.Preset preset;
+
+    private ForkJoinPool pool;
+    private ImageProcessingService service;
+    private BufferedImage image;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pool = BenchmarkServices.imagingPool();
+        service = BenchmarkServices.imageProcessingService(pool);
+        image = BenchmarkImages.create(megapixels, type);
+        encoded = service.imageToByteArray(image, format, preset.options());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return service.imageToByteArray(image, format, preset.options());
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException {
+        return service.byteArrayToImage(encoded);
+    }
+}
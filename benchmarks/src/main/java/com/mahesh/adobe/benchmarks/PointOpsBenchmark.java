@@ -0,0 +1,123 @@
+package com.mahesh.adobe.benchmarks;
+
+import com.mahesh.adobe.upload.imaging.PixelKernels;
+import com.mahesh.adobe.upload.imaging.PointOperation;
+import com.mahesh.adobe.upload.imaging.PointProcessor;
+import com.mahesh.adobe.upload.imaging.RasterPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.RescaleOp;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-pixel operations: the Java2D paths the service used to take against PointProcessor
+ * on the scalar and the Vector API kernels. Results go into preallocated images so only
+ * the pixel loops are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class PointOpsBenchmark {
+
+    @Param({"2", "12"})
+    public double megapixels;
+
+    @Param({"INT_RGB", "3BYTE_BGR", "INT_ARGB"})
+    public String type;
+
+    @Param({"scalar", "vector"})
+    public String kernels;
+
+    private ForkJoinPool pool;
+    private PointProcessor processor;
+    private BufferedImage image;
+    private BufferedImage gray;
+    private BufferedImage color;
+    private PointOperation grayscale;
+    private PointOperation brightness;
+    private PointOperation chain;
+    private RescaleOp rescale;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (kernels.equals("vector") && !PixelKernels.isVectorAvailable()) {
+            throw new IllegalStateException("jdk.incubator.vector is not available in this JVM");
+        }
+        pool = BenchmarkServices.imagingPool();
+        processor = new PointProcessor(pool, new RasterPool(0),
+                kernels.equals("vector") ? PixelKernels.best() : PixelKernels.scalar());
+        image = BenchmarkImages.create(megapixels, type);
+        gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        color = new BufferedImage(image.getColorModel(), image.getRaster().createCompatibleWritableRaster(),
+                image.isAlphaPremultiplied(), null);
+        grayscale = PointOperation.identity().thenGrayscale();
+        brightness = PointOperation.identity().thenBrightness(1.2f);
+        chain = PointOperation.identity().thenSwizzle(2, 1, 0).thenContrast(1.1f).thenGamma(1.4f);
+        int colorBands = image.getColorModel().getNumColorComponents();
+        float[] scales = new float[image.getColorModel().getNumComponents()];
+        Arrays.fill(scales, 1.0f);
+        Arrays.fill(scales, 0, colorBands, 1.2f);
+        rescale = new RescaleOp(scales, new float[scales.length], null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    /**
+     * The former convertToGrayscale: a draw into a TYPE_BYTE_GRAY image
+     */
+    @Benchmark
+    public BufferedImage java2dGrayscale() {
+        Graphics2D g2d = gray.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return gray;
+    }
+
+    @Benchmark
+    public BufferedImage grayscale() {
+        return processor.apply(image, grayscale, gray);
+    }
+
+    /**
+     * Java2D's own per-channel multiply
+     */
+    @Benchmark
+    public BufferedImage java2dBrightness() {
+        return rescale.filter(image, color);
+    }
+
+    @Benchmark
+    public BufferedImage brightness() {
+        return processor.apply(image, brightness, color);
+    }
+
+    /**
+     * Swizzle, contrast and gamma folded into one pass
+     */
+    @Benchmark
+    public BufferedImage swizzleContrastGamma() {
+        return processor.apply(image, chain, color);
+    }
+}
@@ -0,0 +1,139 @@
+package com.mahesh.adobe.benchmarks;
+
+import com.mahesh.adobe.upload.imaging.EdgeOptions;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import com.mahesh.adobe.upload.service.ImageProcessingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every ImageProcessingService operation across image sizes and colour types.
+ *
+ * Each call gets the same source image; none of these methods modify their input.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+public class ProcessingBenchmark {
+
+    private static final EdgeOptions CANNY = EdgeOptions.of(null, "canny", null, null, null);
+
+    @Param({"0.3", "2", "12", "48"})
+    public double megapixels;
+
+    @Param({"INT_RGB", "3BYTE_BGR", "BYTE_GRAY", "INT_ARGB"})
+    public String type;
+
+    private ForkJoinPool pool;
+    private ImageProcessingService service;
+    private BufferedImage image;
+    private List<PipelineStep> pipeline;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = BenchmarkServices.imagingPool();
+        service = BenchmarkServices.imageProcessingService(pool);
+        image = BenchmarkImages.create(megapixels, type);
+        pipeline = List.of(
+                new PipelineStep("brightness", null, null, null, null, 1.2f, null, null, null, null, null, null, null,
+                        null, null, null, null),
+                PipelineStep.of(PipelineStep.Operation.SHARPEN),
+                PipelineStep.of(PipelineStep.Operation.GRAYSCALE));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public BufferedImage resizeHalf() {
+        return service.resizeImage(image, image.getWidth() / 2, image.getHeight() / 2);
+    }
+
+    @Benchmark
+    public BufferedImage thumbnail() {
+        return service.createThumbnail(image, 200);
+    }
+
+    @Benchmark
+    public BufferedImage blur() {
+        return service.applyBlur(image, 1.0f);
+    }
+
+    /**
+     * Blur with the result handed back to the raster pool, as the controllers do
+     */
+    @Benchmark
+    public void blurRecycled(Blackhole blackhole) {
+        BufferedImage result = service.applyBlur(image, 1.0f);
+        blackhole.consume(result);
+        service.recycle(result);
+    }
+
+    @Benchmark
+    public BufferedImage sharpen() {
+        return service.applySharpen(image);
+    }
+
+    @Benchmark
+    public BufferedImage brightness() {
+        return service.adjustBrightness(image, 1.2f);
+    }
+
+    @Benchmark
+    public BufferedImage grayscale() {
+        return service.convertToGrayscale(image);
+    }
+
+    @Benchmark
+    public BufferedImage edges() {
+        return service.detectEdges(image);
+    }
+
+    @Benchmark
+    public BufferedImage canny() {
+        return service.detectEdges(image, CANNY);
+    }
+
+    /**
+     * runPipeline may work in place, so it runs on a fresh copy of the source each time
+     */
+    @Benchmark
+    public BufferedImage pipeline(PipelineInput input) {
+        return service.runPipeline(input.copy, pipeline);
+    }
+
+    @State(Scope.Thread)
+    public static class PipelineInput {
+
+        BufferedImage copy;
+
+        @Setup(Level.Invocation)
+        public void copy(ProcessingBenchmark benchmark) {
+            BufferedImage source = benchmark.image;
+            copy = new BufferedImage(source.getColorModel(), source.copyData(null),
+                    source.isAlphaPremultiplied(), null);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.mahesh.adobe.benchmarks;
+
+import com.mahesh.adobe.upload.model.ImageMetadata;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import com.mahesh.adobe.upload.service.ImageProcessingService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A JPEG rotated or flipped on its DCT coefficients (rearrangeJpeg) against the same
+ * transform through decode, runPipeline and encode
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TransformBenchmark {
+
+    @Param({"2", "12", "48"})
+    public double megapixels;
+
+    @Param({"rotate", "flip"})
+    public String operation;
+
+    private ForkJoinPool pool;
+    private ImageProcessingService service;
+    private byte[] jpeg;
+    private ImageMetadata metadata;
+    private List<PipelineStep> steps;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pool = BenchmarkServices.imagingPool();
+        service = BenchmarkServices.imageProcessingService(pool);
+        // Whole MCUs both ways, so that every transform is lossless
+        int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000 * 4 / 3) / 16) * 16;
+        int height = width * 3 / 4 / 16 * 16;
+        jpeg = service.imageToByteArray(BenchmarkImages.create(width, height, BufferedImage.TYPE_INT_RGB), "jpg");
+        metadata = new ImageMetadata("jpeg", width, height, 3, 8, false, "RGB", false, 1,
+                BufferedImage.TYPE_3BYTE_BGR);
+        steps = List.of(operation.equals("rotate") ? PipelineStep.rotate(90) : PipelineStep.flip("horizontal"));
+        if (service.rearrangeJpeg(jpeg, steps, metadata) == null) {
+            throw new IllegalStateException("Benchmark image is not transformable losslessly");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public byte[] lossless() {
+        return service.rearrangeJpeg(jpeg, steps, metadata);
+    }
+
+    @Benchmark
+    public byte[] pixels() throws IOException {
+        BufferedImage image = service.byteArrayToImage(jpeg);
+        BufferedImage result = service.runPipeline(image, steps);
+        try {
+            return service.imageToByteArray(result, "jpg");
+        } finally {
+            service.recycle(image, result);
+        }
+    }
+}
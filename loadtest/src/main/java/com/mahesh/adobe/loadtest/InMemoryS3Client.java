@@ -0,0 +1,219 @@
+package com.mahesh.adobe.loadtest;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The S3 calls S3ObjectStore makes (put, multipart upload, get, head, delete), answered from the
+ * heap, so the service's S3 path, multipart part transfers and connection limits included,
+ * runs without LocalStack or a network. Every call can be delayed by a fixed latency to
+ * stand in for the round-trip to a real bucket. Any other call throws
+ * UnsupportedOperationException, as the SDK's defaults do.
+ *
+ * A long run uploads far more than the heap holds, so only the most recent objects, up to
+ * {@code retainedBytes}, are kept; older keys read as missing.
+ */
+final class InMemoryS3Client implements S3Client {
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicLong retained = new AtomicLong();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final Duration latency;
+    private final long retainedBytes;
+
+    InMemoryS3Client(Duration latency, long retainedBytes) {
+        this.latency = latency;
+        this.retainedBytes = retainedBytes;
+    }
+
+    @Override
+    public PutObjectResponse putObject(PutObjectRequest request, RequestBody body) {
+        roundTrip();
+        store(path(request.bucket(), request.key()), read(body));
+        return PutObjectResponse.builder().eTag(UUID.randomUUID().toString()).build();
+    }
+
+    @Override
+    public CreateMultipartUploadResponse createMultipartUpload(CreateMultipartUploadRequest request) {
+        roundTrip();
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new ConcurrentHashMap<>());
+        return CreateMultipartUploadResponse.builder()
+                .bucket(request.bucket())
+                .key(request.key())
+                .uploadId(uploadId)
+                .build();
+    }
+
+    @Override
+    public UploadPartResponse uploadPart(UploadPartRequest request, RequestBody body) {
+        roundTrip();
+        byte[] data = read(body);
+        parts(request.uploadId()).put(request.partNumber(), data);
+        return UploadPartResponse.builder().eTag("part-" + request.partNumber()).build();
+    }
+
+    @Override
+    public CompleteMultipartUploadResponse completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        roundTrip();
+        Map<Integer, byte[]> parts = parts(request.uploadId());
+        ByteArrayOutputStream object = new ByteArrayOutputStream();
+        for (CompletedPart part : request.multipartUpload().parts()) {
+            byte[] data = parts.get(part.partNumber());
+            if (data == null) {
+                throw NoSuchUploadException.builder()
+                        .message("Part " + part.partNumber() + " was never uploaded")
+                        .statusCode(400)
+                        .build();
+            }
+            object.writeBytes(data);
+        }
+        uploads.remove(request.uploadId());
+        store(path(request.bucket(), request.key()), object.toByteArray());
+        return CompleteMultipartUploadResponse.builder()
+                .bucket(request.bucket())
+                .key(request.key())
+                .build();
+    }
+
+    @Override
+    public AbortMultipartUploadResponse abortMultipartUpload(AbortMultipartUploadRequest request) {
+        roundTrip();
+        uploads.remove(request.uploadId());
+        return AbortMultipartUploadResponse.builder().build();
+    }
+
+    @Override
+    public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+        roundTrip();
+        byte[] data = objects.get(path(request.bucket(), request.key()));
+        if (data == null) {
+            throw NoSuchKeyException.builder()
+                    .message("No such key: " + request.key())
+                    .statusCode(404)
+                    .build();
+        }
+        GetObjectResponse response = GetObjectResponse.builder().contentLength((long) data.length).build();
+        return new ResponseInputStream<>(response, AbortableInputStream.create(new ByteArrayInputStream(data)));
+    }
+
+    @Override
+    public HeadObjectResponse headObject(HeadObjectRequest request) {
+        roundTrip();
+        byte[] data = objects.get(path(request.bucket(), request.key()));
+        if (data == null) {
+            throw NoSuchKeyException.builder()
+                    .message("No such key: " + request.key())
+                    .statusCode(404)
+                    .build();
+        }
+        return HeadObjectResponse.builder().contentLength((long) data.length).build();
+    }
+
+    @Override
+    public DeleteObjectResponse deleteObject(DeleteObjectRequest request) {
+        roundTrip();
+        byte[] removed = objects.remove(path(request.bucket(), request.key()));
+        if (removed != null) {
+            retained.addAndGet(-removed.length);
+        }
+        return DeleteObjectResponse.builder().build();
+    }
+
+    @Override
+    public String serviceName() {
+        return SERVICE_NAME;
+    }
+
+    @Override
+    public void close() {
+        objects.clear();
+        insertionOrder.clear();
+        uploads.clear();
+    }
+
+    private void store(String path, byte[] data) {
+        byte[] replaced = objects.put(path, data);
+        insertionOrder.add(path);
+        retained.addAndGet(data.length - (replaced != null ? replaced.length : 0));
+        while (retained.get() > retainedBytes) {
+            String oldest = insertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            byte[] evicted = objects.remove(oldest);
+            if (evicted != null) {
+                retained.addAndGet(-evicted.length);
+            }
+        }
+    }
+
+    private Map<Integer, byte[]> parts(String uploadId) {
+        Map<Integer, byte[]> parts = uploads.get(uploadId);
+        if (parts == null) {
+            throw NoSuchUploadException.builder()
+                    .message("No such upload: " + uploadId)
+                    .statusCode(404)
+                    .build();
+        }
+        return parts;
+    }
+
+    private void roundTrip() {
+        if (latency.isZero()) {
+            return;
+        }
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String path(String bucket, String key) {
+        return bucket + "/" + key;
+    }
+
+    private static byte[] read(RequestBody body) {
+        try (InputStream input = body.contentStreamProvider().newStream()) {
+            return input.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
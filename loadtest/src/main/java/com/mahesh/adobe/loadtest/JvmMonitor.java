@@ -0,0 +1,131 @@
+package com.mahesh.adobe.loadtest;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.OperatingSystemMXBean;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GC pauses, heap allocation and CPU time of this JVM, which runs both the service and the
+ * load generator, over a measurement window.
+ *
+ * Pauses come from the collectors' notifications, so every pause is seen, not just a
+ * sampled count. Allocation is the growth of the used heap plus what the collections in
+ * between reclaimed; it works the same for every collector without allocation
+ * instrumentation, at the price of being approximate by about one young generation.
+ */
+final class JvmMonitor implements AutoCloseable {
+
+    /**
+     * What happened in a window
+     *
+     * @param pauses         GC pause lengths in microseconds
+     * @param allocatedBytes heap allocated by the service and the client together
+     * @param cpuNanos       CPU time of the whole process
+     */
+    record Sample(Histogram pauses, long allocatedBytes, long cpuNanos) {
+    }
+
+    private final Recorder pauses = new Recorder(3);
+    private final AtomicLong collectedBytes = new AtomicLong();
+    private final Set<String> heapPools = new HashSet<>();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener listener = this::handle;
+    private final OperatingSystemMXBean os =
+            (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    private long startHeapUsed;
+    private long startCollected;
+    private long startCpu;
+
+    JvmMonitor() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool.getName());
+            }
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(listener, null, null);
+                emitters.add(emitter);
+            }
+        }
+    }
+
+    /**
+     * Names of the collectors in use, for the report
+     */
+    static List<String> collectors() {
+        List<String> names = new ArrayList<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            names.add(collector.getName());
+        }
+        return names;
+    }
+
+    void startWindow() {
+        pauses.reset();
+        startHeapUsed = heapUsed();
+        startCollected = collectedBytes.get();
+        startCpu = os.getProcessCpuTime();
+    }
+
+    Sample endWindow() {
+        long allocated = heapUsed() - startHeapUsed + collectedBytes.get() - startCollected;
+        return new Sample(pauses.getIntervalHistogram(), Math.max(0, allocated), os.getProcessCpuTime() - startCpu);
+    }
+
+    @Override
+    public void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (ListenerNotFoundException ignored) {
+                // Already gone
+            }
+        }
+    }
+
+    private void handle(Notification notification, Object handback) {
+        if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+                GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        // ZGC and Shenandoah report their concurrent cycles separately from their pauses
+        if (!info.getGcName().contains("Cycles")) {
+            pauses.recordValue(Math.max(0, info.getGcInfo().getDuration()) * 1000);
+        }
+        Map<String, MemoryUsage> before = info.getGcInfo().getMemoryUsageBeforeGc();
+        Map<String, MemoryUsage> after = info.getGcInfo().getMemoryUsageAfterGc();
+        long collected = 0;
+        for (Map.Entry<String, MemoryUsage> pool : before.entrySet()) {
+            MemoryUsage afterPool = after.get(pool.getKey());
+            if (heapPools.contains(pool.getKey()) && afterPool != null) {
+                collected += pool.getValue().getUsed() - afterPool.getUsed();
+            }
+        }
+        collectedBytes.addAndGet(Math.max(0, collected));
+    }
+
+    private long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,280 @@
+package com.mahesh.adobe.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives one endpoint with multipart uploads of the load images, in one of two ways:
+ *
+ * Closed loop: a fixed number of clients, each sending its next request as soon as the
+ * previous one is answered. Throughput is what the service sustains at that concurrency.
+ *
+ * Open loop: requests start at a fixed average rate whether or not earlier ones have
+ * finished, the way independent users arrive. Latency is measured from when a request was
+ * due to start, not from when it was sent, so a stalled service shows up in the percentiles
+ * instead of silently slowing the senders down (coordinated omission). Arrivals beyond
+ * max-in-flight outstanding requests are counted as dropped.
+ *
+ * Requests run on virtual threads; bodies are built once per image, so the client itself
+ * allocates little next to the service.
+ */
+final class LoadGenerator implements AutoCloseable {
+
+    private static final String BOUNDARY = "loadtest-7d4a1c9e";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(5);
+    private static final Duration DRAIN_TIMEOUT = Duration.ofMinutes(2);
+
+    /**
+     * Outcomes of the requests started in one run
+     */
+    static final class Tally {
+
+        /** Microseconds from due start to the last response byte */
+        private final Recorder latency = new Recorder(3);
+        private final LongAdder succeeded = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        void record(long dueNanos, int status, long sent, long received) {
+            latency.recordValue(Math.max(0, (System.nanoTime() - dueNanos) / 1000));
+            statuses.computeIfAbsent(status, key -> new LongAdder()).increment();
+            if (status >= 200 && status < 300) {
+                succeeded.increment();
+            } else if (status == 429) {
+                rejected.increment();
+            } else {
+                failed.increment();
+            }
+            bytesSent.add(sent);
+            bytesReceived.add(received);
+        }
+
+        Histogram latency() {
+            return latency.getIntervalHistogram();
+        }
+
+        long succeeded() {
+            return succeeded.sum();
+        }
+
+        /** Shed by admission control with 429 */
+        long rejected() {
+            return rejected.sum();
+        }
+
+        /** Any other status, or no response at all (status 0) */
+        long failed() {
+            return failed.sum();
+        }
+
+        long dropped() {
+            return dropped.sum();
+        }
+
+        long bytesSent() {
+            return bytesSent.sum();
+        }
+
+        long bytesReceived() {
+            return bytesReceived.sum();
+        }
+
+        Map<Integer, Long> statuses() {
+            Map<Integer, Long> counts = new TreeMap<>();
+            statuses.forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        }
+    }
+
+    private final HttpClient client;
+    private final ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+    private final URI base;
+    private final LoadImages images;
+    private final LoadTestOptions options;
+
+    LoadGenerator(URI base, LoadImages images, LoadTestOptions options) {
+        this.base = base;
+        this.images = images;
+        this.options = options;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(requests)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    /**
+     * Load {@code scenario} for {@code duration}, then wait for the requests still running
+     */
+    Tally run(Scenario scenario, Duration duration, long seed) throws InterruptedException {
+        List<byte[]> bodies = images.all().stream()
+                .map(image -> multipart(scenario.fields(), image))
+                .toList();
+        HttpRequest.Builder request = HttpRequest.newBuilder(base.resolve(scenario.path()))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
+        Tally tally = new Tally();
+        long deadline = System.nanoTime() + duration.toNanos();
+        if (options.isOpenLoop()) {
+            openLoop(request, bodies, tally, deadline, new Random(seed));
+        } else {
+            closedLoop(request, bodies, tally, deadline, seed);
+        }
+        return tally;
+    }
+
+    private void closedLoop(HttpRequest.Builder request, List<byte[]> bodies, Tally tally, long deadline, long seed)
+            throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(options.concurrency());
+        for (int c = 0; c < options.concurrency(); c++) {
+            Random random = new Random(seed + c);
+            requests.execute(() -> {
+                try {
+                    while (System.nanoTime() < deadline) {
+                        send(request, bodies.get(images.pick(random)), System.nanoTime(), tally);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private void openLoop(HttpRequest.Builder request, List<byte[]> bodies, Tally tally, long deadline, Random random)
+            throws InterruptedException {
+        AtomicInteger inFlight = new AtomicInteger();
+        double meanGapNanos = TimeUnit.SECONDS.toNanos(1) / options.rate();
+        long due = System.nanoTime();
+        while (true) {
+            due += (long) (options.poisson() ? -Math.log(1 - random.nextDouble()) * meanGapNanos : meanGapNanos);
+            if (due >= deadline) {
+                break;
+            }
+            // Park on a platform thread until the arrival is due; late wake-ups still count from `due`
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            byte[] body = bodies.get(images.pick(random));
+            if (inFlight.get() >= options.maxInFlight()) {
+                tally.dropped.increment();
+                continue;
+            }
+            inFlight.incrementAndGet();
+            long start = due;
+            requests.execute(() -> {
+                try {
+                    send(request, body, start, tally);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        }
+        long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private void send(HttpRequest.Builder request, byte[] body, long dueNanos, Tally tally) {
+        int status;
+        long received = 0;
+        try {
+            HttpResponse<Long> response = client.send(
+                    request.copy().POST(HttpRequest.BodyPublishers.ofByteArray(body)).build(),
+                    info -> HttpResponse.BodySubscribers.fromSubscriber(new CountingSubscriber(),
+                            CountingSubscriber::count));
+            status = response.statusCode();
+            received = response.body();
+        } catch (IOException e) {
+            status = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        tally.record(dueNanos, status, body.length, received);
+    }
+
+    @Override
+    public void close() {
+        requests.shutdownNow();
+    }
+
+    private static byte[] multipart(Map<String, String> fields, LoadImages.LoadImage image) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(image.jpeg().length + 1024);
+        StringBuilder head = new StringBuilder();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            head.append("--").append(BOUNDARY).append("\r\n")
+                    .append("Content-Disposition: form-data; name=\"").append(field.getKey()).append("\"\r\n\r\n")
+                    .append(field.getValue()).append("\r\n");
+        }
+        head.append("--").append(BOUNDARY).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"file\"; filename=\"")
+                .append(image.name()).append(".jpg\"\r\n")
+                .append("Content-Type: image/jpeg\r\n\r\n");
+        body.writeBytes(head.toString().getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(image.jpeg());
+        body.writeBytes(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    /**
+     * Response body sink that only counts the bytes
+     */
+    private static final class CountingSubscriber implements Flow.Subscriber<List<ByteBuffer>> {
+
+        private long count;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                count += buffer.remaining();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+
+        long count() {
+            return count;
+        }
+    }
+}
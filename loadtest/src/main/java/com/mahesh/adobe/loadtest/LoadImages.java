@@ -0,0 +1,87 @@
+package com.mahesh.adobe.loadtest;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The images a run sends: one deterministic JPEG per entry of the size mix, picked with the
+ * mix's weights. The same seed gives the same bytes on every machine and commit, so runs
+ * stay comparable.
+ */
+final class LoadImages {
+
+    /**
+     * @param name "<megapixels>mp", also the file name sent
+     */
+    record LoadImage(String name, double megapixels, int width, int height, byte[] jpeg) {
+    }
+
+    private final List<LoadImage> images = new ArrayList<>();
+    private final int[] cumulativeWeights;
+
+    LoadImages(List<LoadTestOptions.SizeWeight> sizes, long seed) {
+        cumulativeWeights = new int[sizes.size()];
+        int total = 0;
+        for (int i = 0; i < sizes.size(); i++) {
+            LoadTestOptions.SizeWeight size = sizes.get(i);
+            images.add(create(size.megapixels(), seed + i));
+            total += size.weight();
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    List<LoadImage> all() {
+        return images;
+    }
+
+    /**
+     * Index of an image drawn with the mix's weights
+     */
+    int pick(Random random) {
+        int ticket = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (ticket < cumulativeWeights[i]) {
+                return i;
+            }
+        }
+        throw new AssertionError();
+    }
+
+    /**
+     * A 4:3 JPEG of about {@code megapixels}: gradients with noise and hard edges, so the
+     * codecs and filters do about the work a photo costs them
+     */
+    private static LoadImage create(double megapixels, long seed) {
+        int width = (int) Math.round(Math.sqrt(megapixels * 1_000_000 * 4 / 3));
+        int height = (int) Math.round(width * 3.0 / 4);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(16);
+                int r = (x * 255 / width + noise) & 0xFF;
+                int g = (y * 255 / height + noise) & 0xFF;
+                // Checkerboard of hard edges every 64 pixels
+                int b = (((x >> 6) + (y >> 6)) & 1) == 0 ? 40 + noise : 200 + noise;
+                row[x] = (r << 16) | (g << 8) | b;
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(width * height / 4);
+        try {
+            ImageIO.write(image, "jpg", output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String name = String.format(Locale.ROOT, "%smp", megapixels).replace(".0mp", "mp");
+        return new LoadImage(name, megapixels, width, height, output.toByteArray());
+    }
+}
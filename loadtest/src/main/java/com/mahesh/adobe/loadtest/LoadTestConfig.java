@@ -0,0 +1,37 @@
+package com.mahesh.adobe.loadtest;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.time.Duration;
+
+/**
+ * Added to the upload service's context for a load test. S3Config still builds its client,
+ * with the configured endpoint and connection pool, and this swaps it for an
+ * {@link InMemoryS3Client} before anything is wired to it, so the rest of the storage path
+ * runs unchanged.
+ */
+@Configuration(proxyBeanMethods = false)
+class LoadTestConfig {
+
+    @Bean
+    static BeanPostProcessor inMemoryS3Client(Environment environment) {
+        Duration latency = Duration.ofMillis(environment.getProperty("loadtest.s3.latency-ms", Long.class, 0L));
+        DataSize retained = DataSize.parse(environment.getProperty("loadtest.s3.retained", "256MB"));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof S3Client client && !(bean instanceof InMemoryS3Client)) {
+                    // Built but never connected; nothing goes over the network
+                    client.close();
+                    return new InMemoryS3Client(latency, retained.toBytes());
+                }
+                return bean;
+            }
+        };
+    }
+}
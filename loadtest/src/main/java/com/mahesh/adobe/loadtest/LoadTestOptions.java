@@ -0,0 +1,164 @@
+package com.mahesh.adobe.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Command line of loadtest.jar. Every option is {@code --name=value}; options the harness
+ * does not know are handed to the upload service as Spring properties, so
+ * {@code --server.tomcat.threads.max=50} or {@code --spring.servlet.multipart.max-file-size=10MB}
+ * tune the run.
+ *
+ * @param scenarios   endpoints to drive, one after the other
+ * @param concurrency clients sending back to back (closed loop) when no rate is set
+ * @param rate        requests per second started whether or not earlier ones finished (open loop); 0 for closed loop
+ * @param poisson     exponential gaps between open-loop arrivals, rather than evenly spaced ones
+ * @param maxInFlight open-loop requests outstanding at once before further arrivals are counted as dropped
+ * @param warmup      load before measuring, per scenario, for the JIT and the pools
+ * @param duration    measured load per scenario
+ * @param sizes       image sizes sent, in megapixels, with relative weights
+ * @param storage     "s3" for the in-process S3 stand-in behind S3Config, "memory" for the memory backend
+ * @param s3Latency   delay the S3 stand-in adds to every call, as a network round-trip would
+ * @param seed        seed of the images and of the request and arrival sequences
+ * @param output      directory for the report and the latency histograms
+ * @param label       name of the run in the report, by default the git commit
+ * @param baseline    earlier report.json to print the change against, or null
+ * @param properties  Spring properties for the service, over the harness defaults
+ */
+record LoadTestOptions(List<Scenario> scenarios, int concurrency, double rate, boolean poisson, int maxInFlight,
+                       Duration warmup, Duration duration, List<SizeWeight> sizes, String storage,
+                       Duration s3Latency, long seed, Path output, String label, Path baseline,
+                       Map<String, String> properties) {
+
+    /**
+     * One entry of the size mix: images of about {@code megapixels}, sent {@code weight}
+     * times as often as an entry of weight 1
+     */
+    record SizeWeight(double megapixels, int weight) {
+    }
+
+    private static final Set<String> HARNESS_OPTIONS = Set.of("endpoints", "concurrency", "rate", "arrivals",
+            "max-in-flight", "warmup", "duration", "sizes", "storage", "s3-latency", "seed", "out", "label",
+            "baseline");
+
+    static final String USAGE = String.join("\n",
+            "java --add-modules jdk.incubator.vector -jar loadtest/target/loadtest.jar [options] [--spring.property=value ...]",
+            "  --endpoints=upload,resize,...  scenarios, default all: " + Scenario.names(),
+            "  --concurrency=8                closed loop: clients sending back to back",
+            "  --rate=50                      open loop: requests per second, 0 for closed loop",
+            "  --arrivals=poisson             open-loop arrival gaps: poisson or uniform",
+            "  --max-in-flight=512            open-loop requests outstanding before arrivals are dropped",
+            "  --warmup=10s --duration=30s    per scenario",
+            "  --sizes=0.3:4,2:3,12:2,24:1    megapixels:weight mix of the images sent",
+            "  --storage=s3                   s3 (in-process S3 stand-in) or memory",
+            "  --s3-latency=0ms               delay the S3 stand-in adds to each call",
+            "  --seed=42",
+            "  --out=loadtest-results         report.json and one .hgrm per scenario",
+            "  --label=<git commit>           name of the run in the report",
+            "  --baseline=old/report.json     print the change against an earlier run");
+
+    static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            int equals = arg.indexOf('=');
+            values.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+
+        List<Scenario> scenarios = new ArrayList<>();
+        for (String name : values.getOrDefault("endpoints", Scenario.names()).split(",")) {
+            scenarios.add(Scenario.named(name.trim()));
+        }
+        String arrivals = values.getOrDefault("arrivals", "poisson");
+        if (!arrivals.equals("poisson") && !arrivals.equals("uniform")) {
+            throw new IllegalArgumentException("--arrivals must be poisson or uniform");
+        }
+        String storage = values.getOrDefault("storage", "s3");
+        if (!storage.equals("s3") && !storage.equals("memory")) {
+            throw new IllegalArgumentException("--storage must be s3 or memory");
+        }
+        int concurrency = Integer.parseInt(values.getOrDefault("concurrency", "8"));
+        double rate = Double.parseDouble(values.getOrDefault("rate", "0"));
+        if (concurrency < 1 || rate < 0) {
+            throw new IllegalArgumentException("--concurrency must be at least 1 and --rate not negative");
+        }
+        String baseline = values.get("baseline");
+
+        LoadTestOptions options = new LoadTestOptions(
+                scenarios,
+                concurrency,
+                rate,
+                arrivals.equals("poisson"),
+                Integer.parseInt(values.getOrDefault("max-in-flight", "512")),
+                duration(values.getOrDefault("warmup", "10s")),
+                duration(values.getOrDefault("duration", "30s")),
+                sizes(values.getOrDefault("sizes", "0.3:4,2:3,12:2,24:1")),
+                storage,
+                duration(values.getOrDefault("s3-latency", "0ms")),
+                Long.parseLong(values.getOrDefault("seed", "42")),
+                Path.of(values.getOrDefault("out", "loadtest-results")),
+                values.get("label"),
+                baseline != null ? Path.of(baseline) : null,
+                new LinkedHashMap<>());
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            if (!HARNESS_OPTIONS.contains(entry.getKey())) {
+                options.properties().put(entry.getKey(), entry.getValue());
+            }
+        }
+        return options;
+    }
+
+    boolean isOpenLoop() {
+        return rate > 0;
+    }
+
+    /**
+     * How the load was applied, for the report
+     */
+    String describeLoad() {
+        if (isOpenLoop()) {
+            return String.format(Locale.ROOT, "open loop, %s arrivals at %.1f/s, max %d in flight",
+                    poisson ? "poisson" : "uniform", rate, maxInFlight);
+        }
+        return "closed loop, " + concurrency + " clients";
+    }
+
+    /**
+     * "250ms", "30s" or "2m"
+     */
+    static Duration duration(String value) {
+        String text = value.trim().toLowerCase(Locale.ROOT);
+        if (text.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+        }
+        if (text.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(text.substring(0, text.length() - 1)));
+        }
+        if (text.endsWith("m")) {
+            return Duration.ofMinutes(Long.parseLong(text.substring(0, text.length() - 1)));
+        }
+        throw new IllegalArgumentException("Duration needs a unit (ms, s or m): " + value);
+    }
+
+    private static List<SizeWeight> sizes(String value) {
+        List<SizeWeight> sizes = new ArrayList<>();
+        for (String entry : value.split(",")) {
+            String[] parts = entry.trim().split(":");
+            double megapixels = Double.parseDouble(parts[0]);
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            if (megapixels <= 0 || weight < 1) {
+                throw new IllegalArgumentException("Size mix entries are megapixels:weight, both positive: " + entry);
+            }
+            sizes.add(new SizeWeight(megapixels, weight));
+        }
+        return sizes;
+    }
+}
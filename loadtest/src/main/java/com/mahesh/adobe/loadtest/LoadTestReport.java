@@ -0,0 +1,79 @@
+package com.mahesh.adobe.loadtest;
+
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One run: what was measured, and everything needed to tell whether another run measured
+ * the same thing (load model, image mix, machine, JVM and service properties).
+ *
+ * @param label      the commit or name the run was made for
+ * @param properties Spring properties the service ran with, on top of application.yml
+ */
+record LoadTestReport(String label, String startedAt, String java, int processors, long maxHeapMb,
+                      List<String> collectors, String load, String sizes, String storage, long s3LatencyMillis,
+                      double warmupSeconds, double durationSeconds, long seed, Map<String, String> properties,
+                      List<ScenarioResult> results) {
+
+    void print(PrintStream out) {
+        out.printf(Locale.ROOT, "%s: %s, %s images, %s storage%n", label, load, sizes, storage);
+        out.printf(Locale.ROOT, "%-10s %8s %8s %6s %6s %9s %9s %9s %9s %6s %8s %10s %9s%n",
+                "endpoint", "ok", "req/s", "429", "err", "p50 ms", "p90 ms", "p99 ms", "max ms",
+                "gc", "gc max", "alloc/req", "cpu/req");
+        for (ScenarioResult result : results) {
+            out.printf(Locale.ROOT, "%-10s %8d %8.1f %6d %6d %9.1f %9.1f %9.1f %9.1f %6d %8.1f %10s %9.1f%n",
+                    result.endpoint(), result.succeeded(), result.throughput(), result.rejected(),
+                    result.failed() + result.dropped(), result.latencyP50Millis(), result.latencyP90Millis(),
+                    result.latencyP99Millis(), result.latencyMaxMillis(), result.gcPauses(),
+                    result.gcPauseMaxMillis(), bytes(result.allocatedPerRequest()), result.cpuPerRequestMillis());
+        }
+    }
+
+    /**
+     * Change of each endpoint's throughput, latency and cost against {@code baseline}, with a
+     * warning when the two runs were not set up alike
+     */
+    void printComparison(LoadTestReport baseline, PrintStream out) {
+        out.printf(Locale.ROOT, "%nChange against %s (negative latency and cost is better)%n", baseline.label());
+        if (!load.equals(baseline.load()) || !sizes.equals(baseline.sizes()) || !storage.equals(baseline.storage())
+                || processors != baseline.processors() || maxHeapMb != baseline.maxHeapMb()
+                || !properties.equals(baseline.properties())) {
+            out.println("Warning: the runs differ in load, images, storage, machine, heap or properties");
+        }
+        Map<String, ScenarioResult> before = new HashMap<>();
+        for (ScenarioResult result : baseline.results()) {
+            before.put(result.endpoint(), result);
+        }
+        out.printf(Locale.ROOT, "%-10s %9s %9s %9s %10s %9s%n", "endpoint", "req/s", "p50", "p99", "alloc/req",
+                "cpu/req");
+        for (ScenarioResult result : results) {
+            ScenarioResult old = before.get(result.endpoint());
+            if (old == null) {
+                continue;
+            }
+            out.printf(Locale.ROOT, "%-10s %9s %9s %9s %10s %9s%n", result.endpoint(),
+                    change(old.throughput(), result.throughput()),
+                    change(old.latencyP50Millis(), result.latencyP50Millis()),
+                    change(old.latencyP99Millis(), result.latencyP99Millis()),
+                    change(old.allocatedPerRequest(), result.allocatedPerRequest()),
+                    change(old.cpuPerRequestMillis(), result.cpuPerRequestMillis()));
+        }
+    }
+
+    private static String change(double before, double after) {
+        if (before == 0) {
+            return "-";
+        }
+        return String.format(Locale.ROOT, "%+.1f%%", (after - before) * 100 / before);
+    }
+
+    private static String bytes(long bytes) {
+        if (bytes >= 1 << 20) {
+            return String.format(Locale.ROOT, "%.1f MB", bytes / (double) (1 << 20));
+        }
+        return String.format(Locale.ROOT, "%.1f KB", bytes / 1024.0);
+    }
+}
@@ -0,0 +1,164 @@
+package com.mahesh.adobe.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mahesh.adobe.upload.UploadServiceApplication;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Entry point of loadtest.jar. Starts the upload service in this JVM on a free port, with
+ * the S3 stand-in (or the memory backend) behind it and the processed-image cache and upload
+ * deduplication off, so every request does its full work. Then loads each endpoint in turn:
+ * a warm-up, a full GC, and the measured window. Prints a table, writes report.json and a
+ * latency distribution per endpoint, and compares with a baseline report when given one.
+ */
+public final class LoadTestRunner {
+
+    private LoadTestRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.println(LoadTestOptions.USAGE);
+            return;
+        }
+        LoadTestOptions options;
+        try {
+            options = LoadTestOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadTestOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        LoadTestReport baseline = options.baseline() != null
+                ? mapper.readValue(options.baseline().toFile(), LoadTestReport.class)
+                : null;
+
+        LoadImages images = new LoadImages(options.sizes(), options.seed());
+        Map<String, String> properties = serviceProperties(options);
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                UploadServiceApplication.class, LoadTestConfig.class)
+                .run(properties.entrySet().stream()
+                        .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                        .toArray(String[]::new));
+
+        List<ScenarioResult> results = new ArrayList<>();
+        Files.createDirectories(options.output());
+        String startedAt = Instant.now().toString();
+        try (context;
+             JvmMonitor monitor = new JvmMonitor();
+             LoadGenerator generator = new LoadGenerator(
+                     URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port")),
+                     images, options)) {
+            for (Scenario scenario : options.scenarios()) {
+                System.out.printf(Locale.ROOT, "%s: %ds warm-up, %ds measured%n", scenario.displayName(),
+                        options.warmup().toSeconds(), options.duration().toSeconds());
+                generator.run(scenario, options.warmup(), options.seed());
+                // Start every window from a collected heap, so one endpoint's garbage is not billed to the next
+                System.gc();
+
+                monitor.startWindow();
+                long start = System.nanoTime();
+                LoadGenerator.Tally tally = generator.run(scenario, options.duration(), options.seed());
+                double seconds = (System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+                JvmMonitor.Sample jvm = monitor.endWindow();
+
+                Histogram latency = tally.latency();
+                results.add(ScenarioResult.of(scenario, tally, latency, jvm, seconds));
+                try (PrintStream out = new PrintStream(
+                        Files.newOutputStream(options.output().resolve(scenario.displayName() + ".hgrm")),
+                        false, StandardCharsets.UTF_8)) {
+                    // Microseconds recorded, milliseconds written
+                    latency.outputPercentileDistribution(out, 1000.0);
+                }
+            }
+        }
+
+        LoadTestReport report = new LoadTestReport(
+                options.label() != null ? options.label() : gitDescribe(),
+                startedAt,
+                System.getProperty("java.vendor") + " " + Runtime.version(),
+                Runtime.getRuntime().availableProcessors(),
+                Runtime.getRuntime().maxMemory() >> 20,
+                JvmMonitor.collectors(),
+                options.describeLoad(),
+                images.all().stream()
+                        .map(image -> image.name() + " (" + image.jpeg().length / 1024 + " KB)")
+                        .collect(Collectors.joining(", ")),
+                options.storage(),
+                options.s3Latency().toMillis(),
+                options.warmup().toMillis() / 1000.0,
+                options.duration().toMillis() / 1000.0,
+                options.seed(),
+                options.properties(),
+                results);
+        mapper.writeValue(options.output().resolve("report.json").toFile(), report);
+        System.out.println();
+        report.print(System.out);
+        if (baseline != null) {
+            report.printComparison(baseline, System.out);
+        }
+        System.out.println();
+        System.out.println("Report and latency distributions in " + options.output().toAbsolutePath());
+        // Pools the service left behind must not keep the JVM alive
+        System.exit(0);
+    }
+
+    /**
+     * Properties the service runs with: the harness defaults, then the user's
+     */
+    private static Map<String, String> serviceProperties(LoadTestOptions options) {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("server.port", "0");
+        properties.put("storage.backend", options.storage());
+        properties.put("loadtest.s3.latency-ms", String.valueOf(options.s3Latency().toMillis()));
+        properties.put("image-cache.enabled", "false");
+        properties.put("dedup.enabled", "false");
+        properties.put("renditions.enabled", "false");
+        properties.put("spring.main.banner-mode", "off");
+        properties.put("logging.level.root", "WARN");
+        properties.putAll(options.properties());
+        return properties;
+    }
+
+    /**
+     * The checked-out commit, marked dirty when there are local changes; "unknown" outside a git tree
+     */
+    private static String gitDescribe() {
+        try {
+            Process git = new ProcessBuilder("git", "describe", "--always", "--dirty")
+                    .redirectErrorStream(true)
+                    .start();
+            String output;
+            try (InputStream input = git.getInputStream()) {
+                output = new String(input.readAllBytes(), StandardCharsets.UTF_8).trim();
+            }
+            return git.waitFor() == 0 && !output.isEmpty() ? output : "unknown";
+        } catch (IOException e) {
+            return "unknown";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.mahesh.adobe.loadtest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * An endpoint under load and the form fields sent with every image. Each request is a
+ * multipart POST with the image as "file", as the web UI sends it.
+ */
+enum Scenario {
+    UPLOAD("/upload/image", "dedup", "false"),
+    METADATA("/api/v1/process/metadata"),
+    RESIZE("/api/v1/process/resize", "width", "800", "height", "600"),
+    THUMBNAIL("/api/v1/process/thumbnail", "size", "200"),
+    BLUR("/api/v1/process/filter/blur", "intensity", "2.0", "format", "jpg"),
+    SHARPEN("/api/v1/process/filter/sharpen", "format", "jpg"),
+    EDGES("/api/v1/process/filter/edges", "format", "jpg"),
+    GRAYSCALE("/api/v1/process/filter/grayscale", "format", "jpg"),
+    PIPELINE("/api/v1/process/pipeline", "format", "jpg", "operations",
+            "[{\"op\":\"resize\",\"width\":1024,\"height\":768},{\"op\":\"sharpen\"},{\"op\":\"grayscale\"}]"),
+    TRANSFORM("/api/v1/process/transform", "rotate", "90", "format", "jpg");
+
+    private final String path;
+    private final Map<String, String> fields;
+
+    Scenario(String path, String... fields) {
+        this.path = path;
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < fields.length; i += 2) {
+            map.put(fields[i], fields[i + 1]);
+        }
+        this.fields = Collections.unmodifiableMap(map);
+    }
+
+    String path() {
+        return path;
+    }
+
+    Map<String, String> fields() {
+        return fields;
+    }
+
+    String displayName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    static Scenario named(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown endpoint " + name + ", expected one of " + names());
+        }
+    }
+
+    /**
+     * All scenarios, comma-separated
+     */
+    static String names() {
+        return Arrays.stream(values()).map(Scenario::displayName).collect(Collectors.joining(","));
+    }
+}
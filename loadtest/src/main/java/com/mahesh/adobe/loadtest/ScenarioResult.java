@@ -0,0 +1,60 @@
+package com.mahesh.adobe.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+
+/**
+ * Measured numbers of one endpoint, as written to report.json. Latencies are milliseconds
+ * from when a request was due to start to its last response byte; rates are per second of
+ * the measured window, drain included.
+ *
+ * @param requests           requests answered, successfully or not
+ * @param rejected           answered with 429 by admission control
+ * @param failed             answered with another error status, or not at all
+ * @param dropped            open-loop arrivals not sent because max-in-flight requests were outstanding
+ * @param throughput         successful requests per second
+ * @param allocatedPerRequest heap bytes allocated per answered request, service and client together
+ * @param cpuPerRequestMillis process CPU time per answered request
+ */
+record ScenarioResult(String endpoint, long requests, long succeeded, long rejected, long failed, long dropped,
+                      double seconds, double throughput, double sentMbPerSecond, double receivedMbPerSecond,
+                      double latencyMeanMillis, double latencyP50Millis, double latencyP90Millis,
+                      double latencyP99Millis, double latencyP999Millis, double latencyMaxMillis,
+                      long gcPauses, double gcPauseTotalMillis, double gcPauseMaxMillis,
+                      long allocatedPerRequest, double cpuPerRequestMillis, Map<Integer, Long> statuses) {
+
+    static ScenarioResult of(Scenario scenario, LoadGenerator.Tally tally, Histogram latency,
+                             JvmMonitor.Sample jvm, double seconds) {
+        long requests = tally.succeeded() + tally.rejected() + tally.failed();
+        Histogram pauses = jvm.pauses();
+        long perRequest = Math.max(1, requests);
+        return new ScenarioResult(
+                scenario.displayName(),
+                requests,
+                tally.succeeded(),
+                tally.rejected(),
+                tally.failed(),
+                tally.dropped(),
+                seconds,
+                tally.succeeded() / seconds,
+                tally.bytesSent() / seconds / (1 << 20),
+                tally.bytesReceived() / seconds / (1 << 20),
+                latency.getMean() / 1000,
+                millis(latency, 50),
+                millis(latency, 90),
+                millis(latency, 99),
+                millis(latency, 99.9),
+                latency.getMaxValue() / 1000.0,
+                pauses.getTotalCount(),
+                pauses.getMean() * pauses.getTotalCount() / 1000,
+                pauses.getMaxValue() / 1000.0,
+                jvm.allocatedBytes() / perRequest,
+                jvm.cpuNanos() / 1e6 / perRequest,
+                tally.statuses());
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
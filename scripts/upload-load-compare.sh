@@ -0,0 +1,81 @@
+#!/bin/bash
+# Compare concurrent-upload capacity with platform and virtual request threads.
+#
+# Starts the upload service once per mode with the same Tomcat thread limit, fires
+# increasing numbers of concurrent uploads from rate-limited (slow) clients, and prints
+# completed uploads, failures and latency percentiles per concurrency level.
+#
+# Usage: scripts/upload-load-compare.sh [image] [concurrency levels...]
+# Env:   CLIENT_RATE (curl --limit-rate, default 200k), TOMCAT_THREADS (default 200),
+#        JAR (default upload-service/target/upload-service-1.0.0-SNAPSHOT-exec.jar)
+# Needs LocalStack on localhost:4566 with the adobe-images bucket (scripts/localstack-init.sh),
+# or STORAGE_BACKEND=memory to keep objects on the heap. The service inherits the environment,
+# so DEDUP_ENABLED=false makes repeated uploads of the same image do their full work.
+
+IMAGE=${1:-images/download.jpg}
+shift
+LEVELS=${@:-50 100 200 400 800}
+CLIENT_RATE=${CLIENT_RATE:-200k}
+TOMCAT_THREADS=${TOMCAT_THREADS:-200}
+JAR=${JAR:-upload-service/target/upload-service-1.0.0-SNAPSHOT-exec.jar}
+PORT=18080
+URL="http://localhost:$PORT/upload/image"
+
+# Latency percentile of the successful requests in a results file
+percentile() {
+    awk '$1 == 200 {print $2}' "$1" | sort -n | awk -v p="$2" '
+        {a[NR] = $1}
+        END {
+            if (NR == 0) { print "-"; exit }
+            i = int(NR * p + 0.999999); if (i < 1) i = 1
+            print a[i]
+        }'
+}
+
+run_level() {
+    local concurrency=$1
+    local results
+    results=$(mktemp)
+    seq "$concurrency" | xargs -P "$concurrency" -I{} \
+        curl -s -o /dev/null --max-time 60 --limit-rate "$CLIENT_RATE" \
+             -w '%{http_code} %{time_total}\n' \
+             -F "file=@$IMAGE;type=image/jpeg" "$URL" >> "$results"
+
+    local ok failed p50 p99
+    ok=$(awk '$1 == 200' "$results" | wc -l)
+    failed=$((concurrency - ok))
+    p50=$(percentile "$results" 0.50)
+    p99=$(percentile "$results" 0.99)
+    printf "%-10s %12s %8s %8s %10s %10s\n" "$MODE" "$concurrency" "$ok" "$failed" "$p50" "$p99"
+    rm -f "$results"
+}
+
+run_mode() {
+    MODE=$1
+    java -jar "$JAR" --server.port=$PORT \
+         --spring.threads.virtual.enabled="$2" \
+         --server.tomcat.threads.max="$TOMCAT_THREADS" > "/tmp/upload-load-$MODE.log" 2>&1 &
+    local pid=$!
+
+    until curl -sf "http://localhost:$PORT/health" > /dev/null; do
+        if ! kill -0 $pid 2> /dev/null; then
+            echo "Service failed to start, see /tmp/upload-load-$MODE.log"
+            exit 1
+        fi
+        sleep 1
+    done
+
+    # Warm up JIT, connection pools and the S3 client
+    run_level 20 > /dev/null
+    for level in $LEVELS; do
+        run_level "$level"
+    done
+
+    kill $pid
+    wait $pid 2> /dev/null
+}
+
+echo "Uploading $IMAGE at $CLIENT_RATE/s per client, tomcat threads max $TOMCAT_THREADS"
+printf "%-10s %12s %8s %8s %10s %10s\n" "mode" "concurrency" "ok" "failed" "p50 (s)" "p99 (s)"
+run_mode platform false
+run_mode virtual true
@@ -1,33 +1,54 @@
 package com.mahesh.adobe.upload;
 
+import com.mahesh.adobe.upload.dedup.DedupIndex;
+import com.mahesh.adobe.upload.dedup.DeduplicationService;
+import com.mahesh.adobe.upload.dedup.DuplicateUploadException;
+import com.mahesh.adobe.upload.dedup.Fingerprint;
+import com.mahesh.adobe.upload.model.ImageMetadata;
+import com.mahesh.adobe.upload.service.ImageMetadataProbe;
+import com.mahesh.adobe.upload.service.RenditionService;
 import com.mahesh.adobe.upload.service.S3Service;
+import com.mahesh.adobe.upload.service.UploadRejectedException;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @SpringBootApplication
 @RestController
 public class UploadServiceApplication {
     
-    private static final List<String> ALLOWED_IMAGE_TYPES = Arrays.asList(
+    /** Image uploads accepted, and the only types stored objects are served as */
+    public static final List<String> ALLOWED_IMAGE_TYPES = Arrays.asList(
         "image/jpeg", "image/jpg", "image/png", "image/gif", "image/webp"
     );
     
     private final S3Service s3Service;
+    private final ImageMetadataProbe metadataProbe;
+    private final RenditionService renditionService;
+    private final DeduplicationService deduplicationService;
     
-    public UploadServiceApplication(S3Service s3Service) {
+    public UploadServiceApplication(S3Service s3Service, ImageMetadataProbe metadataProbe,
+                                    RenditionService renditionService, DeduplicationService deduplicationService) {
         this.s3Service = s3Service;
+        this.metadataProbe = metadataProbe;
+        this.renditionService = renditionService;
+        this.deduplicationService = deduplicationService;
     }
     
     public static void main(String[] args) {
@@ -78,8 +99,16 @@ public class UploadServiceApplication {
         }
     }
     
+    /**
+     * Store an image; with {@code renditions=true} (or renditions.enabled) the configured
+     * rendition ladder is generated from the same upload and stored alongside it.
+     * {@code dedup=false} stores the bytes even when they are already in S3.
+     */
     @PostMapping("/upload/image")
-    public ResponseEntity<Map<String, Object>> uploadImage(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<Map<String, Object>> uploadImage(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "renditions", required = false) Boolean renditions,
+            @RequestParam(value = "dedup", required = false) Boolean dedup) {
         Map<String, Object> response = new HashMap<>();
         
         try {
@@ -89,67 +118,192 @@ public class UploadServiceApplication {
                 return ResponseEntity.badRequest().body(response);
             }
             
-            // Check if it's an image
-            if (!ALLOWED_IMAGE_TYPES.contains(file.getContentType())) {
-                response.put("success", false);
-                response.put("message", "Please upload a valid image file (JPEG, PNG, GIF, WebP)");
-                return ResponseEntity.badRequest().body(response);
+            try (InputStream input = file.getInputStream()) {
+                boolean generateRenditions = renditions != null ? renditions : renditionService.isEnabledByDefault();
+                return storeImage(input, file.getSize(), file.getOriginalFilename(), file.getContentType(),
+                        generateRenditions ? file : null, deduplicate(dedup));
             }
             
-            // Extract image dimensions
-            BufferedImage image = ImageIO.read(file.getInputStream());
-            if (image == null) {
-                response.put("success", false);
-                response.put("message", "Invalid image file");
-                return ResponseEntity.badRequest().body(response);
-            }
-            
-            // Upload to S3
-            String s3Key = s3Service.uploadFile(file);
-            String fileUrl = s3Service.getFileUrl(s3Key);
-            
-            // Create unique image ID
-            String imageId = UUID.randomUUID().toString();
-            
-            // Return detailed image information
-            response.put("success", true);
-            response.put("message", "Image uploaded and stored in S3 successfully!");
-            response.put("imageId", imageId);
-            response.put("filename", file.getOriginalFilename());
-            response.put("size", file.getSize());
-            response.put("contentType", file.getContentType());
-            response.put("width", image.getWidth());
-            response.put("height", image.getHeight());
-            response.put("aspectRatio", (double) image.getWidth() / image.getHeight());
-            response.put("s3Key", s3Key);
-            response.put("fileUrl", fileUrl);
-            response.put("uploadedAt", LocalDateTime.now().toString());
-            
-            // Add computer vision analysis
-            Map<String, Object> analysis = new HashMap<>();
-            analysis.put("totalPixels", image.getWidth() * image.getHeight());
-            analysis.put("colorModel", image.getColorModel().toString());
-            analysis.put("hasAlpha", image.getColorModel().hasAlpha());
-            analysis.put("imageType", getImageType(image));
-            response.put("analysis", analysis);
-            
-            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "Image processing failed: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+    
+    /**
+     * Streaming ingest: the raw request body (not multipart) goes straight into S3,
+     * so nothing is spooled by Tomcat or held in memory beyond the part buffers.
+     */
+    @PostMapping("/upload/image/stream")
+    public ResponseEntity<Map<String, Object>> uploadImageStream(
+            HttpServletRequest request,
+            @RequestParam(value = "filename", required = false) String filename,
+            @RequestParam(value = "dedup", required = false) Boolean dedup) {
+        
+        try (InputStream input = request.getInputStream()) {
+            return storeImage(input, request.getContentLengthLong(), filename, request.getContentType(), null,
+                    deduplicate(dedup));
             
         } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
             response.put("success", false);
             response.put("message", "Image processing failed: " + e.getMessage());
             return ResponseEntity.internalServerError().body(response);
         }
     }
     
-    private String getImageType(BufferedImage image) {
-        int type = image.getType();
+    private boolean deduplicate(Boolean requested) {
+        return deduplicationService.isEnabled() && (requested == null || requested);
+    }
+    
+    /**
+     * Bodies that fit in one S3 part are fingerprinted before the PUT, and a known one is
+     * answered with the existing key without sending anything. Larger bodies are hashed while
+     * they stream to S3 and the new copy is deleted if the bytes turn out to be stored already.
+     *
+     * @param renditionSource second read of the upload to generate renditions from, or null for none
+     * @param deduplicate     look the upload up in the dedup index, and index it when it is new
+     */
+    private ResponseEntity<Map<String, Object>> storeImage(InputStream input, long size, String filename,
+                                                           String contentType, InputStreamSource renditionSource,
+                                                           boolean deduplicate)
+            throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        
+        // Check if it's an image
+        if (!ALLOWED_IMAGE_TYPES.contains(contentType)) {
+            response.put("success", false);
+            response.put("message", "Please upload a valid image file (JPEG, PNG, GIF, WebP)");
+            return ResponseEntity.badRequest().body(response);
+        }
+        
+        // Probe headers in the first buffered chunk of the same stream that goes to S3
+        ImageMetadata[] probed = new ImageMetadata[1];
+        Fingerprint[] fingerprint = new Fingerprint[1];
+        DedupIndex.Match[] similar = new DedupIndex.Match[1];
+        DigestInputStream body = deduplicate ? deduplicationService.digesting(input) : null;
+        DedupIndex.Match duplicate = null;
+        String s3Key;
+        try {
+            s3Key = s3Service.uploadStream(body != null ? body : input, size, filename, contentType,
+                    (head, length, complete) -> {
+                        probed[0] = metadataProbe.probe(head, length);
+                        if (probed[0] == null) {
+                            throw new UploadRejectedException("Invalid image file");
+                        }
+                        if (deduplicate && complete) {
+                            fingerprint[0] = deduplicationService.fingerprint(head, length);
+                            Optional<DedupIndex.Match> match = deduplicationService.find(fingerprint[0]);
+                            if (match.isPresent() && deduplicationService.isReusable(match.get())) {
+                                throw new DuplicateUploadException(match.get());
+                            }
+                            similar[0] = match.orElse(null);
+                        }
+                    });
+        } catch (UploadRejectedException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (DuplicateUploadException e) {
+            duplicate = e.match();
+            s3Key = duplicate.key();
+        }
+        
+        if (deduplicate && duplicate == null) {
+            if (fingerprint[0] == null) {
+                // Sent as multipart before the whole body was seen; only exact matches are known
+                fingerprint[0] = deduplicationService.fingerprint(body);
+                Optional<DedupIndex.Match> match = deduplicationService.find(fingerprint[0]);
+                if (match.isPresent()) {
+                    try {
+                        s3Service.deleteObject(s3Key);
+                        duplicate = match.get();
+                        s3Key = duplicate.key();
+                    } catch (RuntimeException e) {
+                        // The new copy could not be dropped; it stays and is served instead
+                    }
+                }
+            }
+            if (duplicate == null) {
+                deduplicationService.record(fingerprint[0], s3Key);
+            }
+        }
+        if (duplicate != null) {
+            deduplicationService.reused(size);
+        }
+        
+        ImageMetadata metadata = probed[0];
+        String fileUrl = s3Service.getFileUrl(s3Key);
+        
+        // Create unique image ID
+        String imageId = UUID.randomUUID().toString();
+        
+        // Return detailed image information
+        response.put("success", true);
+        response.put("message", duplicate != null
+                ? "Image already stored in S3; returning the existing object"
+                : "Image uploaded and stored in S3 successfully!");
+        response.put("imageId", imageId);
+        response.put("filename", filename);
+        response.put("size", size);
+        response.put("contentType", contentType);
+        response.put("width", metadata.width());
+        response.put("height", metadata.height());
+        response.put("aspectRatio", metadata.aspectRatio());
+        response.put("s3Key", s3Key);
+        response.put("fileUrl", fileUrl);
+        response.put("uploadedAt", LocalDateTime.now().toString());
+        response.put("deduplicated", duplicate != null);
+        if (duplicate != null) {
+            response.put("duplicateOf", Map.of(
+                    "match", duplicate.exact() ? "exact" : "perceptual",
+                    "distance", duplicate.distance()));
+        } else if (similar[0] != null) {
+            // Looks like a stored image but was kept: dedup.perceptual.reuse is off
+            response.put("similarTo", Map.of(
+                    "s3Key", similar[0].key(),
+                    "distance", similar[0].distance()));
+        }
+        
+        // Add computer vision analysis
+        Map<String, Object> analysis = new HashMap<>();
+        analysis.put("totalPixels", metadata.pixelCount());
+        analysis.put("colorModel", metadata.colorSpace() + ", " + metadata.components() + " x "
+                + metadata.bitsPerSample() + "-bit");
+        analysis.put("hasAlpha", metadata.hasAlpha());
+        analysis.put("imageType", getImageType(metadata.imageType()));
+        analysis.put("format", metadata.formatName());
+        analysis.put("orientation", metadata.orientation());
+        analysis.put("progressive", metadata.progressive());
+        response.put("analysis", analysis);
+        
+        // Derivatives are generated after the original is safely stored. A duplicate shares the
+        // stored original's renditions: generating them again under its key would overwrite them,
+        // or delete them if generation failed.
+        if (renditionSource != null) {
+            if (duplicate != null) {
+                response.put("renditions", renditionService.stored(metadata, s3Key));
+            } else {
+                try (InputStream source = renditionSource.getInputStream()) {
+                    response.put("renditions", renditionService.generate(source, metadata, s3Key));
+                }
+            }
+        }
+        
+        return ResponseEntity.ok(response);
+    }
+    
+    private String getImageType(int type) {
         switch (type) {
             case BufferedImage.TYPE_INT_RGB: return "RGB";
             case BufferedImage.TYPE_INT_ARGB: return "ARGB";
             case BufferedImage.TYPE_INT_ARGB_PRE: return "ARGB_PRE";
             case BufferedImage.TYPE_BYTE_GRAY: return "GRAYSCALE";
+            case BufferedImage.TYPE_3BYTE_BGR: return "BGR";
+            case BufferedImage.TYPE_4BYTE_ABGR: return "ABGR";
+            case BufferedImage.TYPE_BYTE_INDEXED: return "INDEXED";
             default: return "OTHER";
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,12 @@
+package com.mahesh.adobe.upload.batch;
+
+import org.springframework.core.io.InputStreamSource;
+
+/**
+ * One image of a batch: a multipart file, a zip entry or an S3 object
+ *
+ * @param name   file name, entry name or S3 key, echoed in the item's result
+ * @param source opened once, when a worker picks the item up
+ */
+public record BatchItem(String name, InputStreamSource source) {
+}
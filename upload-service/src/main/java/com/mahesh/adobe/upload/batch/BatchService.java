@@ -0,0 +1,371 @@
+package com.mahesh.adobe.upload.batch;
+
+import com.mahesh.adobe.upload.imaging.ImageEncoder;
+import com.mahesh.adobe.upload.imaging.PooledOutputStream;
+import com.mahesh.adobe.upload.imaging.RasterPool;
+import com.mahesh.adobe.upload.model.ImageMetadata;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import com.mahesh.adobe.upload.service.AdmissionControl;
+import com.mahesh.adobe.upload.service.ImageDecoder;
+import com.mahesh.adobe.upload.service.ImageMetadataProbe;
+import com.mahesh.adobe.upload.service.ImageProcessingService;
+import com.mahesh.adobe.upload.service.ProcessingMetrics;
+import com.mahesh.adobe.upload.service.S3Service;
+import com.mahesh.adobe.upload.service.TiledImageProcessor;
+import com.mahesh.adobe.upload.service.UploadRejectedException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs one pipeline over many images, reporting each result as soon as it is ready.
+ *
+ * Items are processed on a shared pool of platform worker threads (one per processor by
+ * default, since the work is CPU bound). Before decoding, an item takes its working set
+ * from the service-wide {@link AdmissionControl}, which batches share with requests and
+ * jobs, so the number of images in memory at once follows their size rather than their
+ * count. Each batch keeps only a couple of items per worker queued, so one large batch
+ * does not starve the others.
+ * Results are stored in S3 the same way as job results.
+ */
+@Service
+public class BatchService implements InitializingBean, DisposableBean {
+    
+    public static final String SUCCEEDED = "succeeded";
+    public static final String FAILED = "failed";
+    
+    /**
+     * Receives per-item results and the final summary on the thread running the batch
+     */
+    @FunctionalInterface
+    public interface ResultSink {
+        void accept(Map<String, Object> result) throws IOException;
+    }
+    
+    private final ImageMetadataProbe metadataProbe;
+    private final ImageDecoder imageDecoder;
+    private final ImageProcessingService imageProcessingService;
+    private final S3Service s3Service;
+    private final TiledImageProcessor tiledImageProcessor;
+    private final ProcessingMetrics metrics;
+    private final AdmissionControl admissionControl;
+    private final RasterPool rasterPool;
+    private final MeterRegistry registry;
+    private final AtomicInteger runningItems = new AtomicInteger();
+    
+    @Value("${batch.workers:0}")
+    private int workerCount;
+    
+    @Value("${batch.max-items:10000}")
+    private int maxItems;
+    
+    @Value("${spring.servlet.multipart.max-file-size:50MB}")
+    private DataSize maxItemSize;
+    
+    private ExecutorService workers;
+    private int queuedPerBatch;
+    // Each running batch has one, which mostly waits for its items
+    private final ExecutorService coordinators =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("batch-", 1).factory());
+    
+    public BatchService(ImageMetadataProbe metadataProbe, ImageDecoder imageDecoder,
+                        ImageProcessingService imageProcessingService, S3Service s3Service,
+                        TiledImageProcessor tiledImageProcessor, ProcessingMetrics metrics,
+                        AdmissionControl admissionControl, RasterPool rasterPool, MeterRegistry registry) {
+        this.metadataProbe = metadataProbe;
+        this.imageDecoder = imageDecoder;
+        this.imageProcessingService = imageProcessingService;
+        this.s3Service = s3Service;
+        this.tiledImageProcessor = tiledImageProcessor;
+        this.metrics = metrics;
+        this.admissionControl = admissionControl;
+        this.rasterPool = rasterPool;
+        this.registry = registry;
+    }
+    
+    @Override
+    public void afterPropertiesSet() {
+        // 0 means one worker per available processor
+        int threads = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+        workers = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("batch-worker-"));
+        queuedPerBatch = 2 * threads;
+        
+        Gauge.builder("batch.items.running", runningItems, AtomicInteger::get)
+                .description("Batch items currently being processed")
+                .register(registry);
+    }
+    
+    @Override
+    public void destroy() {
+        coordinators.shutdownNow();
+        workers.shutdownNow();
+    }
+    
+    public int maxItems() {
+        return maxItems;
+    }
+    
+    /**
+     * {@link #run} on a thread of its own, so the caller does not wait for the batch.
+     * {@code done} gets null after the summary has been passed to {@code sink}, or what
+     * ended the batch early. Cancelling the returned future stops the batch.
+     *
+     * {@code done} runs exactly once, so the caller can release what the items read from
+     * there: when the batch ends, or, if it is cancelled before it starts, on cancellation.
+     */
+    public Future<?> start(List<BatchItem> items, List<PipelineStep> steps, String format, ResultSink sink,
+                           Consumer<Throwable> done) {
+        // Claimed by the batch when it starts, or by a cancellation that comes first
+        AtomicBoolean claimed = new AtomicBoolean();
+        FutureTask<Void> batch = new FutureTask<>(() -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return null;
+            }
+            Throwable failure = null;
+            try {
+                run(items, steps, format, sink);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            } catch (Error e) {
+                done.accept(e);
+                throw e;
+            }
+            done.accept(failure);
+            return null;
+        }) {
+            @Override
+            protected void done() {
+                if (isCancelled() && claimed.compareAndSet(false, true)) {
+                    done.accept(new CancellationException("Batch cancelled before it started"));
+                }
+            }
+        };
+        try {
+            coordinators.execute(batch);
+        } catch (RejectedExecutionException e) {
+            batch.cancel(false);
+            throw e;
+        }
+        return batch;
+    }
+    
+    /**
+     * Run the pipeline over every item, passing each item's result to {@code sink} as it
+     * completes (so not in item order) and finally a summary. If the sink fails, e.g.
+     * because the client went away, items not yet finished are cancelled.
+     */
+    public void run(List<BatchItem> items, List<PipelineStep> steps, String format, ResultSink sink)
+            throws IOException {
+        long start = System.nanoTime();
+        CompletionService<Map<String, Object>> completion = new ExecutorCompletionService<>(workers);
+        List<Future<Map<String, Object>>> submitted = new ArrayList<>(items.size());
+        int completed = 0;
+        int succeeded = 0;
+        
+        try {
+            while (completed < items.size()) {
+                while (submitted.size() < items.size() && submitted.size() - completed < queuedPerBatch) {
+                    int index = submitted.size();
+                    BatchItem item = items.get(index);
+                    submitted.add(completion.submit(() -> process(index, item, steps, format)));
+                }
+                Map<String, Object> result = completion.take().get();
+                completed++;
+                if (SUCCEEDED.equals(result.get("status"))) {
+                    succeeded++;
+                }
+                sink.accept(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for batch items");
+        } catch (ExecutionException e) {
+            throw new IOException("Batch item failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // No-op for finished items; stops the rest when the batch ends early
+            for (Future<Map<String, Object>> future : submitted) {
+                future.cancel(true);
+            }
+        }
+        
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("status", "completed");
+        summary.put("items", items.size());
+        summary.put(SUCCEEDED, succeeded);
+        summary.put(FAILED, items.size() - succeeded);
+        summary.put("millis", (System.nanoTime() - start) / 1_000_000);
+        sink.accept(summary);
+    }
+    
+    /**
+     * Process one item; failures are reported in the result rather than thrown
+     */
+    private Map<String, Object> process(int index, BatchItem item, List<PipelineStep> steps, String format) {
+        long start = System.nanoTime();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("index", index);
+        result.put("name", item.name());
+        runningItems.incrementAndGet();
+        try (PooledOutputStream input = read(item)) {
+            metrics.bytesIn("batch", input.size());
+            ImageMetadata metadata = metadataProbe.probe(input.toInputStream());
+            if (metadata == null) {
+                throw new UploadRejectedException("Invalid image file");
+            }
+            
+            if (tiledImageProcessor.shouldTile(metadata, steps)) {
+                processTiled(input, metadata, steps, format, result);
+            } else {
+                processDecoded(input, metadata, steps, format, result);
+            }
+            result.put("status", SUCCEEDED);
+        } catch (Exception e) {
+            result.put("status", FAILED);
+            result.put("message", e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+        } finally {
+            runningItems.decrementAndGet();
+        }
+        registry.counter("batch.items", "status", (String) result.get("status")).increment();
+        result.put("millis", (System.nanoTime() - start) / 1_000_000);
+        return result;
+    }
+    
+    private void processDecoded(PooledOutputStream input, ImageMetadata metadata, List<PipelineStep> steps,
+                                String format, Map<String, Object> result) throws IOException {
+        Dimension size = imageProcessingService.pipelineDecodeSize(steps, metadata.width(), metadata.height());
+        long pixelBytes = decodedBytes(metadata, size);
+        PooledOutputStream encoded;
+        try (AdmissionControl.Permit ignoredPermit = admissionControl.acquire("batch",
+                     imageProcessingService.workingSetBytes(steps, metadata));
+             ProcessingMetrics.InFlight ignored = metrics.begin(pixelBytes)) {
+            BufferedImage image = metrics.time(ProcessingMetrics.DECODE, "batch", format, metadata,
+                    () -> size != null
+                            ? imageDecoder.decode(input.toInputStream(), size.width, size.height)
+                            : imageDecoder.decode(input.toInputStream()));
+            if (image == null) {
+                throw new UploadRejectedException("Invalid image file");
+            }
+            
+            BufferedImage processed = metrics.time(ProcessingMetrics.PROCESS, "batch", format, metadata,
+                    () -> imageProcessingService.runPipeline(image, steps, metadata.orientation()));
+            try {
+                result.put("width", processed.getWidth());
+                result.put("height", processed.getHeight());
+                encoded = metrics.time(ProcessingMetrics.ENCODE, "batch", format, metadata,
+                        () -> imageProcessingService.encode(processed, format));
+            } finally {
+                imageProcessingService.recycle(image, processed);
+            }
+        }
+        
+        // The budget only covers rasters; the upload runs after it is returned
+        try (encoded) {
+            metrics.bytesOut("batch", format, encoded.size());
+            String fileName = s3Service.uploadStream(encoded.toInputStream(), encoded.size(),
+                    "processed." + format, ImageEncoder.contentType(format), null);
+            putStored(result, fileName, encoded.size());
+        }
+    }
+    
+    private void processTiled(PooledOutputStream input, ImageMetadata metadata, List<PipelineStep> steps,
+                              String format, Map<String, Object> result) throws IOException {
+        Path source = Files.createTempFile("batch-", ".upload");
+        Path output = Files.createTempFile("batch-", ".result");
+        try {
+            try (OutputStream out = Files.newOutputStream(source)) {
+                input.writeTo(out);
+            }
+            try (OutputStream out = Files.newOutputStream(output);
+                 AdmissionControl.Permit ignoredPermit = admissionControl.acquire("batch",
+                         tiledImageProcessor.stripBytes());
+                 ProcessingMetrics.InFlight ignored = metrics.begin(tiledImageProcessor.stripBytes())) {
+                metrics.time(ProcessingMetrics.TILED, "batch", format, metadata, () -> {
+                    tiledImageProcessor.process(source, steps, format, out);
+                    return null;
+                });
+            }
+            long size = Files.size(output);
+            metrics.bytesOut("batch", format, size);
+            result.put("width", metadata.width());
+            result.put("height", metadata.height());
+            try (InputStream encoded = Files.newInputStream(output)) {
+                String fileName = s3Service.uploadStream(encoded, size, "processed." + format, ImageEncoder.contentType(format), null);
+                putStored(result, fileName, size);
+            }
+        } finally {
+            Files.deleteIfExists(source);
+            Files.deleteIfExists(output);
+        }
+    }
+    
+    private void putStored(Map<String, Object> result, String fileName, long size) {
+        result.put("s3Key", fileName);
+        result.put("fileUrl", s3Service.getFileUrl(fileName));
+        result.put("size", size);
+    }
+    
+    /**
+     * Read the whole encoded item into a pooled buffer, so a remote source is fetched once
+     * for both the header probe and the decode
+     */
+    private PooledOutputStream read(BatchItem item) throws IOException {
+        PooledOutputStream buffer = new PooledOutputStream(rasterPool, 1 << 20);
+        long limit = maxItemSize.toBytes();
+        try (InputStream input = item.source().getInputStream()) {
+            byte[] chunk = new byte[64 * 1024];
+            int read;
+            while ((read = input.read(chunk)) != -1) {
+                if ((long) buffer.size() + read > limit) {
+                    throw new UploadRejectedException("Image exceeds the maximum size of " + maxItemSize);
+                }
+                buffer.write(chunk, 0, read);
+            }
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            buffer.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Raster bytes the decode will allocate, taking reader subsampling into account
+     */
+    private static long decodedBytes(ImageMetadata metadata, Dimension decodeSize) {
+        if (decodeSize == null) {
+            return metadata.decodedBytes();
+        }
+        int factor = ImageDecoder.subsamplingFactor(metadata.width(), metadata.height(),
+                decodeSize.width, decodeSize.height);
+        return metadata.decodedBytes() / ((long) factor * factor);
+    }
+}
@@ -0,0 +1,78 @@
+package com.mahesh.adobe.upload.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content-addressed cache key: SHA-256 of the input bytes plus the operation and its parameters.
+ * Two requests with the same image bytes and the same operation spec map to the same key,
+ * regardless of file name or upload time.
+ *
+ * @param contentHash hex SHA-256 of the source image bytes
+ * @param operation   operation name, e.g. "blur"
+ * @param parameters  canonical parameter string, e.g. "intensity=2.0;format=jpg"
+ */
+public record CacheKey(String contentHash, String operation, String parameters) {
+    
+    public static CacheKey of(String contentHash, String operation, String parameters) {
+        return new CacheKey(contentHash, operation, parameters == null ? "" : parameters);
+    }
+    
+    /**
+     * Stable string form, used as the key in every tier
+     */
+    public String value() {
+        return contentHash + ":" + operation + ":" + parameters;
+    }
+    
+    /**
+     * Strong HTTP entity tag for the result this key identifies. Processing is
+     * deterministic, so equal keys produce byte-identical output.
+     */
+    public String etag() {
+        return "\"" + sha256(value().getBytes(StandardCharsets.UTF_8)).substring(0, 32) + "\"";
+    }
+    
+    /**
+     * Hash a stream without buffering it
+     */
+    public static String sha256(InputStream input) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    public static String sha256(byte[] data) {
+        return HexFormat.of().formatHex(newDigest().digest(data));
+    }
+    
+    /**
+     * Hash the first {@code length} bytes of {@code data}
+     */
+    public static String sha256(byte[] data, int length) {
+        MessageDigest digest = newDigest();
+        digest.update(data, 0, length);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return value();
+    }
+}
@@ -0,0 +1,16 @@
+package com.mahesh.adobe.upload.cache;
+
+import java.util.Optional;
+
+/**
+ * Second-level tier behind the in-memory cache (local disk or Redis)
+ */
+public interface CacheStore {
+    
+    /** Short tier name used in metrics tags */
+    String name();
+    
+    Optional<CachedImage> get(CacheKey key);
+    
+    void put(CacheKey key, CachedImage image);
+}
@@ -0,0 +1,70 @@
+package com.mahesh.adobe.upload.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * An encoded processing result as stored in the cache: the image bytes, their media type
+ * and any response attributes (dimensions, operation headers) needed to answer a repeat
+ * request without decoding.
+ */
+public record CachedImage(byte[] data, String contentType, Map<String, String> attributes) {
+    
+    private static final int FORMAT_VERSION = 1;
+    
+    public CachedImage {
+        attributes = attributes == null ? Map.of() : Map.copyOf(attributes);
+    }
+    
+    /**
+     * Approximate heap footprint, used to weigh entries in the memory tier
+     */
+    public int weight() {
+        int weight = data.length + 64;
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            weight += 2 * (entry.getKey().length() + entry.getValue().length()) + 32;
+        }
+        return weight;
+    }
+    
+    /**
+     * Serialise for the disk and Redis tiers
+     */
+    public byte[] toBytes() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(data.length + 256);
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeUTF(contentType);
+            out.writeShort(attributes.size());
+            for (Map.Entry<String, String> entry : attributes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeUTF(entry.getValue());
+            }
+            out.writeInt(data.length);
+            out.write(data);
+        }
+        return buffer.toByteArray();
+    }
+    
+    public static CachedImage fromBytes(byte[] serialized) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(serialized))) {
+            if (in.readByte() != FORMAT_VERSION) {
+                throw new IOException("Unsupported cache entry format");
+            }
+            String contentType = in.readUTF();
+            int count = in.readUnsignedShort();
+            Map<String, String> attributes = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                attributes.put(in.readUTF(), in.readUTF());
+            }
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return new CachedImage(data, contentType, attributes);
+        }
+    }
+}
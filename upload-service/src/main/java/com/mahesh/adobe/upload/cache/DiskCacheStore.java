@@ -0,0 +1,132 @@
+package com.mahesh.adobe.upload.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Local-disk tier: one file per entry, named by the SHA-256 of the key.
+ *
+ * Reads touch the file's modification time, and when the directory grows past its budget
+ * the least recently used files are deleted until it is back under 90% of the limit.
+ */
+public class DiskCacheStore implements CacheStore {
+    
+    private static final Logger log = LoggerFactory.getLogger(DiskCacheStore.class);
+    
+    private final Path directory;
+    private final long maxBytes;
+    private final AtomicLong currentBytes = new AtomicLong();
+    
+    public DiskCacheStore(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        try (Stream<Path> files = Files.list(this.directory)) {
+            files.forEach(file -> currentBytes.addAndGet(sizeOf(file)));
+        }
+    }
+    
+    @Override
+    public String name() {
+        return "disk";
+    }
+    
+    @Override
+    public Optional<CachedImage> get(CacheKey key) {
+        Path file = fileFor(key);
+        try {
+            byte[] serialized = Files.readAllBytes(file);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(CachedImage.fromBytes(serialized));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("Discarding unreadable disk cache entry {}: {}", file, e.getMessage());
+            delete(file);
+            return Optional.empty();
+        }
+    }
+    
+    @Override
+    public void put(CacheKey key, CachedImage image) {
+        Path file = fileFor(key);
+        try {
+            byte[] serialized = image.toBytes();
+            long previous = sizeOf(file);
+            // Write to a temp file and rename so readers never see a partial entry
+            Path temp = Files.createTempFile(directory, "entry", ".tmp");
+            Files.write(temp, serialized);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (currentBytes.addAndGet(serialized.length - previous) > maxBytes) {
+                evict();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write disk cache entry {}: {}", file, e.getMessage());
+        }
+    }
+    
+    private synchronized void evict() {
+        if (currentBytes.get() <= maxBytes) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> listing = Files.list(directory)) {
+            listing.forEach(files::add);
+        } catch (IOException e) {
+            log.warn("Failed to list disk cache directory {}: {}", directory, e.getMessage());
+            return;
+        }
+        files.sort(Comparator.comparingLong(DiskCacheStore::lastModified));
+        long target = maxBytes * 9 / 10;
+        for (Path file : files) {
+            if (currentBytes.get() <= target) {
+                break;
+            }
+            long size = sizeOf(file);
+            if (delete(file)) {
+                currentBytes.addAndGet(-size);
+            }
+        }
+    }
+    
+    private Path fileFor(CacheKey key) {
+        return directory.resolve(CacheKey.sha256(key.value().getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+    
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+    
+    private static boolean delete(Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.mahesh.adobe.upload.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Two-level cache of encoded processing results, keyed by {@link CacheKey}.
+ *
+ * Level 1 is an in-memory Caffeine cache bounded by total bytes, with W-TinyLFU
+ * admission and eviction. Level 2 is zero or more {@link CacheStore}s (local disk, Redis);
+ * hits there are promoted into memory. Hits and misses are counted per tier as
+ * {@code image.cache.requests}.
+ */
+public class ProcessedImageCache {
+    
+    private final boolean enabled;
+    private final Cache<String, CachedImage> memory;
+    private final List<CacheStore> stores;
+    private final MeterRegistry registry;
+    private final Counter memoryHits;
+    private final Counter misses;
+    
+    public ProcessedImageCache(boolean enabled, long maxMemoryBytes, List<CacheStore> stores,
+                               MeterRegistry registry) {
+        this.enabled = enabled;
+        this.stores = List.copyOf(stores);
+        this.registry = registry;
+        this.memory = Caffeine.newBuilder()
+                .maximumWeight(maxMemoryBytes)
+                .weigher((String key, CachedImage image) -> image.weight())
+                .recordStats()
+                .build();
+        
+        CaffeineCacheMetrics.monitor(registry, memory, "processed-images");
+        Gauge.builder("image.cache.memory.bytes", memory,
+                        cache -> cache.policy().eviction()
+                                .map(eviction -> eviction.weightedSize().orElse(0L))
+                                .orElse(0L))
+                .description("Bytes held by the in-memory processed-image cache")
+                .register(registry);
+        this.memoryHits = requests("memory", "hit");
+        this.misses = requests("all", "miss");
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public Optional<CachedImage> get(CacheKey key) {
+        if (!enabled || key == null) {
+            return Optional.empty();
+        }
+        CachedImage image = memory.getIfPresent(key.value());
+        if (image != null) {
+            memoryHits.increment();
+            return Optional.of(image);
+        }
+        for (CacheStore store : stores) {
+            Optional<CachedImage> stored = store.get(key);
+            if (stored.isPresent()) {
+                requests(store.name(), "hit").increment();
+                memory.put(key.value(), stored.get());
+                return stored;
+            }
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+    
+    public void put(CacheKey key, CachedImage image) {
+        if (!enabled || key == null) {
+            return;
+        }
+        memory.put(key.value(), image);
+        for (CacheStore store : stores) {
+            store.put(key, image);
+        }
+    }
+    
+    private Counter requests(String tier, String result) {
+        return Counter.builder("image.cache.requests")
+                .description("Processed-image cache lookups")
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(registry);
+    }
+}
@@ -0,0 +1,101 @@
+package com.mahesh.adobe.upload.cache;
+
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.codec.ByteArrayCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Redis tier shared by all service instances. Entries expire after a fixed TTL and Redis'
+ * own maxmemory policy handles eviction. The connection is opened lazily and any Redis
+ * failure is treated as a miss, so an unavailable Redis never fails a request.
+ */
+public class RedisCacheStore implements CacheStore, DisposableBean {
+    
+    private static final Logger log = LoggerFactory.getLogger(RedisCacheStore.class);
+    
+    private static final String KEY_PREFIX = "image-cache:";
+    
+    /** After a failed connect, skip Redis for this long instead of paying the timeout per request */
+    private static final long RECONNECT_BACKOFF_MILLIS = 30_000;
+    
+    private final RedisClient client;
+    private final Duration ttl;
+    private volatile StatefulRedisConnection<byte[], byte[]> connection;
+    private volatile long retryAfter;
+    
+    public RedisCacheStore(String uri, Duration timeout, Duration ttl) {
+        RedisURI redisUri = RedisURI.create(uri);
+        redisUri.setTimeout(timeout);
+        this.client = RedisClient.create(redisUri);
+        this.ttl = ttl;
+    }
+    
+    @Override
+    public String name() {
+        return "redis";
+    }
+    
+    @Override
+    public Optional<CachedImage> get(CacheKey key) {
+        try {
+            byte[] serialized = connection().sync().get(redisKey(key));
+            return serialized == null ? Optional.empty() : Optional.of(CachedImage.fromBytes(serialized));
+        } catch (Exception e) {
+            log.debug("Redis cache lookup failed: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+    
+    @Override
+    public void put(CacheKey key, CachedImage image) {
+        try {
+            connection().sync().setex(redisKey(key), ttl.toSeconds(), image.toBytes());
+        } catch (Exception e) {
+            log.debug("Redis cache write failed: {}", e.getMessage());
+        }
+    }
+    
+    private StatefulRedisConnection<byte[], byte[]> connection() {
+        StatefulRedisConnection<byte[], byte[]> current = connection;
+        if (current == null) {
+            synchronized (this) {
+                current = connection;
+                if (current == null) {
+                    if (System.currentTimeMillis() < retryAfter) {
+                        throw new IllegalStateException("Redis unavailable, retrying later");
+                    }
+                    try {
+                        current = client.connect(ByteArrayCodec.INSTANCE);
+                    } catch (RuntimeException e) {
+                        retryAfter = System.currentTimeMillis() + RECONNECT_BACKOFF_MILLIS;
+                        log.warn("Redis cache unavailable: {}", e.getMessage());
+                        throw e;
+                    }
+                    connection = current;
+                }
+            }
+        }
+        return current;
+    }
+    
+    private static byte[] redisKey(CacheKey key) {
+        return (KEY_PREFIX + key.value()).getBytes(StandardCharsets.UTF_8);
+    }
+    
+    @Override
+    public void destroy() {
+        StatefulRedisConnection<byte[], byte[]> current = connection;
+        if (current != null) {
+            current.close();
+        }
+        client.shutdown();
+    }
+}
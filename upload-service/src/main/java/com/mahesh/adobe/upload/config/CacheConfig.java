@@ -0,0 +1,61 @@
+package com.mahesh.adobe.upload.config;
+
+import com.mahesh.adobe.upload.cache.CacheStore;
+import com.mahesh.adobe.upload.cache.DiskCacheStore;
+import com.mahesh.adobe.upload.cache.ProcessedImageCache;
+import com.mahesh.adobe.upload.cache.RedisCacheStore;
+import com.mahesh.adobe.upload.service.AdmissionControl;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+public class CacheConfig {
+    
+    /** Share of the maximum heap the memory tier may hold when no size is configured */
+    private static final int DEFAULT_MEMORY_HEAP_DIVISOR = 16;
+    
+    @Value("${image-cache.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${image-cache.memory.max-size:0}")
+    private DataSize memoryMaxSize;
+    
+    @Bean
+    public ProcessedImageCache processedImageCache(List<CacheStore> stores, MeterRegistry registry,
+                                                   AdmissionControl admissionControl) {
+        // 0 means a share of the heap, so the memory tier shrinks with -Xmx
+        long maxMemoryBytes = memoryMaxSize.toBytes() > 0
+                ? memoryMaxSize.toBytes()
+                : Runtime.getRuntime().maxMemory() / DEFAULT_MEMORY_HEAP_DIVISOR;
+        if (enabled) {
+            admissionControl.reserve("the processed-image cache", maxMemoryBytes);
+        }
+        return new ProcessedImageCache(enabled, maxMemoryBytes, stores, registry);
+    }
+    
+    @Bean
+    @ConditionalOnProperty(name = "image-cache.disk.enabled", havingValue = "true")
+    public DiskCacheStore diskCacheStore(
+            @Value("${image-cache.disk.directory}") String directory,
+            @Value("${image-cache.disk.max-size:2GB}") DataSize maxSize) throws IOException {
+        return new DiskCacheStore(Path.of(directory), maxSize.toBytes());
+    }
+    
+    @Bean
+    @ConditionalOnProperty(name = "image-cache.redis.enabled", havingValue = "true")
+    public RedisCacheStore redisCacheStore(
+            @Value("${image-cache.redis.uri}") String uri,
+            @Value("${image-cache.redis.timeout:250ms}") Duration timeout,
+            @Value("${image-cache.redis.ttl:24h}") Duration ttl) {
+        return new RedisCacheStore(uri, timeout, ttl);
+    }
+}
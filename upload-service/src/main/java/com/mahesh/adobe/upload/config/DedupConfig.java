@@ -0,0 +1,22 @@
+package com.mahesh.adobe.upload.config;
+
+import com.mahesh.adobe.upload.dedup.DedupIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+@Configuration
+public class DedupConfig {
+    
+    // Empty keeps the index in memory only
+    @Value("${dedup.index.file:}")
+    private String indexFile;
+    
+    @Bean(destroyMethod = "close")
+    public DedupIndex dedupIndex() throws IOException {
+        return new DedupIndex(indexFile.isBlank() ? null : Path.of(indexFile));
+    }
+}
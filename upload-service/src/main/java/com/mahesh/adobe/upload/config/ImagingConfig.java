@@ -0,0 +1,154 @@
+package com.mahesh.adobe.upload.config;
+
+import com.mahesh.adobe.upload.imaging.ConvolutionEngine;
+import com.mahesh.adobe.upload.imaging.EdgeDetector;
+import com.mahesh.adobe.upload.imaging.EncodeOptions;
+import com.mahesh.adobe.upload.imaging.GeometryEngine;
+import com.mahesh.adobe.upload.imaging.ImageEncoder;
+import com.mahesh.adobe.upload.imaging.PixelKernels;
+import com.mahesh.adobe.upload.imaging.PngEncoder;
+import com.mahesh.adobe.upload.imaging.PointProcessor;
+import com.mahesh.adobe.upload.imaging.RasterPool;
+import com.mahesh.adobe.upload.imaging.Resampler;
+import com.mahesh.adobe.upload.service.AdmissionControl;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.util.concurrent.ForkJoinPool;
+
+@Configuration
+public class ImagingConfig {
+    
+    private static final Logger log = LoggerFactory.getLogger(ImagingConfig.class);
+    
+    /** Share of the maximum heap idle pooled buffers may keep when no limit is configured */
+    private static final int DEFAULT_POOL_HEAP_DIVISOR = 16;
+    
+    @Value("${imaging.parallelism:0}")
+    private int parallelism;
+    
+    @Value("${imaging.pool.enabled:true}")
+    private boolean poolEnabled;
+    
+    @Value("${imaging.pool.max-retained:0}")
+    private DataSize poolMaxRetained;
+    
+    @Value("${imaging.simd.enabled:true}")
+    private boolean simdEnabled;
+    
+    @Value("${imaging.encode.preset:BALANCED}")
+    private EncodeOptions.Preset encodePreset;
+    
+    // Unset encoder settings come from the preset
+    @Value("${imaging.encode.quality:#{null}}")
+    private Float encodeQuality;
+    
+    @Value("${imaging.encode.jpeg.progressive:#{null}}")
+    private Boolean jpegProgressive;
+    
+    @Value("${imaging.encode.jpeg.chroma-subsampling:}")
+    private String jpegChromaSubsampling;
+    
+    @Value("${imaging.encode.jpeg.optimize-huffman:#{null}}")
+    private Boolean jpegOptimizeHuffman;
+    
+    @Value("${imaging.encode.png.compression-level:#{null}}")
+    private Integer pngCompressionLevel;
+    
+    @Value("${imaging.encode.png.filter:#{null}}")
+    private PngEncoder.Filter pngFilter;
+    
+    @Value("${imaging.encode.webp.lossless:false}")
+    private boolean webpLossless;
+    
+    @Bean(destroyMethod = "shutdown")
+    public ForkJoinPool imagingPool() {
+        // 0 means one worker per available processor
+        int workers = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(workers);
+    }
+    
+    @Bean
+    public RasterPool rasterPool(MeterRegistry registry, AdmissionControl admissionControl) {
+        // 0 means a share of the heap, so the pool shrinks with -Xmx along with everything else
+        long maxRetained = poolMaxRetained.toBytes() > 0
+                ? poolMaxRetained.toBytes()
+                : Runtime.getRuntime().maxMemory() / DEFAULT_POOL_HEAP_DIVISOR;
+        RasterPool pool = new RasterPool(poolEnabled ? maxRetained : 0);
+        // Idle arrays are outside any admitted working set
+        admissionControl.reserve("the raster pool", pool.maxRetainedBytes());
+        FunctionCounter.builder("imaging.pool.requests", pool, RasterPool::hits)
+                .description("Raster and encode buffer requests to the pool")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("imaging.pool.requests", pool, RasterPool::misses)
+                .description("Raster and encode buffer requests to the pool")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("imaging.pool.dropped", pool, RasterPool::dropped)
+                .description("Released buffers discarded because the pool was at its retention limit")
+                .register(registry);
+        Gauge.builder("imaging.pool.retained.bytes", pool, RasterPool::retainedBytes)
+                .description("Bytes held by idle pooled buffers")
+                .baseUnit("bytes")
+                .register(registry);
+        return pool;
+    }
+    
+    @Bean
+    public ConvolutionEngine convolutionEngine(ForkJoinPool imagingPool, RasterPool rasterPool) {
+        return new ConvolutionEngine(imagingPool, rasterPool);
+    }
+    
+    @Bean
+    public EdgeDetector edgeDetector(ForkJoinPool imagingPool, RasterPool rasterPool,
+                                     ConvolutionEngine convolutionEngine) {
+        return new EdgeDetector(imagingPool, rasterPool, convolutionEngine);
+    }
+    
+    @Bean
+    public GeometryEngine geometryEngine(ForkJoinPool imagingPool, RasterPool rasterPool) {
+        return new GeometryEngine(imagingPool, rasterPool);
+    }
+    
+    @Bean
+    public PointProcessor pointProcessor(ForkJoinPool imagingPool, RasterPool rasterPool) {
+        PixelKernels kernels = simdEnabled ? PixelKernels.best() : PixelKernels.scalar();
+        if (simdEnabled && !PixelKernels.isVectorAvailable()) {
+            log.info("jdk.incubator.vector not available (start the JVM with --add-modules jdk.incubator.vector); "
+                    + "using scalar pixel kernels");
+        }
+        log.info("Point operations use {} pixel kernels", kernels.name());
+        return new PointProcessor(imagingPool, rasterPool, kernels);
+    }
+    
+    @Bean
+    public ImageEncoder imageEncoder(RasterPool rasterPool) {
+        EncodeOptions preset = encodePreset.options();
+        EncodeOptions defaults = new EncodeOptions(
+                encodeQuality != null ? encodeQuality : preset.quality(),
+                jpegProgressive != null ? jpegProgressive : preset.progressive(),
+                jpegChromaSubsampling.isBlank()
+                        ? preset.chromaSubsampling()
+                        : EncodeOptions.ChromaSubsampling.parse(jpegChromaSubsampling),
+                jpegOptimizeHuffman != null ? jpegOptimizeHuffman : preset.optimizeHuffman(),
+                pngCompressionLevel != null ? pngCompressionLevel : preset.compressionLevel(),
+                pngFilter != null ? pngFilter : preset.pngFilter(),
+                webpLossless);
+        log.info("Encoder defaults {}; WebP output {}", defaults,
+                ImageEncoder.isWebpAvailable() ? "available" : "unavailable (no ImageIO WebP writer)");
+        return new ImageEncoder(rasterPool, defaults);
+    }
+    
+    @Bean
+    public Resampler resampler(ForkJoinPool imagingPool, RasterPool rasterPool) {
+        return new Resampler(imagingPool, rasterPool);
+    }
+}
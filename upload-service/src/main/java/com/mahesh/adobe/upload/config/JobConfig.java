@@ -0,0 +1,21 @@
+package com.mahesh.adobe.upload.config;
+
+import com.mahesh.adobe.upload.job.JobQueue;
+import com.mahesh.adobe.upload.job.LocalJobQueue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JobConfig {
+    
+    @Value("${jobs.queue-capacity:100}")
+    private int queueCapacity;
+    
+    @Bean
+    @ConditionalOnMissingBean(JobQueue.class)
+    public JobQueue jobQueue() {
+        return new LocalJobQueue(queueCapacity);
+    }
+}
@@ -1,14 +1,20 @@
 package com.mahesh.adobe.upload.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 
 import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Configuration
 public class S3Config {
@@ -25,14 +31,42 @@ public class S3Config {
     @Value("${aws.s3.secret-key}")
     private String secretKey;
     
+    @Value("${aws.s3.multipart.transfer-threads:16}")
+    private int transferThreads;
+    
+    @Value("${aws.s3.max-connections:50}")
+    private int maxConnections;
+    
+    @Value("${aws.s3.connection-acquisition-timeout:10s}")
+    private Duration connectionAcquisitionTimeout;
+    
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+    
     @Bean
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
     public S3Client s3Client() {
         return S3Client.builder()
                 .region(Region.of(region))
+                // With virtual request threads the connection pool, not the thread count, bounds concurrent S3 calls
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(maxConnections)
+                        .connectionAcquisitionTimeout(connectionAcquisitionTimeout))
                 .endpointOverride(URI.create(endpoint))
                 .credentialsProvider(StaticCredentialsProvider.create(
                         AwsBasicCredentials.create(accessKey, secretKey)))
                 .forcePathStyle(true) // Required for LocalStack
                 .build();
     }
-}
\ No newline at end of file
+    
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService s3TransferExecutor() {
+        // Shared by all uploads for multipart part transfers. Part uploads only wait on the
+        // network, so in virtual-thread mode each gets its own virtual thread; max-in-flight
+        // per upload and the connection pool still bound the concurrency.
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("s3-transfer-", 1).factory());
+        }
+        return Executors.newFixedThreadPool(transferThreads, new CustomizableThreadFactory("s3-transfer-"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.mahesh.adobe.upload.config;
+
+import com.mahesh.adobe.upload.storage.LocalObjectStore;
+import com.mahesh.adobe.upload.storage.MemoryObjectStore;
+import com.mahesh.adobe.upload.storage.S3ObjectStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * The object store behind S3Service, picked with {@code storage.backend} (s3, local or memory)
+ */
+@Configuration
+public class StorageConfig {
+    
+    @Bean
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "s3", matchIfMissing = true)
+    public S3ObjectStore s3ObjectStore(
+            S3Client s3Client,
+            @Qualifier("s3TransferExecutor") ExecutorService transferExecutor,
+            MeterRegistry registry,
+            @Value("${aws.s3.bucket-name}") String bucketName,
+            @Value("${aws.s3.public-url:http://localhost:4566}") String publicUrl,
+            @Value("${aws.s3.multipart.max-in-flight:4}") int maxPartsInFlight) {
+        return new S3ObjectStore(s3Client, transferExecutor, registry, bucketName, publicUrl, maxPartsInFlight);
+    }
+    
+    @Bean
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "local")
+    public LocalObjectStore localObjectStore(
+            @Value("${storage.local.directory}") String directory,
+            @Value("${storage.public-url:http://localhost:8080/objects}") String publicUrl,
+            @Value("${storage.local.mmap-threshold:1MB}") DataSize mmapThreshold,
+            @Value("${storage.local.fsync:false}") boolean fsync) throws IOException {
+        return new LocalObjectStore(Path.of(directory), publicUrl, mmapThreshold.toBytes(), fsync);
+    }
+    
+    @Bean
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "memory")
+    public MemoryObjectStore memoryObjectStore(
+            @Value("${storage.public-url:http://localhost:8080/objects}") String publicUrl) {
+        return new MemoryObjectStore(publicUrl);
+    }
+}
@@ -0,0 +1,186 @@
+package com.mahesh.adobe.upload.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mahesh.adobe.upload.batch.BatchItem;
+import com.mahesh.adobe.upload.batch.BatchService;
+import com.mahesh.adobe.upload.imaging.ImageEncoder;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import com.mahesh.adobe.upload.service.ImageProcessingService;
+import com.mahesh.adobe.upload.service.S3Service;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+/**
+ * Batch processing: one pipeline over many images in a single request. Images come as
+ * multipart files, a zip archive and/or a JSON list of S3 keys; results are streamed back
+ * as NDJSON, one line per image in completion order followed by a summary line.
+ *
+ * A batch can run far longer than other async requests, so its response has a timeout of
+ * its own (batch.response-timeout, none by default) rather than spring.mvc.async.request-timeout.
+ */
+@RestController
+@RequestMapping("/api/v1/batch")
+public class BatchController {
+    
+    private final BatchService batchService;
+    private final ImageProcessingService imageProcessingService;
+    private final S3Service s3Service;
+    private final ObjectMapper objectMapper;
+    
+    @Value("${batch.response-timeout:0}")
+    private Duration responseTimeout;
+    
+    public BatchController(BatchService batchService, ImageProcessingService imageProcessingService,
+                           S3Service s3Service, ObjectMapper objectMapper) {
+        this.batchService = batchService;
+        this.imageProcessingService = imageProcessingService;
+        this.s3Service = s3Service;
+        this.objectMapper = objectMapper;
+    }
+    
+    /**
+     * Run a pipeline (same operations format as /api/v1/process/pipeline) over every image
+     */
+    @PostMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> processBatch(
+            @RequestParam(value = "files", required = false) List<MultipartFile> files,
+            @RequestParam(value = "archive", required = false) MultipartFile archive,
+            @RequestParam(value = "keys", required = false) String keys,
+            @RequestParam("operations") String operations,
+            @RequestParam(value = "format", defaultValue = "jpg") String format) {
+        
+        List<PipelineStep> steps;
+        List<String> s3Keys;
+        try {
+            steps = objectMapper.readValue(operations, new TypeReference<List<PipelineStep>>() {});
+            imageProcessingService.validatePipeline(steps);
+            s3Keys = keys != null ? objectMapper.readValue(keys, new TypeReference<List<String>>() {}) : List.of();
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        String outputFormat = ImageEncoder.canonicalFormat(format);
+        if (!ImageEncoder.isSupported(outputFormat)) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        List<BatchItem> items = new ArrayList<>();
+        if (files != null) {
+            for (MultipartFile file : files) {
+                if (!file.isEmpty()) {
+                    items.add(new BatchItem(file.getOriginalFilename(), file));
+                }
+            }
+        }
+        for (String key : s3Keys) {
+            if (key == null || key.isBlank()) {
+                return ResponseEntity.badRequest().build();
+            }
+            items.add(new BatchItem(key, () -> s3Service.openObject(key)));
+        }
+        
+        Path archiveFile = null;
+        ZipFile zip = null;
+        try {
+            if (archive != null && !archive.isEmpty()) {
+                // ZipFile needs random access; entries are then inflated by the workers as they need them
+                archiveFile = Files.createTempFile("batch-", ".zip");
+                archive.transferTo(archiveFile);
+                zip = new ZipFile(archiveFile.toFile());
+                addEntries(zip, items);
+            }
+            if (items.isEmpty() || items.size() > batchService.maxItems()) {
+                closeArchive(zip, archiveFile);
+                return ResponseEntity.badRequest().build();
+            }
+        } catch (ZipException e) {
+            closeArchive(zip, archiveFile);
+            return ResponseEntity.badRequest().build();
+        } catch (IOException e) {
+            closeArchive(zip, archiveFile);
+            return ResponseEntity.internalServerError().build();
+        }
+        
+        ZipFile openZip = zip;
+        Path tempArchive = archiveFile;
+        // 0 means no timeout
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(responseTimeout.toMillis());
+        // Set once the response has ended without the batch; it must then not be completed again
+        AtomicBoolean abandoned = new AtomicBoolean();
+        Future<?> batch = batchService.start(items, steps, outputFormat, result -> {
+            // One line per finished item reaches the client right away
+            emitter.send(objectMapper.writeValueAsString(result) + "\n", MediaType.APPLICATION_NDJSON);
+        }, failure -> {
+            // Called however the batch ends, also when it is cancelled before it starts
+            closeArchive(openZip, tempArchive);
+            if (abandoned.get()) {
+                return;
+            }
+            if (failure == null) {
+                emitter.complete();
+            } else {
+                emitter.completeWithError(failure);
+            }
+        });
+        // Timed out or the client went away: stop the remaining items
+        emitter.onTimeout(() -> {
+            abandoned.set(true);
+            batch.cancel(true);
+        });
+        emitter.onError(e -> {
+            abandoned.set(true);
+            batch.cancel(true);
+        });
+        
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header("X-Batch-Items", String.valueOf(items.size()))
+                .body(emitter);
+    }
+    
+    private static void addEntries(ZipFile zip, List<BatchItem> items) {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+            ZipEntry entry = entries.nextElement();
+            String name = entry.getName();
+            String fileName = name.substring(name.lastIndexOf('/') + 1);
+            // Skip folders and the resource-fork and dot files archivers add
+            if (entry.isDirectory() || name.startsWith("__MACOSX/") || fileName.startsWith(".")) {
+                continue;
+            }
+            items.add(new BatchItem(name, () -> zip.getInputStream(entry)));
+        }
+    }
+    
+    private static void closeArchive(ZipFile zip, Path file) {
+        try {
+            if (zip != null) {
+                zip.close();
+            }
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException ignored) {
+            // Temp file; the OS cleans up whatever is left
+        }
+    }
+}
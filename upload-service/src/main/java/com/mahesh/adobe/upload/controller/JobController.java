@@ -0,0 +1,120 @@
+package com.mahesh.adobe.upload.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mahesh.adobe.upload.imaging.ImageEncoder;
+import com.mahesh.adobe.upload.job.JobPriority;
+import com.mahesh.adobe.upload.job.JobRejectedException;
+import com.mahesh.adobe.upload.job.JobService;
+import com.mahesh.adobe.upload.job.ProcessingJob;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import com.mahesh.adobe.upload.service.ImageProcessingService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Asynchronous processing: a job is accepted with 202 and a job ID, runs on the job
+ * workers instead of a request thread, and its result is polled for or posted to a
+ * callback URL.
+ */
+@RestController
+@RequestMapping("/api/v1/jobs")
+public class JobController {
+    
+    private final JobService jobService;
+    private final ImageProcessingService imageProcessingService;
+    private final ObjectMapper objectMapper;
+    
+    public JobController(JobService jobService, ImageProcessingService imageProcessingService,
+                         ObjectMapper objectMapper) {
+        this.jobService = jobService;
+        this.imageProcessingService = imageProcessingService;
+        this.objectMapper = objectMapper;
+    }
+    
+    /**
+     * Queue a pipeline (same operations format as /api/v1/process/pipeline)
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submitJob(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam("operations") String operations,
+            @RequestParam(value = "format", defaultValue = "jpg") String format,
+            @RequestParam(value = "priority", defaultValue = "NORMAL") JobPriority priority,
+            @RequestParam(value = "callbackUrl", required = false) URI callbackUrl) {
+        
+        Map<String, Object> response = new HashMap<>();
+        
+        if (file.isEmpty()) {
+            response.put("success", false);
+            response.put("message", "Please select an image to process");
+            return ResponseEntity.badRequest().body(response);
+        }
+        
+        List<PipelineStep> steps;
+        try {
+            steps = objectMapper.readValue(operations, new TypeReference<List<PipelineStep>>() {});
+            imageProcessingService.validatePipeline(steps);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", "Invalid operations: " + e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+        
+        String outputFormat = ImageEncoder.canonicalFormat(format);
+        if (!ImageEncoder.isSupported(outputFormat)) {
+            response.put("success", false);
+            response.put("message", "Unsupported output format: " + format);
+            return ResponseEntity.badRequest().body(response);
+        }
+        
+        try {
+            ProcessingJob job = jobService.submit(file, steps, outputFormat, priority, callbackUrl);
+            
+            response.put("success", true);
+            response.put("message", "Job accepted");
+            response.putAll(job.summary());
+            response.put("statusUrl", "/api/v1/jobs/" + job.getId());
+            response.put("queueSize", jobService.queueSize());
+            
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/v1/jobs/" + job.getId()))
+                    .body(response);
+            
+        } catch (JobRejectedException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            response.put("retryAfterSeconds", e.getRetryAfterSeconds());
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(response);
+            
+        } catch (IllegalArgumentException e) {
+            // Callback URL refused by the callback policy
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+            
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "Job submission failed: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+    
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable("id") String id) {
+        return jobService.find(id)
+                .map(job -> ResponseEntity.ok(job.summary()))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,102 @@
+package com.mahesh.adobe.upload.controller;
+
+import com.mahesh.adobe.upload.UploadServiceApplication;
+import com.mahesh.adobe.upload.service.S3Service;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Serves stored objects at the URLs the local and memory stores hand out (S3 objects are
+ * fetched from S3 itself, but are proxied here as well).
+ *
+ * Objects kept as local files go out with Tomcat's sendfile when the connector supports it:
+ * the kernel copies them from the page cache to the socket and the bytes never enter the
+ * heap.
+ *
+ * Keys keep the extension of the uploader's file name, so the extension cannot be trusted: an
+ * object is served with its image type only when the extension maps to one of
+ * {@link UploadServiceApplication#ALLOWED_IMAGE_TYPES}. Anything else (HTML, SVG, ...) goes
+ * out as an {@code application/octet-stream} attachment, and every response carries
+ * {@code X-Content-Type-Options: nosniff}, so an uploaded page or script never renders from
+ * this origin.
+ */
+@RestController
+@RequestMapping("/objects")
+public class ObjectController {
+    
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+    
+    private final S3Service s3Service;
+    
+    public ObjectController(S3Service s3Service) {
+        this.s3Service = s3Service;
+    }
+    
+    @GetMapping("/{*key}")
+    public void getObject(@PathVariable("key") String key, HttpServletRequest request,
+                          HttpServletResponse response) throws IOException {
+        String objectKey = key.startsWith("/") ? key.substring(1) : key;
+        MediaType contentType = imageType(objectKey).orElse(MediaType.APPLICATION_OCTET_STREAM);
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        if (!contentType.getType().equals("image")) {
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().build().toString());
+        }
+        try {
+            Optional<Path> file = s3Service.objectFile(objectKey);
+            if (file.isPresent()) {
+                sendFile(file.get(), contentType, request, response);
+                return;
+            }
+            try (InputStream input = s3Service.openObject(objectKey)) {
+                response.setContentType(contentType.toString());
+                input.transferTo(response.getOutputStream());
+            }
+        } catch (NoSuchFileException | IllegalArgumentException e) {
+            response.sendError(HttpStatus.NOT_FOUND.value());
+        }
+    }
+    
+    /**
+     * Image type for the key's extension, if it is one uploads are accepted as
+     */
+    static Optional<MediaType> imageType(String objectKey) {
+        return MediaTypeFactory.getMediaType(objectKey)
+                .filter(type -> UploadServiceApplication.ALLOWED_IMAGE_TYPES.contains(type.toString()));
+    }
+    
+    private static void sendFile(Path file, MediaType contentType, HttpServletRequest request,
+                                 HttpServletResponse response) throws IOException {
+        long size = Files.size(file);
+        response.setContentType(contentType.toString());
+        response.setContentLengthLong(size);
+        if ("GET".equals(request.getMethod()) && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            // Tomcat writes the file after this method returns; nothing may be written here
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            return;
+        }
+        if ("GET".equals(request.getMethod())) {
+            Files.copy(file, response.getOutputStream());
+        }
+    }
+}
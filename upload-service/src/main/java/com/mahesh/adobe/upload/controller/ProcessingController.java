@@ -1,20 +1,66 @@
 package com.mahesh.adobe.upload.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mahesh.adobe.upload.cache.CacheKey;
+import com.mahesh.adobe.upload.cache.CachedImage;
+import com.mahesh.adobe.upload.cache.ProcessedImageCache;
+import com.mahesh.adobe.upload.imaging.EdgeOptions;
+import com.mahesh.adobe.upload.imaging.EncodeOptions;
+import com.mahesh.adobe.upload.imaging.ImageEncoder;
+import com.mahesh.adobe.upload.imaging.PooledOutputStream;
+import com.mahesh.adobe.upload.imaging.RasterPool;
+import com.mahesh.adobe.upload.imaging.Rearrangement;
+import com.mahesh.adobe.upload.imaging.Resampler;
+import com.mahesh.adobe.upload.model.ImageMetadata;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import com.mahesh.adobe.upload.service.AdmissionControl;
+import com.mahesh.adobe.upload.service.AdmissionRejectedException;
+import com.mahesh.adobe.upload.service.ImageDecoder;
+import com.mahesh.adobe.upload.service.ImageMetadataProbe;
 import com.mahesh.adobe.upload.service.ImageProcessingService;
+import com.mahesh.adobe.upload.service.ImageTooLargeException;
+import com.mahesh.adobe.upload.service.ProcessingExecutor;
+import com.mahesh.adobe.upload.service.ProcessingMetrics;
 import com.mahesh.adobe.upload.service.S3Service;
+import com.mahesh.adobe.upload.service.TiledImageProcessor;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import javax.imageio.ImageIO;
+import java.awt.Dimension;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/v1/process")
@@ -22,46 +68,178 @@ public class ProcessingController {
     
     private final ImageProcessingService imageProcessingService;
     private final S3Service s3Service;
+    private final ImageMetadataProbe metadataProbe;
+    private final ImageDecoder imageDecoder;
+    private final ProcessedImageCache imageCache;
+    private final ObjectMapper objectMapper;
+    private final ProcessingExecutor processingExecutor;
+    private final TiledImageProcessor tiledImageProcessor;
+    private final ProcessingMetrics metrics;
+    private final AdmissionControl admissionControl;
+    private final RasterPool rasterPool;
     
-    public ProcessingController(ImageProcessingService imageProcessingService, S3Service s3Service) {
+    public ProcessingController(ImageProcessingService imageProcessingService, S3Service s3Service,
+                                ImageMetadataProbe metadataProbe, ImageDecoder imageDecoder,
+                                ProcessedImageCache imageCache, ObjectMapper objectMapper,
+                                ProcessingExecutor processingExecutor, TiledImageProcessor tiledImageProcessor,
+                                ProcessingMetrics metrics, AdmissionControl admissionControl,
+                                RasterPool rasterPool) {
         this.imageProcessingService = imageProcessingService;
         this.s3Service = s3Service;
+        this.metadataProbe = metadataProbe;
+        this.imageDecoder = imageDecoder;
+        this.imageCache = imageCache;
+        this.objectMapper = objectMapper;
+        this.processingExecutor = processingExecutor;
+        this.tiledImageProcessor = tiledImageProcessor;
+        this.metrics = metrics;
+        this.admissionControl = admissionControl;
+        this.rasterPool = rasterPool;
+    }
+    
+    @PostMapping("/metadata")
+    public ResponseEntity<Map<String, Object>> readMetadata(@RequestParam("file") MultipartFile file) {
+        
+        Map<String, Object> response = new HashMap<>();
+        
+        try {
+            ImageMetadata metadata = probe(file);
+            if (metadata == null) {
+                response.put("success", false);
+                response.put("message", "Invalid image file");
+                return ResponseEntity.badRequest().body(response);
+            }
+            
+            response.put("success", true);
+            response.put("metadata", metadata);
+            response.put("totalPixels", metadata.pixelCount());
+            response.put("decodedBytes", metadata.decodedBytes());
+            response.put("operation", "metadata");
+            
+            return ResponseEntity.ok(response);
+            
+        } catch (Exception e) {
+            response.put("success", false);
+            response.put("message", "Metadata extraction failed: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(response);
+        }
     }
     
     @PostMapping("/resize")
     public ResponseEntity<Map<String, Object>> resizeImage(
             @RequestParam("file") MultipartFile file,
             @RequestParam("width") int width,
-            @RequestParam("height") int height) {
+            @RequestParam("height") int height,
+            @RequestParam(value = "filter", required = false) Resampler.Filter filter) {
         
         Map<String, Object> response = new HashMap<>();
         
         try {
-            BufferedImage originalImage = ImageIO.read(file.getInputStream());
-            if (originalImage == null) {
+            PipelineStep.resize(width, height).validate();
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+        
+        try {
+            // Same bytes resized the same way before: nothing to decode or compute
+            CacheKey key = imageCache.isEnabled()
+                    ? cacheKey(file, "resize", "width=" + width + ";height=" + height
+                            + ";filter=" + (filter != null ? filter : "default") + ";format=jpg")
+                    : null;
+            Optional<CachedImage> cached = imageCache.get(key);
+            if (cached.isPresent()) {
+                response.put("success", true);
+                response.put("message", "Image resized successfully!");
+                response.put("originalSize", cached.get().attributes().get("originalSize"));
+                response.put("newSize", width + "x" + height);
+                response.put("processedAt", LocalDateTime.now().toString());
+                response.put("operation", "resize");
+                response.put("cached", true);
+                return ResponseEntity.ok(response);
+            }
+            
+            // Reject non-images from their headers before paying for a full decode
+            ImageMetadata metadata = probe(file);
+            if (metadata == null) {
                 response.put("success", false);
                 response.put("message", "Invalid image file");
                 return ResponseEntity.badRequest().body(response);
             }
             
-            // Process image
-            BufferedImage resizedImage = imageProcessingService.resizeImage(originalImage, width, height);
-            
-            // Convert to byte array and upload to S3
-            byte[] imageBytes = imageProcessingService.imageToByteArray(resizedImage, "jpg");
+            metrics.bytesIn("resize", file.getSize());
+            byte[] imageBytes;
+            boolean unchanged = width == metadata.width() && height == metadata.height()
+                    && ImageEncoder.canonicalFormat(metadata.formatName()).equals("jpg");
+            if (unchanged) {
+                // Already that size and format: the upload is the result, without a lossy round-trip
+                imageBytes = file.getBytes();
+            } else {
+                long workingSet = imageProcessingService.workingSetBytes(
+                        List.of(PipelineStep.resize(width, height)), metadata);
+                try (AdmissionControl.Permit ignoredPermit = admissionControl.admit("resize", workingSet)) {
+                    imageBytes = processingExecutor.run(() -> {
+                        try (ProcessingMetrics.InFlight ignored = metrics.begin(metadata.decodedBytes())) {
+                            // Subsample while decoding when shrinking; only the pixels the resample needs are materialised
+                            BufferedImage originalImage = metrics.time(ProcessingMetrics.DECODE, "resize", "jpg", metadata,
+                                    () -> decode(file, width, height));
+                            if (originalImage == null) {
+                                return null;
+                            }
+                            
+                            // Process image
+                            BufferedImage resizedImage = metrics.time(ProcessingMetrics.PROCESS, "resize", "jpg", metadata,
+                                    () -> filter != null
+                                            ? imageProcessingService.resizeImage(originalImage, width, height, filter)
+                                            : imageProcessingService.resizeImage(originalImage, width, height));
+                            
+                            // Convert to byte array, then hand both rasters back to the pool
+                            try {
+                                return metrics.time(ProcessingMetrics.ENCODE, "resize", "jpg", metadata,
+                                        () -> imageProcessingService.imageToByteArray(resizedImage, "jpg"));
+                            } finally {
+                                imageProcessingService.recycle(originalImage, resizedImage);
+                            }
+                        }
+                    });
+                }
+            }
+            if (imageBytes == null) {
+                response.put("success", false);
+                response.put("message", "Invalid image file");
+                return ResponseEntity.badRequest().body(response);
+            }
+            metrics.bytesOut("resize", "jpg", imageBytes.length);
+            // The response is JSON only, so the entry keeps what a repeat needs and not the image
+            imageCache.put(key, new CachedImage(new byte[0], MediaType.APPLICATION_JSON_VALUE,
+                    Map.of("originalSize", metadata.width() + "x" + metadata.height())));
             
             // Create mock multipart file for S3 upload
             String processedFileName = "processed_resize_" + UUID.randomUUID().toString() + ".jpg";
             
             response.put("success", true);
             response.put("message", "Image resized successfully!");
-            response.put("originalSize", originalImage.getWidth() + "x" + originalImage.getHeight());
+            response.put("originalSize", metadata.width() + "x" + metadata.height());
             response.put("newSize", width + "x" + height);
             response.put("processedAt", LocalDateTime.now().toString());
             response.put("operation", "resize");
+            response.put("cached", false);
+            response.put("passthrough", unchanged);
             
             return ResponseEntity.ok(response);
             
+        } catch (AdmissionRejectedException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            response.put("retryAfterSeconds", e.getRetryAfterSeconds());
+            return tooBusy(e, response);
+            
+        } catch (ImageTooLargeException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(response);
+            
         } catch (Exception e) {
             response.put("success", false);
             response.put("message", "Processing failed: " + e.getMessage());
@@ -77,20 +255,56 @@ public class ProcessingController {
         Map<String, Object> response = new HashMap<>();
         
         try {
-            BufferedImage originalImage = ImageIO.read(file.getInputStream());
-            if (originalImage == null) {
+            PipelineStep.thumbnail(size).validate();
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+        
+        try {
+            // Reject non-images from their headers before paying for a full decode
+            ImageMetadata metadata = probe(file);
+            if (metadata == null) {
                 response.put("success", false);
                 response.put("message", "Invalid image file");
                 return ResponseEntity.badRequest().body(response);
             }
             
-            // Create thumbnail maintaining aspect ratio
-            BufferedImage thumbnail = imageProcessingService.createThumbnail(originalImage, size);
+            // Decode at reduced resolution: a 200px thumbnail never needs the full-size raster
+            Dimension thumbnailSize = imageProcessingService.thumbnailSize(metadata.width(), metadata.height(), size);
+            metrics.bytesIn("thumbnail", file.getSize());
+            BufferedImage thumbnail;
+            long workingSet = imageProcessingService.workingSetBytes(List.of(PipelineStep.thumbnail(size)), metadata);
+            try (AdmissionControl.Permit ignoredPermit = admissionControl.admit("thumbnail", workingSet)) {
+                thumbnail = processingExecutor.run(() -> {
+                    try (ProcessingMetrics.InFlight ignored = metrics.begin(metadata.decodedBytes())) {
+                        BufferedImage originalImage = metrics.time(ProcessingMetrics.DECODE, "thumbnail", "none",
+                                metadata, () -> decode(file, thumbnailSize.width, thumbnailSize.height));
+                        if (originalImage == null) {
+                            return null;
+                        }
+                        
+                        // Create thumbnail maintaining aspect ratio
+                        BufferedImage resized = metrics.time(ProcessingMetrics.PROCESS, "thumbnail", "none", metadata,
+                                () -> imageProcessingService.resizeImage(
+                                        originalImage, thumbnailSize.width, thumbnailSize.height));
+                        imageProcessingService.recycle(originalImage);
+                        return resized;
+                    }
+                });
+            }
+            if (thumbnail == null) {
+                response.put("success", false);
+                response.put("message", "Invalid image file");
+                return ResponseEntity.badRequest().body(response);
+            }
             
             response.put("success", true);
             response.put("message", "Thumbnail created successfully!");
-            response.put("originalSize", originalImage.getWidth() + "x" + originalImage.getHeight());
+            response.put("originalSize", metadata.width() + "x" + metadata.height());
             response.put("thumbnailSize", thumbnail.getWidth() + "x" + thumbnail.getHeight());
+            imageProcessingService.recycle(thumbnail);
             response.put("maxSize", size);
             response.put("aspectRatioMaintained", true);
             response.put("processedAt", LocalDateTime.now().toString());
@@ -98,6 +312,17 @@ public class ProcessingController {
             
             return ResponseEntity.ok(response);
             
+        } catch (AdmissionRejectedException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            response.put("retryAfterSeconds", e.getRetryAfterSeconds());
+            return tooBusy(e, response);
+            
+        } catch (ImageTooLargeException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(response);
+            
         } catch (Exception e) {
             response.put("success", false);
             response.put("message", "Thumbnail creation failed: " + e.getMessage());
@@ -106,122 +331,725 @@ public class ProcessingController {
     }
     
     @PostMapping("/filter/blur")
-    public ResponseEntity<byte[]> applyBlurFilter(
+    public ResponseEntity<StreamingResponseBody> applyBlurFilter(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "intensity", defaultValue = "1.0") float intensity,
+            @RequestParam(value = "format", defaultValue = "auto") String format,
+            @RequestParam(value = "quality", required = false) Float quality,
+            @RequestParam(value = "preset", required = false) EncodeOptions.Preset preset,
+            @RequestHeader HttpHeaders requestHeaders) {
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Processing-Operation", "blur");
+        headers.set("X-Blur-Intensity", String.valueOf(intensity));
+        
+        return filterResponse(requestHeaders, file, "blur", "intensity=" + intensity,
+                encoding(format, quality, preset), headers,
+                List.of(PipelineStep.blur(intensity)),
+                image -> imageProcessingService.applyBlur(image, intensity));
+    }
+    
+    @PostMapping("/filter/sharpen")
+    public ResponseEntity<StreamingResponseBody> applySharpenFilter(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "intensity", defaultValue = "1.0") float intensity) {
+            @RequestParam(value = "format", defaultValue = "auto") String format,
+            @RequestParam(value = "quality", required = false) Float quality,
+            @RequestParam(value = "preset", required = false) EncodeOptions.Preset preset,
+            @RequestHeader HttpHeaders requestHeaders) {
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Processing-Operation", "sharpen");
         
+        return filterResponse(requestHeaders, file, "sharpen", "", encoding(format, quality, preset), headers,
+                List.of(PipelineStep.of(PipelineStep.Operation.SHARPEN)), imageProcessingService::applySharpen);
+    }
+    
+    @PostMapping("/filter/edges")
+    public ResponseEntity<StreamingResponseBody> detectEdges(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "operator", required = false) String operator,
+            @RequestParam(value = "output", required = false) String output,
+            @RequestParam(value = "low", required = false) Float low,
+            @RequestParam(value = "high", required = false) Float high,
+            @RequestParam(value = "sigma", required = false) Float sigma,
+            @RequestParam(value = "format", defaultValue = "auto") String format,
+            @RequestParam(value = "quality", required = false) Float quality,
+            @RequestParam(value = "preset", required = false) EncodeOptions.Preset preset,
+            @RequestHeader HttpHeaders requestHeaders) {
+        
+        EdgeOptions options;
         try {
-            BufferedImage originalImage = ImageIO.read(file.getInputStream());
-            if (originalImage == null) {
-                return ResponseEntity.badRequest().build();
-            }
-            
-            // Apply blur filter
-            BufferedImage blurredImage = imageProcessingService.applyBlur(originalImage, intensity);
-            
-            // Convert to byte array and return as image
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(blurredImage, "jpg", baos);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.IMAGE_JPEG);
-            headers.set("X-Processing-Operation", "blur");
-            headers.set("X-Blur-Intensity", String.valueOf(intensity));
-            
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(baos.toByteArray());
-                    
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
+            options = EdgeOptions.of(operator, output, low, high, sigma);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        String algorithm = options.operator().name().toLowerCase(Locale.ROOT);
+        if (options.output() == EdgeOptions.Output.CANNY) {
+            algorithm = "canny(" + algorithm + ")";
         }
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Processing-Operation", "edge-detection");
+        headers.set("X-CV-Algorithm", algorithm);
+        
+        return filterResponse(requestHeaders, file, "edges", options.describe(), encoding(format, quality, preset),
+                headers, List.of(PipelineStep.edges(options)),
+                image -> imageProcessingService.detectEdges(image, options));
     }
     
-    @PostMapping("/filter/sharpen")
-    public ResponseEntity<byte[]> applySharpenFilter(@RequestParam("file") MultipartFile file) {
+    @PostMapping("/filter/grayscale")
+    public ResponseEntity<StreamingResponseBody> convertToGrayscale(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "format", defaultValue = "auto") String format,
+            @RequestParam(value = "quality", required = false) Float quality,
+            @RequestParam(value = "preset", required = false) EncodeOptions.Preset preset,
+            @RequestHeader HttpHeaders requestHeaders) {
         
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Processing-Operation", "grayscale");
+        
+        return filterResponse(requestHeaders, file, "grayscale", "", encoding(format, quality, preset), headers,
+                List.of(PipelineStep.of(PipelineStep.Operation.GRAYSCALE)), imageProcessingService::convertToGrayscale);
+    }
+    
+    /**
+     * Run an ordered list of operations, e.g.
+     * {@code [{"op":"resize","width":800,"height":600},{"op":"sharpen"},{"op":"grayscale"}]},
+     * with a single decode and a single encode instead of one round-trip per operation.
+     */
+    @PostMapping("/pipeline")
+    public ResponseEntity<StreamingResponseBody> runPipeline(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam("operations") String operations,
+            @RequestParam(value = "format", defaultValue = "auto") String format,
+            @RequestParam(value = "quality", required = false) Float quality,
+            @RequestParam(value = "preset", required = false) EncodeOptions.Preset preset,
+            @RequestHeader HttpHeaders requestHeaders) {
+        
+        List<PipelineStep> steps;
         try {
-            BufferedImage originalImage = ImageIO.read(file.getInputStream());
-            if (originalImage == null) {
-                return ResponseEntity.badRequest().build();
-            }
-            
-            // Apply sharpen filter
-            BufferedImage sharpenedImage = imageProcessingService.applySharpen(originalImage);
-            
-            // Convert to byte array and return as image
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(sharpenedImage, "jpg", baos);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.IMAGE_JPEG);
-            headers.set("X-Processing-Operation", "sharpen");
-            
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(baos.toByteArray());
-                    
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
+            steps = objectMapper.readValue(operations, new TypeReference<List<PipelineStep>>() {});
+            imageProcessingService.validatePipeline(steps);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         }
+        
+        String description = steps.stream().map(PipelineStep::describe).collect(Collectors.joining(">"));
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Processing-Operation", "pipeline");
+        headers.set("X-Pipeline", description);
+        
+        return filterResponse(requestHeaders, file, "pipeline", description, encoding(format, quality, preset),
+                headers, steps,
+                metadata -> imageProcessingService.pipelineDecodeSize(steps, metadata.width(), metadata.height()),
+                null);
     }
     
-    @PostMapping("/filter/edges")
-    public ResponseEntity<byte[]> detectEdges(@RequestParam("file") MultipartFile file) {
+    /**
+     * Rotate by a multiple of 90 degrees, flip and crop, e.g. {@code rotate=90&crop=0,0,800,600}.
+     * The EXIF orientation is applied first unless orient=false; then the crop, which is in
+     * upright coordinates, the rotation and the flip. JPEGs are transformed losslessly when
+     * the crop and flips fall on whole 8x8 or 16x16 blocks.
+     */
+    @PostMapping("/transform")
+    public ResponseEntity<StreamingResponseBody> transform(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "rotate", defaultValue = "0") int rotate,
+            @RequestParam(value = "flip", required = false) String flip,
+            @RequestParam(value = "crop", required = false) String crop,
+            @RequestParam(value = "orient", defaultValue = "true") boolean orient,
+            @RequestParam(value = "format", defaultValue = "auto") String format,
+            @RequestParam(value = "quality", required = false) Float quality,
+            @RequestParam(value = "preset", required = false) EncodeOptions.Preset preset,
+            @RequestHeader HttpHeaders requestHeaders) {
         
+        List<PipelineStep> steps = new ArrayList<>();
         try {
-            BufferedImage originalImage = ImageIO.read(file.getInputStream());
-            if (originalImage == null) {
+            if (orient) {
+                steps.add(PipelineStep.of(PipelineStep.Operation.ORIENT));
+            }
+            if (crop != null) {
+                steps.add(cropStep(crop));
+            }
+            if (rotate % 360 != 0) {
+                steps.add(PipelineStep.rotate(rotate));
+            }
+            if (flip != null) {
+                steps.add(PipelineStep.flip(flip));
+            }
+            imageProcessingService.validatePipeline(steps);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        
+        String description = steps.stream().map(PipelineStep::describe).collect(Collectors.joining(">"));
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Processing-Operation", "transform");
+        headers.set("X-Pipeline", description);
+        
+        return filterResponse(requestHeaders, file, "transform", description, encoding(format, quality, preset),
+                headers, steps, null);
+    }
+    
+    /**
+     * Shared path for the filter endpoints.
+     *
+     * Every response carries an ETag derived from the input bytes and the parameters, so a
+     * repeat request with a matching If-None-Match gets a 304 before anything is decoded.
+     * Cached results, and results for requests with a Range header, are written from memory
+     * and honour a single byte range with 206. Otherwise the image is decoded, filtered and
+     * encoded on the processing threads into a pooled buffer, and only copying that buffer to
+     * the client happens on the response thread. Images too large to decode whole run
+     * {@code steps} strip by strip into a temporary file, which is then sent the same way.
+     *
+     * With format=auto the output format follows the Accept header and the source (see
+     * {@link Encoding#resolve}); the response then varies on Accept, and the ETag covers
+     * which choice was made.
+     *
+     * Steps that only move pixels skip the decode when the output keeps the source's format
+     * and default encoder settings: a no-op is answered with the upload itself, and a JPEG
+     * rotated, flipped or cropped on block boundaries with its DCT coefficients rearranged
+     * (see {@link ImageProcessingService#rearrangeJpeg}), without generation loss.
+     */
+    private ResponseEntity<StreamingResponseBody> filterResponse(HttpHeaders request, MultipartFile file,
+                                                                 String operation, String parameters,
+                                                                 Encoding encoding, HttpHeaders headers,
+                                                                 List<PipelineStep> steps,
+                                                                 UnaryOperator<BufferedImage> filter) {
+        return filterResponse(request, file, operation, parameters, encoding, headers, steps, metadata -> null, filter);
+    }
+    
+    /**
+     * @param encoding   requested output; null when the request's format, quality or preset is invalid
+     * @param steps      the same operation as a pipeline, for tiled processing
+     * @param decodeSize size the image may be decoded at, from its metadata; null for full resolution
+     * @param filter     the operation on the decoded image; null to run {@code steps} as a pipeline
+     */
+    private ResponseEntity<StreamingResponseBody> filterResponse(HttpHeaders request, MultipartFile file,
+                                                                 String operation, String parameters,
+                                                                 Encoding encoding, HttpHeaders headers,
+                                                                 List<PipelineStep> steps,
+                                                                 Function<ImageMetadata, Dimension> decodeSize,
+                                                                 UnaryOperator<BufferedImage> filter) {
+        if (encoding == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            boolean acceptsWebp = encoding.isAuto() && acceptsWebp(request);
+            CacheKey key = cacheKey(file, operation, parameters + ";" + encoding.key(acceptsWebp));
+            if (encoding.isAuto()) {
+                headers.setVary(List.of(HttpHeaders.ACCEPT));
+            }
+            headers.setETag(key.etag());
+            if (matchesIfNoneMatch(request, key.etag())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .headers(headers)
+                        .build();
+            }
+            
+            Optional<CachedImage> cached = imageCache.get(key);
+            if (cached.isPresent()) {
+                headers.setContentType(MediaType.parseMediaType(cached.get().contentType()));
+                headers.set("X-Cache", "HIT");
+                return bytesResponse(request, headers, cached.get().data());
+            }
+            
+            ImageMetadata metadata = probe(file);
+            if (metadata == null) {
                 return ResponseEntity.badRequest().build();
             }
             
-            // Apply edge detection (showcasing your CV background!)
-            BufferedImage edgeImage = imageProcessingService.detectEdges(originalImage);
+            String format = encoding.resolve(acceptsWebp, metadata.hasAlpha());
+            EncodeOptions options = encoding.options();
+            MediaType contentType = MediaType.parseMediaType(ImageEncoder.contentType(format));
+            headers.setContentType(contentType);
+            metrics.bytesIn(operation, file.getSize());
             
-            // Convert to byte array and return as image
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(edgeImage, "jpg", baos);
+            Rearrangement moves = imageProcessingService.rearrangement(steps, metadata);
+            if (moves != null && format.equals(ImageEncoder.canonicalFormat(metadata.formatName()))
+                    && options.equals(imageProcessingService.defaultEncodeOptions())) {
+                // Nothing to do: not cached, the upload is already in memory
+                if (moves.isIdentity() && metadata.orientation() == 1) {
+                    headers.set("X-Cache", "BYPASS");
+                    headers.set("X-Processing-Mode", "passthrough");
+                    byte[] imageBytes = file.getBytes();
+                    metrics.bytesOut(operation, format, imageBytes.length);
+                    return bytesResponse(request, headers, imageBytes);
+                }
+                if (format.equals("jpg")) {
+                    byte[] imageBytes;
+                    try (AdmissionControl.Permit ignoredPermit = admissionControl.admit(operation,
+                            imageProcessingService.workingSetBytes(steps, metadata))) {
+                        byte[] data = file.getBytes();
+                        imageBytes = processingExecutor.run(() -> metrics.time(ProcessingMetrics.PROCESS, operation,
+                                format, metadata, () -> imageProcessingService.rearrangeJpeg(data, steps, metadata)));
+                    }
+                    // Null: not on block boundaries, or a JPEG variant only the decoder handles
+                    if (imageBytes != null) {
+                        headers.set("X-Cache", imageCache.isEnabled() ? "MISS" : "BYPASS");
+                        headers.set("X-Processing-Mode", "lossless");
+                        metrics.bytesOut(operation, format, imageBytes.length);
+                        imageCache.put(key, new CachedImage(imageBytes, contentType.toString(), Map.of()));
+                        return bytesResponse(request, headers, imageBytes);
+                    }
+                }
+            }
             
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.IMAGE_JPEG);
-            headers.set("X-Processing-Operation", "edge-detection");
-            headers.set("X-CV-Algorithm", "sobel-like");
+            // Full decode would not fit comfortably: run strips through the encoder into a file instead.
+            // The result is not cached, it would crowd out many smaller entries.
+            if (tiledImageProcessor.shouldTile(metadata, steps)) {
+                headers.set("X-Cache", "BYPASS");
+                headers.set("X-Processing-Mode", "tiled");
+                Path result = tiled(file, operation, format, options, metadata, steps);
+                try {
+                    headers.setContentLength(Files.size(result));
+                    return ResponseEntity.ok()
+                            .headers(headers)
+                            .body(fileBody(result));
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(result);
+                    throw e;
+                }
+            }
             
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(baos.toByteArray());
+            Dimension size = decodeSize.apply(metadata);
+            // Waits here, on the request thread, so queued requests do not hold processing threads
+            PendingEncode pending = new PendingEncode(
+                    admissionControl.admit(operation, imageProcessingService.workingSetBytes(steps, metadata)),
+                    metrics.begin(metadata.decodedBytes()));
+            boolean streaming = false;
+            try {
+                Processed processed = processingExecutor.run(() -> {
+                    BufferedImage originalImage = metrics.time(ProcessingMetrics.DECODE, operation, format, metadata,
+                            () -> size != null
+                                    ? decode(file, size.width, size.height)
+                                    : decode(file, 0, 0));
+                    if (originalImage == null) {
+                        return null;
+                    }
+                    try {
+                        BufferedImage result = metrics.time(ProcessingMetrics.PROCESS, operation, format, metadata,
+                                () -> filter != null
+                                        ? filter.apply(originalImage)
+                                        : imageProcessingService.runPipeline(originalImage, steps,
+                                                metadata.orientation()));
+                        return new Processed(originalImage, result);
+                    } catch (IOException | RuntimeException e) {
+                        imageProcessingService.recycle(originalImage);
+                        throw e;
+                    }
+                });
+                if (processed == null) {
+                    return ResponseEntity.badRequest().build();
+                }
+                pending.images.set(processed);
+                headers.set("X-Cache", imageCache.isEnabled() ? "MISS" : "BYPASS");
+                
+                // A range needs the whole encoded result to slice from
+                if (request.containsKey(HttpHeaders.RANGE)) {
+                    byte[] imageBytes = pending.encode(image -> metrics.time(ProcessingMetrics.ENCODE, operation,
+                            format, metadata, () -> imageProcessingService.imageToByteArray(image, format, options)));
+                    metrics.bytesOut(operation, format, imageBytes.length);
+                    imageCache.put(key, new CachedImage(imageBytes, contentType.toString(), Map.of()));
+                    return bytesResponse(request, headers, imageBytes);
+                }
+                
+                // Otherwise the encoder writes straight into the response, chunked. Ranges are
+                // honoured on a retry, which hits the cache or the branch above.
+                headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+                StreamingResponseBody body = encodedBody(pending, key, operation, format, options, metadata,
+                        file.getSize(), contentType);
+                streaming = true;
+                return ResponseEntity.ok()
+                        .headers(headers)
+                        .body(body);
+            } finally {
+                if (!streaming) {
+                    pending.close();
+                }
+            }
                     
+        } catch (AdmissionRejectedException e) {
+            return tooBusy(e, null);
+        } catch (ImageTooLargeException e) {
+            // Needs more memory than the whole budget, and cannot run in strips
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (IllegalArgumentException e) {
+            // A crop that misses the image, which only its dimensions can tell
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
     }
     
-    @PostMapping("/filter/grayscale")
-    public ResponseEntity<byte[]> convertToGrayscale(@RequestParam("file") MultipartFile file) {
-        
-        try {
-            BufferedImage originalImage = ImageIO.read(file.getInputStream());
-            if (originalImage == null) {
-                return ResponseEntity.badRequest().build();
+    /**
+     * Run {@code steps} strip by strip into a temporary file, on the processing threads and
+     * within admission for the strip buffers. Region reads need to seek, so the upload is
+     * spooled to a temporary file first.
+     *
+     * @return the encoded result, for the caller to send and delete
+     */
+    private Path tiled(MultipartFile file, String operation, String format, EncodeOptions options,
+                       ImageMetadata metadata, List<PipelineStep> steps) throws IOException {
+        Path input = Files.createTempFile("tiled-", ".upload");
+        Path output = null;
+        try (AdmissionControl.Permit ignoredPermit = admissionControl.admit(operation,
+                tiledImageProcessor.stripBytes())) {
+            file.transferTo(input);
+            output = Files.createTempFile("tiled-", ".result");
+            Path result = output;
+            processingExecutor.run(() -> {
+                try (OutputStream out = Files.newOutputStream(result);
+                     ProcessingMetrics.InFlight ignored = metrics.begin(tiledImageProcessor.stripBytes())) {
+                    return metrics.time(ProcessingMetrics.TILED, operation, format, metadata, () -> {
+                        tiledImageProcessor.process(input, steps, format, options, out);
+                        return null;
+                    });
+                }
+            });
+            metrics.bytesOut(operation, format, Files.size(output));
+            return output;
+        } catch (IOException | RuntimeException e) {
+            if (output != null) {
+                Files.deleteIfExists(output);
             }
-            
-            // Convert to grayscale
-            BufferedImage grayscaleImage = imageProcessingService.convertToGrayscale(originalImage);
-            
-            // Convert to byte array and return as image
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ImageIO.write(grayscaleImage, "jpg", baos);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.IMAGE_JPEG);
-            headers.set("X-Processing-Operation", "grayscale");
-            
+            throw e;
+        } finally {
+            Files.deleteIfExists(input);
+        }
+    }
+    
+    /**
+     * Response body encoding a processed image straight into the response. The encode runs on
+     * the processing threads and keeps the admission permit until the last byte is written, as
+     * the rasters it reads stay live that long. When the cache is on, the output is also copied
+     * into a pooled buffer, which becomes the cache entry once the response is complete.
+     */
+    private StreamingResponseBody encodedBody(PendingEncode pending, CacheKey key, String operation,
+                                              String format, EncodeOptions options, ImageMetadata metadata,
+                                              long inputSize, MediaType contentType) {
+        // The body may never run: a request that times out or fails before its async task starts
+        // would otherwise keep the permit
+        WebAsyncUtils.getAsyncManager(((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes())
+                .getRequest()).registerCallableInterceptor(pending, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest request, Callable<T> task) {
+                if (pending.claim()) {
+                    pending.close();
+                }
+            }
+        });
+        return output -> {
+            if (!pending.claim()) {
+                return;
+            }
+            try (pending;
+                 PooledOutputStream copy = imageCache.isEnabled()
+                         ? new PooledOutputStream(rasterPool, (int) Math.min(inputSize, Integer.MAX_VALUE - 8))
+                         : null) {
+                ResponseOutputStream response = new ResponseOutputStream(output, copy);
+                pending.encode(image -> metrics.time(ProcessingMetrics.ENCODE, operation, format, metadata, () -> {
+                    imageProcessingService.writeImage(image, format, options, response);
+                    return null;
+                }));
+                metrics.bytesOut(operation, format, response.count());
+                if (copy != null) {
+                    // The entry's own exact-length array, made after the response is complete
+                    imageCache.put(key, new CachedImage(copy.toByteArray(), contentType.toString(), Map.of()));
+                }
+            }
+        };
+    }
+    
+    /**
+     * Response body copying a temporary file to the client and then deleting it
+     */
+    private static StreamingResponseBody fileBody(Path file) {
+        return output -> {
+            try {
+                Files.copy(file, output);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        };
+    }
+    
+    /**
+     * 429 for a request shed by admission control, with the time its backlog should take to clear
+     */
+    private static <T> ResponseEntity<T> tooBusy(AdmissionRejectedException e, T body) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(body);
+    }
+    
+    /**
+     * Write an encoded result, or the one byte range the request asks for. Multiple ranges
+     * are answered with the whole body, as RFC 9110 allows.
+     */
+    private static ResponseEntity<StreamingResponseBody> bytesResponse(HttpHeaders request, HttpHeaders headers,
+                                                                       byte[] data) {
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        List<HttpRange> ranges;
+        try {
+            ranges = request.getRange();
+        } catch (IllegalArgumentException e) {
+            // A malformed Range header is ignored
+            ranges = List.of();
+        }
+        if (ranges.size() != 1) {
+            headers.setContentLength(data.length);
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(baos.toByteArray());
-                    
-        } catch (Exception e) {
-            return ResponseEntity.internalServerError().build();
+                    .body(output -> output.write(data));
+        }
+        
+        long start;
+        long end;
+        try {
+            start = ranges.get(0).getRangeStart(data.length);
+            end = ranges.get(0).getRangeEnd(data.length);
+        } catch (IllegalArgumentException e) {
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + data.length);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .headers(headers)
+                    .build();
+        }
+        int offset = (int) start;
+        int length = (int) (end - start + 1);
+        headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + data.length);
+        headers.setContentLength(length);
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .headers(headers)
+                .body(output -> output.write(data, offset, length));
+    }
+    
+    /**
+     * Output settings from a request's format, quality and preset parameters; null when one
+     * of them is invalid
+     */
+    private Encoding encoding(String format, Float quality, EncodeOptions.Preset preset) {
+        String name = ImageEncoder.canonicalFormat(format);
+        if (!name.equals(Encoding.AUTO) && !ImageEncoder.isSupported(name)) {
+            return null;
+        }
+        EncodeOptions options = preset != null ? preset.options() : imageProcessingService.defaultEncodeOptions();
+        try {
+            return new Encoding(name, options.withQuality(quality));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Whether the client names image/webp in Accept; wildcards do not count, browsers send
+     * image/* without being able to decode WebP
+     */
+    private static boolean acceptsWebp(HttpHeaders request) {
+        if (!ImageEncoder.isWebpAvailable()) {
+            return false;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = request.getAccept();
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        for (MediaType type : accepted) {
+            if (type.getType().equals("image") && type.getSubtype().equals("webp") && type.getQualityValue() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Weak comparison, as RFC 9110 specifies for If-None-Match
+     */
+    private static boolean matchesIfNoneMatch(HttpHeaders request, String etag) {
+        for (String candidate : request.getIfNoneMatch()) {
+            String tag = candidate.startsWith("W/") ? candidate.substring(2) : candidate;
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private CacheKey cacheKey(MultipartFile file, String operation, String parameters) throws IOException {
+        // Computed even with the cache disabled: the key is also the response's ETag
+        try (InputStream input = file.getInputStream()) {
+            return CacheKey.of(CacheKey.sha256(input), operation, parameters);
+        }
+    }
+    
+    /**
+     * A crop from "x,y,width,height"
+     */
+    private static PipelineStep cropStep(String crop) {
+        String[] parts = crop.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Crop must be x,y,width,height");
+        }
+        // NumberFormatException is an IllegalArgumentException too
+        int[] values = new int[4];
+        for (int i = 0; i < 4; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return PipelineStep.crop(values[0], values[1], values[2], values[3]);
+    }
+    
+    private BufferedImage decode(MultipartFile file, int targetWidth, int targetHeight) throws IOException {
+        try (InputStream input = file.getInputStream()) {
+            return imageDecoder.decode(input, targetWidth, targetHeight);
+        }
+    }
+    
+    private ImageMetadata probe(MultipartFile file) throws IOException {
+        try (InputStream input = file.getInputStream()) {
+            return metadataProbe.probe(input);
+        }
+    }
+    
+    /**
+     * Requested output: a format, or "auto" to pick one per request
+     */
+    private record Encoding(String format, EncodeOptions options) {
+        
+        static final String AUTO = "auto";
+        
+        boolean isAuto() {
+            return format.equals(AUTO);
+        }
+        
+        /**
+         * WebP when the client accepts it, else PNG for sources with transparency, which
+         * JPEG would flatten, else JPEG
+         */
+        String resolve(boolean acceptsWebp, boolean hasAlpha) {
+            if (!isAuto()) {
+                return format;
+            }
+            return acceptsWebp ? "webp" : hasAlpha ? "png" : "jpg";
+        }
+        
+        /**
+         * Cache key part: the format, or every format auto may pick, with the settings each uses
+         */
+        String key(boolean acceptsWebp) {
+            if (!isAuto()) {
+                return "format=" + format + ";" + options.describe(format);
+            }
+            if (acceptsWebp) {
+                return "format=auto-webp;" + options.describe("webp");
+            }
+            return "format=auto;" + options.describe("jpg") + ";" + options.describe("png");
+        }
+    }
+    
+    /**
+     * Encoding of a processed image that may fail with an I/O error
+     */
+    @FunctionalInterface
+    private interface Encode<T> {
+        T encode(BufferedImage image) throws IOException;
+    }
+    
+    /**
+     * Decoded source and processed result, both from the raster pool
+     */
+    private record Processed(BufferedImage original, BufferedImage result) {
+    }
+    
+    /**
+     * A processed image waiting to be encoded, with the admission permit and in-flight gauge
+     * that cover its rasters. Either the response body or the async request's completion
+     * claims it, never both, and closing it releases everything the encode has not taken.
+     */
+    private final class PendingEncode implements AutoCloseable {
+        
+        private final AdmissionControl.Permit permit;
+        private final ProcessingMetrics.InFlight inFlight;
+        private final AtomicReference<Processed> images = new AtomicReference<>();
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        
+        PendingEncode(AdmissionControl.Permit permit, ProcessingMetrics.InFlight inFlight) {
+            this.permit = permit;
+            this.inFlight = inFlight;
+        }
+        
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+        
+        /**
+         * Encode the result on the processing threads, which recycle the rasters when done. A
+         * caller interrupted while waiting leaves that to the encode, still running or not.
+         */
+        <T> T encode(Encode<T> work) throws IOException {
+            return processingExecutor.run(() -> {
+                Processed processed = images.getAndSet(null);
+                if (processed == null) {
+                    throw new IllegalStateException("Already encoded");
+                }
+                try {
+                    return work.encode(processed.result());
+                } finally {
+                    imageProcessingService.recycle(processed.original(), processed.result());
+                }
+            });
+        }
+        
+        @Override
+        public void close() {
+            Processed processed = images.getAndSet(null);
+            if (processed != null) {
+                imageProcessingService.recycle(processed.original(), processed.result());
+            }
+            inFlight.close();
+            permit.close();
+        }
+    }
+    
+    /**
+     * Writes to the response, counting, and to a copy for the cache when there is one
+     */
+    private static final class ResponseOutputStream extends OutputStream {
+        
+        private final OutputStream response;
+        private final OutputStream copy;
+        private long count;
+        
+        ResponseOutputStream(OutputStream response, OutputStream copy) {
+            this.response = response;
+            this.copy = copy;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            response.write(b);
+            if (copy != null) {
+                copy.write(b);
+            }
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            response.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+            }
+            count += len;
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            response.flush();
+        }
+        
+        long count() {
+            return count;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package com.mahesh.adobe.upload.controller;
+
+import com.mahesh.adobe.upload.model.TilePyramid;
+import com.mahesh.adobe.upload.service.AdmissionRejectedException;
+import com.mahesh.adobe.upload.service.ImageTooLargeException;
+import com.mahesh.adobe.upload.service.TileService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.file.NoSuchFileException;
+import java.time.Duration;
+import java.util.regex.Pattern;
+
+/**
+ * Deep Zoom (DZI) pyramids of uploaded images, for pan-and-zoom viewers such as
+ * OpenSeadragon or the one on the upload page. An image uploaded as
+ * {@code images/<id>} is described at {@code /api/v1/tiles/<id>.dzi}, and its tiles are
+ * at {@code /api/v1/tiles/<id>_files/<level>/<column>_<row>.<format>}, where the viewer
+ * looks for them. Tiles are generated on first request and read from storage afterwards.
+ *
+ * Stored images never change under their key, so the descriptor and the tiles are sent
+ * as immutable.
+ */
+@RestController
+@RequestMapping("/api/v1/tiles")
+public class TileController {
+    
+    /** File name of an upload under images/: the UUID and the original extension */
+    private static final Pattern IMAGE_ID = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]*");
+    
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+    
+    private final TileService tileService;
+    
+    public TileController(TileService tileService) {
+        this.tileService = tileService;
+    }
+    
+    @GetMapping("/{id}.dzi")
+    public ResponseEntity<String> getDescriptor(@PathVariable("id") String id) {
+        if (!IMAGE_ID.matcher(id).matches()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            TilePyramid pyramid = tileService.pyramid("images/" + id);
+            if (pyramid == null) {
+                return ResponseEntity.badRequest().body("Not a readable image");
+            }
+            return ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_XML)
+                    .cacheControl(IMMUTABLE)
+                    .body(pyramid.toDzi());
+            
+        } catch (NoSuchFileException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
+    @GetMapping("/{id}_files/{level:\\d+}/{column:\\d+}_{row:\\d+}.{format:[a-z]+}")
+    public ResponseEntity<byte[]> getTile(@PathVariable("id") String id, @PathVariable("level") int level,
+                                          @PathVariable("column") int column, @PathVariable("row") int row,
+                                          @PathVariable("format") String format) {
+        if (!IMAGE_ID.matcher(id).matches()) {
+            return ResponseEntity.notFound().build();
+        }
+        String key = "images/" + id;
+        try {
+            TilePyramid pyramid = tileService.pyramid(key);
+            if (pyramid == null) {
+                return ResponseEntity.badRequest().build();
+            }
+            if (!pyramid.format().equals(format)) {
+                return ResponseEntity.notFound().build();
+            }
+            byte[] tile = tileService.tile(key, level, column, row);
+            return ResponseEntity.ok()
+                    .contentType(format.equals("png") ? MediaType.IMAGE_PNG : MediaType.IMAGE_JPEG)
+                    .cacheControl(IMMUTABLE)
+                    .body(tile);
+            
+        } catch (NoSuchFileException | IllegalArgumentException e) {
+            // No such image, or no such tile in its pyramid
+            return ResponseEntity.notFound().build();
+        } catch (AdmissionRejectedException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .build();
+        } catch (ImageTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+}
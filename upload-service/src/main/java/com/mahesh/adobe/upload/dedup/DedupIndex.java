@@ -0,0 +1,334 @@
+package com.mahesh.adobe.upload.dedup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * In-memory index from {@link Fingerprint}s to the storage keys they were first stored under.
+ *
+ * Entries live in primitive arrays, so millions of them cost under a hundred bytes each
+ * plus the key strings. Exact lookups go through an open-addressing table over the SHA-256.
+ * Near lookups use multi-index hashing: the 64-bit perceptual hash is cut into four 16-bit
+ * segments, each with its own bucket table. Two hashes within distance d agree within
+ * d / 4 bits on at least one segment, so only the buckets of segment values that close
+ * are scanned. Buckets hold the full hashes contiguously, so each candidate costs one
+ * XOR and popcount on memory already in cache, not a random read.
+ *
+ * With a file, every added entry is appended to it and the file is replayed on startup.
+ * A record torn by a crash is cut off.
+ */
+public class DedupIndex implements Closeable {
+    
+    private static final Logger log = LoggerFactory.getLogger(DedupIndex.class);
+    
+    private static final int SEGMENTS = 4;
+    private static final int SEGMENT_BITS = 64 / SEGMENTS;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+    private static final int DIGEST_WORDS = 4;
+    private static final int NONE = -1;
+    
+    /**
+     * A stored upload found for a fingerprint
+     *
+     * @param key      storage key it was first stored under
+     * @param exact    same bytes; otherwise a perceptual match
+     * @param distance Hamming distance between the perceptual hashes, 0 for exact matches
+     */
+    public record Match(String key, boolean exact, int distance) {
+    }
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private DataOutputStream journal;
+    
+    private int count;
+    private long[] digests = new long[1024 * DIGEST_WORDS];
+    private String[] keys = new String[1024];
+    /** Open-addressing table of entry numbers, by SHA-256 */
+    private int[] slots = filled(2048);
+    /** Per segment and segment value: the perceptual hashes in that bucket, and their entries */
+    private final long[][][] bucketHashes = new long[SEGMENTS][1 << SEGMENT_BITS][];
+    private final int[][][] bucketEntries = new int[SEGMENTS][1 << SEGMENT_BITS][];
+    private final int[][] bucketSizes = new int[SEGMENTS][1 << SEGMENT_BITS];
+    
+    /**
+     * @param file append-only log to load and extend, or null to keep the index in memory only
+     */
+    public DedupIndex(Path file) throws IOException {
+        if (file != null) {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            load(file);
+            journal = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        }
+    }
+    
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * The entry with the same SHA-256 if there is one, else the perceptual match closest to
+     * the fingerprint within {@code maxDistance} bits (negative: exact matches only)
+     */
+    public Optional<Match> find(Fingerprint fingerprint, int maxDistance) {
+        long[] digest = digest(fingerprint.sha256());
+        lock.readLock().lock();
+        try {
+            int exact = findExact(digest);
+            if (exact != NONE) {
+                return Optional.of(new Match(keys[exact], true, 0));
+            }
+            Long hash = fingerprint.perceptualHash();
+            if (hash == null || maxDistance < 0) {
+                return Optional.empty();
+            }
+            long target = hash;
+            int[] best = {NONE, maxDistance + 1};
+            // Pigeonhole: some segment differs in at most maxDistance / SEGMENTS bits
+            int radius = maxDistance / SEGMENTS;
+            for (int s = 0; s < SEGMENTS; s++) {
+                long[][] hashes = bucketHashes[s];
+                int[][] entries = bucketEntries[s];
+                int[] sizes = bucketSizes[s];
+                forEachNeighbour(segment(target, s), radius, 0, value -> {
+                    long[] bucket = hashes[value];
+                    for (int i = 0; i < sizes[value]; i++) {
+                        int distance = PerceptualHash.distance(bucket[i], target);
+                        // Ties go to the oldest entry, the one first stored
+                        if (distance < best[1] || distance == best[1] && entries[value][i] < best[0]) {
+                            best[0] = entries[value][i];
+                            best[1] = distance;
+                        }
+                    }
+                });
+            }
+            return best[0] == NONE ? Optional.empty() : Optional.of(new Match(keys[best[0]], false, best[1]));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Remember where a fingerprint is stored. An entry with the same SHA-256 already present
+     * is kept and false returned.
+     */
+    public boolean add(Fingerprint fingerprint, String key) throws IOException {
+        long[] digest = digest(fingerprint.sha256());
+        lock.writeLock().lock();
+        try {
+            if (findExact(digest) != NONE) {
+                return false;
+            }
+            if (journal != null) {
+                write(journal, digest, fingerprint.perceptualHash(), key);
+                journal.flush();
+            }
+            insert(digest, fingerprint.perceptualHash(), key);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    private void insert(long[] digest, Long hash, String key) {
+        if (count == keys.length) {
+            grow();
+        }
+        int entry = count++;
+        System.arraycopy(digest, 0, digests, entry * DIGEST_WORDS, DIGEST_WORDS);
+        keys[entry] = key;
+        if ((long) count * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            place(entry);
+        }
+        if (hash != null) {
+            for (int s = 0; s < SEGMENTS; s++) {
+                int segment = segment(hash, s);
+                int size = bucketSizes[s][segment];
+                if (bucketHashes[s][segment] == null || size == bucketHashes[s][segment].length) {
+                    int capacity = Math.max(4, size * 2);
+                    bucketHashes[s][segment] = bucketHashes[s][segment] == null
+                            ? new long[capacity]
+                            : Arrays.copyOf(bucketHashes[s][segment], capacity);
+                    bucketEntries[s][segment] = bucketEntries[s][segment] == null
+                            ? new int[capacity]
+                            : Arrays.copyOf(bucketEntries[s][segment], capacity);
+                }
+                bucketHashes[s][segment][size] = hash;
+                bucketEntries[s][segment][size] = entry;
+                bucketSizes[s][segment] = size + 1;
+            }
+        }
+    }
+    
+    private int findExact(long[] digest) {
+        int mask = slots.length - 1;
+        for (int slot = spread(digest, 0) & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == NONE) {
+                return NONE;
+            }
+            if (Arrays.equals(digests, entry * DIGEST_WORDS, (entry + 1) * DIGEST_WORDS, digest, 0, DIGEST_WORDS)) {
+                return entry;
+            }
+        }
+    }
+    
+    private void place(int entry) {
+        int mask = slots.length - 1;
+        int slot = spread(digests, entry * DIGEST_WORDS) & mask;
+        while (slots[slot] != NONE) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry;
+    }
+    
+    private void rehash(int capacity) {
+        slots = filled(capacity);
+        for (int entry = 0; entry < count; entry++) {
+            place(entry);
+        }
+    }
+    
+    private void grow() {
+        int capacity = keys.length * 2;
+        digests = Arrays.copyOf(digests, capacity * DIGEST_WORDS);
+        keys = Arrays.copyOf(keys, capacity);
+    }
+    
+    private void load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        long valid = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                long[] digest = new long[DIGEST_WORDS];
+                Long hash;
+                String key;
+                try {
+                    for (int i = 0; i < DIGEST_WORDS; i++) {
+                        digest[i] = input.readLong();
+                    }
+                    boolean hasHash = input.readBoolean();
+                    long value = input.readLong();
+                    hash = hasHash ? value : null;
+                    byte[] keyBytes = new byte[input.readUnsignedShort()];
+                    input.readFully(keyBytes);
+                    key = new String(keyBytes, StandardCharsets.UTF_8);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (findExact(digest) == NONE) {
+                    insert(digest, hash, key);
+                }
+                valid += recordSize(key);
+            }
+        }
+        long length = Files.size(file);
+        if (valid < length) {
+            log.warn("Truncating {} torn bytes at the end of dedup index {}", length - valid, file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        log.info("Loaded {} dedup index entries from {}", count, file);
+    }
+    
+    private static void write(DataOutputStream output, long[] digest, Long hash, String key) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Storage key too long for the dedup index");
+        }
+        for (long word : digest) {
+            output.writeLong(word);
+        }
+        output.writeBoolean(hash != null);
+        output.writeLong(hash != null ? hash : 0);
+        output.writeShort(keyBytes.length);
+        output.write(keyBytes);
+    }
+    
+    private static long recordSize(String key) {
+        return DIGEST_WORDS * 8L + 1 + 8 + 2 + key.getBytes(StandardCharsets.UTF_8).length;
+    }
+    
+    /**
+     * Every value within {@code radius} bits of {@code value}, flipping bits from {@code fromBit} up
+     */
+    private static void forEachNeighbour(int value, int radius, int fromBit, IntConsumer action) {
+        action.accept(value);
+        if (radius == 0) {
+            return;
+        }
+        for (int bit = fromBit; bit < SEGMENT_BITS; bit++) {
+            forEachNeighbour(value ^ (1 << bit), radius - 1, bit + 1, action);
+        }
+    }
+    
+    private static int segment(long hash, int s) {
+        return (int) (hash >>> (s * SEGMENT_BITS)) & SEGMENT_MASK;
+    }
+    
+    private static long[] digest(String sha256) {
+        long[] words = new long[DIGEST_WORDS];
+        for (int i = 0; i < DIGEST_WORDS; i++) {
+            words[i] = Long.parseUnsignedLong(sha256, i * 16, (i + 1) * 16, 16);
+        }
+        return words;
+    }
+    
+    private static int spread(long[] words, int offset) {
+        // Mix all four words so the table does not rely on any single one being uniform
+        long hash = 0;
+        for (int i = 0; i < DIGEST_WORDS; i++) {
+            hash = (hash ^ words[offset + i]) * 0x9E3779B97F4A7C15L;
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+    
+    private static int[] filled(int length) {
+        int[] array = new int[length];
+        Arrays.fill(array, NONE);
+        return array;
+    }
+}
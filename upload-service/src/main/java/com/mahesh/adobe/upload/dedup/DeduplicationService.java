@@ -0,0 +1,170 @@
+package com.mahesh.adobe.upload.dedup;
+
+import com.mahesh.adobe.upload.cache.CacheKey;
+import com.mahesh.adobe.upload.imaging.RasterPool;
+import com.mahesh.adobe.upload.service.ImageDecoder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+/**
+ * Upload-time fingerprinting against the {@link DedupIndex}.
+ *
+ * Exact duplicates (same SHA-256) are always reused. Perceptual matches, within
+ * {@code dedup.perceptual.max-distance} bits of dHash, are reported to the caller and only
+ * reused with {@code dedup.perceptual.reuse}: a resized or re-encoded copy is a different
+ * file, and the existing object may not be what the uploader wants served. Lookups are
+ * counted as {@code image.dedup.lookups}, tagged by result.
+ */
+@Service
+public class DeduplicationService {
+    
+    private static final Logger log = LoggerFactory.getLogger(DeduplicationService.class);
+    
+    /** Preview decode target; dHash only needs a 9x8 grid */
+    private static final int PREVIEW_SIZE = 32;
+    
+    private final DedupIndex index;
+    private final ImageDecoder imageDecoder;
+    private final RasterPool rasterPool;
+    private final Counter exactHits;
+    private final Counter similarHits;
+    private final Counter misses;
+    private final Counter bytesSaved;
+    
+    @Value("${dedup.enabled:true}")
+    private boolean enabled;
+    
+    @Value("${dedup.perceptual.enabled:true}")
+    private boolean perceptualEnabled;
+    
+    @Value("${dedup.perceptual.max-distance:4}")
+    private int maxDistance;
+    
+    @Value("${dedup.perceptual.reuse:false}")
+    private boolean reuseSimilar;
+    
+    public DeduplicationService(DedupIndex index, ImageDecoder imageDecoder, RasterPool rasterPool,
+                                MeterRegistry registry) {
+        this.index = index;
+        this.imageDecoder = imageDecoder;
+        this.rasterPool = rasterPool;
+        this.exactHits = lookups(registry, "exact");
+        this.similarHits = lookups(registry, "similar");
+        this.misses = lookups(registry, "miss");
+        this.bytesSaved = Counter.builder("image.dedup.bytes.saved")
+                .description("Upload bytes not stored again because they were already in S3")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("image.dedup.index.size", index, DedupIndex::size)
+                .description("Fingerprints in the deduplication index")
+                .register(registry);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    /**
+     * SHA-256 of the bytes plus, when enabled, the dHash of a preview decoded from them
+     */
+    public Fingerprint fingerprint(byte[] data, int length) {
+        String sha256 = CacheKey.sha256(data, length);
+        Long perceptualHash = null;
+        if (perceptualEnabled) {
+            try (InputStream input = new ByteArrayInputStream(data, 0, length)) {
+                // Subsampled while decoding, so even large images only materialise a small raster
+                BufferedImage preview = imageDecoder.decode(input, PREVIEW_SIZE, PREVIEW_SIZE);
+                if (preview != null) {
+                    perceptualHash = PerceptualHash.dHash(preview);
+                    rasterPool.release(preview);
+                }
+            } catch (IOException | RuntimeException e) {
+                log.debug("No perceptual hash for upload: {}", e.getMessage());
+            }
+        }
+        return new Fingerprint(sha256, perceptualHash);
+    }
+    
+    /**
+     * Wrap an upload body so its SHA-256 is computed while it is read, for bodies too large
+     * to fingerprint before they are stored
+     */
+    public DigestInputStream digesting(InputStream input) {
+        try {
+            return new DigestInputStream(input, MessageDigest.getInstance("SHA-256"));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+    
+    /**
+     * Exact-match fingerprint of everything read through {@link #digesting}
+     */
+    public Fingerprint fingerprint(DigestInputStream input) {
+        return Fingerprint.exact(HexFormat.of().formatHex(input.getMessageDigest().digest()));
+    }
+    
+    /**
+     * The stored upload this fingerprint matches, if any
+     */
+    public Optional<DedupIndex.Match> find(Fingerprint fingerprint) {
+        Optional<DedupIndex.Match> match = index.find(fingerprint, perceptualEnabled ? maxDistance : -1);
+        if (match.isEmpty()) {
+            misses.increment();
+        } else if (match.get().exact()) {
+            exactHits.increment();
+        } else {
+            similarHits.increment();
+        }
+        return match;
+    }
+    
+    /**
+     * Whether a match should be served instead of storing the upload
+     */
+    public boolean isReusable(DedupIndex.Match match) {
+        return match.exact() || reuseSimilar;
+    }
+    
+    /**
+     * Count an upload of {@code size} bytes answered with an existing object
+     */
+    public void reused(long size) {
+        if (size > 0) {
+            bytesSaved.increment(size);
+        }
+    }
+    
+    /**
+     * Index a newly stored upload; failures to persist are logged, the upload itself stands
+     */
+    public void record(Fingerprint fingerprint, String key) {
+        try {
+            index.add(fingerprint, key);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not index upload {}: {}", key, e.getMessage());
+        }
+    }
+    
+    private static Counter lookups(MeterRegistry registry, String result) {
+        return Counter.builder("image.dedup.lookups")
+                .description("Upload fingerprint lookups")
+                .tag("result", result)
+                .register(registry);
+    }
+}
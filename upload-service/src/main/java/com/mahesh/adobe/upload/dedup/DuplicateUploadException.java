@@ -0,0 +1,21 @@
+package com.mahesh.adobe.upload.dedup;
+
+import java.io.IOException;
+
+/**
+ * Thrown from an upload's head inspection when the bytes are already stored, so the
+ * upload stops before anything is sent and the existing object is used instead
+ */
+public class DuplicateUploadException extends IOException {
+    
+    private final DedupIndex.Match match;
+    
+    public DuplicateUploadException(DedupIndex.Match match) {
+        super("Already stored as " + match.key());
+        this.match = match;
+    }
+    
+    public DedupIndex.Match match() {
+        return match;
+    }
+}
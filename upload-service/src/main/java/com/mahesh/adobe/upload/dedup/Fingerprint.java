@@ -0,0 +1,24 @@
+package com.mahesh.adobe.upload.dedup;
+
+/**
+ * What an upload is recognised by in the {@link DedupIndex}
+ *
+ * @param sha256         hex SHA-256 of the stored bytes
+ * @param perceptualHash {@link PerceptualHash#dHash dHash} of the image, or null when there is
+ *                       none (not computed, or the image is too flat)
+ */
+public record Fingerprint(String sha256, Long perceptualHash) {
+    
+    public Fingerprint {
+        if (sha256 == null || sha256.length() != 64) {
+            throw new IllegalArgumentException("SHA-256 must be 64 hex digits");
+        }
+    }
+    
+    /**
+     * Fingerprint for exact matching only
+     */
+    public static Fingerprint exact(String sha256) {
+        return new Fingerprint(sha256, null);
+    }
+}
@@ -0,0 +1,84 @@
+package com.mahesh.adobe.upload.dedup;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * 64-bit difference hash (dHash) of an image.
+ *
+ * The image is reduced to a 9x8 grid of mean luma values and each bit records whether a
+ * cell is darker than its right-hand neighbour. Re-encoding, rescaling and mild colour
+ * changes leave most bits alone, so copies of one picture land a few bits apart while
+ * unrelated pictures differ in about half of them.
+ */
+public final class PerceptualHash {
+    
+    private static final int GRID_WIDTH = 9;
+    private static final int GRID_HEIGHT = 8;
+    
+    /**
+     * Grids whose brightest and darkest cells are closer than this carry no usable
+     * gradient: every flat image would hash to 0 and match every other one
+     */
+    private static final int MIN_CONTRAST = 8;
+    
+    private PerceptualHash() {
+    }
+    
+    /**
+     * Hash of {@code image}, or null when it is too flat to fingerprint. A small preview
+     * gives the same hash as the full image.
+     */
+    public static Long dHash(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long[] sums = new long[GRID_WIDTH * GRID_HEIGHT];
+        long[] counts = new long[GRID_WIDTH * GRID_HEIGHT];
+        int[] cellOfColumn = new int[width];
+        for (int x = 0; x < width; x++) {
+            cellOfColumn[x] = (int) ((long) x * GRID_WIDTH / width);
+        }
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            int cellRow = (int) ((long) y * GRID_HEIGHT / height) * GRID_WIDTH;
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                // BT.601 luma in 8.8 fixed point, as the grayscale conversion uses
+                int luma = (77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8;
+                int cell = cellRow + cellOfColumn[x];
+                sums[cell] += luma;
+                counts[cell]++;
+            }
+        }
+    
+        int[] means = new int[sums.length];
+        int min = 255;
+        int max = 0;
+        for (int i = 0; i < means.length; i++) {
+            // Images narrower than the grid leave cells empty; borrow the left neighbour
+            means[i] = counts[i] > 0 ? (int) (sums[i] / counts[i]) : i % GRID_WIDTH > 0 ? means[i - 1] : 0;
+            min = Math.min(min, means[i]);
+            max = Math.max(max, means[i]);
+        }
+        if (max - min < MIN_CONTRAST) {
+            return null;
+        }
+    
+        long hash = 0;
+        int bit = 0;
+        for (int y = 0; y < GRID_HEIGHT; y++) {
+            for (int x = 0; x < GRID_WIDTH - 1; x++) {
+                int cell = y * GRID_WIDTH + x;
+                if (means[cell] < means[cell + 1]) {
+                    hash |= 1L << bit;
+                }
+                bit++;
+            }
+        }
+        return hash;
+    }
+    
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+}
@@ -0,0 +1,467 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Kernel;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Convolution engine working directly on raster arrays.
+ *
+ * Uniform (box) kernels run as a sliding-window running sum, so their cost does not
+ * depend on the radius. Other rank-1 kernels (Gaussian, Sobel components, ...) run as
+ * a horizontal and a vertical 1-D pass. Everything else falls back to a direct 2-D
+ * convolution. All strategies are split into row bands across the ForkJoinPool and
+ * clamp at the image borders instead of leaving them unfiltered.
+ */
+public class ConvolutionEngine {
+
+    /** Largest supported box radius; keeps the running sums within int range */
+    public static final int MAX_BOX_RADIUS = 1024;
+
+    private static final float SEPARABLE_TOLERANCE = 1e-5f;
+
+    /** Per-band memory allowed for caching row sums inside the vertical window */
+    private static final long RING_BUDGET_BYTES = 16L << 20;
+
+    private final ForkJoinPool pool;
+    private final RasterPool rasterPool;
+
+    public ConvolutionEngine(ForkJoinPool pool, RasterPool rasterPool) {
+        this.pool = pool;
+        this.rasterPool = rasterPool;
+    }
+
+    /**
+     * Convolve with an arbitrary kernel, picking the cheapest strategy for its shape
+     */
+    public BufferedImage convolve(BufferedImage source, Kernel kernel) {
+        return convolve(source, kernel, null);
+    }
+
+    /**
+     * Convolve into {@code destination}, which must be compatible with the source (same
+     * size and raster layout, see {@link #isReusableDestination}); null takes a new image
+     * from the raster pool
+     */
+    public BufferedImage convolve(BufferedImage source, Kernel kernel, BufferedImage destination) {
+        int kw = kernel.getWidth();
+        int kh = kernel.getHeight();
+        float[] data = kernel.getKernelData(null);
+
+        if (kw == kh && kw % 2 == 1 && kw > 1 && isNormalizedBox(data)) {
+            return boxBlur(source, kw / 2, destination);
+        }
+        float[][] factors = separate(data, kw, kh);
+        if (factors != null) {
+            return convolveSeparable(source, factors[0], factors[1], destination);
+        }
+        return convolve2D(source, data, kw, kh, kernel.getXOrigin(), kernel.getYOrigin(), destination);
+    }
+
+    /**
+     * Mean filter over a (2r+1) x (2r+1) window
+     */
+    public BufferedImage boxBlur(BufferedImage source, int radius) {
+        return boxBlur(source, radius, null);
+    }
+
+    /**
+     * Mean filter into {@code destination}; null takes a new image from the raster pool
+     */
+    public BufferedImage boxBlur(BufferedImage source, int radius, BufferedImage destination) {
+        BufferedImage src = rasterPool.toDirect(source);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        BufferedImage dst = destination(src, destination);
+        int r = Math.min(Math.max(0, radius), MAX_BOX_RADIUS);
+
+        RasterRows in = RasterRows.of(src);
+        RasterRows out = RasterRows.of(dst);
+        RowBands.run(pool, width, height, 2 * r + 1, (y0, y1) -> boxBand(in, out, r, y0, y1));
+        releaseConverted(source, src);
+        return dst;
+    }
+
+    /**
+     * Gaussian blur with the kernel truncated at three standard deviations
+     */
+    public BufferedImage gaussianBlur(BufferedImage source, float sigma) {
+        float[] weights = gaussianKernel(sigma);
+        return convolveSeparable(source, weights, weights);
+    }
+
+    /**
+     * Apply a rank-1 kernel as a horizontal pass followed by a vertical pass.
+     * Both arrays must have odd length and are centred on the output pixel.
+     */
+    public BufferedImage convolveSeparable(BufferedImage source, float[] horizontal, float[] vertical) {
+        return convolveSeparable(source, horizontal, vertical, null);
+    }
+
+    /**
+     * Separable convolution into {@code destination}; null takes a new image from the raster pool
+     */
+    public BufferedImage convolveSeparable(BufferedImage source, float[] horizontal, float[] vertical,
+                                           BufferedImage destination) {
+        if (horizontal.length % 2 == 0 || vertical.length % 2 == 0) {
+            throw new IllegalArgumentException("Separable kernels must have odd length");
+        }
+        BufferedImage src = rasterPool.toDirect(source);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        BufferedImage dst = destination(src, destination);
+
+        RasterRows in = RasterRows.of(src);
+        RasterRows out = RasterRows.of(dst);
+        RowBands.run(pool, width, height, vertical.length,
+                (y0, y1) -> separableBand(in, out, horizontal, vertical, y0, y1));
+        releaseConverted(source, src);
+        return dst;
+    }
+
+    /**
+     * Normalised 1-D Gaussian weights for the given standard deviation
+     */
+    public static float[] gaussianKernel(float sigma) {
+        int radius = Math.max(1, (int) Math.ceil(sigma * 3));
+        float[] weights = new float[2 * radius + 1];
+        double twoSigmaSquared = 2.0 * sigma * sigma;
+        double sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            double w = Math.exp(-(i * i) / twoSigmaSquared);
+            weights[i + radius] = (float) w;
+            sum += w;
+        }
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] /= (float) sum;
+        }
+        return weights;
+    }
+
+    /**
+     * Whether {@code candidate} can receive the result of filtering {@code source}: same
+     * size and raster layout, and not the source itself (the passes read neighbouring rows)
+     */
+    public static boolean isReusableDestination(BufferedImage source, BufferedImage candidate) {
+        return candidate != null
+                && candidate != source
+                && candidate.getWidth() == source.getWidth()
+                && candidate.getHeight() == source.getHeight()
+                && candidate.getColorModel().equals(source.getColorModel())
+                && candidate.getSampleModel().getClass() == source.getSampleModel().getClass()
+                && candidate.getSampleModel().getNumBands() == source.getSampleModel().getNumBands()
+                && RasterRows.isDirect(candidate);
+    }
+
+    private BufferedImage destination(BufferedImage src, BufferedImage destination) {
+        if (destination == null) {
+            return rasterPool.createCompatible(src, src.getWidth(), src.getHeight());
+        }
+        if (!isReusableDestination(src, destination)) {
+            throw new IllegalArgumentException("Destination is not compatible with the source image");
+        }
+        return destination;
+    }
+
+    /**
+     * Hand back the 8-bit copy made for a source the engine could not address directly
+     */
+    private void releaseConverted(BufferedImage source, BufferedImage converted) {
+        if (converted != source) {
+            rasterPool.release(converted);
+        }
+    }
+
+    private BufferedImage convolve2D(BufferedImage source, float[] kernel, int kw, int kh, int xOrigin, int yOrigin,
+                                     BufferedImage destination) {
+        BufferedImage src = rasterPool.toDirect(source);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        BufferedImage dst = destination(src, destination);
+
+        RasterRows in = RasterRows.of(src);
+        RasterRows out = RasterRows.of(dst);
+        RowBands.run(pool, width, height, kh,
+                (y0, y1) -> denseBand(in, out, kernel, kw, kh, xOrigin, yOrigin, y0, y1));
+        releaseConverted(source, src);
+        return dst;
+    }
+
+    // ---------------------------------------------------------------------
+    // Box blur: running sums in both directions
+    // ---------------------------------------------------------------------
+
+    private static void boxBand(RasterRows in, RasterRows out, int r, int y0, int y1) {
+        int height = in.height();
+        int bands = in.bands();
+        int n = in.width() * bands;
+        int[] padded = new int[n + 2 * r * bands];
+        int[] columnSum = new int[n];
+        int[] result = new int[n];
+
+        int window = 2 * r + 1;
+        long area = (long) window * window;
+        long reciprocal = ((1L << 32) + area - 1) / area;
+        long half = 1L << 31;
+
+        // Keep the horizontal sums of the rows inside the window when they fit the budget,
+        // otherwise recompute the row that leaves the window
+        boolean keepRows = (long) window * n * Integer.BYTES <= RING_BUDGET_BYTES;
+        int[][] ring = keepRows ? new int[window][n] : null;
+        int[] rowSum = keepRows ? null : new int[n];
+
+        // Prime the column sums with the window around the first row of the band
+        for (int k = 0; k < window; k++) {
+            int[] sums = keepRows ? ring[k] : rowSum;
+            horizontalBoxSum(in, clampRow(y0 - r + k, height), r, padded, sums);
+            for (int i = 0; i < n; i++) {
+                columnSum[i] += sums[i];
+            }
+        }
+
+        int head = 0;
+        for (int y = y0; y < y1; y++) {
+            for (int i = 0; i < n; i++) {
+                result[i] = (int) ((columnSum[i] * reciprocal + half) >>> 32);
+            }
+            out.write(y, result);
+
+            if (y + 1 < y1) {
+                int entering = clampRow(y + r + 1, height);
+                int leaving = clampRow(y - r, height);
+                if (keepRows) {
+                    int[] sums = ring[head];
+                    if (entering != leaving) {
+                        for (int i = 0; i < n; i++) {
+                            columnSum[i] -= sums[i];
+                        }
+                        horizontalBoxSum(in, entering, r, padded, sums);
+                        for (int i = 0; i < n; i++) {
+                            columnSum[i] += sums[i];
+                        }
+                    }
+                    head = (head + 1) % window;
+                } else if (entering != leaving) {
+                    horizontalBoxSum(in, leaving, r, padded, rowSum);
+                    for (int i = 0; i < n; i++) {
+                        columnSum[i] -= rowSum[i];
+                    }
+                    horizontalBoxSum(in, entering, r, padded, rowSum);
+                    for (int i = 0; i < n; i++) {
+                        columnSum[i] += rowSum[i];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Unnormalised sliding-window sums of row {@code y}, edges clamped
+     */
+    private static void horizontalBoxSum(RasterRows in, int y, int r, int[] padded, int[] sums) {
+        int bands = in.bands();
+        int n = in.width() * bands;
+        int span = 2 * r * bands;
+        readPadded(in, y, padded, r * bands);
+
+        for (int c = 0; c < bands; c++) {
+            int sum = 0;
+            for (int i = c; i <= span + c; i += bands) {
+                sum += padded[i];
+            }
+            sums[c] = sum;
+        }
+        // Slide the window one pixel: add the sample entering on the right, drop the one on the left
+        for (int i = bands; i < n; i++) {
+            sums[i] = sums[i - bands] + padded[i + span] - padded[i - bands];
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Separable kernels: horizontal pass into a ring of rows, then vertical
+    // ---------------------------------------------------------------------
+
+    private static void separableBand(RasterRows in, RasterRows out, float[] horizontal, float[] vertical,
+                                      int y0, int y1) {
+        int height = in.height();
+        int bands = in.bands();
+        int n = in.width() * bands;
+        int rh = horizontal.length / 2;
+        int rv = vertical.length / 2;
+
+        int[] padded = new int[n + 2 * rh * bands];
+        float[][] ring = new float[vertical.length][n];
+        float[] acc = new float[n];
+        int[] result = new int[n];
+
+        for (int k = 0; k < vertical.length; k++) {
+            horizontalPass(in, clampRow(y0 - rv + k, height), horizontal, padded, ring[k]);
+        }
+
+        int head = 0;
+        for (int y = y0; y < y1; y++) {
+            Arrays.fill(acc, 0f);
+            for (int k = 0; k < vertical.length; k++) {
+                float weight = vertical[k];
+                float[] line = ring[(head + k) % vertical.length];
+                for (int i = 0; i < n; i++) {
+                    acc[i] += weight * line[i];
+                }
+            }
+            round(acc, result);
+            out.write(y, result);
+
+            if (y + 1 < y1) {
+                // The oldest row drops out of the window; reuse its slot for the new one
+                horizontalPass(in, clampRow(y + 1 + rv, height), horizontal, padded, ring[head]);
+                head = (head + 1) % vertical.length;
+            }
+        }
+    }
+
+    private static void horizontalPass(RasterRows in, int y, float[] kernel, int[] padded, float[] out) {
+        int bands = in.bands();
+        int n = in.width() * bands;
+        int pad = (kernel.length / 2) * bands;
+        readPadded(in, y, padded, pad);
+
+        Arrays.fill(out, 0f);
+        for (int k = 0; k < kernel.length; k++) {
+            float weight = kernel[k];
+            int shift = k * bands;
+            for (int i = 0; i < n; i++) {
+                out[i] += weight * padded[shift + i];
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Dense 2-D kernels (sharpen, Laplacian, ...)
+    // ---------------------------------------------------------------------
+
+    private static void denseBand(RasterRows in, RasterRows out, float[] kernel, int kw, int kh,
+                                  int xOrigin, int yOrigin, int y0, int y1) {
+        int height = in.height();
+        int bands = in.bands();
+        int n = in.width() * bands;
+        int left = xOrigin * bands;
+        int right = (kw - 1 - xOrigin) * bands;
+
+        int[][] ring = new int[kh][n + left + right];
+        float[] acc = new float[n];
+        int[] result = new int[n];
+
+        for (int k = 0; k < kh; k++) {
+            readPadded(in, clampRow(y0 - yOrigin + k, height), ring[k], left, right);
+        }
+
+        int head = 0;
+        for (int y = y0; y < y1; y++) {
+            Arrays.fill(acc, 0f);
+            for (int ky = 0; ky < kh; ky++) {
+                int[] line = ring[(head + ky) % kh];
+                for (int kx = 0; kx < kw; kx++) {
+                    float weight = kernel[ky * kw + kx];
+                    if (weight == 0f) {
+                        continue;
+                    }
+                    int shift = kx * bands;
+                    for (int i = 0; i < n; i++) {
+                        acc[i] += weight * line[shift + i];
+                    }
+                }
+            }
+            round(acc, result);
+            out.write(y, result);
+
+            if (y + 1 < y1) {
+                readPadded(in, clampRow(y + 1 - yOrigin + kh - 1, height), ring[head], left, right);
+                head = (head + 1) % kh;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------------
+
+    private static void readPadded(RasterRows in, int y, int[] padded, int pad) {
+        readPadded(in, y, padded, pad, pad);
+    }
+
+    /**
+     * Read a row into {@code padded[left..]} and replicate the edge pixels into the margins
+     */
+    private static void readPadded(RasterRows in, int y, int[] padded, int left, int right) {
+        int bands = in.bands();
+        int n = in.width() * bands;
+        in.read(y, padded, left);
+        for (int i = 0; i < left; i++) {
+            padded[i] = padded[left + i % bands];
+        }
+        int lastPixel = left + n - bands;
+        for (int i = 0; i < right; i++) {
+            padded[left + n + i] = padded[lastPixel + i % bands];
+        }
+    }
+
+    private static void round(float[] acc, int[] result) {
+        for (int i = 0; i < acc.length; i++) {
+            float v = acc[i] + 0.5f;
+            result[i] = v <= 0f ? 0 : v >= 255f ? 255 : (int) v;
+        }
+    }
+
+    private static int clampRow(int y, int height) {
+        return y < 0 ? 0 : Math.min(y, height - 1);
+    }
+
+    private static boolean isNormalizedBox(float[] data) {
+        float first = data[0];
+        for (float value : data) {
+            if (value != first) {
+                return false;
+            }
+        }
+        return Math.abs(first * data.length - 1f) < 1e-3f;
+    }
+
+    /**
+     * Factor a kernel into {horizontal, vertical} 1-D kernels, or return null if it is not rank-1
+     */
+    static float[][] separate(float[] kernel, int kw, int kh) {
+        if (kw % 2 == 0 || kh % 2 == 0) {
+            return null;
+        }
+        int pivot = 0;
+        for (int i = 1; i < kernel.length; i++) {
+            if (Math.abs(kernel[i]) > Math.abs(kernel[pivot])) {
+                pivot = i;
+            }
+        }
+        float scale = kernel[pivot];
+        if (scale == 0f) {
+            return null;
+        }
+        int pivotRow = pivot / kw;
+        int pivotColumn = pivot % kw;
+        float[] horizontal = new float[kw];
+        float[] vertical = new float[kh];
+        for (int x = 0; x < kw; x++) {
+            horizontal[x] = kernel[pivotRow * kw + x] / scale;
+        }
+        for (int y = 0; y < kh; y++) {
+            vertical[y] = kernel[y * kw + pivotColumn];
+        }
+        float tolerance = SEPARABLE_TOLERANCE * Math.abs(scale);
+        for (int y = 0; y < kh; y++) {
+            for (int x = 0; x < kw; x++) {
+                if (Math.abs(kernel[y * kw + x] - vertical[y] * horizontal[x]) > tolerance) {
+                    return null;
+                }
+            }
+        }
+        return new float[][] {horizontal, vertical};
+    }
+}
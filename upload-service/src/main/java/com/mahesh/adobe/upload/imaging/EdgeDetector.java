@@ -0,0 +1,442 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Sobel / Scharr gradients and Canny edges on a grayscale image.
+ *
+ * Gradients come from one fused pass per row: the three source rows around it are kept in
+ * a ring, smoothed down the columns and differenced across in integer arithmetic, and
+ * turned straight into the requested output without intermediate images. Borders are
+ * clamped like the convolution engine's. Rows are split into bands across the ForkJoinPool;
+ * each band reads the row above and below it as a halo.
+ *
+ * Canny keeps each pixel's magnitude and quantised direction in one short[] plane, then
+ * thins edges to local maxima along the gradient and thresholds them in bands. Hysteresis
+ * follows weak pixels from strong ones inside each band in parallel, then links the
+ * edges that cross band boundaries in one sequential pass over the seams.
+ */
+public class EdgeDetector {
+
+    /** Canny pixel states */
+    private static final byte NONE = 0;
+    private static final byte WEAK = 1;
+    private static final byte STRONG = 2;
+
+    /** Packed magnitudes are clamped to fit 13 bits above the 2-bit direction */
+    private static final int MAX_PACKED_MAGNITUDE = (1 << 13) - 1;
+
+    /** Gradient direction classes, by the neighbours compared against in non-maximum suppression */
+    private static final int HORIZONTAL = 0;
+    private static final int DIAGONAL = 1;
+    private static final int VERTICAL = 2;
+    private static final int ANTI_DIAGONAL = 3;
+
+    private static final float TWO_PI = (float) (2 * Math.PI);
+
+    private final ForkJoinPool pool;
+    private final RasterPool rasterPool;
+    private final ConvolutionEngine convolutionEngine;
+
+    public EdgeDetector(ForkJoinPool pool, RasterPool rasterPool, ConvolutionEngine convolutionEngine) {
+        this.pool = pool;
+        this.rasterPool = rasterPool;
+        this.convolutionEngine = convolutionEngine;
+    }
+
+    /**
+     * Edges of a single-band grayscale image into {@code destination}, a grayscale image of
+     * the same size; null takes a new TYPE_BYTE_GRAY image from the raster pool
+     */
+    public BufferedImage detect(BufferedImage source, EdgeOptions options, BufferedImage destination) {
+        BufferedImage src = rasterPool.toDirect(source);
+        if (RasterRows.of(src).bands() != 1) {
+            releaseConverted(source, src);
+            throw new IllegalArgumentException("Edge detection needs a grayscale image");
+        }
+        int width = src.getWidth();
+        int height = src.getHeight();
+        BufferedImage dst = destination != null
+                ? destination
+                : rasterPool.create(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        if (dst == src || dst.getWidth() != width || dst.getHeight() != height
+                || !RasterRows.isDirect(dst) || RasterRows.of(dst).bands() != 1) {
+            releaseConverted(source, src);
+            throw new IllegalArgumentException("Destination is not a grayscale image of the source's size");
+        }
+
+        BufferedImage smoothed = options.sigma() > 0 ? convolutionEngine.gaussianBlur(src, options.sigma()) : src;
+        RasterRows in = RasterRows.of(smoothed);
+        RasterRows out = RasterRows.of(dst);
+        try {
+            if (options.output() == EdgeOptions.Output.CANNY) {
+                canny(in, out, options);
+            } else {
+                RowBands.run(pool, width, height, 1, (y0, y1) -> gradientBand(in, out, options, y0, y1));
+            }
+        } finally {
+            if (smoothed != src) {
+                rasterPool.release(smoothed);
+            }
+            releaseConverted(source, src);
+        }
+        return dst;
+    }
+
+    private void releaseConverted(BufferedImage source, BufferedImage converted) {
+        if (converted != source) {
+            rasterPool.release(converted);
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Magnitude and orientation: one pass, straight into the output rows
+    // ---------------------------------------------------------------------
+
+    private static void gradientBand(RasterRows in, RasterRows out, EdgeOptions options, int y0, int y1) {
+        int width = in.width();
+        Gradients gradients = new Gradients(in, options.operator());
+        int[] result = new int[width];
+        float scale = 1f / options.operator().norm();
+        boolean magnitude = options.output() == EdgeOptions.Output.MAGNITUDE;
+
+        gradients.prime(y0);
+        for (int y = y0; y < y1; y++) {
+            gradients.compute();
+            int[] gx = gradients.gx;
+            int[] gy = gradients.gy;
+            if (magnitude) {
+                for (int x = 0; x < width; x++) {
+                    float m = (float) Math.sqrt((float) gx[x] * gx[x] + (float) gy[x] * gy[x]) * scale + 0.5f;
+                    result[x] = m >= 255f ? 255 : (int) m;
+                }
+            } else {
+                // -pi..pi onto 0..255, so 0 degrees (also flat areas) lands on mid-gray
+                float toByte = 255f / TWO_PI;
+                for (int x = 0; x < width; x++) {
+                    result[x] = (int) ((atan2(gy[x], gx[x]) + (float) Math.PI) * toByte + 0.5f);
+                }
+            }
+            out.writeStored(y, result);
+            if (y + 1 < y1) {
+                gradients.advance();
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Canny
+    // ---------------------------------------------------------------------
+
+    private void canny(RasterRows in, RasterRows out, EdgeOptions options) {
+        int width = in.width();
+        int height = in.height();
+        int pixels = width * height;
+        int norm = options.operator().norm();
+        // Thresholds in raw gradient units, rounded up so a pixel at the threshold counts
+        int low = (int) Math.ceil(options.low() * norm);
+        int high = (int) Math.ceil(options.high() * norm);
+
+        short[] packed = rasterPool.shorts(pixels);
+        byte[] state = rasterPool.bytes(pixels);
+        try {
+            RowBands.run(pool, width, height, 1, (y0, y1) -> magnitudeBand(in, options.operator(), packed, y0, y1));
+
+            // Thin and threshold, then grow edges inside each band; bands remember where they start
+            Queue<Integer> bandStarts = new ConcurrentLinkedQueue<>();
+            RowBands.run(pool, width, height, 1, (y0, y1) -> {
+                suppressBand(packed, state, width, height, low, high, y0, y1);
+                IntStack stack = new IntStack();
+                for (int i = y0 * width; i < y1 * width; i++) {
+                    if (state[i] == STRONG) {
+                        stack.push(i);
+                        follow(state, width, y0, y1, stack);
+                    }
+                }
+                if (y0 > 0) {
+                    bandStarts.add(y0);
+                }
+            });
+
+            // Weak pixels touching a strong one across a seam, and everything they reach
+            IntStack stack = new IntStack();
+            for (int seam : bandStarts) {
+                seedAcrossSeam(state, width, seam - 1, seam, stack);
+                seedAcrossSeam(state, width, seam, seam - 1, stack);
+            }
+            follow(state, width, 0, height, stack);
+
+            RowBands.run(pool, width, height, 1, (y0, y1) -> {
+                int[] row = new int[width];
+                for (int y = y0; y < y1; y++) {
+                    int offset = y * width;
+                    for (int x = 0; x < width; x++) {
+                        row[x] = state[offset + x] == STRONG ? 255 : 0;
+                    }
+                    out.writeStored(y, row);
+                }
+            });
+        } finally {
+            rasterPool.release(packed);
+            rasterPool.release(state);
+        }
+    }
+
+    /**
+     * Magnitude (upper 13 bits) and direction class (lower 2 bits) of every pixel in the band
+     */
+    private static void magnitudeBand(RasterRows in, EdgeOptions.Operator operator, short[] packed, int y0, int y1) {
+        int width = in.width();
+        Gradients gradients = new Gradients(in, operator);
+        gradients.prime(y0);
+        for (int y = y0; y < y1; y++) {
+            gradients.compute();
+            int[] gx = gradients.gx;
+            int[] gy = gradients.gy;
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int dx = gx[x];
+                int dy = gy[x];
+                int m = (int) (Math.sqrt((float) dx * dx + (float) dy * dy) + 0.5f);
+                int ax = Math.abs(dx);
+                int ay = Math.abs(dy);
+                int direction;
+                // tan(22.5) ~ 29/70 and tan(67.5) ~ 70/29
+                if (ay * 70 <= ax * 29) {
+                    direction = HORIZONTAL;
+                } else if (ay * 29 >= ax * 70) {
+                    direction = VERTICAL;
+                } else {
+                    direction = (dx ^ dy) >= 0 ? DIAGONAL : ANTI_DIAGONAL;
+                }
+                packed[offset + x] = (short) (Math.min(m, MAX_PACKED_MAGNITUDE) << 2 | direction);
+            }
+            if (y + 1 < y1) {
+                gradients.advance();
+            }
+        }
+    }
+
+    /**
+     * Non-maximum suppression along the gradient, then double thresholding. Neighbours
+     * outside the image count as zero so edges reach the border.
+     */
+    private static void suppressBand(short[] packed, byte[] state, int width, int height, int low, int high,
+                                     int y0, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int i = offset + x;
+                int value = packed[i];
+                int m = value >> 2;
+                if (m < low || m == 0) {
+                    state[i] = NONE;
+                    continue;
+                }
+                int dx;
+                int dy;
+                switch (value & 3) {
+                    case HORIZONTAL -> {
+                        dx = 1;
+                        dy = 0;
+                    }
+                    case VERTICAL -> {
+                        dx = 0;
+                        dy = 1;
+                    }
+                    case DIAGONAL -> {
+                        dx = 1;
+                        dy = 1;
+                    }
+                    default -> {
+                        dx = 1;
+                        dy = -1;
+                    }
+                }
+                int ahead = magnitudeAt(packed, width, height, x + dx, y + dy);
+                int behind = magnitudeAt(packed, width, height, x - dx, y - dy);
+                // Strict on one side only, so a two-pixel plateau keeps exactly one of its pixels
+                if (m > ahead && m >= behind) {
+                    state[i] = m >= high ? STRONG : WEAK;
+                } else {
+                    state[i] = NONE;
+                }
+            }
+        }
+    }
+
+    private static int magnitudeAt(short[] packed, int width, int height, int x, int y) {
+        if (x < 0 || y < 0 || x >= width || y >= height) {
+            return 0;
+        }
+        return packed[y * width + x] >> 2;
+    }
+
+    /**
+     * Promote every weak pixel 8-connected to a pixel on the stack, within rows [y0, y1)
+     */
+    private static void follow(byte[] state, int width, int y0, int y1, IntStack stack) {
+        while (!stack.isEmpty()) {
+            int i = stack.pop();
+            int y = i / width;
+            int x = i - y * width;
+            for (int ny = Math.max(y0, y - 1); ny <= Math.min(y1 - 1, y + 1); ny++) {
+                for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                    int n = ny * width + nx;
+                    if (state[n] == WEAK) {
+                        state[n] = STRONG;
+                        stack.push(n);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Promote weak pixels of row {@code y} that touch a strong pixel in the adjacent row
+     * {@code other}, and queue them to be followed
+     */
+    private static void seedAcrossSeam(byte[] state, int width, int y, int other, IntStack stack) {
+        int row = y * width;
+        int otherRow = other * width;
+        for (int x = 0; x < width; x++) {
+            if (state[row + x] != WEAK) {
+                continue;
+            }
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(width - 1, x + 1); nx++) {
+                if (state[otherRow + nx] == STRONG) {
+                    state[row + x] = STRONG;
+                    stack.push(row + x);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * atan2 within about 1e-5 radians, several times faster than Math.atan2
+     */
+    static float atan2(float y, float x) {
+        float ax = Math.abs(x);
+        float ay = Math.abs(y);
+        float max = Math.max(ax, ay);
+        if (max == 0f) {
+            return 0f;
+        }
+        float a = Math.min(ax, ay) / max;
+        float s = a * a;
+        float r = ((-0.0464964749f * s + 0.15931422f) * s - 0.327622764f) * s * a + a;
+        if (ay > ax) {
+            r = 1.57079637f - r;
+        }
+        if (x < 0) {
+            r = 3.14159274f - r;
+        }
+        return y < 0 ? -r : r;
+    }
+
+    /**
+     * Sliding window of three clamped source rows and the gradients of the middle one.
+     * Rows carry one replicated pixel of padding on each side.
+     */
+    private static final class Gradients {
+
+        private final RasterRows in;
+        private final int width;
+        private final int height;
+        private final int side;
+        private final int centre;
+        private final int[][] rows;
+        private final int[] smooth;
+        private final int[] diff;
+        final int[] gx;
+        final int[] gy;
+        private int y;
+        private int head;
+
+        Gradients(RasterRows in, EdgeOptions.Operator operator) {
+            this.in = in;
+            this.width = in.width();
+            this.height = in.height();
+            this.side = operator.side();
+            this.centre = operator.centre();
+            this.rows = new int[3][width + 2];
+            this.smooth = new int[width + 2];
+            this.diff = new int[width + 2];
+            this.gx = new int[width];
+            this.gy = new int[width];
+        }
+
+        /** Load the rows around {@code row}, the first one to compute */
+        void prime(int row) {
+            y = row;
+            head = 0;
+            for (int k = 0; k < 3; k++) {
+                read(clamp(row - 1 + k), rows[k]);
+            }
+        }
+
+        /** Slide down one row */
+        void advance() {
+            y++;
+            // The top row drops out; its slot takes the new bottom row
+            read(clamp(y + 1), rows[head]);
+            head = (head + 1) % 3;
+        }
+
+        /** Gradients of the current row into gx and gy */
+        void compute() {
+            int[] up = rows[head];
+            int[] mid = rows[(head + 1) % 3];
+            int[] down = rows[(head + 2) % 3];
+            // Smooth down the columns for gx, difference down them for gy ...
+            for (int i = 0; i < width + 2; i++) {
+                smooth[i] = side * (up[i] + down[i]) + centre * mid[i];
+                diff[i] = down[i] - up[i];
+            }
+            // ... then difference across for gx, smooth across for gy
+            for (int x = 0; x < width; x++) {
+                gx[x] = smooth[x + 2] - smooth[x];
+                gy[x] = side * (diff[x] + diff[x + 2]) + centre * diff[x + 1];
+            }
+        }
+
+        private void read(int row, int[] padded) {
+            in.read(row, padded, 1);
+            padded[0] = padded[1];
+            padded[width + 1] = padded[width];
+        }
+
+        private int clamp(int row) {
+            return row < 0 ? 0 : Math.min(row, height - 1);
+        }
+    }
+
+    /**
+     * Growable stack of pixel indices for hysteresis
+     */
+    private static final class IntStack {
+
+        private int[] items = new int[1024];
+        private int size;
+
+        void push(int value) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = value;
+        }
+
+        int pop() {
+            return items[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.util.Locale;
+
+/**
+ * Parameters of {@link EdgeDetector}
+ *
+ * @param operator gradient kernel
+ * @param output   what the result image holds
+ * @param low      Canny: gradient magnitude, in the 0-255 units of the MAGNITUDE output, below
+ *                 which a pixel is never an edge
+ * @param high     Canny: magnitude from which a pixel is always an edge; pixels between low and
+ *                 high are edges only when connected to one
+ * @param sigma    standard deviation of a Gaussian blur applied before the gradients; 0 for none
+ */
+public record EdgeOptions(Operator operator, Output output, float low, float high, float sigma) {
+
+    public static final float DEFAULT_LOW = 20f;
+    public static final float DEFAULT_HIGH = 50f;
+    /** Canny needs some smoothing to keep noise from forming edges; the other outputs default to none */
+    public static final float DEFAULT_CANNY_SIGMA = 1.0f;
+    public static final float MAX_SIGMA = 10f;
+
+    /**
+     * 3x3 gradient kernels: the derivative [-1 0 1] across, smoothing [side centre side] along
+     */
+    public enum Operator {
+        SOBEL(1, 2),
+        /** Better rotational symmetry than Sobel at the same cost */
+        SCHARR(3, 10);
+
+        private final int side;
+        private final int centre;
+
+        Operator(int side, int centre) {
+            this.side = side;
+            this.centre = centre;
+        }
+
+        int side() {
+            return side;
+        }
+
+        int centre() {
+            return centre;
+        }
+
+        /** Sum of the smoothing weights; dividing by it puts gradients on a 0-255 scale */
+        int norm() {
+            return 2 * side + centre;
+        }
+    }
+
+    public enum Output {
+        /** Gradient magnitude, clamped to 255 */
+        MAGNITUDE,
+        /** Gradient direction, -180 to 180 degrees mapped onto 0-255 (flat areas read as 0 degrees) */
+        ORIENTATION,
+        /** Binary edge map (0 or 255) after non-maximum suppression and hysteresis thresholding */
+        CANNY
+    }
+
+    public EdgeOptions {
+        if (operator == null || output == null) {
+            throw new IllegalArgumentException("Edge operator and output are required");
+        }
+        if (!(low >= 0) || !(high >= low)) {
+            throw new IllegalArgumentException("Edge thresholds need 0 <= low <= high");
+        }
+        if (!(sigma >= 0) || sigma > MAX_SIGMA) {
+            throw new IllegalArgumentException("Edge sigma must be between 0 and " + MAX_SIGMA);
+        }
+    }
+
+    /**
+     * Options from request parameters; anything null takes its default
+     */
+    public static EdgeOptions of(String operator, String output, Float low, Float high, Float sigma) {
+        Operator parsedOperator = parse(Operator.class, operator, Operator.SOBEL, "edge operator");
+        Output parsedOutput = parse(Output.class, output, Output.MAGNITUDE, "edge output");
+        float defaultSigma = parsedOutput == Output.CANNY ? DEFAULT_CANNY_SIGMA : 0f;
+        return new EdgeOptions(parsedOperator, parsedOutput,
+                low != null ? low : DEFAULT_LOW,
+                high != null ? high : Math.max(DEFAULT_HIGH, low != null ? low : 0f),
+                sigma != null ? sigma : defaultSigma);
+    }
+
+    public static EdgeOptions defaults() {
+        return of(null, null, null, null, null);
+    }
+
+    /**
+     * Rows of context above and below needed for a strip to come out as in the whole image
+     */
+    public int halo() {
+        return 1 + (sigma > 0 ? ConvolutionEngine.gaussianKernel(sigma).length / 2 : 0);
+    }
+
+    /**
+     * Whether strips can be processed independently; hysteresis follows edges across the
+     * whole image
+     */
+    public boolean isTileable() {
+        return output != Output.CANNY;
+    }
+
+    /**
+     * Canonical form for cache keys and response headers, e.g. "sobel,canny,20.0,50.0,1.0"
+     */
+    public String describe() {
+        String name = operator.name().toLowerCase(Locale.ROOT) + "," + output.name().toLowerCase(Locale.ROOT);
+        if (output == Output.CANNY) {
+            name += "," + low + "," + high;
+        }
+        return sigma > 0 ? name + "," + sigma : name;
+    }
+
+    private static <E extends Enum<E>> E parse(Class<E> type, String value, E fallback, String what) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + what + ": " + value);
+        }
+    }
+}
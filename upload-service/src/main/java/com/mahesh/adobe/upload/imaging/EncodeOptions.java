@@ -0,0 +1,125 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.util.Locale;
+
+/**
+ * Settings for {@link ImageEncoder}. Each one applies to a single output format and is
+ * ignored by the others.
+ *
+ * @param quality           JPEG and lossy WebP quality, 0-1
+ * @param progressive       JPEG: progressive scans instead of a baseline image
+ * @param chromaSubsampling JPEG: resolution of the colour planes relative to luma
+ * @param optimizeHuffman   JPEG: Huffman tables computed for the image (smaller, one more pass)
+ * @param compressionLevel  PNG: deflate level, 0-9
+ * @param pngFilter         PNG: row filter
+ * @param lossless          WebP: lossless instead of lossy
+ */
+public record EncodeOptions(
+        float quality,
+        boolean progressive,
+        ChromaSubsampling chromaSubsampling,
+        boolean optimizeHuffman,
+        int compressionLevel,
+        PngEncoder.Filter pngFilter,
+        boolean lossless) {
+
+    /**
+     * Starting points trading encode time against output size
+     */
+    public enum Preset {
+        /** Baseline JPEG with stock tables; PNG with the SUB filter at deflate level 1 */
+        FAST(new EncodeOptions(0.75f, false, ChromaSubsampling.S420, false, 1, PngEncoder.Filter.SUB, false)),
+        /** Optimised Huffman tables; adaptive PNG filtering at level 6 */
+        BALANCED(new EncodeOptions(0.8f, false, ChromaSubsampling.S420, true, 6, PngEncoder.Filter.ADAPTIVE, false)),
+        /** Progressive JPEG; adaptive PNG filtering at level 9 */
+        SMALL(new EncodeOptions(0.75f, true, ChromaSubsampling.S420, true, 9, PngEncoder.Filter.ADAPTIVE, false));
+
+        private final EncodeOptions options;
+
+        Preset(EncodeOptions options) {
+            this.options = options;
+        }
+
+        public EncodeOptions options() {
+            return options;
+        }
+    }
+
+    /**
+     * JPEG chroma subsampling, as the luma sampling factors relative to Cb and Cr
+     */
+    public enum ChromaSubsampling {
+        S444(1, 1),
+        S422(2, 1),
+        S420(2, 2);
+
+        private final int horizontal;
+        private final int vertical;
+
+        ChromaSubsampling(int horizontal, int vertical) {
+            this.horizontal = horizontal;
+            this.vertical = vertical;
+        }
+
+        public int horizontal() {
+            return horizontal;
+        }
+
+        public int vertical() {
+            return vertical;
+        }
+
+        /**
+         * "444", "4:2:2", "s420", ... in any case
+         */
+        public static ChromaSubsampling parse(String value) {
+            String digits = value.trim().toUpperCase(Locale.ROOT).replace(":", "").replace("S", "");
+            for (ChromaSubsampling subsampling : values()) {
+                if (subsampling.name().substring(1).equals(digits)) {
+                    return subsampling;
+                }
+            }
+            throw new IllegalArgumentException("Unknown chroma subsampling: " + value);
+        }
+    }
+
+    public EncodeOptions {
+        if (!(quality >= 0 && quality <= 1)) {
+            throw new IllegalArgumentException("Quality must be between 0 and 1");
+        }
+        if (compressionLevel < 0 || compressionLevel > 9) {
+            throw new IllegalArgumentException("PNG compression level must be 0-9");
+        }
+        if (chromaSubsampling == null || pngFilter == null) {
+            throw new IllegalArgumentException("Chroma subsampling and PNG filter are required");
+        }
+    }
+
+    /**
+     * The same settings at another quality; null keeps this one
+     */
+    public EncodeOptions withQuality(Float quality) {
+        if (quality == null || quality == this.quality) {
+            return this;
+        }
+        return new EncodeOptions(quality, progressive, chromaSubsampling, optimizeHuffman, compressionLevel,
+                pngFilter, lossless);
+    }
+
+    /**
+     * The settings that affect output in {@code format}, for cache keys, e.g. "q=0.8,420,huffman"
+     */
+    public String describe(String format) {
+        switch (ImageEncoder.canonicalFormat(format)) {
+            case "jpg":
+                return "q=" + quality + "," + chromaSubsampling.name().substring(1)
+                        + (progressive ? ",progressive" : optimizeHuffman ? ",huffman" : "");
+            case "png":
+                return "level=" + compressionLevel + "," + pngFilter.name().toLowerCase(Locale.ROOT);
+            case "webp":
+                return lossless ? "lossless" : "q=" + quality;
+            default:
+                return "";
+        }
+    }
+}
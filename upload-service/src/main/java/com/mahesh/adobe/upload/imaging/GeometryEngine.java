@@ -0,0 +1,142 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Crops, rotations by multiples of 90 degrees and flips on decoded pixels: the fallback for
+ * sources the lossless JPEG path ({@link JpegCoefficients}) cannot rearrange in place.
+ *
+ * A {@link Rearrangement} is applied in one pass of square tiles, copying whole pixels
+ * straight between the backing arrays. A transpose reads columns of the source; within a
+ * tile those columns span only a few dozen source rows, which stay in cache, where a
+ * row-by-row transpose would touch a new cache line for every pixel.
+ */
+public class GeometryEngine {
+
+    private static final int TILE = 64;
+
+    private final ForkJoinPool pool;
+    private final RasterPool rasterPool;
+
+    public GeometryEngine(ForkJoinPool pool, RasterPool rasterPool) {
+        this.pool = pool;
+        this.rasterPool = rasterPool;
+    }
+
+    /**
+     * Crop and reorient into a new image from the raster pool, with the source's layout.
+     * The source is left untouched; an identity rearrangement returns it as is.
+     */
+    public BufferedImage rearrange(BufferedImage source, Rearrangement rearrangement) {
+        if (rearrangement.isIdentity()) {
+            return source;
+        }
+        if (source.getWidth() != rearrangement.sourceWidth() || source.getHeight() != rearrangement.sourceHeight()) {
+            throw new IllegalArgumentException("Rearrangement is for a " + rearrangement.sourceWidth() + "x"
+                    + rearrangement.sourceHeight() + " image, not " + source.getWidth() + "x" + source.getHeight());
+        }
+        BufferedImage src = rasterPool.toDirect(source);
+        int width = rearrangement.outputWidth();
+        int height = rearrangement.outputHeight();
+        BufferedImage dst = rasterPool.createCompatible(src, width, height);
+        Layout in = Layout.of(src.getRaster());
+        Layout out = Layout.of(dst.getRaster());
+
+        RowBands.run(pool, width, height, TILE, (y0, y1) -> {
+            for (int ty = y0; ty < y1; ty += TILE) {
+                int tileHeight = Math.min(TILE, y1 - ty);
+                for (int tx = 0; tx < width; tx += TILE) {
+                    copyTile(in, out, rearrangement, tx, ty, Math.min(TILE, width - tx), tileHeight);
+                }
+            }
+        });
+
+        if (src != source) {
+            rasterPool.release(src);
+        }
+        return dst;
+    }
+
+    /**
+     * Fill output tile (tx, ty, tileWidth, tileHeight) pixel by pixel from wherever the
+     * rearrangement takes each one from
+     */
+    private static void copyTile(Layout in, Layout out, Rearrangement rearrangement,
+                                 int tx, int ty, int tileWidth, int tileHeight) {
+        Orientation orientation = rearrangement.orientation();
+        boolean transpose = orientation.transposes();
+        int elements = in.pixelStride;
+        // Along an output row the source moves by one pixel, or by one row when transposed
+        int step = transpose ? in.scanlineStride : elements;
+        if (orientation.flipsHorizontally()) {
+            step = -step;
+        }
+        int fx = orientation.flipsHorizontally() ? rearrangement.outputWidth() - 1 - tx : tx;
+        for (int y = ty; y < ty + tileHeight; y++) {
+            int fy = orientation.flipsVertically() ? rearrangement.outputHeight() - 1 - y : y;
+            int sx = rearrangement.x() + (transpose ? fy : fx);
+            int sy = rearrangement.y() + (transpose ? fx : fy);
+            int s = in.offset(sx, sy);
+            int d = out.offset(tx, y);
+            if (in.ints != null) {
+                int[] source = in.ints;
+                int[] dest = out.ints;
+                for (int i = 0; i < tileWidth; i++, s += step) {
+                    dest[d + i] = source[s];
+                }
+            } else if (elements == 1) {
+                byte[] source = in.bytes;
+                byte[] dest = out.bytes;
+                for (int i = 0; i < tileWidth; i++, s += step) {
+                    dest[d + i] = source[s];
+                }
+            } else {
+                byte[] source = in.bytes;
+                byte[] dest = out.bytes;
+                for (int i = 0; i < tileWidth; i++, s += step, d += elements) {
+                    for (int e = 0; e < elements; e++) {
+                        dest[d + e] = source[s + e];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Where a directly addressable raster keeps each pixel: packed ints, or interleaved bytes
+     * copied as whole pixels whatever their band order
+     */
+    private record Layout(int[] ints, byte[] bytes, int base, int scanlineStride, int pixelStride) {
+
+        static Layout of(WritableRaster raster) {
+            DataBuffer buffer = raster.getDataBuffer();
+            if (raster.getSampleModel() instanceof SinglePixelPackedSampleModel packed) {
+                int stride = packed.getScanlineStride();
+                int base = buffer.getOffset() - raster.getSampleModelTranslateY() * stride
+                        - raster.getSampleModelTranslateX();
+                return new Layout(((DataBufferInt) buffer).getData(), null, base, stride, 1);
+            }
+            ComponentSampleModel component = (ComponentSampleModel) raster.getSampleModel();
+            int stride = component.getScanlineStride();
+            int pixelStride = component.getPixelStride();
+            int first = Integer.MAX_VALUE;
+            for (int offset : component.getBandOffsets()) {
+                first = Math.min(first, offset);
+            }
+            int base = buffer.getOffset() - raster.getSampleModelTranslateY() * stride
+                    - raster.getSampleModelTranslateX() * pixelStride + first;
+            return new Layout(null, ((DataBufferByte) buffer).getData(), base, stride, pixelStride);
+        }
+
+        int offset(int x, int y) {
+            return base + y * scanlineStride + x * pixelStride;
+        }
+    }
+}
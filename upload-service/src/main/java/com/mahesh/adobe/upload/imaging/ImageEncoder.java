@@ -0,0 +1,211 @@
+package com.mahesh.adobe.upload.imaging;
+
+import org.w3c.dom.NodeList;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Writes images as JPEG, PNG or WebP with explicit {@link EncodeOptions}.
+ *
+ * JPEG goes through the JDK writer with the quality, progressive, Huffman and chroma
+ * subsampling settings applied; PNG through {@link PngEncoder}. The JDK has no WebP
+ * writer, so WebP is only available when an ImageIO plugin that writes it is on the
+ * classpath (the build's {@code webp} profile adds one); {@link #isSupported} reflects
+ * that. Other formats fall back to plain {@link ImageIO#write}.
+ */
+public class ImageEncoder {
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private static final boolean WEBP_AVAILABLE = ImageIO.getImageWritersByFormatName("webp").hasNext();
+
+    private final RasterPool rasterPool;
+    private final EncodeOptions defaults;
+
+    public ImageEncoder(RasterPool rasterPool, EncodeOptions defaults) {
+        this.rasterPool = rasterPool;
+        this.defaults = defaults;
+    }
+
+    /**
+     * Options used when a caller does not pass any
+     */
+    public EncodeOptions defaults() {
+        return defaults;
+    }
+
+    /**
+     * "jpg" for "jpg" / "jpeg", otherwise the lower-cased name
+     */
+    public static String canonicalFormat(String format) {
+        String name = format.trim().toLowerCase(Locale.ROOT);
+        return name.equals("jpeg") ? "jpg" : name;
+    }
+
+    /**
+     * Output formats requests may ask for: jpg, png, and webp when a writer is installed
+     */
+    public static boolean isSupported(String format) {
+        switch (canonicalFormat(format)) {
+            case "jpg":
+            case "png":
+                return true;
+            case "webp":
+                return WEBP_AVAILABLE;
+            default:
+                return false;
+        }
+    }
+
+    public static boolean isWebpAvailable() {
+        return WEBP_AVAILABLE;
+    }
+
+    public static boolean supportsAlpha(String format) {
+        String name = canonicalFormat(format);
+        return name.equals("png") || name.equals("webp");
+    }
+
+    public static String contentType(String format) {
+        switch (canonicalFormat(format)) {
+            case "png":
+                return "image/png";
+            case "webp":
+                return "image/webp";
+            default:
+                return "image/jpeg";
+        }
+    }
+
+    /**
+     * Encode to {@code output}, which is left open. Bytes reach {@code output} while the
+     * encoder runs.
+     */
+    public void write(BufferedImage image, String format, EncodeOptions options, OutputStream output)
+            throws IOException {
+        switch (canonicalFormat(format)) {
+            case "jpg":
+                writeJpeg(image, options, output);
+                break;
+            case "png":
+                PngEncoder.write(image, output, options.compressionLevel(), options.pngFilter());
+                break;
+            case "webp":
+                writeWebp(image, options, output);
+                break;
+            default:
+                try (ImageOutputStream stream = StreamingImageOutputStream.open(format, output)) {
+                    if (!ImageIO.write(image, format, stream)) {
+                        throw new IOException("No image writer for format " + format);
+                    }
+                }
+        }
+    }
+
+    private void writeJpeg(BufferedImage image, EncodeOptions options, OutputStream output) throws IOException {
+        BufferedImage flattened = null;
+        // JPEG has no alpha channel; flatten instead of letting ImageIO silently write nothing
+        if (image.getColorModel().hasAlpha()) {
+            flattened = rasterPool.create(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2d = flattened.createGraphics();
+            g2d.drawImage(image, 0, 0, Color.WHITE, null);
+            g2d.dispose();
+        }
+        BufferedImage encoded = flattened != null ? flattened : image;
+        ImageWriter writer = writer("jpg");
+        // In-memory stream cache; ImageIO.write(.., OutputStream) would spool through a temp file
+        try (ImageOutputStream stream = StreamingImageOutputStream.open("jpg", output)) {
+            JPEGImageWriteParam param = (JPEGImageWriteParam) writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(options.quality());
+            if (options.progressive()) {
+                param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+            param.setOptimizeHuffmanTables(options.optimizeHuffman());
+            IIOMetadata metadata = null;
+            if (encoded.getColorModel().getNumColorComponents() == 3
+                    && options.chromaSubsampling() != EncodeOptions.ChromaSubsampling.S420) {
+                metadata = writer.getDefaultImageMetadata(ImageTypeSpecifier.createFromRenderedImage(encoded), param);
+                setLumaSampling(metadata, options.chromaSubsampling());
+            }
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(encoded, null, metadata), param);
+        } finally {
+            writer.dispose();
+            rasterPool.release(flattened);
+        }
+    }
+
+    /**
+     * The writer's default is 4:2:0 (luma sampled 2x2 against each chroma sample); other
+     * ratios are set on the SOF component specs of the image metadata
+     */
+    private static void setLumaSampling(IIOMetadata metadata, EncodeOptions.ChromaSubsampling subsampling)
+            throws IOException {
+        IIOMetadataNode tree = (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA_FORMAT);
+        NodeList components = tree.getElementsByTagName("componentSpec");
+        for (int i = 0; i < components.getLength(); i++) {
+            IIOMetadataNode component = (IIOMetadataNode) components.item(i);
+            boolean luma = i == 0;
+            component.setAttribute("HsamplingFactor", String.valueOf(luma ? subsampling.horizontal() : 1));
+            component.setAttribute("VsamplingFactor", String.valueOf(luma ? subsampling.vertical() : 1));
+        }
+        metadata.setFromTree(JPEG_METADATA_FORMAT, tree);
+    }
+
+    private static void writeWebp(BufferedImage image, EncodeOptions options, OutputStream output)
+            throws IOException {
+        ImageWriter writer = writer("webp");
+        try (ImageOutputStream stream = StreamingImageOutputStream.open("webp", output)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                String type = compressionType(param.getCompressionTypes(), options.lossless() ? "lossless" : "lossy");
+                if (type != null) {
+                    param.setCompressionType(type);
+                }
+                if (!options.lossless()) {
+                    param.setCompressionQuality(options.quality());
+                }
+            }
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private static String compressionType(String[] types, String wanted) {
+        if (types == null || types.length == 0) {
+            return null;
+        }
+        for (String type : types) {
+            if (type.equalsIgnoreCase(wanted)) {
+                return type;
+            }
+        }
+        return types[0];
+    }
+
+    private static ImageWriter writer(String format) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+        if (!writers.hasNext()) {
+            throw new IOException("No image writer for format " + format);
+        }
+        return writers.next();
+    }
+}
@@ -0,0 +1,1172 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A sequential Huffman-coded JPEG held as its quantized DCT coefficients, for crops,
+ * rotations by multiples of 90 degrees and flips without a decode / encode round trip.
+ *
+ * As in jpegtran, blocks are moved rather than pixels: a transpose transposes each block's
+ * coefficients, and mirroring a block negates its odd horizontal or vertical frequencies.
+ * Nothing is dequantized or rounded, so the result has exactly the quality of the source,
+ * and entropy coding both ways is several times cheaper than an IDCT, colour conversion
+ * and forward DCT. Huffman tables are rebuilt for the new data, so the output is usually a
+ * little smaller than the input.
+ *
+ * Only MCU-aligned work is lossless: a crop has to start on an MCU boundary, and a flip
+ * needs the mirrored axis to be a whole number of MCUs, since the partial MCU at the far
+ * edge would otherwise land at the near one. {@link #canRearrange} says whether that holds;
+ * callers fall back to pixels ({@link GeometryEngine}) when it does not, and for
+ * progressive, arithmetic-coded, 12-bit and multi-scan files, which {@link #read} declines.
+ *
+ * APPn and COM segments are carried over unchanged, apart from an optional reset of the
+ * EXIF orientation tag; restart markers are dropped.
+ */
+public final class JpegCoefficients {
+
+    /** Natural (row-major) position of each zigzag index */
+    private static final int[] NATURAL_ORDER = {
+        0, 1, 8, 16, 9, 2, 3, 10,
+        17, 24, 32, 25, 18, 11, 4, 5,
+        12, 19, 26, 33, 40, 48, 41, 34,
+        27, 20, 13, 6, 7, 14, 21, 28,
+        35, 42, 49, 56, 57, 50, 43, 36,
+        29, 22, 15, 23, 30, 37, 44, 51,
+        58, 59, 52, 45, 38, 31, 39, 46,
+        53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    /** Zigzag index of each natural position */
+    private static final int[] ZIGZAG_ORDER = new int[64];
+
+    static {
+        for (int k = 0; k < 64; k++) {
+            ZIGZAG_ORDER[NATURAL_ORDER[k]] = k;
+        }
+    }
+
+    private static final int SOF0 = 0xC0;
+    private static final int SOF1 = 0xC1;
+    private static final int DHT = 0xC4;
+    private static final int DAC = 0xCC;
+    private static final int RST0 = 0xD0;
+    private static final int SOI = 0xD8;
+    private static final int EOI = 0xD9;
+    private static final int SOS = 0xDA;
+    private static final int DQT = 0xDB;
+    private static final int DRI = 0xDD;
+    private static final int APP0 = 0xE0;
+    private static final int APP1 = 0xE1;
+    private static final int APP15 = 0xEF;
+    private static final int COM = 0xFE;
+
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    private final int frameMarker;
+    private final int width;
+    private final int height;
+    private final Component[] components;
+    private final int[][] quantTables;
+    private final boolean[] quantPrecision16;
+    /** APPn and COM segments, marker and length included, in file order */
+    private final List<byte[]> segments;
+
+    private static final class Component {
+
+        final int id;
+        final int h;
+        final int v;
+        final int quantTable;
+        final int blocksWide;
+        final int blocksHigh;
+        /** 64 coefficients per block in zigzag order, blocks in raster order */
+        final short[] coefficients;
+
+        Component(int id, int h, int v, int quantTable, int blocksWide, int blocksHigh) {
+            this.id = id;
+            this.h = h;
+            this.v = v;
+            this.quantTable = quantTable;
+            this.blocksWide = blocksWide;
+            this.blocksHigh = blocksHigh;
+            this.coefficients = new short[blocksWide * blocksHigh * 64];
+        }
+    }
+
+    private JpegCoefficients(int frameMarker, int width, int height, Component[] components,
+                             int[][] quantTables, boolean[] quantPrecision16, List<byte[]> segments) {
+        this.frameMarker = frameMarker;
+        this.width = width;
+        this.height = height;
+        this.components = components;
+        this.quantTables = quantTables;
+        this.quantPrecision16 = quantPrecision16;
+        this.segments = segments;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Parse {@code data[0..length)} and decode its entropy-coded coefficients
+     *
+     * @return null for files this class does not handle: progressive, arithmetic-coded,
+     *         lossless or hierarchical, more than 8 bits per sample, or split into several scans
+     * @throws IOException when the data is not a JPEG or is truncated or corrupt
+     */
+    public static JpegCoefficients read(byte[] data, int length) throws IOException {
+        if (length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != SOI) {
+            throw new IOException("Not a JPEG file");
+        }
+        List<byte[]> segments = new ArrayList<>();
+        int[][] quantTables = new int[4][];
+        boolean[] quantPrecision16 = new boolean[4];
+        HuffmanDecoder[] dcTables = new HuffmanDecoder[4];
+        HuffmanDecoder[] acTables = new HuffmanDecoder[4];
+        int restartInterval = 0;
+        int frameMarker = 0;
+        int width = 0;
+        int height = 0;
+        int[][] frame = null;
+        int pos = 2;
+
+        while (true) {
+            pos = nextMarker(data, pos, length);
+            if (pos + 4 > length) {
+                throw new IOException("Truncated JPEG");
+            }
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == EOI) {
+                throw new IOException("JPEG without image data");
+            }
+            int segmentLength = readShort(data, pos + 2);
+            int start = pos + 4;
+            int end = pos + 2 + segmentLength;
+            if (segmentLength < 2 || end > length) {
+                throw new IOException("Truncated JPEG");
+            }
+
+            if (marker == SOF0 || marker == SOF1) {
+                if (frame != null || segmentLength < 8 || (data[start] & 0xFF) != 8) {
+                    return null;
+                }
+                frameMarker = marker;
+                height = readShort(data, start + 1);
+                width = readShort(data, start + 3);
+                int count = data[start + 5] & 0xFF;
+                if (height == 0 || width == 0 || count < 1 || count > 4 || segmentLength < 8 + 3 * count) {
+                    return null;
+                }
+                frame = new int[count][];
+                for (int c = 0; c < count; c++) {
+                    int offset = start + 6 + 3 * c;
+                    int sampling = data[offset + 1] & 0xFF;
+                    int h = sampling >> 4;
+                    int v = sampling & 15;
+                    int table = data[offset + 2] & 0xFF;
+                    if (h < 1 || h > 4 || v < 1 || v > 4 || table > 3) {
+                        throw new IOException("Corrupt JPEG frame header");
+                    }
+                    frame[c] = new int[] {data[offset] & 0xFF, h, v, table};
+                }
+            } else if ((marker >= 0xC2 && marker <= 0xCF && marker != DHT) || marker == DAC) {
+                // Progressive, lossless, hierarchical or arithmetic-coded
+                return null;
+            } else if (marker == DHT) {
+                int offset = start;
+                while (offset < end) {
+                    if (offset + 17 > end) {
+                        throw new IOException("Corrupt JPEG Huffman table");
+                    }
+                    int classAndId = data[offset] & 0xFF;
+                    int[] bits = new int[17];
+                    int total = 0;
+                    for (int i = 1; i <= 16; i++) {
+                        bits[i] = data[offset + i] & 0xFF;
+                        total += bits[i];
+                    }
+                    if ((classAndId & 15) > 3 || total > 256 || offset + 17 + total > end) {
+                        throw new IOException("Corrupt JPEG Huffman table");
+                    }
+                    byte[] values = Arrays.copyOfRange(data, offset + 17, offset + 17 + total);
+                    HuffmanDecoder table = new HuffmanDecoder(bits, values);
+                    if ((classAndId >> 4) == 0) {
+                        dcTables[classAndId & 15] = table;
+                    } else {
+                        acTables[classAndId & 15] = table;
+                    }
+                    offset += 17 + total;
+                }
+            } else if (marker == DQT) {
+                int offset = start;
+                while (offset < end) {
+                    int precisionAndId = data[offset] & 0xFF;
+                    int id = precisionAndId & 15;
+                    boolean wide = (precisionAndId >> 4) != 0;
+                    if (id > 3 || offset + 1 + (wide ? 128 : 64) > end) {
+                        throw new IOException("Corrupt JPEG quantization table");
+                    }
+                    int[] table = new int[64];
+                    for (int k = 0; k < 64; k++) {
+                        table[k] = wide ? readShort(data, offset + 1 + 2 * k) : data[offset + 1 + k] & 0xFF;
+                    }
+                    quantTables[id] = table;
+                    quantPrecision16[id] = wide;
+                    offset += 1 + (wide ? 128 : 64);
+                }
+            } else if (marker == DRI) {
+                restartInterval = readShort(data, start);
+            } else if ((marker >= APP0 && marker <= APP15) || marker == COM) {
+                segments.add(Arrays.copyOfRange(data, pos, end));
+            } else if (marker == SOS) {
+                if (frame == null) {
+                    throw new IOException("JPEG scan before frame header");
+                }
+                int count = data[start] & 0xFF;
+                if (count != frame.length || (data[start + 1 + 2 * count] & 0xFF) != 0
+                        || (data[start + 2 + 2 * count] & 0xFF) != 63) {
+                    // A scan per component, or a spectral selection only progressive files use
+                    return null;
+                }
+                JpegCoefficients jpeg = create(frameMarker, width, height, frame, quantTables, quantPrecision16,
+                        segments);
+                if (jpeg == null) {
+                    return null;
+                }
+                HuffmanDecoder[] dc = new HuffmanDecoder[count];
+                HuffmanDecoder[] ac = new HuffmanDecoder[count];
+                for (int i = 0; i < count; i++) {
+                    int id = data[start + 1 + 2 * i] & 0xFF;
+                    int selectors = data[start + 2 + 2 * i] & 0xFF;
+                    if (jpeg.components[i].id != id) {
+                        return null;
+                    }
+                    dc[i] = dcTables[selectors >> 4 & 3];
+                    ac[i] = acTables[selectors & 3];
+                    if (dc[i] == null || ac[i] == null) {
+                        throw new IOException("JPEG scan uses an undefined Huffman table");
+                    }
+                }
+                int scanEnd = jpeg.decodeScan(data, end, length, dc, ac, restartInterval);
+                // Anything but EOI after the scan means more scans, which are not handled here
+                int next = nextMarker(data, scanEnd, length);
+                if (next + 1 < length && (data[next + 1] & 0xFF) != EOI) {
+                    return null;
+                }
+                return jpeg;
+            }
+            pos = end;
+        }
+    }
+
+    /**
+     * Empty coefficient planes for a frame; null when they would not fit in arrays
+     */
+    private static JpegCoefficients create(int frameMarker, int width, int height, int[][] frame,
+                                           int[][] quantTables, boolean[] quantPrecision16,
+                                           List<byte[]> segments) throws IOException {
+        Component[] components = new Component[frame.length];
+        int hMax = 1;
+        int vMax = 1;
+        for (int[] component : frame) {
+            hMax = Math.max(hMax, component[1]);
+            vMax = Math.max(vMax, component[2]);
+        }
+        // Coefficients of the largest component must fit one array
+        if ((long) ceilDiv(width, 8 * hMax) * hMax * ceilDiv(height, 8 * vMax) * vMax * 64 > Integer.MAX_VALUE - 8) {
+            return null;
+        }
+        for (int c = 0; c < frame.length; c++) {
+            int[] component = frame[c];
+            if (quantTables[component[3]] == null) {
+                throw new IOException("JPEG component uses an undefined quantization table");
+            }
+            if (frame.length == 1) {
+                // A lone component is coded without MCU padding, whatever its sampling factors say
+                components[c] = new Component(component[0], 1, 1, component[3], ceilDiv(width, 8),
+                        ceilDiv(height, 8));
+            } else {
+                components[c] = new Component(component[0], component[1], component[2], component[3],
+                        ceilDiv(width, 8 * hMax) * component[1], ceilDiv(height, 8 * vMax) * component[2]);
+            }
+        }
+        return new JpegCoefficients(frameMarker, width, height, components, quantTables, quantPrecision16,
+                segments);
+    }
+
+    /**
+     * Whether {@link #rearrange} can apply {@code rearrangement} to this image losslessly
+     */
+    public boolean canRearrange(Rearrangement rearrangement) {
+        if (rearrangement.sourceWidth() != width || rearrangement.sourceHeight() != height) {
+            return false;
+        }
+        int mcuWidth = mcuWidth();
+        int mcuHeight = mcuHeight();
+        if (rearrangement.x() % mcuWidth != 0 || rearrangement.y() % mcuHeight != 0) {
+            return false;
+        }
+        Orientation orientation = rearrangement.orientation();
+        // A flip mirrors the output's x or y axis, which is the source's y or x axis after a transpose
+        boolean mirrorsX = orientation.transposes() ? orientation.flipsVertically() : orientation.flipsHorizontally();
+        boolean mirrorsY = orientation.transposes() ? orientation.flipsHorizontally() : orientation.flipsVertically();
+        return (!mirrorsX || rearrangement.width() % mcuWidth == 0)
+                && (!mirrorsY || rearrangement.height() % mcuHeight == 0);
+    }
+
+    /**
+     * Crop and reorient by moving DCT blocks
+     *
+     * @throws IllegalArgumentException when {@link #canRearrange} is false
+     */
+    public JpegCoefficients rearrange(Rearrangement rearrangement) {
+        if (!canRearrange(rearrangement)) {
+            throw new IllegalArgumentException("Rearrangement is not MCU-aligned for this image");
+        }
+        Orientation orientation = rearrangement.orientation();
+        boolean transpose = orientation.transposes();
+        boolean flipHorizontal = orientation.flipsHorizontally();
+        boolean flipVertical = orientation.flipsVertically();
+        int[] source = new int[64];
+        boolean[] negate = new boolean[64];
+        for (int k = 0; k < 64; k++) {
+            int row = NATURAL_ORDER[k] >> 3;
+            int column = NATURAL_ORDER[k] & 7;
+            source[k] = transpose ? ZIGZAG_ORDER[column * 8 + row] : k;
+            // Mirroring a block flips the sign of its odd frequencies along that axis
+            negate[k] = (flipHorizontal && (column & 1) != 0) ^ (flipVertical && (row & 1) != 0);
+        }
+
+        int mcuColumns = rearrangement.x() / mcuWidth();
+        int mcuRows = rearrangement.y() / mcuHeight();
+        int outputWidth = rearrangement.outputWidth();
+        int outputHeight = rearrangement.outputHeight();
+        Component[] rearranged = new Component[components.length];
+        for (int c = 0; c < components.length; c++) {
+            Component in = components[c];
+            // Blocks of the crop, which is all of the output in the source's orientation
+            int cropWide;
+            int cropHigh;
+            if (components.length == 1) {
+                cropWide = ceilDiv(rearrangement.width(), 8);
+                cropHigh = ceilDiv(rearrangement.height(), 8);
+            } else {
+                cropWide = ceilDiv(rearrangement.width(), mcuWidth()) * in.h;
+                cropHigh = ceilDiv(rearrangement.height(), mcuHeight()) * in.v;
+            }
+            int blocksWide = transpose ? cropHigh : cropWide;
+            int blocksHigh = transpose ? cropWide : cropHigh;
+            Component out = new Component(in.id, transpose ? in.v : in.h, transpose ? in.h : in.v, in.quantTable,
+                    blocksWide, blocksHigh);
+            int left = mcuColumns * in.h;
+            int top = mcuRows * in.v;
+            for (int by = 0; by < blocksHigh; by++) {
+                int fy = flipVertical ? blocksHigh - 1 - by : by;
+                for (int bx = 0; bx < blocksWide; bx++) {
+                    int fx = flipHorizontal ? blocksWide - 1 - bx : bx;
+                    int sx = left + (transpose ? fy : fx);
+                    int sy = top + (transpose ? fx : fy);
+                    int from = (sy * in.blocksWide + sx) * 64;
+                    int to = (by * blocksWide + bx) * 64;
+                    for (int k = 0; k < 64; k++) {
+                        short value = in.coefficients[from + source[k]];
+                        out.coefficients[to + k] = negate[k] ? (short) -value : value;
+                    }
+                }
+            }
+            rearranged[c] = out;
+        }
+
+        int[][] tables = quantTables;
+        if (transpose) {
+            tables = new int[4][];
+            for (int t = 0; t < 4; t++) {
+                if (quantTables[t] != null) {
+                    tables[t] = new int[64];
+                    for (int k = 0; k < 64; k++) {
+                        tables[t][k] = quantTables[t][source[k]];
+                    }
+                }
+            }
+        }
+        return new JpegCoefficients(frameMarker, outputWidth, outputHeight, rearranged, tables, quantPrecision16,
+                new ArrayList<>(segments));
+    }
+
+    /**
+     * Set the EXIF orientation tag, if there is one, to 1 (upright), for output that is to be
+     * shown the way its blocks are stored
+     */
+    public void resetOrientation() {
+        for (byte[] segment : segments) {
+            resetExifOrientation(segment, 0, segment.length);
+        }
+    }
+
+    /**
+     * Write the image as a baseline (or extended sequential) JPEG with Huffman tables
+     * optimised for its coefficients
+     */
+    public void write(OutputStream output) throws IOException {
+        // Luma gets the first pair of tables, chroma (and any fourth component) the second
+        int tableCount = components.length == 1 ? 1 : 2;
+        long[][] dcFrequencies = new long[tableCount][257];
+        long[][] acFrequencies = new long[tableCount][257];
+        EntropyWriter counter = new EntropyWriter(null, dcFrequencies, acFrequencies);
+        encodeScan(counter);
+        HuffmanEncoder[] dc = new HuffmanEncoder[tableCount];
+        HuffmanEncoder[] ac = new HuffmanEncoder[tableCount];
+        for (int t = 0; t < tableCount; t++) {
+            dc[t] = HuffmanEncoder.optimal(dcFrequencies[t]);
+            ac[t] = HuffmanEncoder.optimal(acFrequencies[t]);
+        }
+
+        ByteSink sink = new ByteSink(output);
+        sink.marker(SOI);
+        for (byte[] segment : segments) {
+            sink.write(segment, 0, segment.length);
+        }
+        for (int t = 0; t < 4; t++) {
+            if (quantTables[t] == null || !isQuantTableUsed(t)) {
+                continue;
+            }
+            boolean wide = quantPrecision16[t];
+            sink.marker(DQT);
+            sink.writeShort(2 + 1 + (wide ? 128 : 64));
+            sink.write((wide ? 0x10 : 0) | t);
+            for (int k = 0; k < 64; k++) {
+                if (wide) {
+                    sink.writeShort(quantTables[t][k]);
+                } else {
+                    sink.write(quantTables[t][k]);
+                }
+            }
+        }
+        sink.marker(frameMarker);
+        sink.writeShort(8 + 3 * components.length);
+        sink.write(8);
+        sink.writeShort(height);
+        sink.writeShort(width);
+        sink.write(components.length);
+        for (Component component : components) {
+            sink.write(component.id);
+            sink.write(component.h << 4 | component.v);
+            sink.write(component.quantTable);
+        }
+        for (int t = 0; t < tableCount; t++) {
+            dc[t].writeTable(sink, t);
+            ac[t].writeTable(sink, 0x10 | t);
+        }
+        sink.marker(SOS);
+        sink.writeShort(6 + 2 * components.length);
+        sink.write(components.length);
+        for (int c = 0; c < components.length; c++) {
+            int table = Math.min(c, 1);
+            sink.write(components[c].id);
+            sink.write(table << 4 | table);
+        }
+        sink.write(0);
+        sink.write(63);
+        sink.write(0);
+        encodeScan(new EntropyWriter(sink, dc, ac));
+        sink.marker(EOI);
+        sink.flush();
+    }
+
+    /**
+     * Copy of a JPEG file with its EXIF orientation tag set to 1; null when it has no such
+     * tag, or the tag is 1 already
+     */
+    public static byte[] withOrientationReset(byte[] data, int length) {
+        int pos = 2;
+        while (pos + 4 <= length && (data[pos] & 0xFF) == 0xFF) {
+            int marker = data[pos + 1] & 0xFF;
+            if (marker == SOS || marker == EOI) {
+                break;
+            }
+            int end = pos + 2 + readShort(data, pos + 2);
+            if (marker == APP1 && end <= length) {
+                byte[] copy = Arrays.copyOf(data, length);
+                if (resetExifOrientation(copy, pos, end - pos)) {
+                    return copy;
+                }
+            }
+            pos = end;
+        }
+        return null;
+    }
+
+    private int mcuWidth() {
+        int hMax = 1;
+        for (Component component : components) {
+            hMax = Math.max(hMax, component.h);
+        }
+        return 8 * hMax;
+    }
+
+    private int mcuHeight() {
+        int vMax = 1;
+        for (Component component : components) {
+            vMax = Math.max(vMax, component.v);
+        }
+        return 8 * vMax;
+    }
+
+    private boolean isQuantTableUsed(int table) {
+        for (Component component : components) {
+            if (component.quantTable == table) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decode one scan's entropy-coded data, starting at {@code pos}; returns the position after it
+     */
+    private int decodeScan(byte[] data, int pos, int length, HuffmanDecoder[] dc, HuffmanDecoder[] ac,
+                           int restartInterval) throws IOException {
+        BitReader bits = new BitReader(data, pos, length);
+        int[] predictions = new int[components.length];
+        int units = 0;
+        if (components.length == 1) {
+            Component component = components[0];
+            int blocks = component.blocksWide * component.blocksHigh;
+            for (int block = 0; block < blocks; block++) {
+                if (restartInterval > 0 && units > 0 && units % restartInterval == 0) {
+                    bits.restart();
+                    predictions[0] = 0;
+                }
+                predictions[0] = decodeBlock(bits, dc[0], ac[0], component.coefficients, block * 64, predictions[0]);
+                units++;
+            }
+            return bits.position();
+        }
+        int mcusWide = components[0].blocksWide / components[0].h;
+        int mcusHigh = components[0].blocksHigh / components[0].v;
+        for (int my = 0; my < mcusHigh; my++) {
+            for (int mx = 0; mx < mcusWide; mx++) {
+                if (restartInterval > 0 && units > 0 && units % restartInterval == 0) {
+                    bits.restart();
+                    Arrays.fill(predictions, 0);
+                }
+                for (int c = 0; c < components.length; c++) {
+                    Component component = components[c];
+                    for (int v = 0; v < component.v; v++) {
+                        int row = (my * component.v + v) * component.blocksWide + mx * component.h;
+                        for (int h = 0; h < component.h; h++) {
+                            predictions[c] = decodeBlock(bits, dc[c], ac[c], component.coefficients,
+                                    (row + h) * 64, predictions[c]);
+                        }
+                    }
+                }
+                units++;
+            }
+        }
+        return bits.position();
+    }
+
+    private static int decodeBlock(BitReader bits, HuffmanDecoder dc, HuffmanDecoder ac, short[] coefficients,
+                                   int base, int prediction) throws IOException {
+        int size = dc.decode(bits);
+        if (size > 11) {
+            throw new IOException("Corrupt JPEG data");
+        }
+        int value = prediction + (size == 0 ? 0 : extend(bits.read(size), size));
+        coefficients[base] = (short) value;
+        for (int k = 1; k < 64; k++) {
+            int symbol = ac.decode(bits);
+            int run = symbol >> 4;
+            size = symbol & 15;
+            if (size == 0) {
+                if (run != 15) {
+                    break;
+                }
+                k += 15;
+                continue;
+            }
+            k += run;
+            if (k > 63) {
+                throw new IOException("Corrupt JPEG data");
+            }
+            coefficients[base + k] = (short) extend(bits.read(size), size);
+        }
+        return value;
+    }
+
+    private void encodeScan(EntropyWriter writer) throws IOException {
+        int[] predictions = new int[components.length];
+        if (components.length == 1) {
+            Component component = components[0];
+            int blocks = component.blocksWide * component.blocksHigh;
+            for (int block = 0; block < blocks; block++) {
+                predictions[0] = writer.block(component.coefficients, block * 64, predictions[0], 0);
+            }
+        } else {
+            int mcusWide = components[0].blocksWide / components[0].h;
+            int mcusHigh = components[0].blocksHigh / components[0].v;
+            for (int my = 0; my < mcusHigh; my++) {
+                for (int mx = 0; mx < mcusWide; mx++) {
+                    for (int c = 0; c < components.length; c++) {
+                        Component component = components[c];
+                        for (int v = 0; v < component.v; v++) {
+                            int row = (my * component.v + v) * component.blocksWide + mx * component.h;
+                            for (int h = 0; h < component.h; h++) {
+                                predictions[c] = writer.block(component.coefficients, (row + h) * 64,
+                                        predictions[c], Math.min(c, 1));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        writer.finish();
+    }
+
+    /**
+     * Value of a {@code size}-bit magnitude category code (F.2.2.1)
+     */
+    private static int extend(int bits, int size) {
+        return bits < 1 << (size - 1) ? bits - (1 << size) + 1 : bits;
+    }
+
+    /**
+     * Offset of the first marker at or after {@code pos}, skipping fill bytes and entropy-coded data
+     */
+    private static int nextMarker(byte[] data, int pos, int length) {
+        while (pos + 1 < length) {
+            if ((data[pos] & 0xFF) == 0xFF) {
+                int next = data[pos + 1] & 0xFF;
+                if (next != 0 && next != 0xFF && (next < RST0 || next > RST0 + 7)) {
+                    return pos;
+                }
+                pos += next == 0xFF ? 1 : 2;
+            } else {
+                pos++;
+            }
+        }
+        return length;
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    }
+
+    /**
+     * Set the orientation tag in IFD0 of an APP1 Exif segment ({@code data[offset..offset+length)},
+     * marker included) to 1; returns whether it held anything else
+     */
+    private static boolean resetExifOrientation(byte[] data, int offset, int length) {
+        int tiff = offset + 10;
+        int end = offset + length;
+        if (length < 18 || (data[offset + 1] & 0xFF) != APP1 || data[offset + 4] != 'E' || data[offset + 5] != 'x'
+                || data[offset + 6] != 'i' || data[offset + 7] != 'f') {
+            return false;
+        }
+        boolean littleEndian = data[tiff] == 'I';
+        long ifd = tiff + readTiffInt(data, tiff + 4, littleEndian);
+        if (ifd < tiff || ifd + 2 > end) {
+            return false;
+        }
+        int entries = readTiffShort(data, (int) ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + 12 * i;
+            if (entry + 12 > end) {
+                return false;
+            }
+            if (readTiffShort(data, entry, littleEndian) == EXIF_ORIENTATION_TAG) {
+                // SHORT value, left-justified in the 4-byte value field
+                int value = entry + 8;
+                if (readTiffShort(data, value, littleEndian) == 1) {
+                    return false;
+                }
+                data[value] = (byte) (littleEndian ? 1 : 0);
+                data[value + 1] = (byte) (littleEndian ? 0 : 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int readTiffShort(byte[] data, int offset, boolean littleEndian) {
+        int a = data[offset] & 0xFF;
+        int b = data[offset + 1] & 0xFF;
+        return littleEndian ? b << 8 | a : a << 8 | b;
+    }
+
+    private static long readTiffInt(byte[] data, int offset, boolean littleEndian) {
+        long high = readTiffShort(data, littleEndian ? offset + 2 : offset, littleEndian);
+        long low = readTiffShort(data, littleEndian ? offset : offset + 2, littleEndian);
+        return high << 16 | low;
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    /**
+     * Entropy-coded data with byte stuffing undone; past a marker it reads zeros, as
+     * decoders conventionally do with truncated scans
+     */
+    private static final class BitReader {
+
+        private final byte[] data;
+        private final int end;
+        private int pos;
+        /** Unread bits, most significant first */
+        private long buffer;
+        private int count;
+        private boolean atMarker;
+
+        BitReader(byte[] data, int pos, int end) {
+            this.data = data;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        int peek(int n) {
+            if (count < n) {
+                fill();
+            }
+            return (int) (buffer >>> (64 - n));
+        }
+
+        void skip(int n) {
+            buffer <<= n;
+            count -= n;
+        }
+
+        int read(int n) {
+            int value = peek(n);
+            skip(n);
+            return value;
+        }
+
+        /**
+         * Drop the padding bits before a restart marker and step over it
+         */
+        void restart() {
+            buffer = 0;
+            count = 0;
+            while (pos + 1 < end && ((data[pos] & 0xFF) != 0xFF || data[pos + 1] == 0 || data[pos + 1] == -1)) {
+                pos++;
+            }
+            int marker = pos + 1 < end ? data[pos + 1] & 0xFF : 0;
+            atMarker = marker < RST0 || marker > RST0 + 7;
+            if (!atMarker) {
+                pos += 2;
+            }
+        }
+
+        /**
+         * Offset just past the bytes consumed so far
+         */
+        int position() {
+            return pos;
+        }
+
+        private void fill() {
+            while (count <= 56) {
+                int b = 0;
+                if (!atMarker && pos < end) {
+                    b = data[pos] & 0xFF;
+                    if (b == 0xFF) {
+                        int next = pos + 1 < end ? data[pos + 1] & 0xFF : 0;
+                        if (next == 0) {
+                            pos += 2;
+                        } else {
+                            atMarker = true;
+                            b = 0;
+                        }
+                    } else {
+                        pos++;
+                    }
+                }
+                buffer |= (long) b << (56 - count);
+                count += 8;
+            }
+        }
+    }
+
+    /**
+     * Canonical Huffman decoding (Annex F.2.2.3) with a lookup table for codes of up to
+     * {@link #LOOKAHEAD} bits, which cover nearly every symbol in practice
+     */
+    private static final class HuffmanDecoder {
+
+        private static final int LOOKAHEAD = 9;
+
+        /** (code length << 8) | symbol, indexed by the next LOOKAHEAD bits; 0 for longer codes */
+        private final int[] lookup = new int[1 << LOOKAHEAD];
+        private final int[] maxCode = new int[18];
+        private final int[] valueOffset = new int[18];
+        private final byte[] values;
+
+        HuffmanDecoder(int[] bits, byte[] values) throws IOException {
+            this.values = values;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                valueOffset[length] = k - code;
+                if (code + bits[length] > 1 << length) {
+                    throw new IOException("Corrupt JPEG Huffman table");
+                }
+                for (int i = 0; i < bits[length]; i++, k++, code++) {
+                    if (length <= LOOKAHEAD) {
+                        int shift = LOOKAHEAD - length;
+                        int first = code << shift;
+                        Arrays.fill(lookup, first, first + (1 << shift), length << 8 | (values[k] & 0xFF));
+                    }
+                }
+                maxCode[length] = bits[length] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+            maxCode[17] = Integer.MAX_VALUE;
+        }
+
+        int decode(BitReader bits) throws IOException {
+            int entry = lookup[bits.peek(LOOKAHEAD)];
+            if (entry != 0) {
+                bits.skip(entry >> 8);
+                return entry & 0xFF;
+            }
+            int code = bits.read(LOOKAHEAD);
+            int length = LOOKAHEAD;
+            while (code > maxCode[length]) {
+                code = code << 1 | bits.read(1);
+                length++;
+                if (length > 16) {
+                    throw new IOException("Corrupt JPEG data");
+                }
+            }
+            int index = valueOffset[length] + code;
+            if (index < 0 || index >= values.length) {
+                throw new IOException("Corrupt JPEG data");
+            }
+            return values[index] & 0xFF;
+        }
+    }
+
+    /**
+     * Huffman code built from symbol frequencies as in Annex K.2, limited to 16 bits
+     */
+    private static final class HuffmanEncoder {
+
+        private final int[] bits;
+        private final int[] values;
+        private final int[] codes = new int[256];
+        private final int[] lengths = new int[256];
+
+        private HuffmanEncoder(int[] bits, int[] values) {
+            this.bits = bits;
+            this.values = values;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < bits[length]; i++, k++, code++) {
+                    codes[values[k]] = code;
+                    lengths[values[k]] = length;
+                }
+                code <<= 1;
+            }
+        }
+
+        /**
+         * @param frequencies occurrences of each symbol; index 256 is scratch for the reserved code point
+         */
+        static HuffmanEncoder optimal(long[] frequencies) {
+            long[] frequency = frequencies.clone();
+            int[] codeSize = new int[257];
+            int[] others = new int[257];
+            Arrays.fill(others, -1);
+            // One reserved point keeps any code from being all 1-bits
+            frequency[256] = 1;
+            while (true) {
+                // The least frequent symbol, preferring the highest value on ties, then the next least
+                int c1 = -1;
+                long least = Long.MAX_VALUE;
+                for (int i = 0; i <= 256; i++) {
+                    if (frequency[i] > 0 && frequency[i] <= least) {
+                        least = frequency[i];
+                        c1 = i;
+                    }
+                }
+                int c2 = -1;
+                least = Long.MAX_VALUE;
+                for (int i = 0; i <= 256; i++) {
+                    if (frequency[i] > 0 && frequency[i] <= least && i != c1) {
+                        least = frequency[i];
+                        c2 = i;
+                    }
+                }
+                if (c2 < 0) {
+                    break;
+                }
+                frequency[c1] += frequency[c2];
+                frequency[c2] = 0;
+                codeSize[c1]++;
+                while (others[c1] >= 0) {
+                    c1 = others[c1];
+                    codeSize[c1]++;
+                }
+                others[c1] = c2;
+                codeSize[c2]++;
+                while (others[c2] >= 0) {
+                    c2 = others[c2];
+                    codeSize[c2]++;
+                }
+            }
+
+            int[] count = new int[258];
+            for (int i = 0; i <= 256; i++) {
+                if (codeSize[i] > 0) {
+                    count[codeSize[i]]++;
+                }
+            }
+            // Move symbols deeper than 16 bits up the tree (K.3)
+            for (int i = count.length - 1; i > 16; i--) {
+                while (count[i] > 0) {
+                    int j = i - 2;
+                    while (count[j] == 0) {
+                        j--;
+                    }
+                    count[i] -= 2;
+                    count[i - 1]++;
+                    count[j + 1] += 2;
+                    count[j]--;
+                }
+            }
+            // Drop the reserved point, which has the longest code
+            int longest = 16;
+            while (count[longest] == 0) {
+                longest--;
+            }
+            count[longest]--;
+
+            int[] bits = Arrays.copyOf(count, 17);
+            int total = 0;
+            for (int i = 1; i <= 16; i++) {
+                total += bits[i];
+            }
+            int[] values = new int[total];
+            int k = 0;
+            for (int size = 1; size < codeSize.length && k < total; size++) {
+                for (int symbol = 0; symbol < 256; symbol++) {
+                    if (codeSize[symbol] == size) {
+                        values[k++] = symbol;
+                    }
+                }
+            }
+            return new HuffmanEncoder(bits, values);
+        }
+
+        void writeTable(ByteSink sink, int classAndId) throws IOException {
+            sink.marker(DHT);
+            sink.writeShort(2 + 17 + values.length);
+            sink.write(classAndId);
+            for (int length = 1; length <= 16; length++) {
+                sink.write(bits[length]);
+            }
+            for (int value : values) {
+                sink.write(value);
+            }
+        }
+    }
+
+    /**
+     * Huffman-codes blocks, or only counts their symbols when there is no sink
+     */
+    private static final class EntropyWriter {
+
+        private final ByteSink sink;
+        private final long[][] dcFrequencies;
+        private final long[][] acFrequencies;
+        private final HuffmanEncoder[] dc;
+        private final HuffmanEncoder[] ac;
+        /** Coded bytes, stuffing included, on their way to the sink */
+        private final byte[] bytes;
+        private int length;
+        /** Pending bits, in the low {@code count} bits */
+        private long buffer;
+        private int count;
+
+        EntropyWriter(ByteSink sink, long[][] dcFrequencies, long[][] acFrequencies) {
+            this.sink = sink;
+            this.dcFrequencies = dcFrequencies;
+            this.acFrequencies = acFrequencies;
+            this.dc = null;
+            this.ac = null;
+            this.bytes = null;
+        }
+
+        EntropyWriter(ByteSink sink, HuffmanEncoder[] dc, HuffmanEncoder[] ac) {
+            this.sink = sink;
+            this.dcFrequencies = null;
+            this.acFrequencies = null;
+            this.dc = dc;
+            this.ac = ac;
+            this.bytes = new byte[1 << 16];
+        }
+
+        /**
+         * Code one block against table pair {@code table}; returns its DC value, the next prediction
+         */
+        int block(short[] coefficients, int base, int prediction, int table) throws IOException {
+            if (dc == null) {
+                return count(coefficients, base, prediction, dcFrequencies[table], acFrequencies[table]);
+            }
+            int value = coefficients[base];
+            int difference = value - prediction;
+            int size = magnitude(difference);
+            HuffmanEncoder dcTable = dc[table];
+            HuffmanEncoder acTable = ac[table];
+            emit(dcTable.codes[size] << size | bits(difference, size), dcTable.lengths[size] + size);
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int coefficient = coefficients[base + k];
+                if (coefficient == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    emit(acTable.codes[0xF0], acTable.lengths[0xF0]);
+                    run -= 16;
+                }
+                size = magnitude(coefficient);
+                int symbol = run << 4 | size;
+                emit(acTable.codes[symbol] << size | bits(coefficient, size), acTable.lengths[symbol] + size);
+                run = 0;
+            }
+            if (run > 0) {
+                // End of block
+                emit(acTable.codes[0], acTable.lengths[0]);
+            }
+            return value;
+        }
+
+        private static int count(short[] coefficients, int base, int prediction, long[] dcCounts, long[] acCounts) {
+            int value = coefficients[base];
+            dcCounts[magnitude(value - prediction)]++;
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int coefficient = coefficients[base + k];
+                if (coefficient == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    acCounts[0xF0]++;
+                    run -= 16;
+                }
+                acCounts[run << 4 | magnitude(coefficient)]++;
+                run = 0;
+            }
+            if (run > 0) {
+                acCounts[0]++;
+            }
+            return value;
+        }
+
+        void finish() throws IOException {
+            if (dc == null) {
+                return;
+            }
+            if (count % 8 != 0) {
+                // Pad the last byte with 1-bits
+                int padding = 8 - count % 8;
+                emit((1 << padding) - 1, padding);
+            }
+            drain();
+            sink.write(bytes, 0, length);
+            length = 0;
+        }
+
+        /**
+         * Low {@code size} bits of a coefficient; negative values are sent as value - 1 (F.1.2.1)
+         */
+        private static int bits(int value, int size) {
+            return (value < 0 ? value - 1 : value) & ((1 << size) - 1);
+        }
+
+        /**
+         * Append {@code length} bits (at most 27: a code and its value); whole bytes are
+         * moved out once 32 bits have piled up
+         */
+        private void emit(int code, int length) throws IOException {
+            buffer = buffer << length | code;
+            count += length;
+            if (count >= 32) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            if (length + 16 > bytes.length) {
+                sink.write(bytes, 0, length);
+                length = 0;
+            }
+            while (count >= 8) {
+                count -= 8;
+                int b = (int) (buffer >>> count) & 0xFF;
+                bytes[length++] = (byte) b;
+                if (b == 0xFF) {
+                    bytes[length++] = 0;
+                }
+            }
+        }
+
+        private static int magnitude(int value) {
+            return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+        }
+    }
+
+    /**
+     * Buffered byte output with the big-endian helpers markers need
+     */
+    private static final class ByteSink {
+
+        private final OutputStream output;
+        private final byte[] buffer = new byte[1 << 16];
+        private int length;
+
+        ByteSink(OutputStream output) {
+            this.output = output;
+        }
+
+        void write(int b) throws IOException {
+            if (length == buffer.length) {
+                flush();
+            }
+            buffer[length++] = (byte) b;
+        }
+
+        void write(byte[] data, int offset, int count) throws IOException {
+            flush();
+            output.write(data, offset, count);
+        }
+
+        void writeShort(int value) throws IOException {
+            write(value >> 8);
+            write(value);
+        }
+
+        void marker(int marker) throws IOException {
+            write(0xFF);
+            write(marker);
+        }
+
+        void flush() throws IOException {
+            output.write(buffer, 0, length);
+            length = 0;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.mahesh.adobe.upload.imaging;
+
+/**
+ * The eight rotations and mirrorings of an image onto a rectangle, in EXIF orientation
+ * order: the constant at ordinal {@code n} is what a viewer applies to an image tagged
+ * with orientation {@code n + 1}.
+ *
+ * Each is an optional transpose followed by optional horizontal and vertical flips, which
+ * is also how the lossless JPEG path moves DCT blocks.
+ */
+public enum Orientation {
+    NORMAL(false, false, false),
+    FLIP_HORIZONTAL(false, true, false),
+    ROTATE_180(false, true, true),
+    FLIP_VERTICAL(false, false, true),
+    TRANSPOSE(true, false, false),
+    /** Clockwise */
+    ROTATE_90(true, true, false),
+    TRANSVERSE(true, true, true),
+    /** Clockwise, i.e. 90 degrees counter-clockwise */
+    ROTATE_270(true, false, true);
+
+    private final boolean transpose;
+    private final boolean flipHorizontal;
+    private final boolean flipVertical;
+
+    Orientation(boolean transpose, boolean flipHorizontal, boolean flipVertical) {
+        this.transpose = transpose;
+        this.flipHorizontal = flipHorizontal;
+        this.flipVertical = flipVertical;
+    }
+
+    /**
+     * The transform that displays an image tagged with EXIF orientation {@code value} upright;
+     * NORMAL for values outside 1-8
+     */
+    public static Orientation fromExif(int value) {
+        return value >= 1 && value <= 8 ? values()[value - 1] : NORMAL;
+    }
+
+    /**
+     * Clockwise rotation by a multiple of 90 degrees, negative for counter-clockwise
+     */
+    public static Orientation rotation(int degrees) {
+        if (degrees % 90 != 0) {
+            throw new IllegalArgumentException("Rotation must be a multiple of 90 degrees");
+        }
+        switch (Math.floorMod(degrees, 360)) {
+            case 90:
+                return ROTATE_90;
+            case 180:
+                return ROTATE_180;
+            case 270:
+                return ROTATE_270;
+            default:
+                return NORMAL;
+        }
+    }
+
+    /**
+     * This transform followed by {@code next}
+     */
+    public Orientation then(Orientation next) {
+        // A transpose after a flip turns it into a flip of the other axis
+        boolean horizontal = next.flipHorizontal ^ (next.transpose ? flipVertical : flipHorizontal);
+        boolean vertical = next.flipVertical ^ (next.transpose ? flipHorizontal : flipVertical);
+        return of(transpose ^ next.transpose, horizontal, vertical);
+    }
+
+    /** Whether width and height trade places */
+    public boolean transposes() {
+        return transpose;
+    }
+
+    /** Whether columns are mirrored after the transpose */
+    public boolean flipsHorizontally() {
+        return flipHorizontal;
+    }
+
+    /** Whether rows are mirrored after the transpose */
+    public boolean flipsVertically() {
+        return flipVertical;
+    }
+
+    private static Orientation of(boolean transpose, boolean flipHorizontal, boolean flipVertical) {
+        for (Orientation orientation : values()) {
+            if (orientation.transpose == transpose && orientation.flipHorizontal == flipHorizontal
+                    && orientation.flipVertical == flipVertical) {
+                return orientation;
+            }
+        }
+        throw new AssertionError();
+    }
+}
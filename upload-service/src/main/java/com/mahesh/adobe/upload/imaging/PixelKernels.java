@@ -0,0 +1,85 @@
+package com.mahesh.adobe.upload.imaging;
+
+/**
+ * Inner loops of {@link PointProcessor} over interleaved int rows as produced by
+ * {@link RasterRows}.
+ *
+ * There are two implementations: a scalar one, and one built on the JDK Vector API
+ * ({@code jdk.incubator.vector}) that processes a full SIMD register of samples per
+ * step, using gathers for the table lookups and the strided channel loads. The vector
+ * implementation lives in its own class and is only loaded reflectively, so the service
+ * still runs, on the scalar kernels, when the JVM was started without
+ * {@code --add-modules jdk.incubator.vector}.
+ */
+public abstract class PixelKernels {
+
+    private static final String VECTOR_IMPLEMENTATION = "com.mahesh.adobe.upload.imaging.VectorPixelKernels";
+
+    private static final PixelKernels SCALAR = new ScalarPixelKernels();
+    private static final PixelKernels VECTOR = loadVector();
+
+    /** Implementation name for logs and benchmark output, e.g. "vector(512-bit)" */
+    public abstract String name();
+
+    /**
+     * Replace each sample in {@code row[0..length)} with {@code lut[sample]}, except the one
+     * at {@code alphaPosition} within each pixel of {@code bands} samples (-1 for none)
+     */
+    abstract void lut(int[] row, int length, int bands, int alphaPosition, int[] lut);
+
+    /**
+     * {@code gray[x] = (sum of weights[p] * sample p + 128) >> 8} over each of the
+     * {@code width} pixels in {@code row}; the weights are 8-bit fixed point, one per
+     * position within a pixel
+     */
+    abstract void luma(int[] row, int bands, int width, int[] weights, int[] gray);
+
+    /**
+     * {@code out[i] = row[indexMap[i]]} for i in [0, length), e.g. a channel swizzle
+     */
+    abstract void permute(int[] row, int[] indexMap, int length, int[] out);
+
+    /**
+     * For each of the {@code width} packed pixels, colour channel c becomes
+     * {@code lut[byte at sourceShifts[c]]} stored at {@code targetShifts[c]}; the other
+     * bits (alpha) are kept
+     */
+    abstract void packedLut(int[] pixels, int width, int[] sourceShifts, int[] targetShifts, int[] lut);
+
+    /**
+     * Luma of packed pixels: {@code gray[x] = (sum of weights[c] * byte at shifts[c] + 128) >> 8}
+     * over the three colour channels
+     */
+    abstract void packedLuma(int[] pixels, int width, int[] shifts, int[] weights, int[] gray);
+
+    public static PixelKernels scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * Vector API kernels when the module is present, otherwise the scalar ones
+     */
+    public static PixelKernels best() {
+        return VECTOR != null ? VECTOR : SCALAR;
+    }
+
+    public static boolean isVectorAvailable() {
+        return VECTOR != null;
+    }
+
+    private static PixelKernels loadVector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (PixelKernels) Class.forName(VECTOR_IMPLEMENTATION).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name();
+    }
+}
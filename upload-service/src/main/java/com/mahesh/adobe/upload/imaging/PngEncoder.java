@@ -0,0 +1,295 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Streaming 8-bit PNG writer with a selectable deflate level and row filter.
+ *
+ * The JDK writer always tries every filter on every row and only exposes the deflate
+ * level through a quality setting. Here a fixed filter can be chosen instead, which is
+ * several times cheaper for a slightly larger file, and IDAT chunks go to the output as
+ * soon as they fill instead of through an ImageOutputStream cache. Rows come from the
+ * raster directly when it is addressable (see {@link RasterRows}), otherwise through
+ * getRGB, so a {@link StripImage} is pulled top to bottom one strip at a time.
+ */
+public final class PngEncoder {
+
+    /**
+     * PNG row filters; ADAPTIVE picks, per row, the filter with the smallest sum of
+     * absolute differences, the heuristic libpng and the JDK writer use
+     */
+    public enum Filter {
+        NONE,
+        SUB,
+        UP,
+        AVERAGE,
+        PAETH,
+        ADAPTIVE
+    }
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int IDAT_SIZE = 64 * 1024;
+
+    private static final int COLOR_GRAY = 0;
+    private static final int COLOR_RGB = 2;
+    private static final int COLOR_GRAY_ALPHA = 4;
+    private static final int COLOR_RGBA = 6;
+
+    private PngEncoder() {
+    }
+
+    /**
+     * Encode {@code image} to {@code output}, which is left open
+     *
+     * @param level deflate level, 0 (store) to 9 (smallest)
+     */
+    public static void write(BufferedImage image, OutputStream output, int level, Filter filter) throws IOException {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("Deflate level must be 0-9");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Rows rows = rows(image);
+        int channels = rows.channels();
+        int colorType = channels == 1 ? COLOR_GRAY
+                : channels == 2 ? COLOR_GRAY_ALPHA
+                : channels == 3 ? COLOR_RGB
+                : COLOR_RGBA;
+
+        output.write(SIGNATURE);
+        byte[] header = new byte[13];
+        putInt(header, 0, width);
+        putInt(header, 4, height);
+        header[8] = 8;
+        header[9] = (byte) colorType;
+        // Compression, filter method and interlace are all 0
+        writeChunk(output, "IHDR", header, header.length);
+
+        Deflater deflater = new Deflater(level);
+        // Filtered rows compress better with zlib's FILTERED strategy, as libpng does
+        deflater.setStrategy(filter == Filter.NONE ? Deflater.DEFAULT_STRATEGY : Deflater.FILTERED);
+        try {
+            IdatOutputStream idat = new IdatOutputStream(output);
+            DeflaterOutputStream compressed = new DeflaterOutputStream(idat, deflater, IDAT_SIZE);
+            int length = width * channels;
+            int[] samples = new int[length];
+            byte[] current = new byte[length];
+            byte[] previous = new byte[length];
+            // One filter-type byte, then the filtered samples
+            byte[] line = new byte[length + 1];
+            byte[] candidate = filter == Filter.ADAPTIVE ? new byte[length + 1] : null;
+            for (int y = 0; y < height; y++) {
+                rows.read(y, samples);
+                for (int i = 0; i < length; i++) {
+                    current[i] = (byte) samples[i];
+                }
+                if (filter == Filter.ADAPTIVE) {
+                    adaptive(current, previous, channels, line, candidate);
+                } else {
+                    apply(filter, current, previous, channels, line);
+                }
+                compressed.write(line, 0, line.length);
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            compressed.finish();
+            idat.flushChunk();
+        } finally {
+            deflater.end();
+        }
+        writeChunk(output, "IEND", new byte[0], 0);
+    }
+
+    private static void adaptive(byte[] current, byte[] previous, int bpp, byte[] line, byte[] candidate) {
+        long best = Long.MAX_VALUE;
+        byte[] out = line;
+        byte[] spare = candidate;
+        for (Filter filter : new Filter[] {Filter.NONE, Filter.SUB, Filter.UP, Filter.AVERAGE, Filter.PAETH}) {
+            apply(filter, current, previous, bpp, spare);
+            long cost = 0;
+            for (int i = 1; i < spare.length; i++) {
+                // Filtered bytes read as signed: small magnitudes compress best
+                cost += Math.abs(spare[i]);
+            }
+            if (cost < best) {
+                best = cost;
+                byte[] swap = out;
+                out = spare;
+                spare = swap;
+            }
+        }
+        if (out != line) {
+            System.arraycopy(out, 0, line, 0, line.length);
+        }
+    }
+
+    private static void apply(Filter filter, byte[] current, byte[] previous, int bpp, byte[] line) {
+        int length = current.length;
+        line[0] = (byte) filter.ordinal();
+        switch (filter) {
+            case NONE:
+                System.arraycopy(current, 0, line, 1, length);
+                break;
+            case SUB:
+                System.arraycopy(current, 0, line, 1, Math.min(bpp, length));
+                for (int i = bpp; i < length; i++) {
+                    line[i + 1] = (byte) (current[i] - current[i - bpp]);
+                }
+                break;
+            case UP:
+                for (int i = 0; i < length; i++) {
+                    line[i + 1] = (byte) (current[i] - previous[i]);
+                }
+                break;
+            case AVERAGE:
+                for (int i = 0; i < length; i++) {
+                    int left = i >= bpp ? current[i - bpp] & 0xFF : 0;
+                    line[i + 1] = (byte) (current[i] - ((left + (previous[i] & 0xFF)) >> 1));
+                }
+                break;
+            case PAETH:
+                for (int i = 0; i < length; i++) {
+                    int left = i >= bpp ? current[i - bpp] & 0xFF : 0;
+                    int upperLeft = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+                    line[i + 1] = (byte) (current[i] - paeth(left, previous[i] & 0xFF, upperLeft));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Not a single filter: " + filter);
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private static Rows rows(BufferedImage image) {
+        if (RasterRows.isDirect(image) && !image.isAlphaPremultiplied()) {
+            RasterRows raster = RasterRows.of(image);
+            int bands = raster.bands();
+            int colorBands = image.getColorModel().getNumColorComponents();
+            // Band order is already PNG order: gray or R, G, B, then alpha
+            if ((colorBands == 1 || colorBands == 3) && bands - colorBands <= 1) {
+                return new Rows() {
+                    @Override
+                    public int channels() {
+                        return bands;
+                    }
+
+                    @Override
+                    public void read(int y, int[] samples) {
+                        raster.read(y, samples);
+                    }
+                };
+            }
+        }
+        boolean alpha = image.getColorModel().hasAlpha();
+        int width = image.getWidth();
+        int[] argb = new int[width];
+        return new Rows() {
+            @Override
+            public int channels() {
+                return alpha ? 4 : 3;
+            }
+
+            @Override
+            public void read(int y, int[] samples) {
+                image.getRGB(0, y, width, 1, argb, 0, width);
+                for (int x = 0, i = 0; x < width; x++) {
+                    int pixel = argb[x];
+                    samples[i++] = (pixel >> 16) & 0xFF;
+                    samples[i++] = (pixel >> 8) & 0xFF;
+                    samples[i++] = pixel & 0xFF;
+                    if (alpha) {
+                        samples[i++] = pixel >>> 24;
+                    }
+                }
+            }
+        };
+    }
+
+    private static void writeChunk(OutputStream output, String type, byte[] data, int length) throws IOException {
+        byte[] prefix = new byte[8];
+        putInt(prefix, 0, length);
+        for (int i = 0; i < 4; i++) {
+            prefix[4 + i] = (byte) type.charAt(i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(prefix, 4, 4);
+        crc.update(data, 0, length);
+        byte[] suffix = new byte[4];
+        putInt(suffix, 0, (int) crc.getValue());
+        output.write(prefix);
+        output.write(data, 0, length);
+        output.write(suffix);
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private interface Rows {
+        int channels();
+
+        void read(int y, int[] samples);
+    }
+
+    /**
+     * Collects compressed bytes and emits them as IDAT chunks of {@value #IDAT_SIZE} bytes
+     */
+    private static final class IdatOutputStream extends OutputStream {
+
+        private final OutputStream output;
+        private final byte[] buffer = new byte[IDAT_SIZE];
+        private int count;
+
+        IdatOutputStream(OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flushChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        void flushChunk() throws IOException {
+            if (count > 0) {
+                writeChunk(output, "IDAT", buffer, count);
+                count = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.mahesh.adobe.upload.imaging;
+
+/**
+ * Immutable description of a chain of per-pixel operations, folded into at most one
+ * channel permutation, one colour lookup table, an optional grayscale conversion and one
+ * lookup table on the resulting luma. Any sequence of brightness / contrast / gamma /
+ * swizzle / grayscale steps therefore costs a single pass over the raster, see
+ * {@link PointProcessor}. A swizzle commutes with the colour table, since the table is
+ * the same for every channel, so it is always applied first.
+ */
+public final class PointOperation {
+
+    private static final PointOperation IDENTITY = new PointOperation(null, null, false, null);
+
+    /** Output colour channel c takes input channel channelOrder[c]; null = identity */
+    private final int[] channelOrder;
+    /** Applied to every colour channel before the grayscale conversion; null = identity */
+    private final int[] colorLut;
+    private final boolean grayscale;
+    /** Applied to the luma after the grayscale conversion; null = identity */
+    private final int[] grayLut;
+
+    private PointOperation(int[] channelOrder, int[] colorLut, boolean grayscale, int[] grayLut) {
+        this.channelOrder = channelOrder;
+        this.colorLut = colorLut;
+        this.grayscale = grayscale;
+        this.grayLut = grayLut;
+    }
+
+    public static PointOperation identity() {
+        return IDENTITY;
+    }
+
+    public boolean isIdentity() {
+        return channelOrder == null && colorLut == null && !grayscale && grayLut == null;
+    }
+
+    public boolean isGrayscale() {
+        return grayscale;
+    }
+
+    int[] channelOrder() {
+        return channelOrder;
+    }
+
+    int[] colorLut() {
+        return colorLut;
+    }
+
+    int[] grayLut() {
+        return grayLut;
+    }
+
+    /**
+     * Append a 256-entry lookup table applied to every colour channel (alpha untouched)
+     */
+    public PointOperation thenLut(int[] lut) {
+        if (lut.length != 256) {
+            throw new IllegalArgumentException("Lookup tables must have 256 entries");
+        }
+        if (grayscale) {
+            return new PointOperation(channelOrder, colorLut, true, compose(grayLut, lut));
+        }
+        return new PointOperation(channelOrder, compose(colorLut, lut), false, null);
+    }
+
+    /**
+     * Append a brightness change: every channel is multiplied by {@code factor}
+     */
+    public PointOperation thenBrightness(float factor) {
+        int[] lut = new int[256];
+        for (int i = 0; i < 256; i++) {
+            lut[i] = clamp(Math.round(i * factor));
+        }
+        return thenLut(lut);
+    }
+
+    /**
+     * Append a contrast change around mid-gray: {@code factor} above 1 stretches the
+     * channels away from 128, below 1 pulls them towards it
+     */
+    public PointOperation thenContrast(float factor) {
+        int[] lut = new int[256];
+        for (int i = 0; i < 256; i++) {
+            lut[i] = clamp(Math.round((i - 128) * factor + 128));
+        }
+        return thenLut(lut);
+    }
+
+    /**
+     * Append a gamma correction, {@code out = 255 * (in / 255)^(1 / gamma)}: values above
+     * 1 brighten the mid-tones, below 1 darken them
+     */
+    public PointOperation thenGamma(float gamma) {
+        if (!(gamma > 0)) {
+            throw new IllegalArgumentException("Gamma must be positive");
+        }
+        int[] lut = new int[256];
+        double exponent = 1.0 / gamma;
+        for (int i = 0; i < 256; i++) {
+            lut[i] = clamp((int) Math.round(255 * Math.pow(i / 255.0, exponent)));
+        }
+        return thenLut(lut);
+    }
+
+    /**
+     * Append a reordering of the three colour channels: output channel c takes input
+     * channel {@code order[c]}, e.g. {2, 1, 0} swaps red and blue. A no-op after a
+     * grayscale conversion.
+     */
+    public PointOperation thenSwizzle(int... order) {
+        if (order.length != 3) {
+            throw new IllegalArgumentException("A swizzle orders exactly three channels");
+        }
+        boolean[] seen = new boolean[3];
+        for (int channel : order) {
+            if (channel < 0 || channel > 2 || seen[channel]) {
+                throw new IllegalArgumentException("A swizzle must be a permutation of 0, 1, 2");
+            }
+            seen[channel] = true;
+        }
+        if (grayscale) {
+            return this;
+        }
+        int[] composed = new int[3];
+        boolean identity = true;
+        for (int c = 0; c < 3; c++) {
+            composed[c] = channelOrder != null ? channelOrder[order[c]] : order[c];
+            identity &= composed[c] == c;
+        }
+        return new PointOperation(identity ? null : composed, colorLut, false, null);
+    }
+
+    /**
+     * Append a conversion to luma (ITU-R BT.601 weights); repeated conversions are no-ops
+     */
+    public PointOperation thenGrayscale() {
+        if (grayscale) {
+            return this;
+        }
+        return new PointOperation(channelOrder, colorLut, true, null);
+    }
+
+    private static int[] compose(int[] first, int[] second) {
+        if (first == null) {
+            return second.clone();
+        }
+        int[] composed = new int[256];
+        for (int i = 0; i < 256; i++) {
+            composed[i] = second[first[i]];
+        }
+        return composed;
+    }
+
+    static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+}
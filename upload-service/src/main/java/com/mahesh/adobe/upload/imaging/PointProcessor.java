@@ -0,0 +1,219 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Applies a {@link PointOperation} in one banded pass over the raster.
+ *
+ * Colour-only chains are applied in place unless a destination is given. Chains that
+ * include a grayscale conversion write a new TYPE_BYTE_GRAY image, a third of the size
+ * of an RGB source. The per-row loops are {@link PixelKernels}, vectorised when the
+ * Vector API is available.
+ */
+public class PointProcessor {
+
+    /** Luma weights in 8-bit fixed point (0.299, 0.587, 0.114) */
+    private static final int WEIGHT_R = 77;
+    private static final int WEIGHT_G = 150;
+    private static final int WEIGHT_B = 29;
+
+    private static final int[] IDENTITY = new int[256];
+
+    static {
+        for (int i = 0; i < IDENTITY.length; i++) {
+            IDENTITY[i] = i;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final RasterPool rasterPool;
+    private final PixelKernels kernels;
+
+    public PointProcessor(ForkJoinPool pool, RasterPool rasterPool) {
+        this(pool, rasterPool, PixelKernels.best());
+    }
+
+    public PointProcessor(ForkJoinPool pool, RasterPool rasterPool, PixelKernels kernels) {
+        this.pool = pool;
+        this.rasterPool = rasterPool;
+        this.kernels = kernels;
+    }
+
+    public PixelKernels kernels() {
+        return kernels;
+    }
+
+    /**
+     * Apply the operation; returns {@code source} itself (modified) when no new image is needed
+     */
+    public BufferedImage apply(BufferedImage source, PointOperation operation) {
+        return apply(source, operation, null);
+    }
+
+    /**
+     * Apply the operation into {@code destination} when given: a TYPE_BYTE_GRAY-compatible
+     * image of the source's size for chains that convert to grayscale, otherwise an image
+     * with the source's size and layout. Without one, grayscale results take a new image
+     * from the raster pool and colour-only chains run in place.
+     */
+    public BufferedImage apply(BufferedImage source, PointOperation operation, BufferedImage destination) {
+        if (operation.isIdentity() && destination == null) {
+            return source;
+        }
+        BufferedImage src = rasterPool.toDirect(source);
+        int width = src.getWidth();
+        int height = src.getHeight();
+        RasterRows in = RasterRows.of(src);
+        int bands = in.bands();
+        int colorBands = src.getColorModel().getNumColorComponents();
+        int[] colorLut = operation.colorLut();
+        int[] grayLut = operation.grayLut();
+        int[] channelOrder = colorBands == 3 ? operation.channelOrder() : null;
+        // Packed RGB pixels are processed as whole ints, everything else as samples in storage order
+        int[] shifts = colorBands == 3 ? in.packedShifts() : null;
+        int[] positions = in.storedPositions();
+
+        if (!operation.isGrayscale()) {
+            BufferedImage dst = destination != null ? destination : src;
+            if (dst != src && (!ConvolutionEngine.isReusableDestination(src, dst)
+                    || !Arrays.equals(RasterRows.of(dst).storedPositions(), positions))) {
+                throw new IllegalArgumentException("Destination does not match the source's size and layout");
+            }
+            RasterRows out = RasterRows.of(dst);
+            if (shifts != null) {
+                int[] lut = colorLut != null ? colorLut : IDENTITY;
+                int[] sourceShifts = new int[3];
+                for (int c = 0; c < 3; c++) {
+                    sourceShifts[c] = shifts[channelOrder != null ? channelOrder[c] : c];
+                }
+                RowBands.run(pool, width, height, 1, (y0, y1) -> {
+                    int[] pixels = new int[width];
+                    for (int y = y0; y < y1; y++) {
+                        in.readPixels(y, pixels);
+                        kernels.packedLut(pixels, width, sourceShifts, shifts, lut);
+                        out.writePixels(y, pixels);
+                    }
+                });
+            } else {
+                int length = width * bands;
+                int alphaPosition = colorBands < bands ? positions[bands - 1] : -1;
+                int[] swizzle = channelIndexMap(channelOrder, positions, width);
+                RowBands.run(pool, width, height, 1, (y0, y1) -> {
+                    int[] row = new int[length];
+                    int[] swizzled = swizzle != null ? new int[length] : null;
+                    for (int y = y0; y < y1; y++) {
+                        in.readStored(y, row);
+                        int[] result = row;
+                        if (swizzle != null) {
+                            kernels.permute(row, swizzle, length, swizzled);
+                            result = swizzled;
+                        }
+                        if (colorLut != null) {
+                            kernels.lut(result, length, bands, alphaPosition, colorLut);
+                        }
+                        out.writeStored(y, result);
+                    }
+                });
+            }
+            if (src != source && dst != src) {
+                rasterPool.release(src);
+            }
+            return dst;
+        }
+
+        BufferedImage dst = destination != null
+                ? destination
+                : rasterPool.create(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        if (dst == src || dst.getWidth() != width || dst.getHeight() != height
+                || !RasterRows.isDirect(dst) || RasterRows.of(dst).bands() != 1) {
+            throw new IllegalArgumentException("Destination is not a grayscale image of the source's size");
+        }
+        RasterRows out = RasterRows.of(dst);
+        // A swizzle ahead of the conversion only changes which channel each weight applies to
+        int[] weights = lumaWeights(channelOrder, bands, colorBands);
+        if (shifts != null) {
+            RowBands.run(pool, width, height, 1, (y0, y1) -> {
+                int[] pixels = new int[width];
+                int[] gray = new int[width];
+                for (int y = y0; y < y1; y++) {
+                    in.readPixels(y, pixels);
+                    if (colorLut != null) {
+                        kernels.packedLut(pixels, width, shifts, shifts, colorLut);
+                    }
+                    kernels.packedLuma(pixels, width, shifts, weights, gray);
+                    if (grayLut != null) {
+                        kernels.lut(gray, width, 1, -1, grayLut);
+                    }
+                    out.writeStored(y, gray);
+                }
+            });
+        } else {
+            int length = width * bands;
+            int alphaPosition = colorBands < bands ? positions[bands - 1] : -1;
+            int[] storedWeights = new int[bands];
+            for (int b = 0; b < bands; b++) {
+                storedWeights[positions[b]] = weights[b];
+            }
+            RowBands.run(pool, width, height, 1, (y0, y1) -> {
+                int[] row = new int[length];
+                int[] gray = bands == 1 ? row : new int[width];
+                for (int y = y0; y < y1; y++) {
+                    in.readStored(y, row);
+                    if (colorLut != null) {
+                        kernels.lut(row, length, bands, alphaPosition, colorLut);
+                    }
+                    if (bands > 1) {
+                        kernels.luma(row, bands, width, storedWeights, gray);
+                    }
+                    if (grayLut != null) {
+                        kernels.lut(gray, width, 1, -1, grayLut);
+                    }
+                    out.writeStored(y, gray);
+                }
+            });
+        }
+        if (src != source) {
+            rasterPool.release(src);
+        }
+        return dst;
+    }
+
+    /**
+     * Per-sample source index for a row of {@code width} pixels in storage order, alpha
+     * staying in place; null when there is nothing to reorder
+     */
+    private static int[] channelIndexMap(int[] channelOrder, int[] positions, int width) {
+        if (channelOrder == null) {
+            return null;
+        }
+        int bands = positions.length;
+        int[] indexMap = new int[width * bands];
+        for (int p = 0; p < indexMap.length; p += bands) {
+            for (int b = 0; b < bands; b++) {
+                int from = b < 3 ? channelOrder[b] : b;
+                indexMap[p + positions[b]] = p + positions[from];
+            }
+        }
+        return indexMap;
+    }
+
+    /**
+     * Luma weight of each band; colour bands after a swizzle take the weight of the
+     * channel they end up in, alpha gets none
+     */
+    private static int[] lumaWeights(int[] channelOrder, int bands, int colorBands) {
+        int[] weights = new int[bands];
+        if (colorBands == 1) {
+            weights[0] = 256;
+            return weights;
+        }
+        int[] luma = {WEIGHT_R, WEIGHT_G, WEIGHT_B};
+        for (int c = 0; c < 3; c++) {
+            // Output channel c reads input channel channelOrder[c]
+            weights[channelOrder != null ? channelOrder[c] : c] = luma[c];
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,89 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * In-memory output stream whose buffer comes from a {@link RasterPool}.
+ *
+ * Growing replaces the buffer with one from the next size class and returns the old
+ * one, so encoding a multi-megabyte image does not leave a trail of doubling arrays
+ * behind as ByteArrayOutputStream does. {@link #close()} returns the buffer to the pool;
+ * the stream and any {@link #toInputStream()} view must not be used afterwards.
+ */
+public class PooledOutputStream extends OutputStream {
+
+    private final RasterPool pool;
+    private byte[] buffer;
+    private int count;
+
+    /**
+     * @param expectedSize initial capacity; a good guess saves regrowing
+     */
+    public PooledOutputStream(RasterPool pool, int expectedSize) {
+        this.pool = pool;
+        this.buffer = pool.bytes(Math.max(expectedSize, 8192));
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Copy of the written bytes, sized exactly, that outlives the stream
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * View of the written bytes without copying; valid until the stream is closed
+     */
+    public InputStream toInputStream() {
+        return new ByteArrayInputStream(buffer, 0, count);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, count);
+    }
+
+    @Override
+    public void close() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (buffer == null) {
+            throw new IllegalStateException("Stream is closed");
+        }
+        if (needed < 0) {
+            throw new OutOfMemoryError("Encoded output exceeds the maximum array size");
+        }
+        if (needed <= buffer.length) {
+            return;
+        }
+        byte[] grown = pool.bytes((int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, 2L * buffer.length)));
+        System.arraycopy(buffer, 0, grown, 0, count);
+        pool.release(buffer);
+        buffer = grown;
+    }
+}
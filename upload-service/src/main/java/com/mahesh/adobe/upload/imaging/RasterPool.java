@@ -0,0 +1,288 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size-classed pool of the large int[], short[] and byte[] arrays behind rasters, encode
+ * buffers and engine scratch planes.
+ *
+ * Decoded images, filter outputs and encoder buffers are several megabytes each, which
+ * G1 allocates as humongous objects; recycling them keeps that churn out of the heap.
+ * Array lengths are rounded up to a class (four steps per power of two, so at most 25%
+ * slack) and released arrays are kept per class up to a total of {@code maxRetainedBytes};
+ * anything beyond that, and anything smaller than {@link #MIN_POOLED_LENGTH}, is left to
+ * the garbage collector. Pooled arrays are not cleared: callers must overwrite every
+ * element they read. A released array must no longer be referenced by its releaser;
+ * releasing an array that is already idle in the pool throws {@link IllegalStateException}
+ * rather than handing it out to two callers.
+ */
+public class RasterPool {
+
+    /** Shorter arrays are cheap to allocate from a TLAB and are not pooled */
+    public static final int MIN_POOLED_LENGTH = 1 << 16;
+
+    private final long maxRetainedBytes;
+    private final ConcurrentHashMap<Integer, ConcurrentLinkedDeque<int[]>> ints = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, ConcurrentLinkedDeque<short[]>> shorts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, ConcurrentLinkedDeque<byte[]>> bytes = new ConcurrentHashMap<>();
+    /** Every array currently idle in a deque; arrays hash and compare by identity */
+    private final Set<Object> idleArrays = ConcurrentHashMap.newKeySet();
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param maxRetainedBytes upper bound on the bytes held by idle arrays; 0 disables pooling
+     */
+    public RasterPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = Math.max(0, maxRetainedBytes);
+    }
+
+    public boolean isEnabled() {
+        return maxRetainedBytes > 0;
+    }
+
+    /** Most bytes idle arrays may hold */
+    public long maxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    /** Requests served from an idle array */
+    public long hits() {
+        return hits.get();
+    }
+
+    /** Requests that had to allocate */
+    public long misses() {
+        return misses.get();
+    }
+
+    /** Released arrays discarded because the pool was full */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public long retainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Smallest class length that holds {@code length} elements
+     */
+    static int classLength(int length) {
+        if (length <= MIN_POOLED_LENGTH) {
+            return length;
+        }
+        // Quarter steps between powers of two: 1, 1.25, 1.5, 1.75 x 2^k
+        int power = Integer.highestOneBit(length);
+        int step = power >> 2;
+        long rounded = ((long) length + step - 1) / step * step;
+        return (int) Math.min(rounded, Integer.MAX_VALUE - 8);
+    }
+
+    /**
+     * An int array of at least {@code length} elements with undefined contents
+     */
+    public int[] ints(int length) {
+        if (!pooled(length)) {
+            return new int[length];
+        }
+        int size = classLength(length);
+        int[] array = poll(ints, size, 4L);
+        return array != null ? array : new int[size];
+    }
+
+    /**
+     * A short array of at least {@code length} elements with undefined contents
+     */
+    public short[] shorts(int length) {
+        if (!pooled(length)) {
+            return new short[length];
+        }
+        int size = classLength(length);
+        short[] array = poll(shorts, size, 2L);
+        return array != null ? array : new short[size];
+    }
+
+    /**
+     * A byte array of at least {@code length} elements with undefined contents
+     */
+    public byte[] bytes(int length) {
+        if (!pooled(length)) {
+            return new byte[length];
+        }
+        int size = classLength(length);
+        byte[] array = poll(bytes, size, 1L);
+        return array != null ? array : new byte[size];
+    }
+
+    public void release(int[] array) {
+        if (array != null && isClassSized(array.length)) {
+            offer(ints, array, array.length, 4L * array.length);
+        }
+    }
+
+    public void release(short[] array) {
+        if (array != null && isClassSized(array.length)) {
+            offer(shorts, array, array.length, 2L * array.length);
+        }
+    }
+
+    public void release(byte[] array) {
+        if (array != null && isClassSized(array.length)) {
+            offer(bytes, array, array.length, array.length);
+        }
+    }
+
+    /**
+     * Empty image with the same colour model and layout as {@code source}, backed by a
+     * pooled array when the layout is one {@link RasterRows} addresses directly. Pixel
+     * contents are undefined.
+     */
+    public BufferedImage createCompatible(BufferedImage source, int width, int height) {
+        ColorModel colorModel = source.getColorModel();
+        return create(colorModel, source.getSampleModel().createCompatibleSampleModel(width, height));
+    }
+
+    /**
+     * Empty image of a standard {@link BufferedImage} type; pixel contents are undefined
+     */
+    public BufferedImage create(int width, int height, int imageType) {
+        return createCompatible(new BufferedImage(1, 1, imageType), width, height);
+    }
+
+    /**
+     * Pooled counterpart of {@link RasterRows#toDirect}: the image itself when directly
+     * addressable, otherwise an 8-bit copy in a pooled raster
+     */
+    public BufferedImage toDirect(BufferedImage image) {
+        if (RasterRows.isDirect(image)) {
+            return image;
+        }
+        BufferedImage converted = create(image.getWidth(), image.getHeight(), RasterRows.directType(image));
+        Graphics2D g2d = converted.createGraphics();
+        // Src rather than SrcOver: the pooled raster holds stale pixels
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return converted;
+    }
+
+    /**
+     * Empty image for the given colour and sample model, e.g. from an ImageTypeSpecifier;
+     * pixel contents are undefined
+     */
+    public BufferedImage create(ColorModel colorModel, SampleModel sampleModel) {
+        int length = requiredLength(sampleModel);
+        DataBuffer buffer;
+        if (length < 0 || !pooled(length)) {
+            buffer = sampleModel.createDataBuffer();
+        } else if (sampleModel.getDataType() == DataBuffer.TYPE_INT) {
+            buffer = new DataBufferInt(ints(length), length);
+        } else {
+            buffer = new DataBufferByte(bytes(length), length);
+        }
+        WritableRaster raster = Raster.createWritableRaster(sampleModel, buffer, null);
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Return an image's backing array to the pool. Only arrays of pooled sizes are kept,
+     * so releasing an image that did not come from the pool is harmless.
+     */
+    public void release(BufferedImage image) {
+        if (image == null || !isEnabled()) {
+            return;
+        }
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (buffer.getNumBanks() != 1) {
+            return;
+        }
+        if (buffer instanceof DataBufferInt intBuffer) {
+            release(intBuffer.getData());
+        } else if (buffer instanceof DataBufferByte byteBuffer) {
+            release(byteBuffer.getData());
+        }
+    }
+
+    /**
+     * Elements a single-bank 8-bit raster needs, or -1 for layouts that are not pooled
+     */
+    private static int requiredLength(SampleModel sampleModel) {
+        int width = sampleModel.getWidth();
+        int height = sampleModel.getHeight();
+        long length;
+        if (sampleModel instanceof SinglePixelPackedSampleModel packed
+                && sampleModel.getDataType() == DataBuffer.TYPE_INT) {
+            length = (long) (height - 1) * packed.getScanlineStride() + width;
+        } else if (sampleModel instanceof ComponentSampleModel component
+                && sampleModel.getDataType() == DataBuffer.TYPE_BYTE) {
+            for (int bank : component.getBankIndices()) {
+                if (bank != 0) {
+                    return -1;
+                }
+            }
+            int maxOffset = 0;
+            for (int offset : component.getBandOffsets()) {
+                maxOffset = Math.max(maxOffset, offset);
+            }
+            length = (long) (height - 1) * component.getScanlineStride()
+                    + (long) (width - 1) * component.getPixelStride() + maxOffset + 1;
+        } else {
+            return -1;
+        }
+        return length > Integer.MAX_VALUE - 8 ? -1 : (int) length;
+    }
+
+    private boolean pooled(int length) {
+        return isEnabled() && length > MIN_POOLED_LENGTH;
+    }
+
+    private static boolean isClassSized(int length) {
+        return length > MIN_POOLED_LENGTH && classLength(length) == length;
+    }
+
+    private <T> T poll(ConcurrentHashMap<Integer, ConcurrentLinkedDeque<T>> arrays, int size, long elementBytes) {
+        ConcurrentLinkedDeque<T> idle = arrays.get(size);
+        T array = idle != null ? idle.pollFirst() : null;
+        if (array == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        idleArrays.remove(array);
+        retainedBytes.addAndGet(-elementBytes * size);
+        hits.incrementAndGet();
+        return array;
+    }
+
+    private <T> void offer(ConcurrentHashMap<Integer, ConcurrentLinkedDeque<T>> arrays, T array, int size,
+                           long arrayBytes) {
+        if (!idleArrays.add(array)) {
+            throw new IllegalStateException("Array of length " + size + " released twice");
+        }
+        if (retainedBytes.addAndGet(arrayBytes) > maxRetainedBytes) {
+            idleArrays.remove(array);
+            retainedBytes.addAndGet(-arrayBytes);
+            dropped.incrementAndGet();
+            return;
+        }
+        // Most recently used first, so a steady load keeps reusing warm arrays
+        arrays.computeIfAbsent(size, s -> new ConcurrentLinkedDeque<>()).offerFirst(array);
+    }
+}
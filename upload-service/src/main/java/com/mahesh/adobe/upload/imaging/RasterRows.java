@@ -0,0 +1,419 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Row-oriented view over the backing array of an 8-bit BufferedImage.
+ *
+ * Rows are exchanged as interleaved channel values (0-255) in band order, which is
+ * R, G, B[, A] for the standard RGB types and a single luma channel for gray images.
+ * Engines therefore work on plain int[] rows and never go through the colour model
+ * per pixel.
+ */
+public abstract class RasterRows {
+
+    protected final int width;
+    protected final int height;
+    protected final int bands;
+
+    protected RasterRows(int width, int height, int bands) {
+        this.width = width;
+        this.height = height;
+        this.bands = bands;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public int bands() {
+        return bands;
+    }
+
+    /**
+     * Read row {@code y} into {@code row}, which must hold at least width * bands values
+     */
+    public void read(int y, int[] row) {
+        read(y, row, 0);
+    }
+
+    /**
+     * Read row {@code y} into {@code row} starting at index {@code start}
+     */
+    public abstract void read(int y, int[] row, int start);
+
+    /**
+     * Write row {@code y} from {@code row}; values outside 0-255 are clamped
+     */
+    public abstract void write(int y, int[] row);
+
+    /**
+     * Position of each band within a pixel in the {@link #readStored} order, e.g. {2, 1, 0}
+     * for BGR bytes
+     */
+    public abstract int[] storedPositions();
+
+    /**
+     * Read row {@code y} with each pixel's samples in storage order rather than band order,
+     * which for byte rasters is a plain widening copy; see {@link #storedPositions()}
+     */
+    public abstract void readStored(int y, int[] row);
+
+    /**
+     * Write row {@code y} from samples in storage order; values must already be in 0-255
+     */
+    public abstract void writeStored(int y, int[] row);
+
+    /**
+     * Bit offset of each band within a pixel for one-int-per-pixel layouts, otherwise null;
+     * such rows can also be copied as whole pixels with {@link #readPixels}
+     */
+    public int[] packedShifts() {
+        return null;
+    }
+
+    /**
+     * Copy row {@code y}'s packed pixels into {@code pixels}; see {@link #packedShifts()}
+     */
+    public void readPixels(int y, int[] pixels) {
+        throw new UnsupportedOperationException("Not a packed raster");
+    }
+
+    /**
+     * Copy packed pixels into row {@code y}
+     */
+    public void writePixels(int y, int[] pixels) {
+        throw new UnsupportedOperationException("Not a packed raster");
+    }
+
+    /**
+     * Whether the image's raster can be wrapped directly without a conversion copy
+     */
+    public static boolean isDirect(BufferedImage image) {
+        ColorModel colorModel = image.getColorModel();
+        if (colorModel instanceof IndexColorModel) {
+            return false;
+        }
+        WritableRaster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        for (int size : sampleModel.getSampleSize()) {
+            if (size != 8) {
+                return false;
+            }
+        }
+        DataBuffer buffer = raster.getDataBuffer();
+        if (buffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel) {
+            return buffer.getNumBanks() == 1;
+        }
+        if (buffer instanceof DataBufferByte && sampleModel instanceof ComponentSampleModel componentModel) {
+            return buffer.getNumBanks() == 1
+                    && componentModel.getPixelStride() == componentModel.getNumBands();
+        }
+        return false;
+    }
+
+    /**
+     * Return the image itself when it is directly addressable, otherwise an 8-bit copy
+     * (BYTE_GRAY, INT_ARGB or INT_RGB depending on the source colour model)
+     */
+    public static BufferedImage toDirect(BufferedImage image) {
+        if (isDirect(image)) {
+            return image;
+        }
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), directType(image));
+        Graphics2D g2d = converted.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+        return converted;
+    }
+
+    /**
+     * Standard 8-bit type {@link #toDirect} converts the image to
+     */
+    static int directType(BufferedImage image) {
+        ColorModel colorModel = image.getColorModel();
+        if (colorModel.getNumColorComponents() == 1 && !colorModel.hasAlpha()) {
+            return BufferedImage.TYPE_BYTE_GRAY;
+        }
+        if (colorModel.hasAlpha()) {
+            return BufferedImage.TYPE_INT_ARGB;
+        }
+        return BufferedImage.TYPE_INT_RGB;
+    }
+
+    /**
+     * Create an empty image with the same colour model and layout as {@code source}
+     */
+    public static BufferedImage createCompatible(BufferedImage source, int width, int height) {
+        ColorModel colorModel = source.getColorModel();
+        WritableRaster raster = source.getRaster().createCompatibleWritableRaster(width, height);
+        return new BufferedImage(colorModel, raster, colorModel.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Wrap a directly addressable image; see {@link #isDirect(BufferedImage)}
+     */
+    public static RasterRows of(BufferedImage image) {
+        if (!isDirect(image)) {
+            throw new IllegalArgumentException("Unsupported raster layout for image type " + image.getType());
+        }
+        WritableRaster raster = image.getRaster();
+        SampleModel sampleModel = raster.getSampleModel();
+        if (sampleModel instanceof SinglePixelPackedSampleModel packedModel) {
+            return new PackedInt(raster, packedModel);
+        }
+        return new InterleavedByte(raster, (ComponentSampleModel) sampleModel);
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+
+    /**
+     * INT_RGB, INT_ARGB, INT_BGR and friends: one int per pixel, 8 bits per band
+     */
+    private static final class PackedInt extends RasterRows {
+
+        private final int[] data;
+        private final int base;
+        private final int stride;
+        private final int[] shifts;
+
+        PackedInt(WritableRaster raster, SinglePixelPackedSampleModel sampleModel) {
+            super(raster.getWidth(), raster.getHeight(), sampleModel.getNumBands());
+            DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+            this.data = buffer.getData();
+            this.stride = sampleModel.getScanlineStride();
+            this.base = buffer.getOffset()
+                    - raster.getSampleModelTranslateY() * stride
+                    - raster.getSampleModelTranslateX();
+            this.shifts = sampleModel.getBitOffsets();
+        }
+
+        @Override
+        public int[] packedShifts() {
+            return shifts.clone();
+        }
+
+        @Override
+        public void readPixels(int y, int[] pixels) {
+            System.arraycopy(data, base + y * stride, pixels, 0, width);
+        }
+
+        @Override
+        public void writePixels(int y, int[] pixels) {
+            System.arraycopy(pixels, 0, data, base + y * stride, width);
+        }
+
+        @Override
+        public int[] storedPositions() {
+            int[] positions = new int[bands];
+            for (int b = 0; b < bands; b++) {
+                positions[b] = b;
+            }
+            return positions;
+        }
+
+        @Override
+        public void readStored(int y, int[] row) {
+            read(y, row, 0);
+        }
+
+        @Override
+        public void writeStored(int y, int[] row) {
+            write(y, row);
+        }
+
+        @Override
+        public void read(int y, int[] row, int start) {
+            int offset = base + y * stride;
+            int i = start;
+            if (bands == 3 || bands == 4) {
+                // Unrolled for the common RGB / ARGB layouts, as the loop over shifts[] does not vectorise
+                int s0 = shifts[0];
+                int s1 = shifts[1];
+                int s2 = shifts[2];
+                int s3 = shifts[bands - 1];
+                for (int x = 0; x < width; x++, i += bands) {
+                    int pixel = data[offset + x];
+                    row[i] = (pixel >>> s0) & 0xFF;
+                    row[i + 1] = (pixel >>> s1) & 0xFF;
+                    row[i + 2] = (pixel >>> s2) & 0xFF;
+                    if (bands == 4) {
+                        row[i + 3] = (pixel >>> s3) & 0xFF;
+                    }
+                }
+                return;
+            }
+            for (int x = 0; x < width; x++) {
+                int pixel = data[offset + x];
+                for (int b = 0; b < bands; b++) {
+                    row[i++] = (pixel >>> shifts[b]) & 0xFF;
+                }
+            }
+        }
+
+        @Override
+        public void write(int y, int[] row) {
+            int offset = base + y * stride;
+            int i = 0;
+            if (bands == 3 || bands == 4) {
+                int s0 = shifts[0];
+                int s1 = shifts[1];
+                int s2 = shifts[2];
+                int s3 = shifts[bands - 1];
+                for (int x = 0; x < width; x++, i += bands) {
+                    int pixel = clamp(row[i]) << s0 | clamp(row[i + 1]) << s1 | clamp(row[i + 2]) << s2;
+                    if (bands == 4) {
+                        pixel |= clamp(row[i + 3]) << s3;
+                    }
+                    data[offset + x] = pixel;
+                }
+                return;
+            }
+            for (int x = 0; x < width; x++) {
+                int pixel = 0;
+                for (int b = 0; b < bands; b++) {
+                    pixel |= clamp(row[i++]) << shifts[b];
+                }
+                data[offset + x] = pixel;
+            }
+        }
+    }
+
+    /**
+     * 3BYTE_BGR, 4BYTE_ABGR, BYTE_GRAY and custom pixel-interleaved byte layouts
+     */
+    private static final class InterleavedByte extends RasterRows {
+
+        private final byte[] data;
+        private final int base;
+        private final int stride;
+        private final int[] bandOffsets;
+        /** First byte of a pixel relative to its offset; band offsets need not start at 0 */
+        private final int pixelStart;
+
+        InterleavedByte(WritableRaster raster, ComponentSampleModel sampleModel) {
+            super(raster.getWidth(), raster.getHeight(), sampleModel.getNumBands());
+            DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+            this.data = buffer.getData();
+            this.stride = sampleModel.getScanlineStride();
+            this.base = buffer.getOffset()
+                    - raster.getSampleModelTranslateY() * stride
+                    - raster.getSampleModelTranslateX() * bands;
+            this.bandOffsets = sampleModel.getBandOffsets();
+            int first = bandOffsets[0];
+            for (int offset : bandOffsets) {
+                first = Math.min(first, offset);
+            }
+            this.pixelStart = first;
+        }
+
+        @Override
+        public int[] storedPositions() {
+            int[] positions = new int[bands];
+            for (int b = 0; b < bands; b++) {
+                positions[b] = bandOffsets[b] - pixelStart;
+            }
+            return positions;
+        }
+
+        @Override
+        public void readStored(int y, int[] row) {
+            int offset = base + y * stride + pixelStart;
+            int length = width * bands;
+            for (int i = 0; i < length; i++) {
+                row[i] = data[offset + i] & 0xFF;
+            }
+        }
+
+        @Override
+        public void writeStored(int y, int[] row) {
+            int offset = base + y * stride + pixelStart;
+            int length = width * bands;
+            for (int i = 0; i < length; i++) {
+                data[offset + i] = (byte) row[i];
+            }
+        }
+
+        @Override
+        public void read(int y, int[] row, int start) {
+            int offset = base + y * stride;
+            if (bands == 1) {
+                int first = offset + bandOffsets[0];
+                for (int x = 0; x < width; x++) {
+                    row[start + x] = data[first + x] & 0xFF;
+                }
+                return;
+            }
+            int i = start;
+            if (bands == 3 || bands == 4) {
+                int o0 = offset + bandOffsets[0];
+                int o1 = offset + bandOffsets[1];
+                int o2 = offset + bandOffsets[2];
+                int o3 = offset + bandOffsets[bands - 1];
+                for (int x = 0, p = 0; x < width; x++, p += bands, i += bands) {
+                    row[i] = data[o0 + p] & 0xFF;
+                    row[i + 1] = data[o1 + p] & 0xFF;
+                    row[i + 2] = data[o2 + p] & 0xFF;
+                    if (bands == 4) {
+                        row[i + 3] = data[o3 + p] & 0xFF;
+                    }
+                }
+                return;
+            }
+            for (int x = 0; x < width; x++, offset += bands) {
+                for (int b = 0; b < bands; b++) {
+                    row[i++] = data[offset + bandOffsets[b]] & 0xFF;
+                }
+            }
+        }
+
+        @Override
+        public void write(int y, int[] row) {
+            int offset = base + y * stride;
+            if (bands == 1) {
+                int start = offset + bandOffsets[0];
+                for (int x = 0; x < width; x++) {
+                    data[start + x] = (byte) clamp(row[x]);
+                }
+                return;
+            }
+            int i = 0;
+            if (bands == 3 || bands == 4) {
+                int o0 = offset + bandOffsets[0];
+                int o1 = offset + bandOffsets[1];
+                int o2 = offset + bandOffsets[2];
+                int o3 = offset + bandOffsets[bands - 1];
+                for (int x = 0, p = 0; x < width; x++, p += bands, i += bands) {
+                    data[o0 + p] = (byte) clamp(row[i]);
+                    data[o1 + p] = (byte) clamp(row[i + 1]);
+                    data[o2 + p] = (byte) clamp(row[i + 2]);
+                    if (bands == 4) {
+                        data[o3 + p] = (byte) clamp(row[i + 3]);
+                    }
+                }
+                return;
+            }
+            for (int x = 0; x < width; x++, offset += bands) {
+                for (int b = 0; b < bands; b++) {
+                    data[offset + bandOffsets[b]] = (byte) clamp(row[i++]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.mahesh.adobe.upload.imaging;
+
+/**
+ * A chain of crops, rotations and flips reduced to one crop of the source followed by one
+ * {@link Orientation}, the form both the pixel and the lossless JPEG paths apply.
+ *
+ * @param sourceWidth  width of the untouched source
+ * @param sourceHeight height of the untouched source
+ * @param x            left edge of the crop, in source pixels
+ * @param y            top edge of the crop, in source pixels
+ * @param width        crop width, in source pixels
+ * @param height       crop height, in source pixels
+ * @param orientation  applied to the cropped image
+ */
+public record Rearrangement(int sourceWidth, int sourceHeight, int x, int y, int width, int height,
+                            Orientation orientation) {
+
+    public Rearrangement {
+        if (x < 0 || y < 0 || width <= 0 || height <= 0
+                || (long) x + width > sourceWidth || (long) y + height > sourceHeight) {
+            throw new IllegalArgumentException("Crop lies outside the image");
+        }
+    }
+
+    public static Rearrangement identity(int width, int height) {
+        return new Rearrangement(width, height, 0, 0, width, height, Orientation.NORMAL);
+    }
+
+    public int outputWidth() {
+        return orientation.transposes() ? height : width;
+    }
+
+    public int outputHeight() {
+        return orientation.transposes() ? width : height;
+    }
+
+    /**
+     * Whether the result is the source as it is
+     */
+    public boolean isIdentity() {
+        return orientation == Orientation.NORMAL && !isCropped();
+    }
+
+    public boolean isCropped() {
+        return x != 0 || y != 0 || width != sourceWidth || height != sourceHeight;
+    }
+
+    /**
+     * This rearrangement, then {@code next} on its output
+     */
+    public Rearrangement then(Orientation next) {
+        return new Rearrangement(sourceWidth, sourceHeight, x, y, width, height, orientation.then(next));
+    }
+
+    /**
+     * This rearrangement, then a crop of its output; the crop is clipped to the output
+     *
+     * @throws IllegalArgumentException when nothing of the output is left
+     */
+    public Rearrangement thenCrop(int cropX, int cropY, int cropWidth, int cropHeight) {
+        int outputWidth = outputWidth();
+        int outputHeight = outputHeight();
+        if (cropX < 0 || cropY < 0 || cropWidth <= 0 || cropHeight <= 0
+                || cropX >= outputWidth || cropY >= outputHeight) {
+            throw new IllegalArgumentException("Crop lies outside the image");
+        }
+        int clippedWidth = Math.min(cropWidth, outputWidth - cropX);
+        int clippedHeight = Math.min(cropHeight, outputHeight - cropY);
+        // Back into the crop's own frame: undo the flips, then the transpose
+        int fx = orientation.flipsHorizontally() ? outputWidth - cropX - clippedWidth : cropX;
+        int fy = orientation.flipsVertically() ? outputHeight - cropY - clippedHeight : cropY;
+        if (orientation.transposes()) {
+            return new Rearrangement(sourceWidth, sourceHeight, x + fy, y + fx, clippedHeight, clippedWidth,
+                    orientation);
+        }
+        return new Rearrangement(sourceWidth, sourceHeight, x + fx, y + fy, clippedWidth, clippedHeight, orientation);
+    }
+}
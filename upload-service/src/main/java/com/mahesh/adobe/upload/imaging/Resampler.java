@@ -0,0 +1,323 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Separable image resampler working directly on raster arrays.
+ *
+ * Each resize is a horizontal pass into an 8-bit intermediate (source height x target
+ * width) followed by a vertical pass, both with precomputed fixed-point filter weights
+ * and both split into row bands on the ForkJoinPool. Downscaling widens the filter
+ * support by the scale factor, so every source pixel contributes (no aliasing from
+ * skipped pixels). The source colour layout is preserved; non-premultiplied alpha is
+ * premultiplied while filtering so transparent pixels do not bleed their colour.
+ */
+public class Resampler {
+
+    public enum Filter {
+        /** Point sampling; fastest, no smoothing */
+        NEAREST,
+        /** Triangle filter, 2x2 taps at 1:1 */
+        BILINEAR,
+        /** Catmull-Rom cubic (a = -0.5), 4x4 taps at 1:1 */
+        BICUBIC,
+        /** Lanczos windowed sinc with three lobes, 6x6 taps at 1:1; sharpest */
+        LANCZOS3,
+        /** Repeated 2x box halving, then a bicubic pass for the remainder */
+        PROGRESSIVE
+    }
+
+    private static final int PRECISION_BITS = 14;
+    private static final int ONE = 1 << PRECISION_BITS;
+    private static final int HALF = 1 << (PRECISION_BITS - 1);
+
+    /** Internal filter for exact 2:1 halving in PROGRESSIVE mode */
+    private static final WeightFunction BOX = new WeightFunction(0.5, x -> x >= -0.5 && x < 0.5 ? 1.0 : 0.0);
+
+    private final ForkJoinPool pool;
+    private final RasterPool rasterPool;
+
+    public Resampler(ForkJoinPool pool, RasterPool rasterPool) {
+        this.pool = pool;
+        this.rasterPool = rasterPool;
+    }
+
+    /**
+     * Resize to exactly {@code width} x {@code height} with the given filter
+     */
+    public BufferedImage resize(BufferedImage source, int width, int height, Filter filter) {
+        return resize(source, width, height, filter, null);
+    }
+
+    /**
+     * Resize into {@code destination}, which must be {@code width} x {@code height} with the
+     * source's raster layout after conversion to 8 bits; null takes a new image from the
+     * raster pool
+     */
+    public BufferedImage resize(BufferedImage source, int width, int height, Filter filter,
+                                BufferedImage destination) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Target size must be positive: " + width + "x" + height);
+        }
+        BufferedImage src = rasterPool.toDirect(source);
+        if (destination != null && !isDestinationFor(src, width, height, destination)) {
+            throw new IllegalArgumentException("Destination is not compatible with the resized image");
+        }
+
+        BufferedImage current = src;
+        if (filter == Filter.PROGRESSIVE) {
+            while (current.getWidth() >= 2 * width && current.getHeight() >= 2 * height) {
+                BufferedImage halved = resample(current, current.getWidth() / 2, current.getHeight() / 2, BOX, null);
+                if (current != source) {
+                    rasterPool.release(current);
+                }
+                current = halved;
+            }
+            filter = Filter.BICUBIC;
+        }
+        BufferedImage result = resample(current, width, height, weightFunction(filter), destination);
+        if (current != source) {
+            rasterPool.release(current);
+        }
+        return result;
+    }
+
+    private static boolean isDestinationFor(BufferedImage src, int width, int height, BufferedImage destination) {
+        return destination != src
+                && destination.getWidth() == width
+                && destination.getHeight() == height
+                && destination.getColorModel().equals(src.getColorModel())
+                && destination.getSampleModel().getNumBands() == src.getSampleModel().getNumBands()
+                && RasterRows.isDirect(destination);
+    }
+
+    private BufferedImage resample(BufferedImage src, int width, int height, WeightFunction function,
+                                   BufferedImage destination) {
+        int sourceWidth = src.getWidth();
+        int sourceHeight = src.getHeight();
+        BufferedImage dst = destination != null ? destination : rasterPool.createCompatible(src, width, height);
+        RasterRows in = RasterRows.of(src);
+        RasterRows out = RasterRows.of(dst);
+        int bands = in.bands();
+        int alphaBand = src.getColorModel().hasAlpha() && !src.isAlphaPremultiplied() ? bands - 1 : -1;
+
+        Contributions horizontal = contributions(sourceWidth, width, function);
+        Contributions vertical = contributions(sourceHeight, height, function);
+
+        long intermediateSize = (long) sourceHeight * width * bands;
+        if (intermediateSize > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Resize too large: " + width + "x" + height);
+        }
+
+        // Pass 1: every source row -> target width, into an 8-bit intermediate
+        byte[] intermediate = rasterPool.bytes((int) intermediateSize);
+        RowBands.run(pool, width, sourceHeight, 1, (y0, y1) -> {
+            int[] row = new int[sourceWidth * bands];
+            for (int y = y0; y < y1; y++) {
+                in.read(y, row);
+                if (alphaBand >= 0) {
+                    premultiply(row, bands, alphaBand);
+                }
+                horizontalPass(row, bands, horizontal, intermediate, y * width * bands);
+            }
+        });
+
+        // Pass 2: intermediate columns -> target height
+        RowBands.run(pool, width, height, 1, (y0, y1) -> {
+            int n = width * bands;
+            int[] acc = new int[n];
+            for (int y = y0; y < y1; y++) {
+                verticalPass(intermediate, n, vertical, y, acc);
+                if (alphaBand >= 0) {
+                    unpremultiply(acc, bands, alphaBand);
+                }
+                out.write(y, acc);
+            }
+        });
+        rasterPool.release(intermediate);
+        return dst;
+    }
+
+    private static void horizontalPass(int[] row, int bands, Contributions c, byte[] out, int offset) {
+        int o = offset;
+        for (int x = 0; x < c.size; x++) {
+            int base = c.start[x] * bands;
+            int weightOffset = x * c.maxTaps;
+            int taps = c.count[x];
+            for (int b = 0; b < bands; b++) {
+                int acc = HALF;
+                for (int k = 0, i = base + b; k < taps; k++, i += bands) {
+                    acc += c.weights[weightOffset + k] * row[i];
+                }
+                out[o++] = (byte) clamp(acc >> PRECISION_BITS);
+            }
+        }
+    }
+
+    private static void verticalPass(byte[] intermediate, int n, Contributions c, int y, int[] acc) {
+        Arrays.fill(acc, HALF);
+        int weightOffset = y * c.maxTaps;
+        int start = c.start[y];
+        for (int k = 0; k < c.count[y]; k++) {
+            int weight = c.weights[weightOffset + k];
+            int rowOffset = (start + k) * n;
+            for (int i = 0; i < n; i++) {
+                acc[i] += weight * (intermediate[rowOffset + i] & 0xFF);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            acc[i] = clamp(acc[i] >> PRECISION_BITS);
+        }
+    }
+
+    private static void premultiply(int[] row, int bands, int alphaBand) {
+        for (int p = 0; p < row.length; p += bands) {
+            int alpha = row[p + alphaBand];
+            if (alpha == 255) {
+                continue;
+            }
+            for (int b = 0; b < bands; b++) {
+                if (b != alphaBand) {
+                    row[p + b] = (row[p + b] * alpha + 127) / 255;
+                }
+            }
+        }
+    }
+
+    private static void unpremultiply(int[] row, int bands, int alphaBand) {
+        for (int p = 0; p < row.length; p += bands) {
+            int alpha = row[p + alphaBand];
+            if (alpha == 255) {
+                continue;
+            }
+            for (int b = 0; b < bands; b++) {
+                if (b != alphaBand) {
+                    row[p + b] = alpha == 0 ? 0 : Math.min(255, (row[p + b] * 255 + alpha / 2) / alpha);
+                }
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+
+    // ---------------------------------------------------------------------
+    // Filter weights
+    // ---------------------------------------------------------------------
+
+    private record WeightFunction(double support, DoubleUnaryOperator weight) {
+    }
+
+    /**
+     * Weight function for a filter; null for NEAREST, which is handled as a single tap
+     */
+    private static WeightFunction weightFunction(Filter filter) {
+        switch (filter) {
+            case NEAREST:
+                return null;
+            case BILINEAR:
+                return new WeightFunction(1.0, x -> {
+                    x = Math.abs(x);
+                    return x < 1.0 ? 1.0 - x : 0.0;
+                });
+            case BICUBIC:
+                return new WeightFunction(2.0, Resampler::catmullRom);
+            case LANCZOS3:
+                return new WeightFunction(3.0, x -> Math.abs(x) < 3.0 ? sinc(x) * sinc(x / 3.0) : 0.0);
+            default:
+                throw new IllegalArgumentException("No weight function for " + filter);
+        }
+    }
+
+    private static double catmullRom(double x) {
+        double a = -0.5;
+        x = Math.abs(x);
+        if (x < 1.0) {
+            return ((a + 2.0) * x - (a + 3.0)) * x * x + 1.0;
+        }
+        if (x < 2.0) {
+            return (((x - 5.0) * x + 8.0) * x - 4.0) * a;
+        }
+        return 0.0;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0.0) {
+            return 1.0;
+        }
+        x *= Math.PI;
+        return Math.sin(x) / x;
+    }
+
+    /**
+     * Per output coordinate: first source index, tap count and fixed-point weights
+     */
+    private static final class Contributions {
+        final int size;
+        final int maxTaps;
+        final int[] start;
+        final int[] count;
+        final int[] weights;
+
+        Contributions(int size, int maxTaps) {
+            this.size = size;
+            this.maxTaps = maxTaps;
+            this.start = new int[size];
+            this.count = new int[size];
+            this.weights = new int[size * maxTaps];
+        }
+    }
+
+    private static Contributions contributions(int inSize, int outSize, WeightFunction function) {
+        double scale = (double) inSize / outSize;
+
+        if (function == null) {
+            // Nearest neighbour: one tap at the source pixel containing the output centre
+            Contributions c = new Contributions(outSize, 1);
+            for (int x = 0; x < outSize; x++) {
+                c.start[x] = Math.min((int) ((x + 0.5) * scale), inSize - 1);
+                c.count[x] = 1;
+                c.weights[x] = ONE;
+            }
+            return c;
+        }
+
+        // When shrinking, stretch the filter so it covers every source pixel
+        double filterScale = Math.max(scale, 1.0);
+        double support = function.support() * filterScale;
+        int maxTaps = (int) Math.ceil(support) * 2 + 1;
+        Contributions c = new Contributions(outSize, maxTaps);
+        double[] taps = new double[maxTaps];
+
+        for (int x = 0; x < outSize; x++) {
+            double center = (x + 0.5) * scale;
+            int min = Math.max(0, (int) (center - support + 0.5));
+            int max = Math.min(inSize, (int) (center + support + 0.5));
+            int n = Math.min(Math.max(1, max - min), maxTaps);
+            min = Math.min(min, inSize - n);
+
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                double w = function.weight().applyAsDouble((min + i - center + 0.5) / filterScale);
+                taps[i] = w;
+                total += w;
+            }
+            int weightOffset = x * maxTaps;
+            if (total == 0) {
+                c.weights[weightOffset] = ONE;
+                n = 1;
+            } else {
+                for (int i = 0; i < n; i++) {
+                    c.weights[weightOffset + i] = (int) Math.round(taps[i] / total * ONE);
+                }
+            }
+            c.start[x] = min;
+            c.count[x] = n;
+        }
+        return c;
+    }
+}
@@ -0,0 +1,67 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits an image into horizontal bands of rows and processes them on a ForkJoinPool.
+ * Small images are processed inline on the calling thread.
+ */
+final class RowBands {
+
+    /** Below this many pixels the fork/join overhead outweighs the speed-up */
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    /** Bands per worker, so that uneven bands still balance out */
+    private static final int BANDS_PER_WORKER = 4;
+
+    @FunctionalInterface
+    interface Band {
+        void process(int y0, int y1);
+    }
+
+    private RowBands() {
+    }
+
+    /**
+     * Process rows [0, height) in bands of at least {@code minRows} rows
+     */
+    static void run(ForkJoinPool pool, int width, int height, int minRows, Band band) {
+        int workers = pool.getParallelism();
+        int target = Math.max(Math.max(1, minRows), ceilDiv(height, workers * BANDS_PER_WORKER));
+        if (workers <= 1 || (long) width * height < PARALLEL_THRESHOLD || height <= target) {
+            band.process(0, height);
+            return;
+        }
+        pool.invoke(new BandTask(band, 0, height, target));
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    private static final class BandTask extends RecursiveAction {
+
+        private final Band band;
+        private final int y0;
+        private final int y1;
+        private final int target;
+
+        BandTask(Band band, int y0, int y1, int target) {
+            this.band = band;
+            this.y0 = y0;
+            this.y1 = y1;
+            this.target = target;
+        }
+
+        @Override
+        protected void compute() {
+            if (y1 - y0 <= target) {
+                band.process(y0, y1);
+                return;
+            }
+            int mid = y0 + (y1 - y0) / 2;
+            invokeAll(new BandTask(band, y0, mid, target), new BandTask(band, mid, y1, target));
+        }
+    }
+}
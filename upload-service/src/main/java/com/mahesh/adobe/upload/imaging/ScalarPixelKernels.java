@@ -0,0 +1,123 @@
+package com.mahesh.adobe.upload.imaging;
+
+/**
+ * Plain loops; the fallback when the Vector API is not available
+ */
+final class ScalarPixelKernels extends PixelKernels {
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    void lut(int[] row, int length, int bands, int alphaPosition, int[] lut) {
+        lut(row, 0, length, bands, alphaPosition, lut);
+    }
+
+    /**
+     * Table lookup over {@code row[from..to)}; {@code from} must be at a pixel boundary
+     */
+    static void lut(int[] row, int from, int to, int bands, int alphaPosition, int[] lut) {
+        if (alphaPosition < 0) {
+            for (int i = from; i < to; i++) {
+                row[i] = lut[row[i]];
+            }
+            return;
+        }
+        for (int p = from; p < to; p += bands) {
+            for (int b = 0; b < bands; b++) {
+                if (b != alphaPosition) {
+                    row[p + b] = lut[row[p + b]];
+                }
+            }
+        }
+    }
+
+    @Override
+    void luma(int[] row, int bands, int width, int[] weights, int[] gray) {
+        luma(row, 0, width, bands, weights, gray);
+    }
+
+    /**
+     * Luma of pixels [from, to)
+     */
+    static void luma(int[] row, int from, int to, int bands, int[] weights, int[] gray) {
+        int w0 = weights[0];
+        int w1 = bands > 1 ? weights[1] : 0;
+        int w2 = bands > 2 ? weights[2] : 0;
+        int w3 = bands > 3 ? weights[3] : 0;
+        if (bands == 3) {
+            for (int x = from, p = from * 3; x < to; x++, p += 3) {
+                gray[x] = (w0 * row[p] + w1 * row[p + 1] + w2 * row[p + 2] + 128) >> 8;
+            }
+            return;
+        }
+        if (bands == 4) {
+            for (int x = from, p = from * 4; x < to; x++, p += 4) {
+                gray[x] = (w0 * row[p] + w1 * row[p + 1] + w2 * row[p + 2] + w3 * row[p + 3] + 128) >> 8;
+            }
+            return;
+        }
+        for (int x = from, p = from * bands; x < to; x++, p += bands) {
+            int sum = 128;
+            for (int b = 0; b < bands; b++) {
+                sum += weights[b] * row[p + b];
+            }
+            gray[x] = sum >> 8;
+        }
+    }
+
+    @Override
+    void permute(int[] row, int[] indexMap, int length, int[] out) {
+        for (int i = 0; i < length; i++) {
+            out[i] = row[indexMap[i]];
+        }
+    }
+
+    @Override
+    void packedLut(int[] pixels, int width, int[] sourceShifts, int[] targetShifts, int[] lut) {
+        packedLut(pixels, 0, width, sourceShifts, targetShifts, lut);
+    }
+
+    /**
+     * Packed table lookup over pixels [from, to)
+     */
+    static void packedLut(int[] pixels, int from, int to, int[] sourceShifts, int[] targetShifts, int[] lut) {
+        int s0 = sourceShifts[0];
+        int s1 = sourceShifts[1];
+        int s2 = sourceShifts[2];
+        int t0 = targetShifts[0];
+        int t1 = targetShifts[1];
+        int t2 = targetShifts[2];
+        int keep = ~(0xFF << t0 | 0xFF << t1 | 0xFF << t2);
+        for (int x = from; x < to; x++) {
+            int pixel = pixels[x];
+            pixels[x] = pixel & keep
+                    | lut[(pixel >>> s0) & 0xFF] << t0
+                    | lut[(pixel >>> s1) & 0xFF] << t1
+                    | lut[(pixel >>> s2) & 0xFF] << t2;
+        }
+    }
+
+    @Override
+    void packedLuma(int[] pixels, int width, int[] shifts, int[] weights, int[] gray) {
+        packedLuma(pixels, 0, width, shifts, weights, gray);
+    }
+
+    /**
+     * Packed luma over pixels [from, to)
+     */
+    static void packedLuma(int[] pixels, int from, int to, int[] shifts, int[] weights, int[] gray) {
+        int s0 = shifts[0];
+        int s1 = shifts[1];
+        int s2 = shifts[2];
+        int w0 = weights[0];
+        int w1 = weights[1];
+        int w2 = weights[2];
+        for (int x = from; x < to; x++) {
+            int pixel = pixels[x];
+            gray[x] = (w0 * ((pixel >>> s0) & 0xFF) + w1 * ((pixel >>> s1) & 0xFF) + w2 * ((pixel >>> s2) & 0xFF) + 128) >> 8;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.mahesh.adobe.upload.imaging;
+
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Memory-cached ImageOutputStream that passes bytes on as the encoder produces them.
+ *
+ * MemoryCacheImageOutputStream only forwards bytes when the writer calls flushBefore.
+ * The PNG writer does that after every chunk, but the JPEG writer never does, so a JPEG
+ * sits in memory whole until close. This stream flushes everything written so far once
+ * {@value #CHUNK_SIZE} bytes have accumulated. That is only safe for writers that never
+ * seek back, which is why {@link #open} uses it for JPEG alone.
+ */
+public class StreamingImageOutputStream extends MemoryCacheImageOutputStream {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    public StreamingImageOutputStream(OutputStream stream) {
+        super(stream);
+    }
+
+    /**
+     * Image output stream for the given writer format over {@code output}, which stays open
+     * when the returned stream is closed
+     */
+    public static ImageOutputStream open(String format, OutputStream output) {
+        if ("jpg".equalsIgnoreCase(format) || "jpeg".equalsIgnoreCase(format)) {
+            return new StreamingImageOutputStream(output);
+        }
+        return new MemoryCacheImageOutputStream(output);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        super.write(b);
+        flushIfFull();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        super.write(b, off, len);
+        flushIfFull();
+    }
+
+    private void flushIfFull() throws IOException {
+        long position = getStreamPosition();
+        if (position - getFlushedPosition() >= CHUNK_SIZE) {
+            flushBefore(position);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.mahesh.adobe.upload.imaging;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Packed-RGB image whose pixels are rendered one horizontal strip at a time.
+ *
+ * The raster is backed by a DataBuffer that renders the strip holding a requested row
+ * on first access and drops the previous strip, so an ImageWriter pulling rows top to
+ * bottom (as the JDK JPEG and PNG writers do) only ever holds one strip of pixels.
+ * Out-of-order access re-renders strips. The image is read-only and must be used from
+ * one thread at a time; render failures surface as {@link UncheckedIOException}.
+ */
+public final class StripImage {
+
+    /**
+     * Produces rows [y0, y1) as packed (A)RGB ints, {@code width} per row
+     */
+    @FunctionalInterface
+    public interface Renderer {
+        int[] render(int y0, int y1) throws IOException;
+    }
+
+    private StripImage() {
+    }
+
+    /**
+     * @param stripHeight rows rendered per call to the renderer
+     * @param alpha       whether the packed pixels carry a (non-premultiplied) alpha channel
+     */
+    public static BufferedImage create(int width, int height, int stripHeight, boolean alpha, Renderer renderer) {
+        if ((long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Image too large for a single raster: " + width + "x" + height);
+        }
+        ColorModel colorModel = alpha
+                ? ColorModel.getRGBdefault()
+                : new DirectColorModel(24, 0x00FF0000, 0x0000FF00, 0x000000FF);
+        StripBuffer buffer = new StripBuffer(width, height, Math.max(1, stripHeight), renderer);
+        WritableRaster raster = Raster.createWritableRaster(
+                colorModel.createCompatibleSampleModel(width, height), buffer, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+
+    private static final class StripBuffer extends DataBuffer {
+
+        private final int width;
+        private final int height;
+        private final int stripHeight;
+        private final Renderer renderer;
+
+        private int[] strip;
+        private int stripStart;
+        private int stripEnd;
+
+        StripBuffer(int width, int height, int stripHeight, Renderer renderer) {
+            super(TYPE_INT, width * height);
+            this.width = width;
+            this.height = height;
+            this.stripHeight = stripHeight;
+            this.renderer = renderer;
+        }
+
+        @Override
+        public int getElem(int bank, int i) {
+            int y = i / width;
+            if (y < stripStart || y >= stripEnd) {
+                load(y);
+            }
+            return strip[i - stripStart * width];
+        }
+
+        @Override
+        public void setElem(int bank, int i, int value) {
+            throw new UnsupportedOperationException("Strip images are read-only");
+        }
+
+        private void load(int y) {
+            int start = y - y % stripHeight;
+            int end = Math.min(height, start + stripHeight);
+            // Drop the previous strip before rendering the next one
+            strip = null;
+            try {
+                strip = renderer.render(start, end);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            stripStart = start;
+            stripEnd = end;
+        }
+    }
+}
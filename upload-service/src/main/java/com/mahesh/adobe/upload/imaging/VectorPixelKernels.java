@@ -0,0 +1,146 @@
+package com.mahesh.adobe.upload.imaging;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Vector API kernels at the platform's preferred width (8 ints with AVX2, 16 with
+ * AVX-512). Table lookups are lane gathers from the 256-entry table indexed by the
+ * samples themselves; luma gathers every pixel's samples out of the interleaved row with
+ * a fixed stride, and packed pixels are split into channels with shifts and masks before
+ * their gathers. Tails shorter than a vector, and layouts a vector cannot tile, fall back
+ * to the scalar loops. Only loaded through {@link PixelKernels#best()}.
+ */
+final class VectorPixelKernels extends PixelKernels {
+
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int LANES = SPECIES.length();
+    private static final int MAX_BANDS = 4;
+
+    /** strides[bands][lane] = lane * bands: the first sample of consecutive pixels */
+    private final int[][] strides = new int[MAX_BANDS + 1][];
+    /**
+     * colorLanes.get(bands).get(alpha): every lane except each pixel's alpha; empty for band
+     * counts whose pixels do not tile a vector
+     */
+    private final List<List<VectorMask<Integer>>> colorLanes;
+
+    VectorPixelKernels() {
+        List<List<VectorMask<Integer>>> masks = new ArrayList<>(MAX_BANDS + 1);
+        masks.add(List.of());
+        for (int bands = 1; bands <= MAX_BANDS; bands++) {
+            strides[bands] = new int[LANES];
+            for (int lane = 0; lane < LANES; lane++) {
+                strides[bands][lane] = lane * bands;
+            }
+            List<VectorMask<Integer>> byAlpha = new ArrayList<>(bands);
+            if (bands > 1 && LANES % bands == 0) {
+                for (int alpha = 0; alpha < bands; alpha++) {
+                    boolean[] color = new boolean[LANES];
+                    for (int lane = 0; lane < LANES; lane++) {
+                        color[lane] = lane % bands != alpha;
+                    }
+                    byAlpha.add(VectorMask.fromArray(SPECIES, color, 0));
+                }
+            }
+            masks.add(List.copyOf(byAlpha));
+        }
+        colorLanes = List.copyOf(masks);
+    }
+
+    @Override
+    public String name() {
+        return "vector(" + SPECIES.vectorBitSize() + "-bit)";
+    }
+
+    @Override
+    void lut(int[] row, int length, int bands, int alphaPosition, int[] lut) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        if (alphaPosition < 0) {
+            for (; i < bound; i += LANES) {
+                IntVector.fromArray(SPECIES, lut, 0, row, i).intoArray(row, i);
+            }
+            ScalarPixelKernels.lut(row, i, length, bands, alphaPosition, lut);
+            return;
+        }
+        List<VectorMask<Integer>> masks = bands <= MAX_BANDS ? colorLanes.get(bands) : List.of();
+        VectorMask<Integer> color = masks.isEmpty() ? null : masks.get(alphaPosition);
+        if (color == null) {
+            ScalarPixelKernels.lut(row, 0, length, bands, alphaPosition, lut);
+            return;
+        }
+        // Whole pixels per vector, so the alpha lanes stay in place and are blended back
+        for (; i < bound; i += LANES) {
+            IntVector samples = IntVector.fromArray(SPECIES, row, i);
+            samples.blend(IntVector.fromArray(SPECIES, lut, 0, row, i), color).intoArray(row, i);
+        }
+        ScalarPixelKernels.lut(row, i, length, bands, alphaPosition, lut);
+    }
+
+    @Override
+    void luma(int[] row, int bands, int width, int[] weights, int[] gray) {
+        if (bands > MAX_BANDS) {
+            ScalarPixelKernels.luma(row, 0, width, bands, weights, gray);
+            return;
+        }
+        int[] stride = strides[bands];
+        int bound = SPECIES.loopBound(width);
+        int x = 0;
+        for (; x < bound; x += LANES) {
+            int p = x * bands;
+            IntVector sum = IntVector.broadcast(SPECIES, 128);
+            for (int b = 0; b < bands; b++) {
+                if (weights[b] != 0) {
+                    sum = sum.add(IntVector.fromArray(SPECIES, row, p + b, stride, 0).mul(weights[b]));
+                }
+            }
+            sum.lanewise(VectorOperators.ASHR, 8).intoArray(gray, x);
+        }
+        ScalarPixelKernels.luma(row, x, width, bands, weights, gray);
+    }
+
+    @Override
+    void permute(int[] row, int[] indexMap, int length, int[] out) {
+        int bound = SPECIES.loopBound(length);
+        int i = 0;
+        for (; i < bound; i += LANES) {
+            IntVector.fromArray(SPECIES, row, 0, indexMap, i).intoArray(out, i);
+        }
+        for (; i < length; i++) {
+            out[i] = row[indexMap[i]];
+        }
+    }
+
+    @Override
+    void packedLut(int[] pixels, int width, int[] sourceShifts, int[] targetShifts, int[] lut) {
+        int keep = ~(0xFF << targetShifts[0] | 0xFF << targetShifts[1] | 0xFF << targetShifts[2]);
+        // Gathers take their indices from an array, so each channel goes through this one
+        int[] indices = new int[LANES];
+        int bound = SPECIES.loopBound(width);
+        int x = 0;
+        for (; x < bound; x += LANES) {
+            IntVector pixel = IntVector.fromArray(SPECIES, pixels, x);
+            IntVector result = pixel.and(keep);
+            for (int c = 0; c < 3; c++) {
+                pixel.lanewise(VectorOperators.LSHR, sourceShifts[c]).and(0xFF).intoArray(indices, 0);
+                result = result.or(IntVector.fromArray(SPECIES, lut, 0, indices, 0)
+                        .lanewise(VectorOperators.LSHL, targetShifts[c]));
+            }
+            result.intoArray(pixels, x);
+        }
+        ScalarPixelKernels.packedLut(pixels, x, width, sourceShifts, targetShifts, lut);
+    }
+
+    @Override
+    void packedLuma(int[] pixels, int width, int[] shifts, int[] weights, int[] gray) {
+        // C2 already compiles this shift / mask / multiply loop to SIMD, and measured
+        // faster than the same arithmetic written with IntVector
+        ScalarPixelKernels.packedLuma(pixels, 0, width, shifts, weights, gray);
+    }
+}
@@ -0,0 +1,193 @@
+package com.mahesh.adobe.upload.job;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides which URLs job callbacks may be posted to.
+ *
+ * A callback is a request the service makes on a client's behalf, so without a check anyone
+ * who can submit a job can make it POST into the internal network (SSRF): the metadata
+ * endpoint, the admin ports of neighbouring services, localhost. Callbacks must be http(s),
+ * go to a host on {@code allowedHosts} when one is configured, and resolve only to public
+ * addresses unless {@code allowPrivateAddresses} is set.
+ *
+ * Checking the name up front is not enough on its own: the host's DNS can answer with a public
+ * address for the check and an internal one for the connection (DNS rebinding). Clients from
+ * {@link #newClient} therefore resolve through {@link #resolve}, so every connection goes to
+ * an address vetted for that very connection, while TLS still verifies the real host name.
+ * Redirects are never followed.
+ */
+@Component
+public class CallbackPolicy {
+    
+    private final List<String> allowedHosts;
+    private final boolean allowPrivateAddresses;
+    
+    /**
+     * @param allowedHosts          host names callbacks may go to, or {@code *.example.com} for any
+     *                              subdomain; empty allows any host
+     * @param allowPrivateAddresses accept hosts resolving to loopback, private or link-local addresses
+     */
+    public CallbackPolicy(@Value("${jobs.callback-allowed-hosts:}") List<String> allowedHosts,
+                          @Value("${jobs.callback-allow-private:false}") boolean allowPrivateAddresses) {
+        this.allowedHosts = allowedHosts.stream()
+                .map(host -> host.trim().toLowerCase(Locale.ROOT))
+                .filter(host -> !host.isEmpty())
+                .toList();
+        this.allowPrivateAddresses = allowPrivateAddresses;
+    }
+    
+    /**
+     * Check a callback URL; throws IllegalArgumentException when it may not be used
+     */
+    public void check(URI url) {
+        String scheme = url.getScheme();
+        if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+            throw new IllegalArgumentException("Callback URL must be http or https");
+        }
+        String host = url.getHost();
+        if (host == null || host.isEmpty()) {
+            throw new IllegalArgumentException("Callback URL has no host");
+        }
+        if (url.getRawUserInfo() != null) {
+            throw new IllegalArgumentException("Callback URL may not carry credentials");
+        }
+        if (!isAllowedHost(host)) {
+            throw new IllegalArgumentException("Callback host is not allowed: " + host);
+        }
+        if (allowPrivateAddresses) {
+            return;
+        }
+        try {
+            resolve(host);
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+    
+    /**
+     * Addresses a callback to {@code host} may connect to. Unless private addresses are allowed,
+     * a host with any non-public address gets none, so a rebinding answer cannot slip one in.
+     *
+     * @throws UnknownHostException when the host does not resolve or resolves to a non-public address
+     */
+    public InetAddress[] resolve(String host) throws UnknownHostException {
+        InetAddress[] addresses;
+        try {
+            addresses = InetAddress.getAllByName(host);
+        } catch (UnknownHostException e) {
+            throw new UnknownHostException("Callback host does not resolve: " + host);
+        }
+        if (!allowPrivateAddresses) {
+            for (InetAddress address : addresses) {
+                if (!isPublic(address)) {
+                    throw new UnknownHostException("Callback host resolves to a non-public address: " + host);
+                }
+            }
+        }
+        return addresses;
+    }
+    
+    /**
+     * An HTTP client for callbacks that connects only to addresses {@link #resolve} hands out and
+     * never follows redirects, which could lead past the policy
+     *
+     * @param timeout connect, read and pool-wait timeout
+     */
+    public CloseableHttpClient newClient(Duration timeout) {
+        int millis = Math.toIntExact(timeout.toMillis());
+        return HttpClients.custom()
+                .setDnsResolver(this::resolve)
+                .disableRedirectHandling()
+                .disableAutomaticRetries()
+                // Callbacks run concurrently and often to one endpoint; two connections per host, the
+                // default, would leave most of them waiting for the pool
+                .setMaxConnPerRoute(32)
+                .setMaxConnTotal(128)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(millis)
+                        .setSocketTimeout(millis)
+                        .setConnectionRequestTimeout(millis)
+                        .build())
+                .build();
+    }
+    
+    private boolean isAllowedHost(String host) {
+        if (allowedHosts.isEmpty()) {
+            return true;
+        }
+        String name = host.toLowerCase(Locale.ROOT);
+        for (String allowed : allowedHosts) {
+            if (allowed.startsWith("*.") ? name.endsWith(allowed.substring(1)) : name.equals(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Whether an address is reachable on the public internet: not the wildcard, loopback,
+     * link-local (which includes the cloud metadata endpoint), private, shared (carrier-grade
+     * NAT), benchmarking, reserved or multicast ranges, nor an IPv6 form wrapping one of those
+     */
+    static boolean isPublic(InetAddress address) {
+        if (address.isAnyLocalAddress() || address.isLoopbackAddress() || address.isLinkLocalAddress()
+                || address.isSiteLocalAddress() || address.isMulticastAddress()) {
+            return false;
+        }
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address) {
+            int first = bytes[0] & 0xFF;
+            int second = bytes[1] & 0xFF;
+            int third = bytes[2] & 0xFF;
+            // 0.0.0.0/8, 100.64.0.0/10 (shared), 192.0.0.0/24 (protocol assignments),
+            // 198.18.0.0/15 (benchmarking) and 240.0.0.0/4 (reserved, with the broadcast address)
+            return first != 0
+                    && !(first == 100 && second >= 64 && second < 128)
+                    && !(first == 192 && second == 0 && third == 0)
+                    && !(first == 198 && (second & 0xFE) == 18)
+                    && first < 240;
+        }
+        if (address instanceof Inet6Address) {
+            // Unique local fc00::/7, which isSiteLocalAddress (the deprecated fec0::/10) misses
+            if ((bytes[0] & 0xFE) == 0xFC) {
+                return false;
+            }
+            // IPv4-compatible, NAT64 and 6to4 forms wrap an IPv4 address that has to pass on its own
+            boolean compatible = true;
+            for (int i = 0; i < 12; i++) {
+                compatible &= bytes[i] == 0;
+            }
+            boolean nat64 = bytes[0] == 0x00 && bytes[1] == 0x64 && bytes[2] == (byte) 0xFF && bytes[3] == (byte) 0x9B;
+            if (compatible || nat64) {
+                return isPublicIpv4(Arrays.copyOfRange(bytes, 12, 16));
+            }
+            if (bytes[0] == 0x20 && bytes[1] == 0x02) {
+                return isPublicIpv4(Arrays.copyOfRange(bytes, 2, 6));
+            }
+        }
+        return true;
+    }
+    
+    private static boolean isPublicIpv4(byte[] bytes) {
+        try {
+            return isPublic(InetAddress.getByAddress(bytes));
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.mahesh.adobe.upload.job;
+
+/**
+ * Priority class of a job. Higher classes are dequeued first and may use more of the
+ * queue: when the queue fills up, LOW jobs are refused first and HIGH jobs last.
+ */
+public enum JobPriority {
+    HIGH(1.0),
+    NORMAL(0.9),
+    LOW(0.5);
+    
+    /** Share of the queue capacity this class may fill before it is refused */
+    private final double admissionShare;
+    
+    JobPriority(double admissionShare) {
+        this.admissionShare = admissionShare;
+    }
+    
+    public int admissionLimit(int capacity) {
+        return Math.max(1, (int) (capacity * admissionShare));
+    }
+}
@@ -0,0 +1,23 @@
+package com.mahesh.adobe.upload.job;
+
+/**
+ * Queue between request threads and job workers. The default is the in-process
+ * {@link LocalJobQueue}; another implementation can be plugged in by declaring a
+ * JobQueue bean.
+ */
+public interface JobQueue {
+    
+    /**
+     * Enqueue without blocking; returns false when the queue is full
+     */
+    boolean offer(ProcessingJob job);
+    
+    /**
+     * Next job to run, highest priority first and FIFO within a priority; blocks while empty
+     */
+    ProcessingJob take() throws InterruptedException;
+    
+    int size();
+    
+    int capacity();
+}
@@ -0,0 +1,19 @@
+package com.mahesh.adobe.upload.job;
+
+/**
+ * Thrown when a job is refused by admission control because the queue is too full
+ * for its priority class
+ */
+public class JobRejectedException extends RuntimeException {
+    
+    private final long retryAfterSeconds;
+    
+    public JobRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,348 @@
+package com.mahesh.adobe.upload.job;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mahesh.adobe.upload.imaging.ImageEncoder;
+import com.mahesh.adobe.upload.imaging.PooledOutputStream;
+import com.mahesh.adobe.upload.model.ImageMetadata;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import com.mahesh.adobe.upload.service.AdmissionControl;
+import com.mahesh.adobe.upload.service.ImageDecoder;
+import com.mahesh.adobe.upload.service.ImageMetadataProbe;
+import com.mahesh.adobe.upload.service.ImageProcessingService;
+import com.mahesh.adobe.upload.service.ProcessingMetrics;
+import com.mahesh.adobe.upload.service.S3Service;
+import com.mahesh.adobe.upload.service.TiledImageProcessor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs processing pipelines off the request threads.
+ *
+ * Submitted jobs are spooled to a temporary file and queued; a fixed set of worker
+ * threads (one per processor by default, since the work is CPU bound) takes them in
+ * priority order, processes them and stores the result in S3. When the queue fills up,
+ * admission control refuses low-priority work first and tells the caller when to come
+ * back, so overload turns into fast 429s rather than requests timing out at the proxy.
+ */
+@Service
+public class JobService implements InitializingBean, DisposableBean {
+    
+    private static final Logger log = LoggerFactory.getLogger(JobService.class);
+    
+    /** Weight of the newest sample in the moving average of job durations */
+    private static final double DURATION_SMOOTHING = 0.2;
+    
+    private final JobQueue queue;
+    private final ImageMetadataProbe metadataProbe;
+    private final ImageDecoder imageDecoder;
+    private final ImageProcessingService imageProcessingService;
+    private final S3Service s3Service;
+    private final TiledImageProcessor tiledImageProcessor;
+    private final ProcessingMetrics metrics;
+    private final AdmissionControl admissionControl;
+    private final CallbackPolicy callbackPolicy;
+    private final MeterRegistry registry;
+    private final ObjectMapper objectMapper;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger runningJobs = new AtomicInteger();
+    private final List<Thread> workers = new ArrayList<>();
+    
+    @Value("${jobs.workers:0}")
+    private int workerCount;
+    
+    @Value("${jobs.retention:1h}")
+    private Duration retention;
+    
+    @Value("${jobs.callback-timeout:5s}")
+    private Duration callbackTimeout;
+    
+    private Cache<String, ProcessingJob> jobs;
+    private CloseableHttpClient callbackClient;
+    private ExecutorService callbackExecutor;
+    private volatile double averageJobMillis = 1000;
+    private volatile boolean running;
+    
+    public JobService(JobQueue queue, ImageMetadataProbe metadataProbe, ImageDecoder imageDecoder,
+                      ImageProcessingService imageProcessingService, S3Service s3Service,
+                      TiledImageProcessor tiledImageProcessor, ProcessingMetrics metrics,
+                      AdmissionControl admissionControl, CallbackPolicy callbackPolicy, MeterRegistry registry,
+                      ObjectMapper objectMapper) {
+        this.queue = queue;
+        this.metadataProbe = metadataProbe;
+        this.imageDecoder = imageDecoder;
+        this.imageProcessingService = imageProcessingService;
+        this.s3Service = s3Service;
+        this.tiledImageProcessor = tiledImageProcessor;
+        this.metrics = metrics;
+        this.admissionControl = admissionControl;
+        this.callbackPolicy = callbackPolicy;
+        this.registry = registry;
+        this.objectMapper = objectMapper;
+    }
+    
+    @Override
+    public void afterPropertiesSet() {
+        jobs = Caffeine.newBuilder()
+                .expireAfterWrite(retention)
+                .build();
+        // Connects only to addresses the callback policy vetted at connect time
+        callbackClient = callbackPolicy.newClient(callbackTimeout);
+        callbackExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        
+        Gauge.builder("jobs.queue.size", queue, JobQueue::size)
+                .description("Jobs waiting for a worker")
+                .register(registry);
+        Gauge.builder("jobs.queue.capacity", queue, JobQueue::capacity)
+                .description("Jobs the queue admits before refusing HIGH priority work")
+                .register(registry);
+        Gauge.builder("jobs.running", runningJobs, AtomicInteger::get)
+                .description("Jobs currently executing on a worker")
+                .register(registry);
+        
+        running = true;
+        int count = workerCount > 0 ? workerCount : Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < count; i++) {
+            Thread worker = new Thread(this::work, "job-worker-" + (i + 1));
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+    
+    @Override
+    public void destroy() {
+        running = false;
+        workers.forEach(Thread::interrupt);
+        callbackExecutor.shutdownNow();
+        try {
+            callbackClient.close();
+        } catch (IOException e) {
+            log.warn("Could not close the callback client: {}", e.getMessage());
+        }
+    }
+    
+    /**
+     * Admit and queue a pipeline job for the uploaded file
+     *
+     * @throws JobRejectedException     when the queue is too full for the job's priority class
+     * @throws IllegalArgumentException when the callback URL is not allowed by the {@link CallbackPolicy}
+     */
+    public ProcessingJob submit(MultipartFile file, List<PipelineStep> steps, String format,
+                                JobPriority priority, URI callbackUrl) throws IOException {
+        if (callbackUrl != null) {
+            callbackPolicy.check(callbackUrl);
+        }
+        // Check before spooling the upload, so a refusal costs nothing
+        checkAdmission(priority);
+        
+        Path input = Files.createTempFile("job-", ".upload");
+        try {
+            file.transferTo(input);
+            ProcessingJob job = new ProcessingJob(UUID.randomUUID().toString(), sequence.incrementAndGet(),
+                    priority, steps, format, file.getOriginalFilename(), input, callbackUrl);
+            jobs.put(job.getId(), job);
+            if (!queue.offer(job)) {
+                jobs.invalidate(job.getId());
+                throw rejection(priority);
+            }
+            return job;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(input);
+            throw e;
+        }
+    }
+    
+    public Optional<ProcessingJob> find(String id) {
+        return Optional.ofNullable(jobs.getIfPresent(id));
+    }
+    
+    public int queueSize() {
+        return queue.size();
+    }
+    
+    private void checkAdmission(JobPriority priority) {
+        if (queue.size() >= priority.admissionLimit(queue.capacity())) {
+            throw rejection(priority);
+        }
+    }
+    
+    private JobRejectedException rejection(JobPriority priority) {
+        registry.counter("jobs.rejected", "priority", priority.name()).increment();
+        // Time for the workers to drain what is queued now
+        double drainMillis = averageJobMillis * (queue.size() + 1) / Math.max(1, workers.size());
+        long retryAfter = Math.max(1, (long) Math.ceil(drainMillis / 1000));
+        return new JobRejectedException("Processing queue is full for " + priority + " priority jobs", retryAfter);
+    }
+    
+    private void work() {
+        while (running) {
+            ProcessingJob job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long start = System.nanoTime();
+            runningJobs.incrementAndGet();
+            try {
+                execute(job);
+            } catch (Exception e) {
+                log.warn("Job {} failed: {}", job.getId(), e.getMessage());
+                job.markFailed(e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName());
+            } finally {
+                runningJobs.decrementAndGet();
+                registry.counter("jobs.completed", "status", job.getStatus().name(),
+                        "priority", job.getPriority().name()).increment();
+                deleteInput(job);
+                double millis = (System.nanoTime() - start) / 1e6;
+                averageJobMillis += DURATION_SMOOTHING * (millis - averageJobMillis);
+                // Refresh the retention window from completion, not submission
+                jobs.put(job.getId(), job);
+                notifyCallback(job);
+            }
+        }
+    }
+    
+    private void execute(ProcessingJob job) throws IOException {
+        job.markRunning();
+        
+        metrics.bytesIn("job", Files.size(job.getInput()));
+        ImageMetadata metadata;
+        try (InputStream input = Files.newInputStream(job.getInput())) {
+            metadata = metadataProbe.probe(input);
+        }
+        if (metadata == null) {
+            job.markFailed("Invalid image file");
+            return;
+        }
+        
+        String contentType = ImageEncoder.contentType(job.getFormat());
+        String resultName = "processed_" + job.getId() + "." + job.getFormat();
+        
+        // Too large to decode whole: encode strip by strip into a file and stream that to S3
+        if (tiledImageProcessor.shouldTile(metadata, job.getSteps())) {
+            Path output = Files.createTempFile("job-", ".result");
+            try {
+                try (OutputStream out = Files.newOutputStream(output);
+                     AdmissionControl.Permit ignoredPermit = admissionControl.acquire("job",
+                             tiledImageProcessor.stripBytes());
+                     ProcessingMetrics.InFlight ignored = metrics.begin(tiledImageProcessor.stripBytes())) {
+                    metrics.time(ProcessingMetrics.TILED, "job", job.getFormat(), metadata, () -> {
+                        tiledImageProcessor.process(job.getInput(), job.getSteps(), job.getFormat(), out);
+                        return null;
+                    });
+                }
+                metrics.bytesOut("job", job.getFormat(), Files.size(output));
+                String fileName;
+                try (InputStream result = Files.newInputStream(output)) {
+                    fileName = s3Service.uploadStream(result, Files.size(output), resultName, contentType, null);
+                }
+                job.markSucceeded(fileName, s3Service.getFileUrl(fileName));
+            } finally {
+                Files.deleteIfExists(output);
+            }
+            return;
+        }
+        
+        Dimension size = imageProcessingService.pipelineDecodeSize(job.getSteps(), metadata.width(), metadata.height());
+        PooledOutputStream encoded;
+        // Jobs are queued already, so they wait for the raster budget rather than being shed
+        try (AdmissionControl.Permit ignoredPermit = admissionControl.acquire("job",
+                     imageProcessingService.workingSetBytes(job.getSteps(), metadata));
+             ProcessingMetrics.InFlight ignored = metrics.begin(metadata.decodedBytes())) {
+            BufferedImage image = metrics.time(ProcessingMetrics.DECODE, "job", job.getFormat(), metadata, () -> {
+                try (InputStream input = Files.newInputStream(job.getInput())) {
+                    return size != null
+                            ? imageDecoder.decode(input, size.width, size.height)
+                            : imageDecoder.decode(input);
+                }
+            });
+            if (image == null) {
+                job.markFailed("Invalid image file");
+                return;
+            }
+            
+            BufferedImage result = metrics.time(ProcessingMetrics.PROCESS, "job", job.getFormat(), metadata,
+                    () -> imageProcessingService.runPipeline(image, job.getSteps(), metadata.orientation()));
+            try {
+                encoded = metrics.time(ProcessingMetrics.ENCODE, "job", job.getFormat(), metadata,
+                        () -> imageProcessingService.encode(result, job.getFormat()));
+            } finally {
+                imageProcessingService.recycle(image, result);
+            }
+        }
+        
+        // Upload straight from the pooled encode buffer, no exact-size copy
+        try (encoded) {
+            metrics.bytesOut("job", job.getFormat(), encoded.size());
+            String fileName = s3Service.uploadStream(encoded.toInputStream(), encoded.size(),
+                    resultName, contentType, null);
+            job.markSucceeded(fileName, s3Service.getFileUrl(fileName));
+        }
+    }
+    
+    private void deleteInput(ProcessingJob job) {
+        try {
+            Files.deleteIfExists(job.getInput());
+        } catch (IOException e) {
+            log.warn("Could not delete job input {}: {}", job.getInput(), e.getMessage());
+        }
+    }
+    
+    private void notifyCallback(ProcessingJob job) {
+        if (job.getCallbackUrl() == null) {
+            return;
+        }
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(job.summary());
+        } catch (IOException e) {
+            log.warn("Callback for job {} failed: {}", job.getId(), e.getMessage());
+            return;
+        }
+        // Fire and forget: a slow callback endpoint must not hold a worker
+        callbackExecutor.execute(() -> {
+            HttpPost request = new HttpPost(job.getCallbackUrl());
+            request.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+            try (CloseableHttpResponse response = callbackClient.execute(request)) {
+                EntityUtils.consume(response.getEntity());
+            } catch (IOException e) {
+                log.warn("Callback for job {} failed: {}", job.getId(), e.getMessage());
+            }
+        });
+    }
+}
@@ -0,0 +1,12 @@
+package com.mahesh.adobe.upload.job;
+
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED;
+    
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == FAILED;
+    }
+}
@@ -0,0 +1,55 @@
+package com.mahesh.adobe.upload.job;
+
+import java.util.Comparator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Bounded in-process priority queue
+ */
+public class LocalJobQueue implements JobQueue {
+    
+    private static final Comparator<ProcessingJob> ORDER = Comparator
+            .comparing(ProcessingJob::getPriority)
+            .thenComparingLong(ProcessingJob::getSequence);
+    
+    private final int capacity;
+    private final Semaphore slots;
+    private final PriorityBlockingQueue<ProcessingJob> queue;
+    
+    public LocalJobQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new Semaphore(capacity);
+        this.queue = new PriorityBlockingQueue<>(Math.min(capacity, 64), ORDER);
+    }
+    
+    @Override
+    public boolean offer(ProcessingJob job) {
+        // PriorityBlockingQueue is unbounded; the semaphore enforces the capacity
+        if (!slots.tryAcquire()) {
+            return false;
+        }
+        queue.add(job);
+        return true;
+    }
+    
+    @Override
+    public ProcessingJob take() throws InterruptedException {
+        ProcessingJob job = queue.take();
+        slots.release();
+        return job;
+    }
+    
+    @Override
+    public int size() {
+        return queue.size();
+    }
+    
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,129 @@
+package com.mahesh.adobe.upload.job;
+
+import com.mahesh.adobe.upload.model.PipelineStep;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An asynchronous processing request and its current state. The input is spooled to a
+ * temporary file so queued jobs do not hold their uploads on the heap.
+ */
+public class ProcessingJob {
+    
+    private final String id;
+    private final long sequence;
+    private final JobPriority priority;
+    private final List<PipelineStep> steps;
+    private final String format;
+    private final String originalFilename;
+    private final Path input;
+    private final URI callbackUrl;
+    private final Instant submittedAt = Instant.now();
+    
+    private volatile JobStatus status = JobStatus.QUEUED;
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String resultKey;
+    private volatile String resultUrl;
+    private volatile String error;
+    
+    public ProcessingJob(String id, long sequence, JobPriority priority, List<PipelineStep> steps, String format,
+                         String originalFilename, Path input, URI callbackUrl) {
+        this.id = id;
+        this.sequence = sequence;
+        this.priority = priority;
+        this.steps = List.copyOf(steps);
+        this.format = format;
+        this.originalFilename = originalFilename;
+        this.input = input;
+        this.callbackUrl = callbackUrl;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public long getSequence() {
+        return sequence;
+    }
+    
+    public JobPriority getPriority() {
+        return priority;
+    }
+    
+    public List<PipelineStep> getSteps() {
+        return steps;
+    }
+    
+    public String getFormat() {
+        return format;
+    }
+    
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+    
+    public Path getInput() {
+        return input;
+    }
+    
+    public URI getCallbackUrl() {
+        return callbackUrl;
+    }
+    
+    public JobStatus getStatus() {
+        return status;
+    }
+    
+    void markRunning() {
+        startedAt = Instant.now();
+        status = JobStatus.RUNNING;
+    }
+    
+    void markSucceeded(String key, String url) {
+        resultKey = key;
+        resultUrl = url;
+        finishedAt = Instant.now();
+        status = JobStatus.SUCCEEDED;
+    }
+    
+    void markFailed(String message) {
+        error = message;
+        finishedAt = Instant.now();
+        status = JobStatus.FAILED;
+    }
+    
+    /**
+     * Public view of the job, used for polling responses and callbacks
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("jobId", id);
+        summary.put("status", status);
+        summary.put("priority", priority);
+        summary.put("submittedAt", submittedAt.toString());
+        if (startedAt != null) {
+            summary.put("startedAt", startedAt.toString());
+            summary.put("queuedMillis", startedAt.toEpochMilli() - submittedAt.toEpochMilli());
+        }
+        if (finishedAt != null) {
+            summary.put("finishedAt", finishedAt.toString());
+            if (startedAt != null) {
+                summary.put("processingMillis", finishedAt.toEpochMilli() - startedAt.toEpochMilli());
+            }
+        }
+        if (resultKey != null) {
+            summary.put("fileName", resultKey);
+            summary.put("fileUrl", resultUrl);
+        }
+        if (error != null) {
+            summary.put("error", error);
+        }
+        return summary;
+    }
+}
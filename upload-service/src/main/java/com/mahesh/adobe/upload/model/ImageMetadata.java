@@ -0,0 +1,75 @@
+package com.mahesh.adobe.upload.model;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Image properties read from file headers only (SOF, IHDR, EXIF, ...), without decoding pixels.
+ *
+ * @param formatName    lower-case format name, e.g. "jpeg", "png", "gif"
+ * @param width         stored width in pixels
+ * @param height        stored height in pixels
+ * @param components    samples per pixel, including alpha
+ * @param bitsPerSample bits per sample (palette index size for indexed images)
+ * @param hasAlpha      whether the image carries transparency (alpha channel or tRNS)
+ * @param colorSpace    "RGB", "GRAY", "CMYK", "YCCK" or "INDEXED"
+ * @param progressive   progressive JPEG or interlaced PNG/GIF
+ * @param orientation   EXIF orientation tag (1-8), 1 when absent
+ * @param imageType     BufferedImage type the decoder is expected to produce, TYPE_CUSTOM if unknown
+ */
+public record ImageMetadata(
+        String formatName,
+        int width,
+        int height,
+        int components,
+        int bitsPerSample,
+        boolean hasAlpha,
+        String colorSpace,
+        boolean progressive,
+        int orientation,
+        int imageType) {
+    
+    public long pixelCount() {
+        return (long) width * height;
+    }
+    
+    public double aspectRatio() {
+        return height == 0 ? 0 : (double) width / height;
+    }
+    
+    /**
+     * EXIF orientations 5-8 swap width and height when displayed
+     */
+    public boolean isTransposed() {
+        return orientation >= 5 && orientation <= 8;
+    }
+    
+    public int displayWidth() {
+        return isTransposed() ? height : width;
+    }
+    
+    public int displayHeight() {
+        return isTransposed() ? width : height;
+    }
+    
+    /**
+     * Approximate heap needed to hold the fully decoded raster
+     */
+    public long decodedBytes() {
+        int bytesPerPixel;
+        switch (imageType) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+            case BufferedImage.TYPE_INT_ARGB_PRE:
+            case BufferedImage.TYPE_INT_BGR:
+                bytesPerPixel = 4;
+                break;
+            case BufferedImage.TYPE_BYTE_INDEXED:
+            case BufferedImage.TYPE_BYTE_BINARY:
+                bytesPerPixel = 1;
+                break;
+            default:
+                bytesPerPixel = Math.max(1, components) * Math.max(1, (bitsPerSample + 7) / 8);
+        }
+        return pixelCount() * bytesPerPixel;
+    }
+}
@@ -0,0 +1,289 @@
+package com.mahesh.adobe.upload.model;
+
+import com.mahesh.adobe.upload.imaging.EdgeOptions;
+import com.mahesh.adobe.upload.imaging.Orientation;
+
+import java.util.Locale;
+
+/**
+ * One step of a processing pipeline, as sent to /api/v1/process/pipeline, e.g.
+ * {@code {"op":"resize","width":800,"height":600}} or {@code {"op":"brightness","factor":1.2}}.
+ *
+ * @param op        operation name, see {@link Operation}
+ * @param width     resize: target width; crop: width of the region
+ * @param height    resize: target height; crop: height of the region
+ * @param size      thumbnail: longest side
+ * @param intensity blur: strength, as for /filter/blur
+ * @param factor    brightness: channel multiplier; contrast: slope around mid-gray; gamma: exponent
+ * @param filter    resize / thumbnail: optional Resampler.Filter name
+ * @param channels  swizzle: new channel order as a permutation of "rgb", e.g. "bgr"
+ * @param operator  edges: optional gradient operator, "sobel" or "scharr"
+ * @param output    edges: optional "magnitude", "orientation" or "canny"
+ * @param low       edges: optional Canny low threshold
+ * @param high      edges: optional Canny high threshold
+ * @param sigma     edges: optional Gaussian pre-blur; see {@link EdgeOptions} for the defaults
+ * @param degrees   rotate: clockwise angle, a multiple of 90 (negative for counter-clockwise)
+ * @param direction flip: "horizontal" (mirror left to right) or "vertical"
+ * @param x         crop: left edge of the region, default 0
+ * @param y         crop: top edge of the region, default 0
+ */
+public record PipelineStep(
+        String op,
+        Integer width,
+        Integer height,
+        Integer size,
+        Float intensity,
+        Float factor,
+        String filter,
+        String channels,
+        String operator,
+        String output,
+        Float low,
+        Float high,
+        Float sigma,
+        Integer degrees,
+        String direction,
+        Integer x,
+        Integer y) {
+
+    /**
+     * Largest width or height a resize or thumbnail may produce. A target is not bounded by
+     * the upload's size, so without a cap a tiny image could ask for gigabytes of raster.
+     */
+    public static final int MAX_DIMENSION = 16384;
+
+    public enum Operation {
+        RESIZE,
+        THUMBNAIL,
+        BLUR,
+        SHARPEN,
+        EDGES,
+        GRAYSCALE,
+        BRIGHTNESS,
+        CONTRAST,
+        GAMMA,
+        SWIZZLE,
+        ROTATE,
+        FLIP,
+        CROP,
+        /** Turn the image upright as its EXIF orientation tag says */
+        ORIENT;
+
+        /** Per-pixel operations that can be folded into a single pass */
+        public boolean isPointOperation() {
+            return this == GRAYSCALE || this == BRIGHTNESS || this == CONTRAST || this == GAMMA || this == SWIZZLE;
+        }
+
+        /** Operations that move pixels without changing any, which a JPEG can undergo losslessly */
+        public boolean isGeometric() {
+            return this == ROTATE || this == FLIP || this == CROP || this == ORIENT;
+        }
+    }
+
+    /**
+     * Step for an operation without parameters, e.g. sharpen or grayscale
+     */
+    public static PipelineStep of(Operation operation) {
+        return new PipelineStep(operation.name().toLowerCase(Locale.ROOT), null, null, null, null, null, null, null,
+                null, null, null, null, null, null, null, null, null);
+    }
+
+    public static PipelineStep resize(int width, int height) {
+        return new PipelineStep("resize", width, height, null, null, null, null, null, null, null, null, null, null,
+                null, null, null, null);
+    }
+
+    public static PipelineStep thumbnail(int size) {
+        return new PipelineStep("thumbnail", null, null, size, null, null, null, null, null, null, null, null, null,
+                null, null, null, null);
+    }
+
+    public static PipelineStep blur(float intensity) {
+        return new PipelineStep("blur", null, null, null, intensity, null, null, null, null, null, null, null, null,
+                null, null, null, null);
+    }
+
+    public static PipelineStep edges(EdgeOptions options) {
+        return new PipelineStep("edges", null, null, null, null, null, null, null,
+                options.operator().name(), options.output().name(), options.low(), options.high(), options.sigma(),
+                null, null, null, null);
+    }
+
+    public static PipelineStep rotate(int degrees) {
+        return new PipelineStep("rotate", null, null, null, null, null, null, null, null, null, null, null, null,
+                degrees, null, null, null);
+    }
+
+    public static PipelineStep flip(String direction) {
+        return new PipelineStep("flip", null, null, null, null, null, null, null, null, null, null, null, null,
+                null, direction, null, null);
+    }
+
+    public static PipelineStep crop(int x, int y, int width, int height) {
+        return new PipelineStep("crop", width, height, null, null, null, null, null, null, null, null, null, null,
+                null, null, x, y);
+    }
+
+    public Operation operation() {
+        if (op == null) {
+            throw new IllegalArgumentException("Pipeline step without \"op\"");
+        }
+        try {
+            return Operation.valueOf(op.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown pipeline operation: " + op);
+        }
+    }
+
+    /**
+     * Check that the parameters required by the operation are present and in range
+     */
+    public void validate() {
+        switch (operation()) {
+            case RESIZE:
+                if (width == null || height == null || width <= 0 || height <= 0) {
+                    throw new IllegalArgumentException("resize needs positive width and height");
+                }
+                if (width > MAX_DIMENSION || height > MAX_DIMENSION) {
+                    throw new IllegalArgumentException("resize width and height must be at most " + MAX_DIMENSION);
+                }
+                break;
+            case THUMBNAIL:
+                if (size == null || size <= 0) {
+                    throw new IllegalArgumentException("thumbnail needs a positive size");
+                }
+                if (size > MAX_DIMENSION) {
+                    throw new IllegalArgumentException("thumbnail size must be at most " + MAX_DIMENSION);
+                }
+                break;
+            case BRIGHTNESS:
+                if (factor == null || factor < 0) {
+                    throw new IllegalArgumentException("brightness needs a non-negative factor");
+                }
+                break;
+            case CONTRAST:
+                if (factor == null || factor < 0) {
+                    throw new IllegalArgumentException("contrast needs a non-negative factor");
+                }
+                break;
+            case GAMMA:
+                if (factor == null || factor <= 0) {
+                    throw new IllegalArgumentException("gamma needs a positive factor");
+                }
+                break;
+            case SWIZZLE:
+                channelOrder();
+                break;
+            case EDGES:
+                edgeOptions();
+                break;
+            case ROTATE:
+            case FLIP:
+                orientation();
+                break;
+            case CROP:
+                if (width == null || height == null || width <= 0 || height <= 0) {
+                    throw new IllegalArgumentException("crop needs positive width and height");
+                }
+                if (cropX() < 0 || cropY() < 0) {
+                    throw new IllegalArgumentException("crop needs non-negative x and y");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Canonical form used in cache keys and response headers, e.g. "resize(800x600,LANCZOS3)"
+     */
+    public String describe() {
+        switch (operation()) {
+            case RESIZE:
+                return "resize(" + width + "x" + height + (filter != null ? "," + filterName() : "") + ")";
+            case THUMBNAIL:
+                return "thumbnail(" + size + (filter != null ? "," + filterName() : "") + ")";
+            case BLUR:
+                return "blur(" + (intensity != null ? intensity : 1.0f) + ")";
+            case BRIGHTNESS:
+                return "brightness(" + factor + ")";
+            case CONTRAST:
+                return "contrast(" + factor + ")";
+            case GAMMA:
+                return "gamma(" + factor + ")";
+            case SWIZZLE:
+                return "swizzle(" + channels.trim().toLowerCase(Locale.ROOT) + ")";
+            case EDGES:
+                return "edges(" + edgeOptions().describe() + ")";
+            case ROTATE:
+                return "rotate(" + Math.floorMod(degrees, 360) + ")";
+            case FLIP:
+                return "flip(" + direction.trim().toLowerCase(Locale.ROOT) + ")";
+            case CROP:
+                return "crop(" + cropX() + "," + cropY() + "," + width + "x" + height + ")";
+            default:
+                return operation().name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * Swizzle channels as indices into R, G, B, e.g. "bgr" is {2, 1, 0}
+     */
+    public int[] channelOrder() {
+        String order = channels != null ? channels.trim().toLowerCase(Locale.ROOT) : "";
+        if (order.length() != 3) {
+            throw new IllegalArgumentException("swizzle needs channels as a permutation of \"rgb\"");
+        }
+        int[] indices = new int[3];
+        for (int c = 0; c < 3; c++) {
+            indices[c] = "rgb".indexOf(order.charAt(c));
+            if (indices[c] < 0 || order.indexOf(order.charAt(c)) != c) {
+                throw new IllegalArgumentException("swizzle needs channels as a permutation of \"rgb\"");
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Edge detection parameters, with defaults for those left out
+     */
+    public EdgeOptions edgeOptions() {
+        return EdgeOptions.of(operator, output, low, high, sigma);
+    }
+
+    /**
+     * Rotate and flip as the orientation they apply
+     */
+    public Orientation orientation() {
+        if (operation() == Operation.ROTATE) {
+            if (degrees == null || degrees % 90 != 0) {
+                throw new IllegalArgumentException("rotate needs degrees as a multiple of 90");
+            }
+            return Orientation.rotation(degrees);
+        }
+        String name = direction != null ? direction.trim().toLowerCase(Locale.ROOT) : "";
+        switch (name) {
+            case "horizontal":
+                return Orientation.FLIP_HORIZONTAL;
+            case "vertical":
+                return Orientation.FLIP_VERTICAL;
+            default:
+                throw new IllegalArgumentException("flip needs direction \"horizontal\" or \"vertical\"");
+        }
+    }
+
+    public int cropX() {
+        return x != null ? x : 0;
+    }
+
+    public int cropY() {
+        return y != null ? y : 0;
+    }
+
+    /**
+     * Upper-cased filter name, or null when the configured default applies
+     */
+    public String filterName() {
+        return filter != null ? filter.trim().toUpperCase(Locale.ROOT) : null;
+    }
+}
@@ -0,0 +1,66 @@
+package com.mahesh.adobe.upload.model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * One entry of the upload-time rendition profile, configured as
+ * {@code name:size:format:quality}, e.g. {@code thumb:160:jpg:0.8}.
+ *
+ * @param name    path segment of the stored key, e.g. "thumb"
+ * @param size    longest side in pixels; sources smaller than this are not upscaled
+ * @param format  "jpg" or "png"
+ * @param quality encoder compression quality between 0 and 1
+ */
+public record Rendition(String name, int size, String format, float quality) {
+
+    public String contentType() {
+        return format.equals("png") ? "image/png" : "image/jpeg";
+    }
+
+    /**
+     * Parse a comma-separated profile, largest rendition first
+     *
+     * @throws IllegalArgumentException on a malformed or duplicate entry
+     */
+    public static List<Rendition> parseProfile(String profile) {
+        List<Rendition> renditions = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        if (profile == null || profile.isBlank()) {
+            return renditions;
+        }
+        for (String entry : profile.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Rendition must be name:size:format:quality, got \"" + entry + "\"");
+            }
+            String name = parts[0].trim();
+            if (!name.matches("[A-Za-z0-9_-]+") || !names.add(name)) {
+                throw new IllegalArgumentException("Invalid or duplicate rendition name \"" + name + "\"");
+            }
+            int size;
+            float quality;
+            try {
+                size = Integer.parseInt(parts[1].trim());
+                quality = Float.parseFloat(parts[3].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid size or quality in rendition \"" + entry + "\"");
+            }
+            String format = parts[2].trim().toLowerCase(Locale.ROOT);
+            if (format.equals("jpeg")) {
+                format = "jpg";
+            }
+            if (size <= 0 || quality < 0 || quality > 1 || !(format.equals("jpg") || format.equals("png"))) {
+                throw new IllegalArgumentException("Rendition \"" + entry
+                        + "\" needs a positive size, format jpg or png and quality between 0 and 1");
+            }
+            renditions.add(new Rendition(name, size, format, quality));
+        }
+        renditions.sort(Comparator.comparingInt(Rendition::size).reversed());
+        return renditions;
+    }
+}
@@ -0,0 +1,95 @@
+package com.mahesh.adobe.upload.model;
+
+import java.awt.Rectangle;
+
+/**
+ * Deep Zoom layout of an image: level {@link #maxLevel()} is the image at full size, each
+ * level below it half the size of the one above (rounded up), down to 1x1 at level 0. Every
+ * level is cut into {@code tileSize} square tiles from the top left, without overlap; tiles
+ * in the last column and row are smaller.
+ *
+ * @param width    upright width of the full-size image
+ * @param height   upright height of the full-size image
+ * @param tileSize tile edge in pixels
+ * @param format   tile format, "jpg" or "png"
+ */
+public record TilePyramid(int width, int height, int tileSize, String format) {
+
+    public TilePyramid {
+        if (width <= 0 || height <= 0 || tileSize <= 0) {
+            throw new IllegalArgumentException("Pyramid dimensions must be positive");
+        }
+    }
+
+    /**
+     * Level of the full-size image, i.e. the number of halvings down to 1x1
+     */
+    public int maxLevel() {
+        int longest = Math.max(width, height);
+        return 32 - Integer.numberOfLeadingZeros(longest - 1);
+    }
+
+    /**
+     * How many full-size pixels one pixel of {@code level} spans in each direction
+     */
+    public int scale(int level) {
+        return 1 << (maxLevel() - level);
+    }
+
+    public int levelWidth(int level) {
+        return ceilDiv(width, scale(level));
+    }
+
+    public int levelHeight(int level) {
+        return ceilDiv(height, scale(level));
+    }
+
+    public int columns(int level) {
+        return ceilDiv(levelWidth(level), tileSize);
+    }
+
+    public int rows(int level) {
+        return ceilDiv(levelHeight(level), tileSize);
+    }
+
+    public boolean contains(int level, int column, int row) {
+        return level >= 0 && level <= maxLevel()
+                && column >= 0 && column < columns(level)
+                && row >= 0 && row < rows(level);
+    }
+
+    /**
+     * Pixels of tile ({@code column}, {@code row}) in {@code level} coordinates
+     */
+    public Rectangle tileBounds(int level, int column, int row) {
+        int x = column * tileSize;
+        int y = row * tileSize;
+        return new Rectangle(x, y, Math.min(tileSize, levelWidth(level) - x), Math.min(tileSize, levelHeight(level) - y));
+    }
+
+    /**
+     * Full-size pixels that {@code bounds}, in {@code level} coordinates, are sampled from
+     */
+    public Rectangle sourceBounds(int level, Rectangle bounds) {
+        int scale = scale(level);
+        int x = bounds.x * scale;
+        int y = bounds.y * scale;
+        return new Rectangle(x, y, Math.min(width, (bounds.x + bounds.width) * scale) - x,
+                Math.min(height, (bounds.y + bounds.height) * scale) - y);
+    }
+
+    /**
+     * The Deep Zoom descriptor (.dzi) that viewers such as OpenSeadragon read the layout from
+     */
+    public String toDzi() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"" + format
+                + "\" Overlap=\"0\" TileSize=\"" + tileSize + "\">\n"
+                + "  <Size Width=\"" + width + "\" Height=\"" + height + "\"/>\n"
+                + "</Image>\n";
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+}
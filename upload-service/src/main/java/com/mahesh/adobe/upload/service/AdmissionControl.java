@@ -0,0 +1,212 @@
+package com.mahesh.adobe.upload.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control for image work, by cost rather than by count.
+ *
+ * Every request, job, batch item and rendition run takes its estimated raster working set
+ * (see {@link ImageProcessingService#workingSetBytes}) from one {@link PixelBudget} sized to
+ * a share of the heap before it decodes anything, and returns it when done. Dozens of
+ * thumbnails fit side by side while a 48 MP blur has the budget to itself, and a burst of
+ * large images waits instead of exhausting the heap. CPU is bounded separately by the
+ * processing threads; the budget keeps their work from outgrowing memory.
+ *
+ * Interactive requests go through {@link #admit}: they run at once when the budget allows,
+ * otherwise queue for up to {@code max-wait}, and are shed with a
+ * {@link AdmissionRejectedException} (429 with Retry-After) when the queue is full or the
+ * wait runs out. Background work that is already queued elsewhere uses {@link #acquire} and
+ * simply waits its turn. Work larger than the whole budget is refused either way with an
+ * {@link ImageTooLargeException}; callers that can process in strips check {@link #fits}
+ * first.
+ *
+ * Memory that caches and pools keep between requests is {@link #reserve reserved} out of the
+ * budget when they are created, so the budget only covers what is left for rasters.
+ */
+@Service
+public class AdmissionControl {
+
+    private static final Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+    /** Share of the maximum heap the budget takes when none is configured */
+    private static final double DEFAULT_HEAP_SHARE = 0.5;
+
+    /** Weight of the latest hold time in the running average behind Retry-After */
+    private static final double HOLD_TIME_WEIGHT = 0.1;
+
+    private static final long MAX_RETRY_AFTER_SECONDS = 60;
+
+    private final PixelBudget budget;
+    private final boolean enabled;
+    private final int maxQueue;
+    private final Duration maxWait;
+    private final MeterRegistry registry;
+    private final Timer waitTimer;
+    private volatile double averageHoldMillis = 1000;
+
+    public AdmissionControl(@Value("${imaging.admission.enabled:true}") boolean enabled,
+                            @Value("${imaging.admission.budget:0}") DataSize budget,
+                            @Value("${imaging.admission.max-queue:64}") int maxQueue,
+                            @Value("${imaging.admission.max-wait:10s}") Duration maxWait,
+                            MeterRegistry registry) {
+        // 0 means a share of the heap; the caches and pools reserve their part of it
+        long totalBytes = budget.toBytes() > 0
+                ? budget.toBytes()
+                : (long) (Runtime.getRuntime().maxMemory() * DEFAULT_HEAP_SHARE);
+        this.budget = new PixelBudget(totalBytes);
+        this.enabled = enabled;
+        this.maxQueue = maxQueue;
+        this.maxWait = maxWait;
+        this.registry = registry;
+        this.waitTimer = Timer.builder("image.admission.wait")
+                .description("Time requests and jobs waited for the raster budget")
+                .publishPercentileHistogram()
+                .register(registry);
+
+        Gauge.builder("image.admission.budget.bytes", this.budget, PixelBudget::totalBytes)
+                .description("Raster working set admitted work may hold at once")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("image.admission.used.bytes", this.budget, PixelBudget::usedBytes)
+                .description("Raster working set held by admitted work")
+                .baseUnit("bytes")
+                .register(registry);
+        Gauge.builder("image.admission.queued", this.budget, PixelBudget::waiting)
+                .description("Requests and jobs waiting for the raster budget")
+                .register(registry);
+        if (enabled) {
+            log.info("Admitting image work against a {} MB budget", this.budget.totalBytes() >> 20);
+        }
+    }
+
+    /**
+     * Set aside up to {@code bytes} of the budget for memory that {@code holder} keeps
+     * between requests, such as a cache, so admitted rasters and it together stay within
+     * the budget. Called once per holder at startup.
+     *
+     * @throws IllegalStateException if the reservation would leave less than a quarter of the
+     *                               budget for rasters
+     */
+    public void reserve(String holder, long bytes) {
+        if (!enabled || bytes <= 0) {
+            return;
+        }
+        long total = budget.totalBytes();
+        if (total - bytes < total / 4) {
+            throw new IllegalStateException(holder + " may hold " + (bytes >> 20) + " MB, which leaves too little of the "
+                    + (total >> 20) + " MB imaging.admission.budget for rasters; shrink it or raise the budget");
+        }
+        budget.reserve(bytes);
+        log.info("Reserved {} MB of the budget for {}; {} MB left for rasters", bytes >> 20, holder,
+                budget.totalBytes() >> 20);
+    }
+
+    /**
+     * Whether work with this working set can ever be admitted
+     */
+    public boolean fits(long workingSetBytes) {
+        return !enabled || budget.fits(workingSetBytes);
+    }
+
+    /**
+     * Share of the budget held until closed
+     */
+    public final class Permit implements AutoCloseable {
+
+        private final PixelBudget.Lease lease;
+        private final long start = System.nanoTime();
+
+        private Permit(PixelBudget.Lease lease) {
+            this.lease = lease;
+        }
+
+        @Override
+        public void close() {
+            if (lease != null) {
+                lease.close();
+                double heldMillis = (System.nanoTime() - start) / 1_000_000.0;
+                averageHoldMillis += HOLD_TIME_WEIGHT * (heldMillis - averageHoldMillis);
+            }
+        }
+    }
+
+    /**
+     * Admit a request that needs {@code workingSetBytes} of rasters, waiting up to the
+     * configured max-wait for them to free up
+     *
+     * @param operation operation name for the metrics tags
+     * @throws AdmissionRejectedException when the queue is full or the wait timed out
+     * @throws ImageTooLargeException     when the working set exceeds the whole budget
+     */
+    public Permit admit(String operation, long workingSetBytes) throws InterruptedIOException {
+        if (!enabled) {
+            return new Permit(null);
+        }
+        checkFits(operation, workingSetBytes);
+        // Shed at once rather than join a queue that will not drain within max-wait anyway
+        if (budget.waiting() >= maxQueue) {
+            throw rejection(operation, "queue-full");
+        }
+        long start = System.nanoTime();
+        PixelBudget.Lease lease = budget.tryAcquire(workingSetBytes, maxWait);
+        long waited = System.nanoTime() - start;
+        waitTimer.record(waited, TimeUnit.NANOSECONDS);
+        if (lease == null) {
+            throw rejection(operation, "timeout");
+        }
+        registry.counter("image.admission.requests", "operation", operation,
+                "outcome", waited > TimeUnit.MILLISECONDS.toNanos(1) ? "queued" : "admitted",
+                "reason", "none").increment();
+        return new Permit(lease);
+    }
+
+    /**
+     * Take {@code workingSetBytes} of the budget for background work, waiting as long as it takes
+     *
+     * @param operation operation name for the metrics tags
+     * @throws ImageTooLargeException when the working set exceeds the whole budget
+     */
+    public Permit acquire(String operation, long workingSetBytes) throws InterruptedIOException {
+        if (!enabled) {
+            return new Permit(null);
+        }
+        checkFits(operation, workingSetBytes);
+        long start = System.nanoTime();
+        PixelBudget.Lease lease = budget.acquire(workingSetBytes);
+        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return new Permit(lease);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private void checkFits(String operation, long workingSetBytes) {
+        if (!budget.fits(workingSetBytes)) {
+            registry.counter("image.admission.requests", "operation", operation, "outcome", "rejected",
+                    "reason", "too-large").increment();
+            throw new ImageTooLargeException("Image needs about " + (workingSetBytes >> 20)
+                    + " MB to process, more than the " + (budget.totalBytes() >> 20) + " MB available");
+        }
+    }
+
+    private AdmissionRejectedException rejection(String operation, String reason) {
+        registry.counter("image.admission.requests", "operation", operation, "outcome", "rejected",
+                "reason", reason).increment();
+        // Time for the work holding the budget, and the work queued behind it, to finish
+        double drainMillis = averageHoldMillis * (1 + (double) budget.waiting() / Math.max(1, maxQueue));
+        long retryAfter = Math.min(MAX_RETRY_AFTER_SECONDS, Math.max(1, (long) Math.ceil(drainMillis / 1000)));
+        return new AdmissionRejectedException("Server is busy processing other images", retryAfter);
+    }
+}
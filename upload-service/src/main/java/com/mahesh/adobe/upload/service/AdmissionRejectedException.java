@@ -0,0 +1,19 @@
+package com.mahesh.adobe.upload.service;
+
+/**
+ * Thrown when a request is shed by {@link AdmissionControl} because the raster budget is
+ * exhausted and its queue is full or the wait timed out
+ */
+public class AdmissionRejectedException extends RuntimeException {
+    
+    private final long retryAfterSeconds;
+    
+    public AdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+    
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,143 @@
+package com.mahesh.adobe.upload.service;
+
+import com.mahesh.adobe.upload.imaging.RasterPool;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Decodes images through ImageReader, optionally at reduced resolution.
+ *
+ * When the caller only needs a small output (thumbnails, downscales), the reader is asked
+ * to subsample while decoding, so the full-resolution raster is never allocated. The
+ * reader decodes into a raster taken from the {@link RasterPool}, which the caller may
+ * release once it is done with the image.
+ */
+@Service
+public class ImageDecoder {
+    
+    private final RasterPool rasterPool;
+    
+    /**
+     * Decode at least this many times the target size so the final resample still has
+     * enough source pixels to filter properly
+     */
+    public static final int OVERSAMPLING = 2;
+    
+    public ImageDecoder(RasterPool rasterPool) {
+        this.rasterPool = rasterPool;
+    }
+    
+    /**
+     * Full-resolution decode; returns null if no reader recognises the stream
+     */
+    public BufferedImage decode(InputStream input) throws IOException {
+        return decode(input, 0, 0);
+    }
+    
+    /**
+     * Decode with the largest subsampling factor that still leaves at least
+     * {@link #OVERSAMPLING} x the target dimensions. A target of 0 means full resolution.
+     */
+    public BufferedImage decode(InputStream input, int targetWidth, int targetHeight) throws IOException {
+        // Memory cache instead of ImageIO's default temp-file cache; seek-forward-only
+        // lets the reader discard bytes it has consumed
+        try (ImageInputStream stream = new MemoryCacheImageInputStream(input)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                int factor = 1;
+                if (targetWidth > 0 && targetHeight > 0) {
+                    factor = subsamplingFactor(reader.getWidth(0), reader.getHeight(0),
+                            targetWidth, targetHeight);
+                    if (factor > 1) {
+                        param.setSourceSubsampling(factor, factor, 0, 0);
+                    }
+                }
+                param.setDestination(pooledDestination(reader, reader.getWidth(0), reader.getHeight(0), factor));
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+    
+    /**
+     * Decode only {@code region} of the stored image, subsampled as in
+     * {@link #decode(InputStream, int, int)} for a target of {@code targetWidth} x
+     * {@code targetHeight}; the stream is left open. Only the region's pixels are held, but
+     * sequential formats still have to read past everything stored before the region's last
+     * row: a region near the top of a JPEG costs less to decode than one near the bottom.
+     * Returns null if no reader recognises the stream.
+     *
+     * @throws IllegalArgumentException if the region does not lie within the image
+     */
+    public BufferedImage decodeRegion(ImageInputStream stream, Rectangle region, int targetWidth, int targetHeight)
+            throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(stream, true, true);
+            if (region.isEmpty() || !new Rectangle(reader.getWidth(0), reader.getHeight(0)).contains(region)) {
+                throw new IllegalArgumentException("Region " + region + " lies outside the image");
+            }
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(region);
+            int factor = subsamplingFactor(region.width, region.height, targetWidth, targetHeight);
+            if (factor > 1) {
+                param.setSourceSubsampling(factor, factor, 0, 0);
+            }
+            param.setDestination(pooledDestination(reader, region.width, region.height, factor));
+            return reader.read(0, param);
+        } finally {
+            reader.dispose();
+        }
+    }
+    
+    /**
+     * Pooled image of the type the reader would have allocated itself (the first of its
+     * image types) for {@code width} x {@code height} source pixels at the subsampled size;
+     * null leaves the allocation to the reader
+     */
+    private BufferedImage pooledDestination(ImageReader reader, int width, int height, int factor)
+            throws IOException {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        if (!rasterPool.isEnabled() || types == null || !types.hasNext()) {
+            return null;
+        }
+        ImageTypeSpecifier type = types.next();
+        int subsampledWidth = (width + factor - 1) / factor;
+        int subsampledHeight = (height + factor - 1) / factor;
+        return rasterPool.create(type.getColorModel(), type.getSampleModel(subsampledWidth, subsampledHeight));
+    }
+    
+    /**
+     * Largest factor s such that the subsampled image is still at least
+     * OVERSAMPLING x target in both dimensions; 1 when no reduction is possible
+     */
+    public static int subsamplingFactor(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+        long neededWidth = (long) targetWidth * OVERSAMPLING;
+        long neededHeight = (long) targetHeight * OVERSAMPLING;
+        int byWidth = (int) Math.max(1, sourceWidth / Math.max(1, neededWidth));
+        int byHeight = (int) Math.max(1, sourceHeight / Math.max(1, neededHeight));
+        return Math.min(byWidth, byHeight);
+    }
+}
@@ -0,0 +1,351 @@
+package com.mahesh.adobe.upload.service;
+
+import com.mahesh.adobe.upload.model.ImageMetadata;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * Reads image metadata from headers only.
+ *
+ * JPEG and PNG are handled by walking their marker segments / chunks up to the frame
+ * header (SOF / IHDR, plus EXIF orientation and tRNS), so not a single scanline is
+ * decoded. Every other format goes through the registered {@link ImageReader} plugins
+ * (including TwelveMonkeys), using only the calls that read headers: getWidth,
+ * getHeight and getRawImageType.
+ */
+@Service
+public class ImageMetadataProbe {
+
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+
+    /** Upper bound on bytes read while looking for the frame header of a JPEG */
+    private static final int MAX_APP1_BYTES = 64 * 1024;
+
+    /**
+     * Probe {@code data[0..length)}; returns null if it is not a readable image
+     */
+    public ImageMetadata probe(byte[] data, int length) {
+        try (ImageInputStream stream = new MemoryCacheImageInputStream(new ByteArrayInputStream(data, 0, length))) {
+            return probe(stream);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Probe a stream; only the header bytes are consumed. Returns null if it is not a readable image.
+     */
+    public ImageMetadata probe(InputStream input) throws IOException {
+        try (ImageInputStream stream = new MemoryCacheImageInputStream(input)) {
+            return probe(stream);
+        }
+    }
+
+    /**
+     * Probe an image stream from its current position, which is restored afterwards
+     */
+    public ImageMetadata probe(ImageInputStream stream) throws IOException {
+        stream.mark();
+        try {
+            stream.setByteOrder(ByteOrder.BIG_ENDIAN);
+            int b0 = stream.read();
+            int b1 = stream.read();
+            stream.reset();
+            stream.mark();
+
+            if (b0 == 0xFF && b1 == 0xD8) {
+                return probeJpeg(stream);
+            }
+            if (b0 == 0x89 && b1 == 'P') {
+                return probePng(stream);
+            }
+            return probeWithReader(stream);
+
+        } catch (IOException | RuntimeException e) {
+            // Truncated or corrupt header
+            return null;
+        } finally {
+            stream.reset();
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // JPEG: walk markers up to the SOF segment
+    // ---------------------------------------------------------------------
+
+    private ImageMetadata probeJpeg(ImageInputStream stream) throws IOException {
+        stream.skipBytes(2); // SOI
+        int orientation = 1;
+        int adobeTransform = -1;
+
+        while (true) {
+            int marker = nextMarker(stream);
+            if (marker < 0 || marker == 0xD9 || marker == 0xDA) {
+                return null; // EOI or scan data before any frame header
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                continue; // standalone markers have no length
+            }
+            int length = stream.readUnsignedShort();
+            long segmentEnd = stream.getStreamPosition() + length - 2;
+
+            if (marker == 0xE1 && length > 8 && length - 2 <= MAX_APP1_BYTES) {
+                byte[] segment = new byte[length - 2];
+                stream.readFully(segment);
+                if (startsWith(segment, "Exif\0\0")) {
+                    orientation = exifOrientation(segment, 6, segment.length - 6, orientation);
+                }
+            } else if (marker == 0xEE && length >= 14) {
+                byte[] segment = new byte[12];
+                stream.readFully(segment);
+                if (startsWith(segment, "Adobe")) {
+                    adobeTransform = segment[11] & 0xFF;
+                }
+            } else if (isStartOfFrame(marker)) {
+                int precision = stream.readUnsignedByte();
+                int height = stream.readUnsignedShort();
+                int width = stream.readUnsignedShort();
+                int components = stream.readUnsignedByte();
+                boolean progressive = marker == 0xC2 || marker == 0xC6 || marker == 0xCA || marker == 0xCE;
+
+                String colorSpace;
+                int imageType;
+                if (components == 1) {
+                    colorSpace = "GRAY";
+                    imageType = BufferedImage.TYPE_BYTE_GRAY;
+                } else if (components == 3) {
+                    colorSpace = "RGB";
+                    imageType = BufferedImage.TYPE_3BYTE_BGR;
+                } else {
+                    colorSpace = adobeTransform == 2 ? "YCCK" : "CMYK";
+                    imageType = BufferedImage.TYPE_CUSTOM;
+                }
+                return new ImageMetadata("jpeg", width, height, components, precision, false,
+                        colorSpace, progressive, orientation, imageType);
+            }
+            stream.seek(segmentEnd);
+        }
+    }
+
+    private static int nextMarker(ImageInputStream stream) throws IOException {
+        int b = stream.read();
+        while (b != -1 && b != 0xFF) {
+            b = stream.read();
+        }
+        while (b == 0xFF) {
+            b = stream.read(); // fill bytes
+        }
+        return b;
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    // ---------------------------------------------------------------------
+    // PNG: IHDR, then chunk headers up to IDAT for tRNS / eXIf
+    // ---------------------------------------------------------------------
+
+    private ImageMetadata probePng(ImageInputStream stream) throws IOException {
+        byte[] signature = new byte[8];
+        stream.readFully(signature);
+        if (signature[1] != 'P' || signature[2] != 'N' || signature[3] != 'G') {
+            return null;
+        }
+
+        int ihdrLength = stream.readInt();
+        if (stream.readInt() != chunkType("IHDR") || ihdrLength < 13) {
+            return null;
+        }
+        int width = stream.readInt();
+        int height = stream.readInt();
+        int bitDepth = stream.readUnsignedByte();
+        int colorType = stream.readUnsignedByte();
+        stream.skipBytes(2); // compression, filter
+        boolean interlaced = stream.readUnsignedByte() == 1;
+        stream.seek(stream.getStreamPosition() + ihdrLength - 13 + 4); // rest + CRC
+
+        boolean transparency = false;
+        int orientation = 1;
+        while (true) {
+            int length = stream.readInt();
+            int type = stream.readInt();
+            long chunkEnd = stream.getStreamPosition() + (length & 0xFFFFFFFFL) + 4;
+            if (type == chunkType("IDAT") || type == chunkType("IEND")) {
+                break;
+            }
+            if (type == chunkType("tRNS")) {
+                transparency = true;
+            } else if (type == chunkType("eXIf") && length > 0 && length <= MAX_APP1_BYTES) {
+                byte[] exif = new byte[length];
+                stream.readFully(exif);
+                orientation = exifOrientation(exif, 0, length, orientation);
+            }
+            stream.seek(chunkEnd);
+        }
+
+        int components;
+        String colorSpace;
+        int imageType = BufferedImage.TYPE_CUSTOM;
+        switch (colorType) {
+            case 0:
+                components = transparency ? 2 : 1;
+                colorSpace = "GRAY";
+                if (!transparency && bitDepth == 8) imageType = BufferedImage.TYPE_BYTE_GRAY;
+                if (!transparency && bitDepth == 16) imageType = BufferedImage.TYPE_USHORT_GRAY;
+                break;
+            case 2:
+                components = transparency ? 4 : 3;
+                colorSpace = "RGB";
+                if (!transparency && bitDepth == 8) imageType = BufferedImage.TYPE_3BYTE_BGR;
+                break;
+            case 3:
+                components = 1;
+                colorSpace = "INDEXED";
+                imageType = bitDepth == 8 ? BufferedImage.TYPE_BYTE_INDEXED : BufferedImage.TYPE_BYTE_BINARY;
+                break;
+            case 4:
+                components = 2;
+                colorSpace = "GRAY";
+                transparency = true;
+                break;
+            case 6:
+                components = 4;
+                colorSpace = "RGB";
+                transparency = true;
+                if (bitDepth == 8) imageType = BufferedImage.TYPE_4BYTE_ABGR;
+                break;
+            default:
+                return null;
+        }
+        return new ImageMetadata("png", width, height, components, bitDepth, transparency,
+                colorSpace, interlaced, orientation, imageType);
+    }
+
+    private static int chunkType(String name) {
+        return (name.charAt(0) << 24) | (name.charAt(1) << 16) | (name.charAt(2) << 8) | name.charAt(3);
+    }
+
+    // ---------------------------------------------------------------------
+    // Everything else: ImageReader header calls
+    // ---------------------------------------------------------------------
+
+    private ImageMetadata probeWithReader(ImageInputStream stream) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+        if (!readers.hasNext()) {
+            return null;
+        }
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(stream, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            ImageTypeSpecifier rawType = reader.getRawImageType(0);
+            String formatName = reader.getFormatName().toLowerCase(Locale.ROOT);
+
+            if (rawType == null) {
+                return new ImageMetadata(formatName, width, height, 3, 8, false,
+                        "RGB", false, 1, BufferedImage.TYPE_CUSTOM);
+            }
+            ColorModel colorModel = rawType.getColorModel();
+            return new ImageMetadata(formatName, width, height,
+                    colorModel.getNumComponents(),
+                    colorModel.getComponentSize(0),
+                    colorModel.hasAlpha(),
+                    colorSpaceName(colorModel),
+                    false,
+                    1,
+                    rawType.getBufferedImageType());
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private static String colorSpaceName(ColorModel colorModel) {
+        if (colorModel instanceof IndexColorModel) {
+            return "INDEXED";
+        }
+        switch (colorModel.getColorSpace().getType()) {
+            case ColorSpace.TYPE_GRAY: return "GRAY";
+            case ColorSpace.TYPE_CMYK: return "CMYK";
+            default: return "RGB";
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // EXIF (TIFF structure): IFD0 orientation tag
+    // ---------------------------------------------------------------------
+
+    /**
+     * Read the orientation tag from a TIFF header at {@code data[offset..offset+length)}
+     */
+    static int exifOrientation(byte[] data, int offset, int length, int fallback) {
+        if (length < 8) {
+            return fallback;
+        }
+        boolean littleEndian = data[offset] == 'I' && data[offset + 1] == 'I';
+        boolean bigEndian = data[offset] == 'M' && data[offset + 1] == 'M';
+        if (!littleEndian && !bigEndian) {
+            return fallback;
+        }
+        int end = offset + length;
+        long ifd = offset + readInt(data, offset + 4, littleEndian);
+        if (ifd < offset || ifd + 2 > end) {
+            return fallback;
+        }
+        int entries = readShort(data, (int) ifd, littleEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = (int) ifd + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (readShort(data, entry, littleEndian) == EXIF_ORIENTATION_TAG) {
+                int value = readShort(data, entry + 8, littleEndian);
+                return value >= 1 && value <= 8 ? value : fallback;
+            }
+        }
+        return fallback;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+        int a = data[offset] & 0xFF;
+        int b = data[offset + 1] & 0xFF;
+        return littleEndian ? (b << 8) | a : (a << 8) | b;
+    }
+
+    private static long readInt(byte[] data, int offset, boolean littleEndian) {
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            int shift = littleEndian ? i * 8 : (3 - i) * 8;
+            value |= (long) (data[offset + i] & 0xFF) << shift;
+        }
+        return value;
+    }
+
+    private static boolean startsWith(byte[] data, String prefix) {
+        if (data.length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (data[i] != (byte) prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
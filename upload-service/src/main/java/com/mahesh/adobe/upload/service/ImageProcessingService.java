@@ -1,47 +1,117 @@
 package com.mahesh.adobe.upload.service;
 
+import com.mahesh.adobe.upload.imaging.ConvolutionEngine;
+import com.mahesh.adobe.upload.imaging.EdgeDetector;
+import com.mahesh.adobe.upload.imaging.EdgeOptions;
+import com.mahesh.adobe.upload.imaging.EncodeOptions;
+import com.mahesh.adobe.upload.imaging.GeometryEngine;
+import com.mahesh.adobe.upload.imaging.ImageEncoder;
+import com.mahesh.adobe.upload.imaging.JpegCoefficients;
+import com.mahesh.adobe.upload.imaging.Orientation;
+import com.mahesh.adobe.upload.imaging.PointOperation;
+import com.mahesh.adobe.upload.imaging.PointProcessor;
+import com.mahesh.adobe.upload.imaging.PooledOutputStream;
+import com.mahesh.adobe.upload.imaging.RasterPool;
+import com.mahesh.adobe.upload.imaging.Rearrangement;
+import com.mahesh.adobe.upload.imaging.Resampler;
+import com.mahesh.adobe.upload.model.ImageMetadata;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.awt.image.ConvolveOp;
 import java.awt.image.Kernel;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
 
 @Service
 public class ImageProcessingService {
     
+    // Sharpen kernel
+    private static final Kernel SHARPEN_KERNEL = new Kernel(3, 3, new float[] {
+        0.0f, -1.0f, 0.0f,
+        -1.0f, 5.0f, -1.0f,
+        0.0f, -1.0f, 0.0f
+    });
+    
+    private final ConvolutionEngine convolutionEngine;
+    private final EdgeDetector edgeDetector;
+    private final Resampler resampler;
+    private final PointProcessor pointProcessor;
+    private final GeometryEngine geometryEngine;
+    private final RasterPool rasterPool;
+    private final ImageEncoder imageEncoder;
+    
+    private Resampler.Filter defaultResizeFilter = Resampler.Filter.LANCZOS3;
+    private int maxPipelineSteps = 20;
+    
+    public ImageProcessingService(ConvolutionEngine convolutionEngine, EdgeDetector edgeDetector, Resampler resampler,
+                                  PointProcessor pointProcessor, GeometryEngine geometryEngine, RasterPool rasterPool,
+                                  ImageEncoder imageEncoder) {
+        this.convolutionEngine = convolutionEngine;
+        this.edgeDetector = edgeDetector;
+        this.resampler = resampler;
+        this.pointProcessor = pointProcessor;
+        this.geometryEngine = geometryEngine;
+        this.rasterPool = rasterPool;
+        this.imageEncoder = imageEncoder;
+    }
+    
     /**
-     * Resize image to specified dimensions
+     * Filter for resizes that do not name one
+     */
+    @Value("${imaging.resize-filter:LANCZOS3}")
+    public void setDefaultResizeFilter(Resampler.Filter defaultResizeFilter) {
+        this.defaultResizeFilter = defaultResizeFilter;
+    }
+    
+    /**
+     * Longest pipeline {@link #validatePipeline} accepts
+     */
+    @Value("${imaging.pipeline.max-steps:20}")
+    public void setMaxPipelineSteps(int maxPipelineSteps) {
+        this.maxPipelineSteps = maxPipelineSteps;
+    }
+    
+    /**
+     * Resize image to specified dimensions with the configured default filter
      */
     public BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight) {
-        Image scaledImage = originalImage.getScaledInstance(targetWidth, targetHeight, Image.SCALE_SMOOTH);
-        
-        BufferedImage resizedImage = new BufferedImage(targetWidth, targetHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g2d = resizedImage.createGraphics();
-        
-        // High quality rendering
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        
-        g2d.drawImage(scaledImage, 0, 0, null);
-        g2d.dispose();
-        
-        return resizedImage;
+        return resizeImage(originalImage, targetWidth, targetHeight, defaultResizeFilter);
+    }
+    
+    /**
+     * Resize image to specified dimensions, keeping its colour type and alpha
+     */
+    public BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight,
+                                     Resampler.Filter filter) {
+        return resizeImage(originalImage, targetWidth, targetHeight, filter, null);
+    }
+    
+    /**
+     * Resize into a caller-supplied destination of the target size; null takes a pooled image
+     */
+    public BufferedImage resizeImage(BufferedImage originalImage, int targetWidth, int targetHeight,
+                                     Resampler.Filter filter, BufferedImage destination) {
+        return resampler.resize(originalImage, targetWidth, targetHeight, filter, destination);
     }
     
     /**
      * Create thumbnail maintaining aspect ratio
      */
     public BufferedImage createThumbnail(BufferedImage originalImage, int maxSize) {
-        int width = originalImage.getWidth();
-        int height = originalImage.getHeight();
-        
-        // Calculate new dimensions maintaining aspect ratio
+        Dimension size = thumbnailSize(originalImage.getWidth(), originalImage.getHeight(), maxSize);
+        return resizeImage(originalImage, size.width, size.height);
+    }
+    
+    /**
+     * Thumbnail dimensions for a source of the given size, maintaining aspect ratio
+     */
+    public Dimension thumbnailSize(int width, int height, int maxSize) {
         double aspectRatio = (double) width / height;
         int newWidth, newHeight;
         
@@ -53,61 +123,54 @@ public class ImageProcessingService {
             newWidth = (int) (maxSize * aspectRatio);
         }
         
-        return resizeImage(originalImage, newWidth, newHeight);
+        return new Dimension(Math.max(1, newWidth), Math.max(1, newHeight));
     }
     
     /**
      * Apply blur filter
      */
     public BufferedImage applyBlur(BufferedImage originalImage, float intensity) {
-        // Create blur kernel
+        return applyBlur(originalImage, intensity, null);
+    }
+    
+    /**
+     * Apply blur filter into a caller-supplied destination compatible with the source
+     */
+    public BufferedImage applyBlur(BufferedImage originalImage, float intensity, BufferedImage destination) {
+        return convolutionEngine.boxBlur(originalImage, blurRadius(intensity), destination);
+    }
+    
+    private static int blurRadius(float intensity) {
+        // Box kernel size grows with intensity; the engine's running sum keeps cost flat
         int kernelSize = Math.max(3, (int) (intensity * 10));
         if (kernelSize % 2 == 0) kernelSize++; // Ensure odd size
-        
-        float weight = 1.0f / (kernelSize * kernelSize);
-        float[] blurKernel = new float[kernelSize * kernelSize];
-        for (int i = 0; i < blurKernel.length; i++) {
-            blurKernel[i] = weight;
-        }
-        
-        Kernel kernel = new Kernel(kernelSize, kernelSize, blurKernel);
-        ConvolveOp blurOp = new ConvolveOp(kernel, ConvolveOp.EDGE_NO_OP, null);
-        
-        return blurOp.filter(originalImage, null);
+        return kernelSize / 2;
     }
     
     /**
      * Apply sharpen filter
      */
     public BufferedImage applySharpen(BufferedImage originalImage) {
-        // Sharpen kernel
-        float[] sharpenKernel = {
-            0.0f, -1.0f, 0.0f,
-            -1.0f, 5.0f, -1.0f,
-            0.0f, -1.0f, 0.0f
-        };
-        
-        Kernel kernel = new Kernel(3, 3, sharpenKernel);
-        ConvolveOp sharpenOp = new ConvolveOp(kernel, ConvolveOp.EDGE_NO_OP, null);
-        
-        return sharpenOp.filter(originalImage, null);
+        return applySharpen(originalImage, null);
     }
     
     /**
-     * Adjust brightness
+     * Apply sharpen filter into a caller-supplied destination compatible with the source
+     */
+    public BufferedImage applySharpen(BufferedImage originalImage, BufferedImage destination) {
+        return convolutionEngine.convolve(originalImage, SHARPEN_KERNEL, destination);
+    }
+    
+    /**
+     * Adjust brightness: every colour channel is multiplied by {@code factor}, alpha is kept
      */
     public BufferedImage adjustBrightness(BufferedImage originalImage, float factor) {
-        BufferedImage brightenedImage = new BufferedImage(
-            originalImage.getWidth(), 
-            originalImage.getHeight(), 
-            originalImage.getType()
-        );
-        
-        Graphics2D g2d = brightenedImage.createGraphics();
-        g2d.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, factor));
-        g2d.drawImage(originalImage, 0, 0, null);
-        g2d.dispose();
-        
+        BufferedImage source = rasterPool.toDirect(originalImage);
+        BufferedImage brightenedImage = rasterPool.createCompatible(source, source.getWidth(), source.getHeight());
+        pointProcessor.apply(source, PointOperation.identity().thenBrightness(factor), brightenedImage);
+        if (source != originalImage) {
+            rasterPool.release(source);
+        }
         return brightenedImage;
     }
     
@@ -115,46 +178,513 @@ public class ImageProcessingService {
      * Convert image to grayscale
      */
     public BufferedImage convertToGrayscale(BufferedImage originalImage) {
-        BufferedImage grayscaleImage = new BufferedImage(
-            originalImage.getWidth(), 
-            originalImage.getHeight(), 
-            BufferedImage.TYPE_BYTE_GRAY
-        );
-        
-        Graphics2D g2d = grayscaleImage.createGraphics();
-        g2d.drawImage(originalImage, 0, 0, null);
-        g2d.dispose();
+        return convertToGrayscale(originalImage, null);
+    }
+    
+    /**
+     * Convert image to grayscale into a caller-supplied TYPE_BYTE_GRAY image of the same size
+     */
+    public BufferedImage convertToGrayscale(BufferedImage originalImage, BufferedImage destination) {
+        BufferedImage grayscaleImage = destination != null
+            ? destination
+            : rasterPool.create(originalImage.getWidth(), originalImage.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
         
-        return grayscaleImage;
+        // Luma straight from the raster rows; the source is only read, never modified
+        return pointProcessor.apply(originalImage, PointOperation.identity().thenGrayscale(), grayscaleImage);
     }
     
     /**
-     * Simple edge detection (Sobel-like)
+     * Sobel gradient magnitude of the image's luma
      */
     public BufferedImage detectEdges(BufferedImage originalImage) {
-        // First convert to grayscale
+        return detectEdges(originalImage, EdgeOptions.defaults(), null);
+    }
+    
+    /**
+     * Gradient magnitude, orientation or Canny edges of the image's luma
+     */
+    public BufferedImage detectEdges(BufferedImage originalImage, EdgeOptions options) {
+        return detectEdges(originalImage, options, null);
+    }
+    
+    /**
+     * Edge detection into a caller-supplied TYPE_BYTE_GRAY image of the same size
+     */
+    public BufferedImage detectEdges(BufferedImage originalImage, EdgeOptions options, BufferedImage destination) {
+        // Gradients are taken on luma
         BufferedImage grayImage = convertToGrayscale(originalImage);
+        try {
+            return edgeDetector.detect(grayImage, options, destination);
+        } finally {
+            rasterPool.release(grayImage);
+        }
+    }
+    
+    /**
+     * Check a pipeline before any decoding happens; throws IllegalArgumentException when invalid
+     */
+    public void validatePipeline(List<PipelineStep> steps) {
+        if (steps == null || steps.isEmpty()) {
+            throw new IllegalArgumentException("Pipeline has no operations");
+        }
+        if (steps.size() > maxPipelineSteps) {
+            throw new IllegalArgumentException("Pipeline has more than " + maxPipelineSteps + " operations");
+        }
+        for (PipelineStep step : steps) {
+            step.validate();
+            resizeFilter(step);
+        }
+    }
+    
+    /**
+     * Size to decode at for a pipeline over a {@code width} x {@code height} source, or null
+     * when the full image is needed. Only a leading resize / thumbnail lets the decoder
+     * subsample, since every later step would otherwise see fewer pixels than requested.
+     */
+    public Dimension pipelineDecodeSize(List<PipelineStep> steps, int width, int height) {
+        PipelineStep first = steps.get(0);
+        switch (first.operation()) {
+            case RESIZE:
+                return new Dimension(first.width(), first.height());
+            case THUMBNAIL:
+                return thumbnailSize(width, height, first.size());
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Approximate peak raster memory of running a pipeline on an image with these headers,
+     * for admission before anything is decoded: the decoded source, which stays allocated
+     * until the caller recycles it, plus the two rasters the filters ping-pong between at
+     * their largest, plus the scratch planes of Canny edges
+     */
+    public long workingSetBytes(List<PipelineStep> steps, ImageMetadata metadata) {
+        long decoded = metadata.decodedBytes();
+        long bytesPerPixel = Math.max(1, decoded / Math.max(1, metadata.pixelCount()));
+        long width = metadata.width();
+        long height = metadata.height();
+        if (!steps.isEmpty()) {
+            Dimension size = pipelineDecodeSize(steps, metadata.width(), metadata.height());
+            if (size != null) {
+                int factor = ImageDecoder.subsamplingFactor(metadata.width(), metadata.height(),
+                        size.width, size.height);
+                width = (width + factor - 1) / factor;
+                height = (height + factor - 1) / factor;
+                decoded = width * height * bytesPerPixel;
+            }
+        }
         
-        // Edge detection kernel (simplified Sobel)
-        float[] edgeKernel = {
-            -1.0f, -1.0f, -1.0f,
-            -1.0f,  8.0f, -1.0f,
-            -1.0f, -1.0f, -1.0f
-        };
-        
-        Kernel kernel = new Kernel(3, 3, edgeKernel);
-        ConvolveOp edgeOp = new ConvolveOp(kernel, ConvolveOp.EDGE_NO_OP, null);
+        long largest = 0;
+        long scratch = 0;
+        for (PipelineStep step : steps) {
+            switch (step.operation()) {
+                case RESIZE:
+                    width = step.width();
+                    height = step.height();
+                    largest = Math.max(largest, width * height * bytesPerPixel);
+                    break;
+                case THUMBNAIL:
+                    Dimension size = thumbnailSize((int) width, (int) height, step.size());
+                    width = size.width;
+                    height = size.height;
+                    largest = Math.max(largest, width * height * bytesPerPixel);
+                    break;
+                case BLUR:
+                case SHARPEN:
+                    largest = Math.max(largest, width * height * bytesPerPixel);
+                    break;
+                case EDGES:
+                    // Luma output; Canny adds a short and a byte per pixel
+                    largest = Math.max(largest, width * height);
+                    if (step.edgeOptions().output() == EdgeOptions.Output.CANNY) {
+                        scratch = Math.max(scratch, 3 * width * height);
+                    }
+                    break;
+                case ROTATE:
+                case FLIP:
+                case ORIENT:
+                    if (orientation(step, metadata.orientation()).transposes()) {
+                        long swap = width;
+                        width = height;
+                        height = swap;
+                    }
+                    largest = Math.max(largest, width * height * bytesPerPixel);
+                    break;
+                case CROP:
+                    width = Math.max(1, Math.min(step.width(), width - step.cropX()));
+                    height = Math.max(1, Math.min(step.height(), height - step.cropY()));
+                    largest = Math.max(largest, width * height * bytesPerPixel);
+                    break;
+                default:
+                    // Point operations run in place
+                    break;
+            }
+        }
+        return decoded + 2 * largest + scratch;
+    }
+    
+    /**
+     * Whether a pipeline can run strip by strip: every step must map source rows to the
+     * same output rows, which rules out resize, thumbnail and the geometric steps, and only
+     * look at a bounded neighbourhood, which rules out Canny edges
+     */
+    public boolean isTileable(List<PipelineStep> steps) {
+        for (PipelineStep step : steps) {
+            PipelineStep.Operation operation = step.operation();
+            if (operation == PipelineStep.Operation.RESIZE || operation == PipelineStep.Operation.THUMBNAIL
+                    || operation.isGeometric()) {
+                return false;
+            }
+            if (operation == PipelineStep.Operation.EDGES && !step.edgeOptions().isTileable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Rows of context a strip needs above and below for a tileable pipeline to produce
+     * the same pixels as on the whole image: the sum of the kernel radii, since each
+     * neighbourhood step widens the area that reaches an output row by its radius
+     */
+    public int pipelineHalo(List<PipelineStep> steps) {
+        int halo = 0;
+        for (PipelineStep step : steps) {
+            switch (step.operation()) {
+                case BLUR:
+                    halo += blurRadius(step.intensity() != null ? step.intensity() : 1.0f);
+                    break;
+                case SHARPEN:
+                    halo += SHARPEN_KERNEL.getHeight() / 2;
+                    break;
+                case EDGES:
+                    halo += step.edgeOptions().halo();
+                    break;
+                default:
+                    break;
+            }
+        }
+        return halo;
+    }
+    
+    /**
+     * Run an ordered list of operations against one decoded image whose source carried no
+     * EXIF orientation, so that orient steps have nothing to undo
+     */
+    public BufferedImage runPipeline(BufferedImage originalImage, List<PipelineStep> steps) {
+        return runPipeline(originalImage, steps, 1);
+    }
+    
+    /**
+     * Run an ordered list of operations against one decoded image.
+     *
+     * Adjacent per-pixel steps (brightness, contrast, gamma, swizzle, grayscale) are folded into a single pass over
+     * the raster, and each filter writes into the buffer released by the previous step
+     * when its size and layout still match, so a chain of filters ping-pongs between two
+     * rasters instead of allocating one per step. Adjacent rotations, flips and crops are
+     * likewise merged into one {@link Rearrangement}, applied before any pending per-pixel
+     * steps, which commute with it and then touch only the cropped pixels. Intermediate
+     * rasters go back to the pool; the input and the result are left for the caller to
+     * {@link #recycle}. The input image may be modified in place.
+     *
+     * @param exifOrientation the source's EXIF orientation (1-8), which orient steps undo
+     */
+    public BufferedImage runPipeline(BufferedImage originalImage, List<PipelineStep> steps, int exifOrientation) {
+        BufferedImage current = rasterPool.toDirect(originalImage);
+        BufferedImage spare = null;
+        PointOperation pending = PointOperation.identity();
+        Rearrangement moves = null;
         
-        return edgeOp.filter(grayImage, null);
+        for (PipelineStep step : steps) {
+            PipelineStep.Operation operation = step.operation();
+            if (operation.isGeometric()) {
+                if (moves == null) {
+                    moves = Rearrangement.identity(current.getWidth(), current.getHeight());
+                }
+                moves = then(moves, step, exifOrientation);
+                continue;
+            }
+            if (operation == PipelineStep.Operation.BRIGHTNESS) {
+                pending = pending.thenBrightness(step.factor());
+                continue;
+            }
+            if (operation == PipelineStep.Operation.CONTRAST) {
+                pending = pending.thenContrast(step.factor());
+                continue;
+            }
+            if (operation == PipelineStep.Operation.GAMMA) {
+                pending = pending.thenGamma(step.factor());
+                continue;
+            }
+            if (operation == PipelineStep.Operation.SWIZZLE) {
+                pending = pending.thenSwizzle(step.channelOrder());
+                continue;
+            }
+            if (operation == PipelineStep.Operation.GRAYSCALE) {
+                pending = pending.thenGrayscale();
+                continue;
+            }
+            if (operation == PipelineStep.Operation.EDGES) {
+                // Edges run on luma, as in detectEdges
+                pending = pending.thenGrayscale();
+            }
+            current = rearrange(current, moves, originalImage);
+            moves = null;
+            
+            // Flush the folded point operations before a step that reads neighbouring pixels
+            BufferedImage flushed = pointProcessor.apply(current, pending);
+            if (flushed != current) {
+                releaseIntermediate(current, originalImage);
+            }
+            current = flushed;
+            pending = PointOperation.identity();
+            
+            BufferedImage destination = ConvolutionEngine.isReusableDestination(current, spare) ? spare : null;
+            BufferedImage result;
+            switch (operation) {
+                case RESIZE:
+                    result = resampler.resize(current, step.width(), step.height(), resizeFilter(step));
+                    break;
+                case THUMBNAIL:
+                    Dimension size = thumbnailSize(current.getWidth(), current.getHeight(), step.size());
+                    result = resampler.resize(current, size.width, size.height, resizeFilter(step));
+                    break;
+                case BLUR:
+                    float intensity = step.intensity() != null ? step.intensity() : 1.0f;
+                    result = convolutionEngine.boxBlur(current, blurRadius(intensity), destination);
+                    break;
+                case SHARPEN:
+                    result = convolutionEngine.convolve(current, SHARPEN_KERNEL, destination);
+                    break;
+                case EDGES:
+                    result = edgeDetector.detect(current, step.edgeOptions(), destination);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported pipeline operation: " + operation);
+            }
+            if (spare != null && spare != result) {
+                releaseIntermediate(spare, originalImage);
+            }
+            // Keep the released raster only if the next filter can write into it
+            if (ConvolutionEngine.isReusableDestination(result, current)) {
+                spare = current;
+            } else {
+                releaseIntermediate(current, originalImage);
+                spare = null;
+            }
+            current = result;
+        }
+        current = rearrange(current, moves, originalImage);
+        BufferedImage finished = pointProcessor.apply(current, pending);
+        if (finished != current) {
+            releaseIntermediate(current, originalImage);
+        }
+        if (spare != null) {
+            releaseIntermediate(spare, originalImage);
+        }
+        return finished;
+    }
+    
+    private BufferedImage rearrange(BufferedImage current, Rearrangement moves, BufferedImage input) {
+        if (moves == null || moves.isIdentity()) {
+            return current;
+        }
+        BufferedImage moved = geometryEngine.rearrange(current, moves);
+        releaseIntermediate(current, input);
+        return moved;
+    }
+    
+    /**
+     * A pipeline that moves pixels without changing any, as one crop and reorientation of the
+     * source, with orient steps resolved against the source's EXIF orientation. Steps that
+     * leave their input as it is (a resize to the same size, brightness 1, ...) are skipped;
+     * any other step makes the result null.
+     *
+     * @throws IllegalArgumentException when a crop lies outside the image
+     */
+    public Rearrangement rearrangement(List<PipelineStep> steps, ImageMetadata metadata) {
+        Rearrangement moves = Rearrangement.identity(metadata.width(), metadata.height());
+        for (PipelineStep step : steps) {
+            if (step.operation().isGeometric()) {
+                moves = then(moves, step, metadata.orientation());
+            } else if (!isIdentity(step, moves.outputWidth(), moves.outputHeight())) {
+                return null;
+            }
+        }
+        return moves;
+    }
+    
+    /**
+     * Run a pipeline of geometric steps on a JPEG's DCT coefficients, without decoding it:
+     * lossless, and several times cheaper than decode, transform and encode. The EXIF
+     * orientation tag is reset to 1, so that viewers show the same pixels as for the output
+     * of {@link #runPipeline}.
+     *
+     * @return the transformed JPEG, or null when the pixels have to be decoded after all:
+     *         the pipeline changes pixel values, the crop or a flip is not MCU-aligned, or
+     *         the file is progressive or otherwise beyond {@link JpegCoefficients}
+     */
+    public byte[] rearrangeJpeg(byte[] data, List<PipelineStep> steps, ImageMetadata metadata) {
+        Rearrangement moves = rearrangement(steps, metadata);
+        if (moves == null || !ImageEncoder.canonicalFormat(metadata.formatName()).equals("jpg")) {
+            return null;
+        }
+        try {
+            JpegCoefficients jpeg = JpegCoefficients.read(data, data.length);
+            if (jpeg == null || !jpeg.canRearrange(moves)) {
+                return null;
+            }
+            JpegCoefficients rearranged = jpeg.rearrange(moves);
+            // The pixel path drops EXIF on encode; a kept tag would turn the result once more
+            if (metadata.orientation() != 1) {
+                rearranged.resetOrientation();
+            }
+            try (PooledOutputStream output = new PooledOutputStream(rasterPool, data.length)) {
+                rearranged.write(output);
+                return output.toByteArray();
+            }
+        } catch (IOException e) {
+            // Damage the coefficient reader trips over is left to the full decoder to judge
+            return null;
+        }
+    }
+    
+    private static Rearrangement then(Rearrangement moves, PipelineStep step, int exifOrientation) {
+        if (step.operation() == PipelineStep.Operation.CROP) {
+            return moves.thenCrop(step.cropX(), step.cropY(), step.width(), step.height());
+        }
+        return moves.then(orientation(step, exifOrientation));
+    }
+    
+    private static Orientation orientation(PipelineStep step, int exifOrientation) {
+        return step.operation() == PipelineStep.Operation.ORIENT
+                ? Orientation.fromExif(exifOrientation)
+                : step.orientation();
+    }
+    
+    /**
+     * Whether a non-geometric step returns a {@code width} x {@code height} input unchanged
+     */
+    private boolean isIdentity(PipelineStep step, int width, int height) {
+        switch (step.operation()) {
+            case RESIZE:
+                return step.width() == width && step.height() == height;
+            case THUMBNAIL:
+                return thumbnailSize(width, height, step.size()).equals(new Dimension(width, height));
+            case BRIGHTNESS:
+            case CONTRAST:
+            case GAMMA:
+                return step.factor() == 1.0f;
+            case SWIZZLE:
+                return step.channels().trim().equalsIgnoreCase("rgb");
+            default:
+                return false;
+        }
+    }
+    
+    private void releaseIntermediate(BufferedImage image, BufferedImage input) {
+        if (image != input) {
+            rasterPool.release(image);
+        }
+    }
+    
+    /**
+     * Hand images the caller is finished with back to the raster pool. Each distinct image
+     * is released once, so an operation that returned its input can be passed both.
+     */
+    public void recycle(BufferedImage... images) {
+        for (int i = 0; i < images.length; i++) {
+            boolean seen = false;
+            for (int j = 0; j < i; j++) {
+                seen |= images[j] == images[i];
+            }
+            if (!seen) {
+                rasterPool.release(images[i]);
+            }
+        }
+    }
+    
+    private Resampler.Filter resizeFilter(PipelineStep step) {
+        String name = step.filterName();
+        if (name == null) {
+            return defaultResizeFilter;
+        }
+        try {
+            return Resampler.Filter.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown resize filter: " + step.filter());
+        }
     }
     
     /**
      * Convert BufferedImage to byte array
      */
     public byte[] imageToByteArray(BufferedImage image, String format) throws IOException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        ImageIO.write(image, format, baos);
-        return baos.toByteArray();
+        return imageToByteArray(image, format, imageEncoder.defaults());
+    }
+    
+    public byte[] imageToByteArray(BufferedImage image, String format, EncodeOptions options) throws IOException {
+        try (PooledOutputStream output = encode(image, format, options)) {
+            return output.toByteArray();
+        }
+    }
+    
+    /**
+     * Encode into a buffer from the raster pool; closing the returned stream gives it back
+     */
+    public PooledOutputStream encode(BufferedImage image, String format) throws IOException {
+        return encode(image, format, imageEncoder.defaults());
+    }
+    
+    /**
+     * Encode into a pooled buffer at the given compression quality (0-1); null uses the
+     * configured default
+     */
+    public PooledOutputStream encode(BufferedImage image, String format, Float quality) throws IOException {
+        return encode(image, format, imageEncoder.defaults().withQuality(quality));
+    }
+    
+    public PooledOutputStream encode(BufferedImage image, String format, EncodeOptions options) throws IOException {
+        // Roughly half a byte per pixel fits most JPEGs without regrowing
+        long expected = (long) image.getWidth() * image.getHeight() / 2;
+        PooledOutputStream output = new PooledOutputStream(rasterPool, (int) Math.min(expected, 64L << 20));
+        try {
+            writeImage(image, format, options, output);
+            return output;
+        } catch (IOException | RuntimeException e) {
+            output.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Encode to {@code output}, which is left open. Bytes reach {@code output} while the
+     * encoder runs, so a response stream starts sending before the image is fully encoded.
+     */
+    public void writeImage(BufferedImage image, String format, OutputStream output) throws IOException {
+        writeImage(image, format, imageEncoder.defaults(), output);
+    }
+    
+    /**
+     * Encode to {@code output} at the given compression quality (0-1); null uses the
+     * configured default
+     */
+    public void writeImage(BufferedImage image, String format, Float quality, OutputStream output)
+            throws IOException {
+        writeImage(image, format, imageEncoder.defaults().withQuality(quality), output);
+    }
+    
+    public void writeImage(BufferedImage image, String format, EncodeOptions options, OutputStream output)
+            throws IOException {
+        imageEncoder.write(image, format, options, output);
+    }
+    
+    /**
+     * Encoder settings configured under imaging.encode
+     */
+    public EncodeOptions defaultEncodeOptions() {
+        return imageEncoder.defaults();
     }
     
     /**
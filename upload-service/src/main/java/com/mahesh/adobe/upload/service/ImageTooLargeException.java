@@ -0,0 +1,12 @@
+package com.mahesh.adobe.upload.service;
+
+/**
+ * Thrown by {@link AdmissionControl} for work whose estimated raster working set exceeds
+ * the whole budget, so no amount of waiting would let it run without risking the heap
+ */
+public class ImageTooLargeException extends RuntimeException {
+    
+    public ImageTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,147 @@
+package com.mahesh.adobe.upload.service;
+
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds the decoded raster memory held by concurrent image work.
+ *
+ * Work acquires the bytes its decoded image will occupy before decoding and gives them
+ * back when it is done, so the number of images processed at once adapts to their size:
+ * many thumbnails run side by side while a single 100-megapixel scan runs alone. A request
+ * larger than the whole budget can never be served and is refused with an
+ * IllegalArgumentException; callers check {@link #fits} first. Waiters are served in
+ * arrival order.
+ */
+public class PixelBudget {
+
+    /** Permits are kilobytes, so an int semaphore covers terabytes */
+    private static final int UNIT = 1024;
+
+    private final Permits permits;
+    private volatile int totalUnits;
+
+    public PixelBudget(long totalBytes) {
+        this.totalUnits = (int) Math.max(1, Math.min(Integer.MAX_VALUE, totalBytes / UNIT));
+        this.permits = new Permits(totalUnits);
+    }
+
+    /** Fair semaphore whose size can be cut when memory is set aside for something else */
+    private static final class Permits extends Semaphore {
+
+        Permits(int units) {
+            super(units, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    /**
+     * Share of the budget held until the lease is closed
+     */
+    public final class Lease implements AutoCloseable {
+
+        private final int units;
+        private boolean closed;
+
+        private Lease(int units) {
+            this.units = units;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                permits.release(units);
+            }
+        }
+    }
+
+    /**
+     * Whether a lease of {@code bytes} can ever be granted
+     */
+    public boolean fits(long bytes) {
+        return bytes <= totalBytes();
+    }
+
+    /**
+     * Take {@code bytes} out of the budget for good, for memory held elsewhere, e.g. a cache.
+     * Meant for startup, before any lease is taken.
+     *
+     * @throws IllegalArgumentException if that would leave nothing of the budget
+     */
+    public synchronized void reserve(long bytes) {
+        int units = (int) Math.min(Integer.MAX_VALUE, (bytes + UNIT - 1) / UNIT);
+        if (units >= totalUnits) {
+            throw new IllegalArgumentException("Cannot reserve " + bytes + " bytes of a " + totalBytes()
+                    + " byte budget");
+        }
+        permits.reducePermits(units);
+        totalUnits -= units;
+    }
+
+    /**
+     * Block until {@code bytes} of the budget are free and take them
+     *
+     * @throws IllegalArgumentException if {@code bytes} exceeds the whole budget
+     */
+    public Lease acquire(long bytes) throws InterruptedIOException {
+        int units = units(bytes);
+        try {
+            permits.acquire(units);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for pixel budget");
+        }
+        return new Lease(units);
+    }
+
+    /**
+     * Take {@code bytes} of the budget if they free up within {@code timeout}
+     *
+     * @return the lease, or null when the wait timed out
+     * @throws IllegalArgumentException if {@code bytes} exceeds the whole budget
+     */
+    public Lease tryAcquire(long bytes, Duration timeout) throws InterruptedIOException {
+        int units = units(bytes);
+        try {
+            // A zero timeout still respects the queue of a fair semaphore, unlike tryAcquire(units)
+            if (!permits.tryAcquire(units, timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for pixel budget");
+        }
+        return new Lease(units);
+    }
+
+    public long totalBytes() {
+        return (long) totalUnits * UNIT;
+    }
+
+    public long usedBytes() {
+        return (long) (totalUnits - permits.availablePermits()) * UNIT;
+    }
+
+    /**
+     * Threads currently waiting for a share of the budget (an estimate, as for Semaphore)
+     */
+    public int waiting() {
+        return permits.getQueueLength();
+    }
+
+    private int units(long bytes) {
+        // Clamped, a lease this large would run with no budget left to protect the heap
+        if (!fits(bytes)) {
+            throw new IllegalArgumentException("Working set of " + bytes + " bytes exceeds the "
+                    + totalBytes() + " byte budget");
+        }
+        return (int) Math.max(1, (bytes + UNIT - 1) / UNIT);
+    }
+}
@@ -0,0 +1,85 @@
+package com.mahesh.adobe.upload.service;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs decode/process/encode work for request handlers.
+ *
+ * With platform request threads the work simply runs on the caller. With virtual request
+ * threads it is handed to a fixed pool of platform threads and the virtual thread parks
+ * until it is done: ImageIO codecs and Java2D hold monitors for long stretches, which
+ * would pin the carrier threads, and CPU-bound work gains nothing from running on more
+ * threads than there are processors.
+ */
+@Service
+public class ProcessingExecutor implements DisposableBean {
+    
+    /**
+     * Image work that may fail with an I/O error
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T call() throws IOException;
+    }
+    
+    private final ExecutorService executor;
+    
+    public ProcessingExecutor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+                              @Value("${imaging.request-threads:0}") int requestThreads) {
+        if (virtualThreads) {
+            // 0 means one per available processor
+            int threads = requestThreads > 0 ? requestThreads : Runtime.getRuntime().availableProcessors();
+            this.executor = Executors.newFixedThreadPool(threads, new CustomizableThreadFactory("imaging-request-"));
+        } else {
+            this.executor = null;
+        }
+    }
+    
+    public <T> T run(Work<T> work) throws IOException {
+        if (executor == null) {
+            return work.call();
+        }
+        
+        Future<T> future = executor.submit(work::call);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for image processing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+    
+    public boolean isOffloading() {
+        return executor != null;
+    }
+    
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
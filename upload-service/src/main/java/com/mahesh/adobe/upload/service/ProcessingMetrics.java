@@ -0,0 +1,159 @@
+package com.mahesh.adobe.upload.service;
+
+import com.mahesh.adobe.upload.model.ImageMetadata;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stage metrics for image work.
+ *
+ * {@code image.stage.duration} times decode, process and encode with percentile
+ * histograms, tagged by stage, operation, output format and a megapixel bucket of the
+ * source, so a latency spike can be traced to the stage and image size responsible.
+ * Bytes in and out are counted per operation, and two gauges track the work in flight
+ * and the decoded pixel memory it holds.
+ */
+@Service
+public class ProcessingMetrics {
+
+    public static final String DECODE = "decode";
+    public static final String PROCESS = "process";
+    public static final String ENCODE = "encode";
+    /** Decode, process and encode interleaved strip by strip */
+    public static final String TILED = "tiled";
+
+    private final MeterRegistry registry;
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong inFlightPixelBytes = new AtomicLong();
+
+    public ProcessingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("image.processing.inflight", inFlight, AtomicLong::get)
+                .description("Requests and jobs currently decoding, processing or encoding")
+                .register(registry);
+        Gauge.builder("image.processing.inflight.pixel.bytes", inFlightPixelBytes, AtomicLong::get)
+                .description("Decoded raster bytes held by in-flight work")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Handle for one unit of in-flight work; closing it releases its share of the gauges
+     */
+    public final class InFlight implements AutoCloseable {
+
+        private final long pixelBytes;
+        private boolean closed;
+
+        private InFlight(long pixelBytes) {
+            this.pixelBytes = pixelBytes;
+            inFlight.incrementAndGet();
+            inFlightPixelBytes.addAndGet(pixelBytes);
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                inFlight.decrementAndGet();
+                inFlightPixelBytes.addAndGet(-pixelBytes);
+            }
+        }
+    }
+
+    /**
+     * Count work on an image as in flight until the returned handle is closed
+     *
+     * @param pixelBytes decoded raster bytes the work holds, see {@link ImageMetadata#decodedBytes()}
+     */
+    public InFlight begin(long pixelBytes) {
+        return new InFlight(pixelBytes);
+    }
+
+    /**
+     * Run and time one stage of work on an image
+     */
+    public <T> T time(String stage, String operation, String format, ImageMetadata metadata,
+                      ProcessingExecutor.Work<T> work) throws IOException {
+        Timer timer = Timer.builder("image.stage.duration")
+                .description("Time spent in each stage of image processing")
+                .tag("stage", stage)
+                .tag("operation", operation)
+                .tag("format", format)
+                .tag("megapixels", megapixelBucket(metadata))
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(60))
+                .register(registry);
+        long start = System.nanoTime();
+        try {
+            return work.call();
+        } finally {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void bytesIn(String operation, long bytes) {
+        if (bytes > 0) {
+            Counter.builder("image.bytes.in")
+                    .description("Encoded bytes received for processing")
+                    .baseUnit("bytes")
+                    .tag("operation", operation)
+                    .register(registry)
+                    .increment(bytes);
+        }
+    }
+
+    public void bytesOut(String operation, String format, long bytes) {
+        Counter.builder("image.bytes.out")
+                .description("Encoded bytes produced by processing")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("format", format)
+                .register(registry)
+                .increment(bytes);
+        DistributionSummary.builder("image.output.size")
+                .description("Encoded size of processing results")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("format", format)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(bytes);
+    }
+
+    /**
+     * Coarse source-size class; a handful of buckets keeps the tag cardinality low
+     */
+    static String megapixelBucket(ImageMetadata metadata) {
+        if (metadata == null) {
+            return "unknown";
+        }
+        double megapixels = metadata.pixelCount() / 1_000_000.0;
+        if (megapixels < 1) {
+            return "lt1";
+        }
+        if (megapixels < 4) {
+            return "1-4";
+        }
+        if (megapixels < 12) {
+            return "4-12";
+        }
+        if (megapixels < 24) {
+            return "12-24";
+        }
+        if (megapixels < 48) {
+            return "24-48";
+        }
+        return "48+";
+    }
+}
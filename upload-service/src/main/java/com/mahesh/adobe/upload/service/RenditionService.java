@@ -0,0 +1,251 @@
+package com.mahesh.adobe.upload.service;
+
+import com.mahesh.adobe.upload.imaging.PooledOutputStream;
+import com.mahesh.adobe.upload.model.ImageMetadata;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import com.mahesh.adobe.upload.model.Rendition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Generates the configured rendition ladder for an uploaded image and stores it next to
+ * the original, so read-heavy traffic can be served from storage without processing.
+ *
+ * The source is decoded once, subsampled to what the largest rendition needs. Renditions
+ * are produced largest first and each one is resampled from the smallest image already
+ * produced that still has {@link ImageDecoder#OVERSAMPLING} x its size, so the small end
+ * of the ladder costs little more than its own output. Each rendition is uploaded on the
+ * S3 transfer executor as soon as it is encoded, while the next one is being computed.
+ */
+@Service
+public class RenditionService {
+
+    private static final Logger log = LoggerFactory.getLogger(RenditionService.class);
+
+    /**
+     * A rendition as stored, for the upload response
+     */
+    public record StoredRendition(String name, String s3Key, String fileUrl, int width, int height,
+                                  String format, long size) {
+    }
+
+    private final ImageDecoder imageDecoder;
+    private final ImageProcessingService imageProcessingService;
+    private final S3Service s3Service;
+    private final ProcessingExecutor processingExecutor;
+    private final ProcessingMetrics metrics;
+    private final AdmissionControl admissionControl;
+    private final ExecutorService transferExecutor;
+    private final List<Rendition> profile;
+
+    @Value("${renditions.enabled:false}")
+    private boolean enabled;
+
+    public RenditionService(ImageDecoder imageDecoder, ImageProcessingService imageProcessingService,
+                            S3Service s3Service, ProcessingExecutor processingExecutor,
+                            ProcessingMetrics metrics, AdmissionControl admissionControl,
+                            @Qualifier("s3TransferExecutor") ExecutorService transferExecutor,
+                            @Value("${renditions.profile:}") String profile) {
+        this.imageDecoder = imageDecoder;
+        this.imageProcessingService = imageProcessingService;
+        this.s3Service = s3Service;
+        this.processingExecutor = processingExecutor;
+        this.metrics = metrics;
+        this.admissionControl = admissionControl;
+        this.transferExecutor = transferExecutor;
+        this.profile = Rendition.parseProfile(profile);
+    }
+
+    /**
+     * Whether uploads generate renditions unless the request says otherwise
+     */
+    public boolean isEnabledByDefault() {
+        return enabled && !profile.isEmpty();
+    }
+
+    /**
+     * Decode {@code input}, generate every rendition of the profile and store them under
+     * {@code renditions/<original id>/<name>.<format>}. Either all renditions are stored or,
+     * on failure, the ones already written are deleted again.
+     *
+     * @param originalKey S3 key of the stored original
+     */
+    public List<StoredRendition> generate(InputStream input, ImageMetadata metadata, String originalKey)
+            throws IOException {
+        if (profile.isEmpty()) {
+            return List.of();
+        }
+        String prefix = "renditions/" + baseName(originalKey) + "/";
+        List<Future<StoredRendition>> uploads = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+
+        // The original is stored already, so renditions wait for the raster budget rather than fail.
+        // The ladder is resized step by step from the largest rendition, which bounds the rasters.
+        Dimension largest = targetSize(metadata, profile.get(0));
+        long workingSet = imageProcessingService.workingSetBytes(
+                List.of(PipelineStep.resize(largest.width, largest.height)), metadata);
+        try {
+            try (AdmissionControl.Permit ignoredPermit = admissionControl.acquire("rendition", workingSet)) {
+                processingExecutor.run(() -> {
+                    render(input, metadata, prefix, uploads, keys);
+                    return null;
+                });
+            }
+
+            List<StoredRendition> stored = new ArrayList<>(uploads.size());
+            for (Future<StoredRendition> upload : uploads) {
+                stored.add(upload.get());
+            }
+            return stored;
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            discard(uploads, keys);
+            throw new InterruptedIOException("Interrupted while storing renditions");
+        } catch (ExecutionException e) {
+            discard(uploads, keys);
+            throw new IOException("Rendition upload failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (IOException | RuntimeException e) {
+            discard(uploads, keys);
+            throw e;
+        }
+    }
+
+    /**
+     * The renditions of the profile already stored for {@code originalKey}, e.g. when an upload
+     * turns out to be a duplicate of it. Nothing is generated: missing ones are left out.
+     *
+     * @param metadata the original's dimensions, which the rendition sizes follow
+     */
+    public List<StoredRendition> stored(ImageMetadata metadata, String originalKey) throws IOException {
+        String prefix = "renditions/" + baseName(originalKey) + "/";
+        List<StoredRendition> stored = new ArrayList<>(profile.size());
+        for (Rendition rendition : profile) {
+            String key = prefix + rendition.name() + "." + rendition.format();
+            long size = s3Service.objectSize(key);
+            if (size >= 0) {
+                Dimension target = targetSize(metadata, rendition);
+                stored.add(new StoredRendition(rendition.name(), key, s3Service.getFileUrl(key),
+                        target.width, target.height, rendition.format(), size));
+            }
+        }
+        return stored;
+    }
+
+    private void render(InputStream input, ImageMetadata metadata, String prefix,
+                        List<Future<StoredRendition>> uploads, List<String> keys) throws IOException {
+        // Target sizes come from the header dimensions, so they do not depend on subsampling
+        List<Dimension> targets = new ArrayList<>(profile.size());
+        for (Rendition rendition : profile) {
+            targets.add(targetSize(metadata, rendition));
+        }
+
+        List<BufferedImage> steps = new ArrayList<>();
+        try (ProcessingMetrics.InFlight ignored = metrics.begin(metadata.decodedBytes())) {
+            Dimension largest = targets.get(0);
+            BufferedImage decoded = metrics.time(ProcessingMetrics.DECODE, "rendition", "none", metadata,
+                    () -> imageDecoder.decode(input, largest.width, largest.height));
+            if (decoded == null) {
+                throw new IOException("Invalid image file");
+            }
+            steps.add(decoded);
+
+            for (int i = 0; i < profile.size(); i++) {
+                Rendition rendition = profile.get(i);
+                Dimension target = targets.get(i);
+                BufferedImage source = resampleSource(steps, target);
+                BufferedImage image;
+                if (source.getWidth() == target.width && source.getHeight() == target.height) {
+                    image = source;
+                } else {
+                    image = metrics.time(ProcessingMetrics.PROCESS, "rendition", rendition.format(), metadata,
+                            () -> imageProcessingService.resizeImage(source, target.width, target.height));
+                    steps.add(image);
+                }
+
+                PooledOutputStream encoded = metrics.time(ProcessingMetrics.ENCODE, "rendition", rendition.format(),
+                        metadata, () -> imageProcessingService.encode(image, rendition.format(), rendition.quality()));
+                metrics.bytesOut("rendition", rendition.format(), encoded.size());
+
+                String key = prefix + rendition.name() + "." + rendition.format();
+                keys.add(key);
+                uploads.add(transferExecutor.submit(() -> {
+                    try (encoded) {
+                        s3Service.putObject(key, encoded.toInputStream(), encoded.size(), rendition.contentType());
+                        return new StoredRendition(rendition.name(), key, s3Service.getFileUrl(key),
+                                target.width, target.height, rendition.format(), encoded.size());
+                    }
+                }));
+            }
+        } finally {
+            imageProcessingService.recycle(steps.toArray(new BufferedImage[0]));
+        }
+    }
+
+    /**
+     * Longest side scaled to the rendition size, never larger than the source
+     */
+    private Dimension targetSize(ImageMetadata metadata, Rendition rendition) {
+        if (rendition.size() >= Math.max(metadata.width(), metadata.height())) {
+            return new Dimension(metadata.width(), metadata.height());
+        }
+        return imageProcessingService.thumbnailSize(metadata.width(), metadata.height(), rendition.size());
+    }
+
+    /**
+     * Smallest image produced so far that is still oversampled enough for {@code target};
+     * the decoded source when none is
+     */
+    private static BufferedImage resampleSource(List<BufferedImage> steps, Dimension target) {
+        for (int i = steps.size() - 1; i > 0; i--) {
+            BufferedImage step = steps.get(i);
+            if (step.getWidth() >= (long) target.width * ImageDecoder.OVERSAMPLING
+                    && step.getHeight() >= (long) target.height * ImageDecoder.OVERSAMPLING) {
+                return step;
+            }
+        }
+        return steps.get(0);
+    }
+
+    private void discard(List<Future<StoredRendition>> uploads, List<String> keys) {
+        for (Future<StoredRendition> upload : uploads) {
+            try {
+                upload.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ignored) {
+                // Reported by the caller; the key is deleted below either way
+            }
+        }
+        for (String key : keys) {
+            try {
+                s3Service.deleteObject(key);
+            } catch (RuntimeException e) {
+                log.warn("Could not delete rendition {}: {}", key, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * File name of the original without directory or extension, e.g. the upload UUID
+     */
+    static String baseName(String key) {
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+}
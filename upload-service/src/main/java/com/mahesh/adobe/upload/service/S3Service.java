@@ -1,52 +1,223 @@
 package com.mahesh.adobe.upload.service;
 
+import com.mahesh.adobe.upload.imaging.RasterPool;
+import com.mahesh.adobe.upload.storage.ObjectStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
-import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.services.s3.S3Client;
-import software.amazon.awssdk.services.s3.model.PutObjectRequest;
-import software.amazon.awssdk.services.s3.model.PutObjectResponse;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Entry point for storing and reading objects, whatever {@link ObjectStore} backs it
+ * ({@code storage.backend}: S3 by default, or a local directory or memory).
+ */
 @Service
 public class S3Service {
-    
-    private final S3Client s3Client;
-    
-    @Value("${aws.s3.bucket-name}")
-    private String bucketName;
-    
-    public S3Service(S3Client s3Client) {
-        this.s3Client = s3Client;
-    }
-    
+
+    /** S3 rejects multipart parts smaller than this (except the last one) */
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    private final ObjectStore objectStore;
+    private final RasterPool rasterPool;
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    @Value("${aws.s3.multipart.part-size:8MB}")
+    private DataSize partSize;
+
+    @Value("${spring.servlet.multipart.max-file-size:50MB}")
+    private DataSize maxUploadSize;
+
+    /**
+     * Callback that sees the first buffered chunk of an upload before anything is sent to S3.
+     * Throwing rejects the upload.
+     */
+    @FunctionalInterface
+    public interface HeadInspector {
+        /**
+         * @param complete whether the chunk is the whole body, which then goes out as a single PUT
+         */
+        void inspect(byte[] head, int length, boolean complete) throws IOException;
+    }
+
+    public S3Service(ObjectStore objectStore, RasterPool rasterPool, MeterRegistry registry) {
+        this.objectStore = objectStore;
+        this.rasterPool = rasterPool;
+        this.registry = registry;
+    }
+
     public String uploadFile(MultipartFile file) throws IOException {
-        // Generate unique file name
-        String fileName = generateFileName(file.getOriginalFilename());
-        
-        // Create S3 upload request
-        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
-                .bucket(bucketName)
-                .key(fileName)
-                .contentType(file.getContentType())
-                .contentLength(file.getSize())
-                .build();
-        
-        // Upload file
-        PutObjectResponse response = s3Client.putObject(putObjectRequest, 
-                RequestBody.fromInputStream(file.getInputStream(), file.getSize()));
-        
-        return fileName; // Return the S3 key
-    }
-    
+        try (InputStream input = file.getInputStream()) {
+            return uploadStream(input, file.getSize(), file.getOriginalFilename(), file.getContentType(), null);
+        }
+    }
+
+    /**
+     * Stream an upload to storage without buffering the whole body.
+     *
+     * The body is read in chunks of one part size. Bodies that fit in one chunk are stored in
+     * one call; anything larger is handed to the store as a stream (an S3 multipart upload,
+     * or a file written as it arrives) and rejected as soon as it passes the size limit. The
+     * first chunk's buffer comes from the {@link RasterPool} and goes back once the store is
+     * done with it.
+     *
+     * @param contentLength body length in bytes, or -1 if unknown
+     * @param inspector optional check run on the first chunk before any bytes leave the service
+     * @return the S3 key
+     */
+    public String uploadStream(InputStream input, long contentLength, String originalFilename,
+                               String contentType, HeadInspector inspector) throws IOException {
+        String fileName = generateFileName(originalFilename);
+        long limit = maxUploadSize.toBytes();
+        if (contentLength > limit) {
+            throw new UploadRejectedException("File exceeds the maximum upload size of " + maxUploadSize);
+        }
+
+        int bufferSize = (int) Math.max(MIN_PART_SIZE, partSize.toBytes());
+        int firstSize = contentLength >= 0 ? (int) Math.min(contentLength, bufferSize) : bufferSize;
+        byte[] first = rasterPool.bytes(firstSize);
+        boolean reusable = true;
+        try {
+            int firstLength = readFully(input, first, firstSize);
+
+            boolean singlePart = firstLength < bufferSize;
+            if (inspector != null) {
+                inspector.inspect(first, firstLength, singlePart);
+            }
+
+            // Everything fits in one part: a single PUT is cheaper than a multipart round-trip
+            if (singlePart) {
+                timed("put", () -> objectStore.put(fileName, first, firstLength, contentType));
+                return fileName;
+            }
+
+            InputStream rest = new LimitedInputStream(input, limit - firstLength);
+            // Part uploads being cancelled after a failure may still read the buffer
+            reusable = false;
+            timed("put-stream", () -> objectStore.putStream(fileName, first, firstLength, rest, contentType));
+            reusable = true;
+            return fileName;
+        } finally {
+            if (reusable) {
+                rasterPool.release(first);
+            }
+        }
+    }
+
+    /**
+     * Store a body of known length under {@code key} in one call. Meant for generated objects
+     * such as renditions, which are small enough that multipart gains nothing; it also keeps
+     * the call free of part transfers, so it may itself run on the transfer executor.
+     */
+    public void putObject(String key, InputStream input, long contentLength, String contentType) throws IOException {
+        timed("put", () -> objectStore.put(key, input, contentLength, contentType));
+    }
+
+    /**
+     * Open an object for reading; the caller must close the stream
+     *
+     * @throws java.nio.file.NoSuchFileException if there is no such object
+     */
+    public InputStream openObject(String key) throws IOException {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            InputStream input = objectStore.open(key);
+            outcome = "success";
+            return input;
+        } finally {
+            record("get", outcome, start);
+        }
+    }
+
+    /**
+     * Local file holding an object, when the store keeps objects as files
+     */
+    public Optional<Path> objectFile(String key) {
+        return objectStore.file(key);
+    }
+
+    /**
+     * Size of an object in bytes, or -1 if there is no such object
+     */
+    public long objectSize(String key) throws IOException {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            long size = objectStore.size(key);
+            outcome = "success";
+            return size;
+        } finally {
+            record("head", outcome, start);
+        }
+    }
+
+    /**
+     * Delete an object; a missing key is not an error
+     */
+    public void deleteObject(String key) {
+        try {
+            timed("delete", () -> objectStore.delete(key));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete " + key, e);
+        }
+    }
+
+    /**
+     * Time one store call as {@code image.storage.duration}, tagged by backend, call and outcome
+     */
+    private void timed(String operation, StorageCall call) throws IOException {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            call.run();
+            outcome = "success";
+        } finally {
+            record(operation, outcome, start);
+        }
+    }
+
+    private void record(String operation, String outcome, long start) {
+        // One timer per operation and outcome, built on first use; the backend never changes
+        timers.computeIfAbsent(operation + "/" + outcome, ignored -> Timer.builder("image.storage.duration")
+                        .description("Latency of object storage calls")
+                        .tag("backend", objectStore.name())
+                        .tag("operation", operation)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(registry))
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static int readFully(InputStream input, byte[] buffer, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = input.read(buffer, total, length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
     public String getFileUrl(String fileName) {
-        // For LocalStack, construct the URL manually
-        return String.format("http://localhost:4566/%s/%s", bucketName, fileName);
+        return objectStore.url(fileName);
     }
-    
+
     private String generateFileName(String originalFilename) {
         String extension = "";
         if (originalFilename != null && originalFilename.contains(".")) {
@@ -54,4 +225,54 @@ public class S3Service {
         }
         return "images/" + UUID.randomUUID().toString() + extension;
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    private interface StorageCall {
+        void run() throws IOException;
+    }
+
+    /**
+     * Rejects the upload as soon as more than {@code remaining} bytes are read from it
+     */
+    private final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        LimitedInputStream(InputStream input, long remaining) {
+            super(input);
+            this.remaining = remaining;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0) {
+                consumed(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int count = super.read(bytes, offset, length);
+            if (count > 0) {
+                consumed(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = super.skip(n);
+            consumed(count);
+            return count;
+        }
+
+        private void consumed(long count) throws UploadRejectedException {
+            remaining -= count;
+            if (remaining < 0) {
+                throw new UploadRejectedException("File exceeds the maximum upload size of " + maxUploadSize);
+            }
+        }
+    }
+}
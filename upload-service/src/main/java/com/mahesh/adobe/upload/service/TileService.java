@@ -0,0 +1,412 @@
+package com.mahesh.adobe.upload.service;
+
+import com.mahesh.adobe.upload.imaging.Orientation;
+import com.mahesh.adobe.upload.imaging.PooledOutputStream;
+import com.mahesh.adobe.upload.imaging.Rearrangement;
+import com.mahesh.adobe.upload.model.ImageMetadata;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import com.mahesh.adobe.upload.model.TilePyramid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Deep Zoom tiles of stored images, generated on first request and stored next to the
+ * original as {@code tiles/<original id>/<tile size>/<level>/<column>_<row>.<format>}, so
+ * every later request for a tile is a plain storage read.
+ *
+ * A missing tile is rendered together with the rest of its band: the tiles that share its
+ * stored rows (a row of tiles, or a column for sources whose EXIF orientation transposes
+ * them). Sequential decoders read whole rows anyway, so the band costs one region decode,
+ * subsampled to what its level needs, where tile by tile it would cost one per tile.
+ * Requests for other tiles of a band being rendered or stored wait for it instead of
+ * decoding again; a viewer opening a level asks for most of a band at once.
+ *
+ * Source headers, and the bytes of sources not kept as local files, are cached up to
+ * {@code tiles.source-cache} (a sixteenth of the heap by default), so successive bands do
+ * not fetch the original again. That size is reserved out of the admission budget.
+ */
+@Service
+public class TileService {
+
+    private static final Logger log = LoggerFactory.getLogger(TileService.class);
+
+    /**
+     * Level pixels decoded beyond each long edge of a band, so resampling sees the real
+     * neighbours of its edge rows and the seams between bands do not show
+     */
+    private static final int HALO = 4;
+
+    /** Most sources kept in the cache, whatever their size */
+    private static final int MAX_SOURCES = 256;
+
+    /** Share of the maximum heap the source cache may hold when no size is configured */
+    private static final int DEFAULT_SOURCE_CACHE_HEAP_DIVISOR = 16;
+
+    /**
+     * A stored image as tiles are cut from it
+     *
+     * @param file the local file holding it, or null
+     * @param data its bytes, when cached; null if they have to be fetched again
+     */
+    private record Source(String key, ImageMetadata metadata, TilePyramid pyramid, Path file, byte[] data) {
+
+        long cachedBytes() {
+            return data != null ? data.length : 0;
+        }
+    }
+
+    private final S3Service s3Service;
+    private final ImageMetadataProbe metadataProbe;
+    private final ImageDecoder imageDecoder;
+    private final ImageProcessingService imageProcessingService;
+    private final ProcessingExecutor processingExecutor;
+    private final ProcessingMetrics metrics;
+    private final AdmissionControl admissionControl;
+    private final ExecutorService transferExecutor;
+    private final int tileSize;
+    private final long sourceCacheBytes;
+
+    /** Bands being rendered or stored, by band key, shared by every request for one of their tiles */
+    private final Map<String, CompletableFuture<byte[][]>> bands = new ConcurrentHashMap<>();
+
+    /** Least recently used first; guarded by itself, as is sourceBytes */
+    private final Map<String, Source> sources = new LinkedHashMap<>(16, 0.75f, true);
+    private long sourceBytes;
+
+    public TileService(S3Service s3Service, ImageMetadataProbe metadataProbe, ImageDecoder imageDecoder,
+                       ImageProcessingService imageProcessingService, ProcessingExecutor processingExecutor,
+                       ProcessingMetrics metrics, AdmissionControl admissionControl,
+                       @Qualifier("s3TransferExecutor") ExecutorService transferExecutor,
+                       @Value("${tiles.tile-size:256}") int tileSize,
+                       @Value("${tiles.source-cache:0}") DataSize sourceCache) {
+        if (tileSize < 16) {
+            throw new IllegalArgumentException("tiles.tile-size must be at least 16, got " + tileSize);
+        }
+        this.s3Service = s3Service;
+        this.metadataProbe = metadataProbe;
+        this.imageDecoder = imageDecoder;
+        this.imageProcessingService = imageProcessingService;
+        this.processingExecutor = processingExecutor;
+        this.metrics = metrics;
+        this.admissionControl = admissionControl;
+        this.transferExecutor = transferExecutor;
+        this.tileSize = tileSize;
+        // 0 means a share of the heap; cached sources sit outside any admitted working set
+        this.sourceCacheBytes = sourceCache.toBytes() > 0
+                ? sourceCache.toBytes()
+                : Runtime.getRuntime().maxMemory() / DEFAULT_SOURCE_CACHE_HEAP_DIVISOR;
+        admissionControl.reserve("the tile source cache", sourceCacheBytes);
+    }
+
+    /**
+     * Tile layout of the stored image {@code key}, upright as its EXIF orientation says;
+     * null if the object is not a readable image
+     *
+     * @throws NoSuchFileException if there is no such object
+     */
+    public TilePyramid pyramid(String key) throws IOException {
+        Source source = source(key);
+        return source != null ? source.pyramid() : null;
+    }
+
+    /**
+     * One encoded tile of the stored image {@code key}, in the pyramid's format. A tile not
+     * stored yet is rendered with its band, whose tiles are stored in the background.
+     * Returns null if the object is not a readable image.
+     *
+     * @throws NoSuchFileException if there is no such object
+     * @throws IllegalArgumentException if the pyramid has no such tile
+     * @throws AdmissionRejectedException when the band would not fit the raster budget in time
+     */
+    public byte[] tile(String key, int level, int column, int row) throws IOException {
+        Source source = source(key);
+        if (source == null) {
+            return null;
+        }
+        TilePyramid pyramid = source.pyramid();
+        if (!pyramid.contains(level, column, row)) {
+            throw new IllegalArgumentException("No tile " + level + "/" + column + "_" + row);
+        }
+        // Bands follow the stored rows, which is how the decoder reads
+        boolean columnBand = Orientation.fromExif(source.metadata().orientation()).transposes();
+        int line = columnBand ? column : row;
+        int index = columnBand ? row : column;
+        String bandKey = tilePrefix(key, pyramid) + level + (columnBand ? "/column-" : "/row-") + line;
+
+        // A band leaves the map only once all its tiles are stored, so it is looked for first
+        CompletableFuture<byte[][]> band = bands.get(bandKey);
+        if (band != null) {
+            return await(band)[index];
+        }
+        try (InputStream stored = s3Service.openObject(tileKey(key, pyramid, level, column, row))) {
+            return stored.readAllBytes();
+        } catch (NoSuchFileException e) {
+            // Not rendered yet
+        }
+        CompletableFuture<byte[][]> created = new CompletableFuture<>();
+        band = bands.putIfAbsent(bandKey, created);
+        if (band != null) {
+            return await(band)[index];
+        }
+        byte[][] tiles;
+        try {
+            tiles = render(source, level, columnBand, line);
+        } catch (IOException | RuntimeException e) {
+            bands.remove(bandKey, created);
+            created.completeExceptionally(e);
+            throw e;
+        }
+        created.complete(tiles);
+        store(source, level, columnBand, line, bandKey, created, tiles);
+        return tiles[index];
+    }
+
+    /**
+     * Render every tile of a band: a row of tiles of {@code level}, or a column if
+     * {@code columnBand}
+     */
+    private byte[][] render(Source source, int level, boolean columnBand, int line) throws IOException {
+        TilePyramid pyramid = source.pyramid();
+        ImageMetadata metadata = source.metadata();
+        int count = columnBand ? pyramid.rows(level) : pyramid.columns(level);
+        Rectangle first = pyramid.tileBounds(level, columnBand ? line : 0, columnBand ? 0 : line);
+        Rectangle last = pyramid.tileBounds(level, columnBand ? line : count - 1, columnBand ? count - 1 : line);
+        Rectangle bounds = first.union(last);
+        bounds.grow(columnBand ? HALO : 0, columnBand ? 0 : HALO);
+        Rectangle padded = bounds.intersection(new Rectangle(pyramid.levelWidth(level), pyramid.levelHeight(level)));
+
+        // The band's upright pixels, mapped back to where they are stored
+        Rectangle upright = pyramid.sourceBounds(level, padded);
+        Rearrangement stored = Rearrangement.identity(metadata.width(), metadata.height())
+                .then(Orientation.fromExif(metadata.orientation()))
+                .thenCrop(upright.x, upright.y, upright.width, upright.height);
+        Rectangle region = new Rectangle(stored.x(), stored.y(), stored.width(), stored.height());
+        int targetWidth = columnBand ? padded.height : padded.width;
+        int targetHeight = columnBand ? padded.width : padded.height;
+        int factor = ImageDecoder.subsamplingFactor(region.width, region.height, targetWidth, targetHeight);
+        long decodedPixels = (long) ((region.width + factor - 1) / factor) * ((region.height + factor - 1) / factor);
+        long workingSet = 4L * (decodedPixels + 2L * padded.width * padded.height);
+
+        byte[][] tiles;
+        try (AdmissionControl.Permit ignoredPermit = admissionControl.admit("tile", workingSet)) {
+            tiles = processingExecutor.run(() -> {
+                try (ProcessingMetrics.InFlight ignored = metrics.begin(workingSet)) {
+                    return renderBand(source, level, columnBand, line, region, padded);
+                }
+            });
+        }
+        if (tiles == null) {
+            throw new IOException("Invalid image file");
+        }
+        return tiles;
+    }
+
+    /**
+     * Decode the band's stored region, turn it upright, scale it to its level and cut it into
+     * encoded tiles; null if the source cannot be decoded
+     *
+     * @param padded the band and its halo, in level coordinates
+     */
+    private byte[][] renderBand(Source source, int level, boolean columnBand, int line, Rectangle region,
+                                Rectangle padded) throws IOException {
+        TilePyramid pyramid = source.pyramid();
+        ImageMetadata metadata = source.metadata();
+        String format = pyramid.format();
+        int targetWidth = columnBand ? padded.height : padded.width;
+        int targetHeight = columnBand ? padded.width : padded.height;
+        BufferedImage decoded = metrics.time(ProcessingMetrics.DECODE, "tile", "none", metadata,
+                () -> decodeRegion(source, region, targetWidth, targetHeight));
+        if (decoded == null) {
+            return null;
+        }
+
+        List<PipelineStep> steps = new ArrayList<>(2);
+        steps.add(PipelineStep.of(PipelineStep.Operation.ORIENT));
+        if (decoded.getWidth() != targetWidth || decoded.getHeight() != targetHeight) {
+            steps.add(PipelineStep.resize(padded.width, padded.height));
+        }
+        BufferedImage scaled = null;
+        try {
+            scaled = metrics.time(ProcessingMetrics.PROCESS, "tile", format, metadata,
+                    () -> imageProcessingService.runPipeline(decoded, steps, metadata.orientation()));
+
+            int count = columnBand ? pyramid.rows(level) : pyramid.columns(level);
+            byte[][] tiles = new byte[count][];
+            for (int i = 0; i < count; i++) {
+                Rectangle bounds = pyramid.tileBounds(level, columnBand ? line : i, columnBand ? i : line);
+                tiles[i] = encodeTile(scaled, bounds.x - padded.x, bounds.y - padded.y, bounds.width, bounds.height,
+                        format, metadata);
+            }
+            return tiles;
+        } finally {
+            imageProcessingService.recycle(decoded, scaled);
+        }
+    }
+
+    private byte[] encodeTile(BufferedImage band, int x, int y, int width, int height, String format,
+                              ImageMetadata metadata) throws IOException {
+        BufferedImage tile = imageProcessingService.runPipeline(band, List.of(PipelineStep.crop(x, y, width, height)));
+        try (PooledOutputStream encoded = metrics.time(ProcessingMetrics.ENCODE, "tile", format, metadata,
+                () -> imageProcessingService.encode(tile, format))) {
+            metrics.bytesOut("tile", format, encoded.size());
+            return encoded.toByteArray();
+        } finally {
+            if (tile != band) {
+                imageProcessingService.recycle(tile);
+            }
+        }
+    }
+
+    private BufferedImage decodeRegion(Source source, Rectangle region, int targetWidth, int targetHeight)
+            throws IOException {
+        if (source.file() != null) {
+            // A file stream seeks, so the reader does not cache what it skips
+            try (ImageInputStream stream = ImageIO.createImageInputStream(source.file().toFile())) {
+                return imageDecoder.decodeRegion(stream, region, targetWidth, targetHeight);
+            }
+        }
+        byte[] data = source.data() != null ? source.data() : read(source.key());
+        try (ImageInputStream stream = new MemoryCacheImageInputStream(new ByteArrayInputStream(data))) {
+            return imageDecoder.decodeRegion(stream, region, targetWidth, targetHeight);
+        }
+    }
+
+    /**
+     * Store a rendered band's tiles on the transfer executor. The band stays in {@link #bands},
+     * serving its tiles from memory, until they can all be read from storage; if any fails to
+     * store, the band is rendered again on its next request.
+     */
+    private void store(Source source, int level, boolean columnBand, int line, String bandKey,
+                       CompletableFuture<byte[][]> band, byte[][] tiles) {
+        TilePyramid pyramid = source.pyramid();
+        String contentType = pyramid.format().equals("png") ? "image/png" : "image/jpeg";
+        List<CompletableFuture<Void>> uploads = new ArrayList<>(tiles.length);
+        try {
+            for (int i = 0; i < tiles.length; i++) {
+                String key = tileKey(source.key(), pyramid, level, columnBand ? line : i, columnBand ? i : line);
+                byte[] tile = tiles[i];
+                uploads.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        s3Service.putObject(key, new ByteArrayInputStream(tile), tile.length, contentType);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, transferExecutor));
+            }
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the tiles are rendered again if anyone asks
+            bands.remove(bandKey, band);
+            return;
+        }
+        CompletableFuture.allOf(uploads.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, failure) -> {
+            bands.remove(bandKey, band);
+            if (failure != null) {
+                log.warn("Could not store tiles of {}: {}", bandKey, failure.getMessage());
+            }
+        });
+    }
+
+    private static byte[][] await(CompletableFuture<byte[][]> band) throws IOException {
+        try {
+            return band.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for tiles");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * The cached source, or its headers (and bytes, if they are not in a local file) fetched
+     * and cached; null if the object is not a readable image
+     */
+    private Source source(String key) throws IOException {
+        synchronized (sources) {
+            Source cached = sources.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        Optional<Path> file = s3Service.objectFile(key);
+        ImageMetadata metadata;
+        byte[] data = null;
+        if (file.isPresent()) {
+            try (InputStream input = Files.newInputStream(file.get())) {
+                metadata = metadataProbe.probe(input);
+            }
+        } else {
+            data = read(key);
+            metadata = metadataProbe.probe(data, data.length);
+        }
+        if (metadata == null) {
+            return null;
+        }
+
+        String format = metadata.hasAlpha() ? "png" : "jpg";
+        TilePyramid pyramid = new TilePyramid(metadata.displayWidth(), metadata.displayHeight(), tileSize, format);
+        // A source that would take most of the cache is fetched again for each band instead
+        boolean keepData = data != null && data.length <= sourceCacheBytes / 4;
+        Source source = new Source(key, metadata, pyramid, file.orElse(null), keepData ? data : null);
+        synchronized (sources) {
+            Source replaced = sources.put(key, source);
+            sourceBytes += source.cachedBytes() - (replaced != null ? replaced.cachedBytes() : 0);
+            Iterator<Source> eldest = sources.values().iterator();
+            while ((sourceBytes > sourceCacheBytes || sources.size() > MAX_SOURCES) && eldest.hasNext()) {
+                sourceBytes -= eldest.next().cachedBytes();
+                eldest.remove();
+            }
+        }
+        return source;
+    }
+
+    private byte[] read(String key) throws IOException {
+        try (InputStream input = s3Service.openObject(key)) {
+            return input.readAllBytes();
+        }
+    }
+
+    private static String tileKey(String key, TilePyramid pyramid, int level, int column, int row) {
+        return tilePrefix(key, pyramid) + level + "/" + column + "_" + row + "." + pyramid.format();
+    }
+
+    private static String tilePrefix(String key, TilePyramid pyramid) {
+        return "tiles/" + RenditionService.baseName(key) + "/" + pyramid.tileSize() + "/";
+    }
+}
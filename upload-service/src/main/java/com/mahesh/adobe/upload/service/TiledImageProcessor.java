@@ -0,0 +1,195 @@
+package com.mahesh.adobe.upload.service;
+
+import com.mahesh.adobe.upload.imaging.EncodeOptions;
+import com.mahesh.adobe.upload.imaging.ImageEncoder;
+import com.mahesh.adobe.upload.imaging.RasterRows;
+import com.mahesh.adobe.upload.imaging.StripImage;
+import com.mahesh.adobe.upload.model.ImageMetadata;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Processes images too large to decode in one piece.
+ *
+ * The output is a {@link StripImage}: as the encoder pulls rows, each strip is
+ * rendered by reading the matching source rows (plus the pipeline's kernel radius
+ * above and below) with {@link ImageReadParam#setSourceRegion}, running the pipeline
+ * on that region and keeping only the strip's own rows. Peak memory therefore follows
+ * the strip size instead of the image size, at the cost of the reader re-scanning the
+ * file for every strip, so strips are made as tall as the budget allows.
+ */
+@Service
+public class TiledImageProcessor {
+
+    private final ImageProcessingService imageProcessingService;
+    private final AdmissionControl admissionControl;
+
+    @Value("${imaging.tiling.enabled:true}")
+    private boolean enabled;
+
+    @Value("${imaging.tiling.threshold:256MB}")
+    private DataSize threshold;
+
+    @Value("${imaging.tiling.strip-size:64MB}")
+    private DataSize stripSize;
+
+    public TiledImageProcessor(ImageProcessingService imageProcessingService, AdmissionControl admissionControl) {
+        this.imageProcessingService = imageProcessingService;
+        this.admissionControl = admissionControl;
+    }
+
+    /**
+     * Whether the pipeline should run strip by strip on an image with this metadata: when
+     * the decoded image is above the threshold, or its working set would not fit the
+     * admission budget at all
+     */
+    public boolean shouldTile(ImageMetadata metadata, List<PipelineStep> steps) {
+        return enabled
+                && metadata.pixelCount() <= Integer.MAX_VALUE
+                && imageProcessingService.isTileable(steps)
+                && (metadata.decodedBytes() > threshold.toBytes()
+                        || !admissionControl.fits(imageProcessingService.workingSetBytes(steps, metadata)));
+    }
+
+    /**
+     * Approximate decoded bytes a tiled run holds at once, for memory accounting
+     */
+    public long stripBytes() {
+        return stripSize.toBytes();
+    }
+
+    /**
+     * {@link #process(Path, List, String, EncodeOptions, OutputStream)} with the default encode options
+     */
+    public void process(Path input, List<PipelineStep> steps, String format, OutputStream output) throws IOException {
+        process(input, steps, format, imageProcessingService.defaultEncodeOptions(), output);
+    }
+
+    /**
+     * Run a tileable pipeline over the image in {@code input} and encode the result to
+     * {@code output} as it is produced
+     *
+     * @throws IOException if the file is not a readable image or no writer handles the format
+     */
+    public void process(Path input, List<PipelineStep> steps, String format, EncodeOptions options,
+                        OutputStream output) throws IOException {
+        if (!imageProcessingService.isTileable(steps)) {
+            throw new IllegalArgumentException("Pipeline cannot be processed in strips");
+        }
+
+        try (ImageInputStream stream = ImageIO.createImageInputStream(input.toFile())) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IOException("Invalid image file");
+            }
+            ImageReader reader = readers.next();
+            try {
+                // Not seek-forward-only: every strip reads the image again
+                reader.setInput(stream, false, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                int halo = imageProcessingService.pipelineHalo(steps);
+                boolean keepAlpha = ImageEncoder.supportsAlpha(format) && hasAlpha(reader) && keepsAlpha(steps);
+
+                // Strip rows within the budget, but tall enough that the halo does not dominate
+                int stripHeight = (int) Math.max(2L * halo + 1, stripSize.toBytes() / (4L * width));
+                stripHeight = Math.min(stripHeight, height);
+                ImageReadParam param = reader.getDefaultReadParam();
+
+                BufferedImage result = StripImage.create(width, height, stripHeight, keepAlpha, (y0, y1) -> {
+                    int top = Math.max(0, y0 - halo);
+                    int bottom = Math.min(height, y1 + halo);
+                    param.setSourceRegion(new Rectangle(0, top, width, bottom - top));
+                    BufferedImage decoded = reader.read(0, param);
+                    BufferedImage region = imageProcessingService.runPipeline(decoded, steps);
+                    try {
+                        return pack(RasterRows.toDirect(region), y0 - top, y1 - top, keepAlpha);
+                    } finally {
+                        // Every strip is the same size, so the next one reuses these rasters
+                        imageProcessingService.recycle(decoded, region);
+                    }
+                });
+
+                try {
+                    imageProcessingService.writeImage(result, format, options, output);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Whether the pipeline's output still has the source's alpha; grayscale and edges
+     * produce an opaque gray image, as they do on the whole image
+     */
+    private static boolean keepsAlpha(List<PipelineStep> steps) {
+        for (PipelineStep step : steps) {
+            PipelineStep.Operation operation = step.operation();
+            if (operation == PipelineStep.Operation.GRAYSCALE || operation == PipelineStep.Operation.EDGES) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasAlpha(ImageReader reader) throws IOException {
+        ImageTypeSpecifier type = reader.getRawImageType(0);
+        if (type == null) {
+            Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+            type = types.hasNext() ? types.next() : null;
+        }
+        return type != null && type.getColorModel().hasAlpha();
+    }
+
+    /**
+     * Pack rows [r0, r1) of a processed region as (A)RGB ints. Without an alpha channel in
+     * the output, transparent pixels are flattened onto white as the JPEG encoder does.
+     */
+    private static int[] pack(BufferedImage region, int r0, int r1, boolean keepAlpha) {
+        RasterRows rows = RasterRows.of(region);
+        int width = rows.width();
+        int bands = rows.bands();
+        int colorBands = region.getColorModel().getNumColorComponents();
+        boolean sourceAlpha = bands > colorBands;
+        int[] row = new int[width * bands];
+        int[] packed = new int[width * (r1 - r0)];
+
+        int i = 0;
+        for (int y = r0; y < r1; y++) {
+            rows.read(y, row);
+            for (int p = 0; p < row.length; p += bands) {
+                int r = row[p];
+                int g = colorBands == 1 ? r : row[p + 1];
+                int b = colorBands == 1 ? r : row[p + 2];
+                int a = sourceAlpha ? row[p + colorBands] : 255;
+                if (!keepAlpha && a < 255) {
+                    r = (r * a + 255 * (255 - a) + 127) / 255;
+                    g = (g * a + 255 * (255 - a) + 127) / 255;
+                    b = (b * a + 255 * (255 - a) + 127) / 255;
+                    a = 255;
+                }
+                packed[i++] = (a << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+        return packed;
+    }
+}
@@ -0,0 +1,13 @@
+package com.mahesh.adobe.upload.service;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an upload is refused before it reaches storage (bad type, too large, ...)
+ */
+public class UploadRejectedException extends IOException {
+    
+    public UploadRejectedException(String message) {
+        super(message);
+    }
+}
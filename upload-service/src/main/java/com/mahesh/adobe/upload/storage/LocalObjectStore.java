@@ -0,0 +1,247 @@
+package com.mahesh.adobe.upload.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Objects as files under a local directory, one file per key.
+ *
+ * Writes go through a {@link FileChannel} into a temp file that is renamed into place, so
+ * readers never see a partial object. Files of at least {@code mmapThreshold} bytes are read
+ * through a memory mapping, straight out of the page cache; smaller ones are cheaper to read
+ * than to map. {@link #file} exposes the file so responses can be sent with sendfile.
+ */
+public class LocalObjectStore implements ObjectStore {
+    
+    private static final Logger log = LoggerFactory.getLogger(LocalObjectStore.class);
+    
+    /** Temp files live under the root so the final rename stays on one file system */
+    private static final String TEMP_DIRECTORY = ".tmp";
+    
+    /** Bytes per transferFrom call when copying a stream into a file */
+    private static final long TRANSFER_CHUNK = 8L * 1024 * 1024;
+    
+    private final Path root;
+    private final Path tempDirectory;
+    private final String publicUrl;
+    private final long mmapThreshold;
+    private final boolean fsync;
+    
+    /**
+     * @param publicUrl     base URL objects are served from; object URLs are {@code <publicUrl>/<key>}
+     * @param mmapThreshold files at least this large are read through a memory mapping
+     * @param fsync         force each object to disk before it becomes visible
+     */
+    public LocalObjectStore(Path root, String publicUrl, long mmapThreshold, boolean fsync) throws IOException {
+        this.root = Files.createDirectories(root).toAbsolutePath().normalize();
+        this.tempDirectory = Files.createDirectories(this.root.resolve(TEMP_DIRECTORY));
+        this.publicUrl = publicUrl.endsWith("/") ? publicUrl.substring(0, publicUrl.length() - 1) : publicUrl;
+        this.mmapThreshold = mmapThreshold;
+        this.fsync = fsync;
+        // Leftovers of writes cut short by a crash
+        try (Stream<Path> files = Files.list(tempDirectory)) {
+            files.forEach(LocalObjectStore::deleteQuietly);
+        }
+        log.info("Storing objects under {}", this.root);
+    }
+    
+    @Override
+    public String name() {
+        return "local";
+    }
+    
+    @Override
+    public void put(String key, byte[] data, int length, String contentType) throws IOException {
+        write(key, channel -> {
+            ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        });
+    }
+    
+    @Override
+    public void put(String key, InputStream input, long contentLength, String contentType) throws IOException {
+        write(key, channel -> {
+            long written = transferFrom(input, channel, 0, contentLength);
+            if (written != contentLength) {
+                throw new IOException("Body ended after " + written + " of " + contentLength + " bytes");
+            }
+        });
+    }
+    
+    @Override
+    public void putStream(String key, byte[] first, int firstLength, InputStream rest, String contentType)
+            throws IOException {
+        write(key, channel -> {
+            ByteBuffer buffer = ByteBuffer.wrap(first, 0, firstLength);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            transferFrom(rest, channel, firstLength, Long.MAX_VALUE);
+        });
+    }
+    
+    @Override
+    public InputStream open(String key) throws IOException {
+        FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size >= mmapThreshold && size <= Integer.MAX_VALUE) {
+                // The mapping outlives the channel and is released once the buffer is collected
+                try (channel) {
+                    return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                }
+            }
+            return Channels.newInputStream(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    @Override
+    public long size(String key) throws IOException {
+        try {
+            return Files.size(resolve(key));
+        } catch (NoSuchFileException e) {
+            return -1;
+        }
+    }
+    
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+    
+    @Override
+    public String url(String key) {
+        return publicUrl + "/" + key;
+    }
+    
+    @Override
+    public Optional<Path> file(String key) {
+        return Optional.of(resolve(key)).filter(Files::isRegularFile);
+    }
+    
+    private void write(String key, ChannelWriter body) throws IOException {
+        Path target = resolve(key);
+        Path temp = Files.createTempFile(tempDirectory, "object", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                body.write(channel);
+                if (fsync) {
+                    channel.force(false);
+                }
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(temp);
+            throw e;
+        }
+    }
+    
+    /**
+     * Path of a key under the root. Keys are relative paths whose segments may not be empty or
+     * start with a dot, which keeps them inside the root and away from the temp directory.
+     */
+    private Path resolve(String key) {
+        for (String segment : key.split("/", -1)) {
+            if (segment.isEmpty() || segment.startsWith(".") || segment.contains("\\")) {
+                throw new IllegalArgumentException("Invalid object key: " + key);
+            }
+        }
+        return root.resolve(key);
+    }
+    
+    /**
+     * Copy up to {@code count} bytes of {@code input} into the file at {@code position}
+     *
+     * @return bytes copied, fewer than {@code count} when the input ended first
+     */
+    private static long transferFrom(InputStream input, FileChannel channel, long position, long count)
+            throws IOException {
+        ReadableByteChannel source = Channels.newChannel(input);
+        long total = 0;
+        while (total < count) {
+            long transferred = channel.transferFrom(source, position + total, Math.min(count - total, TRANSFER_CHUNK));
+            if (transferred == 0) {
+                break;
+            }
+            total += transferred;
+        }
+        return total;
+    }
+    
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", file, e.getMessage());
+        }
+    }
+    
+    @FunctionalInterface
+    private interface ChannelWriter {
+        void write(FileChannel channel) throws IOException;
+    }
+    
+    /**
+     * Stream over a mapped file; reads copy straight out of the page cache
+     */
+    private static final class MappedInputStream extends InputStream {
+    
+        private final ByteBuffer buffer;
+    
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+    
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            Objects.checkFromIndexSize(offset, length, bytes.length);
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    
+        @Override
+        public long skip(long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+    
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
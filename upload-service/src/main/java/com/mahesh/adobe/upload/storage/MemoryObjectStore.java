@@ -0,0 +1,83 @@
+package com.mahesh.adobe.upload.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Objects held on the heap, for tests and throwaway runs that should not need S3 or a disk.
+ * Everything is lost on restart.
+ */
+public class MemoryObjectStore implements ObjectStore {
+    
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final String publicUrl;
+    
+    /**
+     * @param publicUrl base URL objects are served from; object URLs are {@code <publicUrl>/<key>}
+     */
+    public MemoryObjectStore(String publicUrl) {
+        this.publicUrl = publicUrl.endsWith("/") ? publicUrl.substring(0, publicUrl.length() - 1) : publicUrl;
+    }
+    
+    @Override
+    public String name() {
+        return "memory";
+    }
+    
+    @Override
+    public void put(String key, byte[] data, int length, String contentType) {
+        objects.put(key, Arrays.copyOf(data, length));
+    }
+    
+    @Override
+    public void put(String key, InputStream input, long contentLength, String contentType) throws IOException {
+        if (contentLength > Integer.MAX_VALUE - 8) {
+            throw new IOException("Object too large for the memory store: " + contentLength + " bytes");
+        }
+        byte[] data = input.readNBytes((int) contentLength);
+        if (data.length != contentLength) {
+            throw new IOException("Body ended after " + data.length + " of " + contentLength + " bytes");
+        }
+        objects.put(key, data);
+    }
+    
+    @Override
+    public void putStream(String key, byte[] first, int firstLength, InputStream rest, String contentType)
+            throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(firstLength * 2);
+        output.write(first, 0, firstLength);
+        rest.transferTo(output);
+        objects.put(key, output.toByteArray());
+    }
+    
+    @Override
+    public InputStream open(String key) throws IOException {
+        byte[] data = objects.get(key);
+        if (data == null) {
+            throw new NoSuchFileException(key);
+        }
+        return new ByteArrayInputStream(data);
+    }
+    
+    @Override
+    public long size(String key) {
+        byte[] data = objects.get(key);
+        return data != null ? data.length : -1;
+    }
+    
+    @Override
+    public void delete(String key) {
+        objects.remove(key);
+    }
+    
+    @Override
+    public String url(String key) {
+        return publicUrl + "/" + key;
+    }
+}
@@ -0,0 +1,66 @@
+package com.mahesh.adobe.upload.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Backend that uploads and generated images are stored in (S3, a local directory or memory),
+ * selected with {@code storage.backend}. Key generation, size limits and metrics stay in
+ * {@link com.mahesh.adobe.upload.service.S3Service}, which all callers go through.
+ *
+ * Reading a missing key throws {@link java.nio.file.NoSuchFileException} on every backend.
+ */
+public interface ObjectStore {
+    
+    /** Short backend name used in metrics tags */
+    String name();
+    
+    /**
+     * Store the first {@code length} bytes of {@code data}
+     */
+    void put(String key, byte[] data, int length, String contentType) throws IOException;
+    
+    /**
+     * Store a body of known length read from {@code input}
+     */
+    void put(String key, InputStream input, long contentLength, String contentType) throws IOException;
+    
+    /**
+     * Store a body too large to hold in memory: the first {@code firstLength} bytes of
+     * {@code first}, then {@code rest} up to its end. When reading {@code rest} fails the
+     * exception is rethrown and nothing is stored. {@code first} is not used once the call has
+     * returned normally; after a failure, part uploads still being cancelled may read it.
+     */
+    void putStream(String key, byte[] first, int firstLength, InputStream rest, String contentType)
+            throws IOException;
+    
+    /**
+     * Open an object for reading; the caller must close the stream
+     */
+    InputStream open(String key) throws IOException;
+    
+    /**
+     * Size of an object in bytes, or -1 if there is no such object
+     */
+    long size(String key) throws IOException;
+    
+    /**
+     * Delete an object; a missing key is not an error
+     */
+    void delete(String key) throws IOException;
+    
+    /**
+     * URL clients fetch the object from
+     */
+    String url(String key);
+    
+    /**
+     * The file holding the object, for backends that keep objects as local files, so it can be
+     * sent to clients without passing through the heap
+     */
+    default Optional<Path> file(String key) {
+        return Optional.empty();
+    }
+}
@@ -0,0 +1,235 @@
+package com.mahesh.adobe.upload.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * S3 (or LocalStack) bucket.
+ *
+ * Streamed bodies become multipart uploads in parts the length of the first chunk, with at
+ * most {@code maxPartsInFlight} parts uploading concurrently. Part buffers are recycled, so
+ * heap use per upload is bounded by (max-in-flight + 1) x part size regardless of the object
+ * size. A failed multipart upload is aborted so no orphaned parts are left behind.
+ */
+public class S3ObjectStore implements ObjectStore {
+    
+    private final S3Client s3Client;
+    private final ExecutorService transferExecutor;
+    private final Counter bytesUploaded;
+    private final String bucketName;
+    private final String publicUrl;
+    private final int maxPartsInFlight;
+    
+    /**
+     * @param publicUrl S3 endpoint as clients reach it; object URLs are {@code <publicUrl>/<bucket>/<key>}
+     */
+    public S3ObjectStore(S3Client s3Client, ExecutorService transferExecutor, MeterRegistry registry,
+                         String bucketName, String publicUrl, int maxPartsInFlight) {
+        this.s3Client = s3Client;
+        this.transferExecutor = transferExecutor;
+        this.bucketName = bucketName;
+        this.publicUrl = publicUrl.endsWith("/") ? publicUrl.substring(0, publicUrl.length() - 1) : publicUrl;
+        this.maxPartsInFlight = maxPartsInFlight;
+        this.bytesUploaded = Counter.builder("image.s3.bytes.out")
+                .description("Bytes sent to S3")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+    
+    @Override
+    public String name() {
+        return "s3";
+    }
+    
+    @Override
+    public void put(String key, byte[] data, int length, String contentType) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentLength((long) length)
+                .build();
+        s3Client.putObject(putObjectRequest, bytesBody(data, length, contentType));
+        bytesUploaded.increment(length);
+    }
+    
+    @Override
+    public void put(String key, InputStream input, long contentLength, String contentType) {
+        PutObjectRequest putObjectRequest = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .contentLength(contentLength)
+                .build();
+        s3Client.putObject(putObjectRequest, RequestBody.fromInputStream(input, contentLength));
+        bytesUploaded.increment(contentLength);
+    }
+    
+    @Override
+    public void putStream(String key, byte[] first, int firstLength, InputStream rest, String contentType)
+            throws IOException {
+        String uploadId = s3Client.createMultipartUpload(request -> request
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)).uploadId();
+    
+        Semaphore inFlight = new Semaphore(maxPartsInFlight);
+        BlockingQueue<byte[]> spareBuffers = new ArrayBlockingQueue<>(maxPartsInFlight + 1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Future<CompletedPart>> parts = new ArrayList<>();
+    
+        try {
+            byte[] buffer = first;
+            int partSize = firstLength;
+            int length = firstLength;
+            int partNumber = 1;
+    
+            while (length > 0) {
+                // Blocks while max-in-flight parts are uploading, which throttles reading the body
+                inFlight.acquire();
+                if (failure.get() != null) {
+                    inFlight.release();
+                    break;
+                }
+    
+                byte[] partBuffer = buffer;
+                int partLength = length;
+                int number = partNumber++;
+                parts.add(transferExecutor.submit(() -> {
+                    try {
+                        UploadPartResponse response = s3Client.uploadPart(request -> request
+                                .bucket(bucketName)
+                                .key(key)
+                                .uploadId(uploadId)
+                                .partNumber(number)
+                                .contentLength((long) partLength),
+                                bytesBody(partBuffer, partLength, contentType));
+                        bytesUploaded.increment(partLength);
+                        return CompletedPart.builder().partNumber(number).eTag(response.eTag()).build();
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                        throw e;
+                    } finally {
+                        spareBuffers.offer(partBuffer);
+                        inFlight.release();
+                    }
+                }));
+    
+                buffer = spareBuffers.poll();
+                if (buffer == null) {
+                    buffer = new byte[partSize];
+                }
+                length = readFully(rest, buffer, partSize);
+            }
+    
+            List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+            for (Future<CompletedPart> part : parts) {
+                completedParts.add(part.get());
+            }
+    
+            s3Client.completeMultipartUpload(request -> request
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(upload -> upload.parts(completedParts)));
+    
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abortMultipart(key, uploadId, parts);
+            throw new IOException("Upload interrupted", e);
+        } catch (ExecutionException e) {
+            abortMultipart(key, uploadId, parts);
+            throw new IOException("Part upload failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (IOException | RuntimeException e) {
+            abortMultipart(key, uploadId, parts);
+            throw e;
+        }
+    }
+    
+    @Override
+    public InputStream open(String key) throws IOException {
+        try {
+            return s3Client.getObject(request -> request
+                    .bucket(bucketName)
+                    .key(key));
+        } catch (NoSuchKeyException e) {
+            throw new NoSuchFileException(key);
+        }
+    }
+    
+    @Override
+    public long size(String key) {
+        try {
+            return s3Client.headObject(request -> request
+                    .bucket(bucketName)
+                    .key(key)).contentLength();
+        } catch (NoSuchKeyException e) {
+            return -1;
+        }
+    }
+    
+    @Override
+    public void delete(String key) {
+        s3Client.deleteObject(request -> request
+                .bucket(bucketName)
+                .key(key));
+    }
+    
+    @Override
+    public String url(String key) {
+        return publicUrl + "/" + bucketName + "/" + key;
+    }
+    
+    private void abortMultipart(String key, String uploadId, List<Future<CompletedPart>> parts) {
+        // Stop parts that have not started yet; S3 discards the ones already stored on abort
+        for (Future<CompletedPart> part : parts) {
+            part.cancel(true);
+        }
+        try {
+            s3Client.abortMultipartUpload(request -> request
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId));
+        } catch (RuntimeException ignored) {
+            // Best effort; a bucket lifecycle rule cleans up anything left behind
+        }
+    }
+    
+    private static RequestBody bytesBody(byte[] data, int length, String contentType) {
+        // Wrap instead of RequestBody.fromBytes, which would copy the whole buffer
+        return RequestBody.fromContentProvider(() -> new ByteArrayInputStream(data, 0, length), length,
+                contentType != null ? contentType : "application/octet-stream");
+    }
+    
+    private static int readFully(InputStream input, byte[] buffer, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = input.read(buffer, total, length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
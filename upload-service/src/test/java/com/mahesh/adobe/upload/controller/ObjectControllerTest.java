@@ -0,0 +1,95 @@
+package com.mahesh.adobe.upload.controller;
+
+import com.mahesh.adobe.upload.imaging.RasterPool;
+import com.mahesh.adobe.upload.service.S3Service;
+import com.mahesh.adobe.upload.storage.LocalObjectStore;
+import com.mahesh.adobe.upload.storage.MemoryObjectStore;
+import com.mahesh.adobe.upload.storage.ObjectStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Keys carry the uploader's extension, so only image types may be served as themselves; an
+ * uploaded page or SVG must come back as an opaque download, whichever path serves it.
+ */
+class ObjectControllerTest {
+
+    private static final byte[] BODY = "<html><script>alert(document.cookie)</script></html>"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path root;
+
+    @ParameterizedTest
+    @CsvSource({
+            "images/a.jpg, image/jpeg",
+            "images/a.JPEG, image/jpeg",
+            "images/a.png, image/png",
+            "images/a.gif, image/gif",
+            "images/a.webp, image/webp",
+            "images/a.html, ",
+            "images/a.htm, ",
+            "images/a.svg, ",
+            "images/a.xml, ",
+            "images/a.js, ",
+            "images/a, "
+    })
+    void servesOnlyImageTypesAsThemselves(String key, String imageType) throws IOException {
+        for (ObjectStore store : new ObjectStore[]{
+                new MemoryObjectStore("http://localhost/objects"),
+                new LocalObjectStore(root, "http://localhost/objects", Long.MAX_VALUE, false)}) {
+            store.put(key, BODY, BODY.length, "text/html");
+            ObjectController controller = new ObjectController(
+                    new S3Service(store, new RasterPool(0), new SimpleMeterRegistry()));
+
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/objects/" + key);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            controller.getObject("/" + key, request, response);
+
+            String what = store.name() + " " + key;
+            assertEquals(200, response.getStatus(), what);
+            assertEquals("nosniff", response.getHeader("X-Content-Type-Options"), what);
+            if (imageType != null) {
+                assertEquals(imageType, response.getContentType(), what);
+                assertNull(response.getHeader("Content-Disposition"), what);
+            } else {
+                assertEquals("application/octet-stream", response.getContentType(), what);
+                assertEquals("attachment", response.getHeader("Content-Disposition"), what);
+            }
+            assertArrayEquals(BODY, response.getContentAsByteArray(), what);
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"images/a.svg, application/octet-stream", "images/a.png, image/png"})
+    void sendfileResponsesCarryTheSameHeaders(String key, String contentType) throws IOException {
+        ObjectStore store = new LocalObjectStore(root, "http://localhost/objects", Long.MAX_VALUE, false);
+        store.put(key, BODY, BODY.length, "image/svg+xml");
+        ObjectController controller = new ObjectController(
+                new S3Service(store, new RasterPool(0), new SimpleMeterRegistry()));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/objects/" + key);
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        controller.getObject("/" + key, request, response);
+
+        assertNotNull(request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(contentType, response.getContentType());
+        assertEquals("nosniff", response.getHeader("X-Content-Type-Options"));
+        assertEquals(contentType.startsWith("image/") ? null : "attachment",
+                response.getHeader("Content-Disposition"));
+    }
+}
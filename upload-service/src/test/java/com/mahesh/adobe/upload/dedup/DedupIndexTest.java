@@ -0,0 +1,153 @@
+package com.mahesh.adobe.upload.dedup;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Multi-index lookups only scan the buckets the pigeonhole bound allows, so they have to
+ * find exactly what comparing against every entry finds: the closest hash, ties going to
+ * the entry added first. The journal has to survive a crash mid-append.
+ */
+class DedupIndexTest {
+
+    private static final int CLUSTERS = 150;
+    private static final int PER_CLUSTER = 30;
+
+    private static final List<Long> hashes = new ArrayList<>();
+    private static final List<String> keys = new ArrayList<>();
+    private static DedupIndex index;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void fill() throws IOException {
+        // Random hashes are almost never within a few bits of each other, so most entries
+        // are near copies of a few cluster centres
+        Random random = new Random(19);
+        index = new DedupIndex(null);
+        for (int c = 0; c < CLUSTERS; c++) {
+            long centre = random.nextLong();
+            for (int i = 0; i < PER_CLUSTER; i++) {
+                Long hash = i % 10 == 9 ? null : flip(centre, random.nextInt(14), random);
+                String key = "images/" + c + "-" + i + ".jpg";
+                assertTrue(index.add(new Fingerprint(sha256(random), hash), key));
+                hashes.add(hash);
+                keys.add(key);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 3, 4, 5, 6, 7, 8})
+    void findMatchesBruteForce(int maxDistance) {
+        Random random = new Random(maxDistance);
+        for (int q = 0; q < 2000; q++) {
+            long query = q % 20 == 19
+                    ? random.nextLong()
+                    : flip(hashes.get(random.nextInt(hashes.size()) / 10 * 10), random.nextInt(11), random);
+            Optional<DedupIndex.Match> expected = bruteForce(query, maxDistance);
+            Optional<DedupIndex.Match> actual = index.find(new Fingerprint(sha256(random), query), maxDistance);
+            assertEquals(expected, actual, () -> "query " + Long.toHexString(query) + " within " + maxDistance);
+        }
+    }
+
+    @Test
+    void exactMatchesComeFirst() throws IOException {
+        DedupIndex exact = new DedupIndex(null);
+        String sha256 = sha256(new Random(5));
+        exact.add(new Fingerprint(sha256(new Random(6)), 0L), "near");
+        assertTrue(exact.add(new Fingerprint(sha256, 0xFFL), "same"));
+        assertFalse(exact.add(Fingerprint.exact(sha256), "again"));
+        assertEquals(Optional.of(new DedupIndex.Match("same", true, 0)),
+                exact.find(new Fingerprint(sha256, 0L), 8));
+        assertEquals(Optional.empty(), exact.find(new Fingerprint(sha256(new Random(7)), 0L), -1));
+    }
+
+    @Test
+    void tornRecordIsCutOffOnReload() throws IOException {
+        Path file = directory.resolve("dedup").resolve("index.log");
+        Random random = new Random(11);
+        List<Fingerprint> added = new ArrayList<>();
+        try (DedupIndex journaled = new DedupIndex(file)) {
+            for (int i = 0; i < 50; i++) {
+                Fingerprint fingerprint = new Fingerprint(sha256(random), i % 3 == 0 ? null : random.nextLong());
+                journaled.add(fingerprint, "images/" + i + ".jpg");
+                added.add(fingerprint);
+            }
+        }
+        long complete = Files.size(file);
+        // Lose the tail of the last record, as a crash mid-append would
+        long torn = complete - 7;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(torn);
+        }
+
+        Fingerprint replacement = new Fingerprint(sha256(random), random.nextLong());
+        try (DedupIndex reloaded = new DedupIndex(file)) {
+            assertEquals(49, reloaded.size());
+            long lastRecord = complete - recordSize("images/49.jpg");
+            assertEquals(lastRecord, Files.size(file), "torn bytes were not truncated");
+            for (int i = 0; i < 49; i++) {
+                assertEquals("images/" + i + ".jpg", reloaded.find(added.get(i), -1).orElseThrow().key());
+            }
+            assertEquals(Optional.empty(), reloaded.find(added.get(49), -1));
+            assertTrue(reloaded.add(replacement, "images/replacement.jpg"));
+        }
+
+        // Appends after the cut land on a record boundary, so they replay too
+        try (DedupIndex again = new DedupIndex(file)) {
+            assertEquals(50, again.size());
+            assertEquals("images/replacement.jpg", again.find(replacement, -1).orElseThrow().key());
+        }
+    }
+
+    private static Optional<DedupIndex.Match> bruteForce(long query, int maxDistance) {
+        int best = -1;
+        int bestDistance = maxDistance + 1;
+        for (int entry = 0; entry < hashes.size(); entry++) {
+            Long hash = hashes.get(entry);
+            if (hash != null && PerceptualHash.distance(hash, query) < bestDistance) {
+                best = entry;
+                bestDistance = PerceptualHash.distance(hash, query);
+            }
+        }
+        return best < 0 ? Optional.empty() : Optional.of(new DedupIndex.Match(keys.get(best), false, bestDistance));
+    }
+
+    private static long flip(long hash, int bits, Random random) {
+        long flipped = hash;
+        while (Long.bitCount(flipped ^ hash) < bits) {
+            flipped ^= 1L << random.nextInt(64);
+        }
+        return flipped;
+    }
+
+    private static String sha256(Random random) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    private static long recordSize(String key) {
+        return 4 * 8 + 1 + 8 + 2 + key.length();
+    }
+}
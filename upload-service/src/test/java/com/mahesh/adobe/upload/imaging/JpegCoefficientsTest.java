@@ -0,0 +1,342 @@
+package com.mahesh.adobe.upload.imaging;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * The lossless path against the pixel path: a rearrangement of the DCT blocks, decoded, has
+ * to match {@link GeometryEngine} applied to the decoded source. The two are not bit-identical,
+ * since the IDCT rounds differently on a transposed block and chroma upsampling blends
+ * across different neighbours, so pixels are compared within a small tolerance that a
+ * misplaced block or a wrong sign would far exceed.
+ */
+class JpegCoefficientsTest {
+
+    /** Luma sampling factors of the encoded test images; GRAY has a single component */
+    enum Sampling {
+        S444(1, 1), S422(2, 1), S420(2, 2), GRAY(1, 1);
+
+        final int h;
+        final int v;
+
+        Sampling(int h, int v) {
+            this.h = h;
+            this.v = v;
+        }
+
+        int mcuWidth() {
+            return 8 * h;
+        }
+
+        int mcuHeight() {
+            return 8 * v;
+        }
+    }
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(2);
+    private static final GeometryEngine GEOMETRY = new GeometryEngine(POOL, new RasterPool(0));
+
+    @AfterAll
+    static void shutdown() {
+        POOL.shutdown();
+    }
+
+    static List<Arguments> orientationsAndCrops() {
+        List<Arguments> arguments = new ArrayList<>();
+        for (Sampling sampling : Sampling.values()) {
+            for (Orientation orientation : Orientation.values()) {
+                arguments.add(Arguments.of(sampling, orientation, false));
+                arguments.add(Arguments.of(sampling, orientation, true));
+            }
+        }
+        return arguments;
+    }
+
+    @ParameterizedTest(name = "{0} {1} cropped={2}")
+    @MethodSource("orientationsAndCrops")
+    void rearrangesLikeThePixelPath(Sampling sampling, Orientation orientation, boolean cropped) throws IOException {
+        // Whole MCUs in both directions, so every orientation is allowed
+        int width = sampling.mcuWidth() * 6;
+        int height = sampling.mcuHeight() * 5;
+        byte[] jpeg = encode(testImage(width, height, sampling == Sampling.GRAY), sampling, 0);
+        Rearrangement rearrangement = cropped
+                ? new Rearrangement(width, height, sampling.mcuWidth(), sampling.mcuHeight(),
+                        sampling.mcuWidth() * 4, sampling.mcuHeight() * 3, orientation)
+                : new Rearrangement(width, height, 0, 0, width, height, orientation);
+
+        assertMatchesPixelPath(jpeg, rearrangement);
+    }
+
+    @ParameterizedTest
+    @EnumSource(Sampling.class)
+    void partialEdgeMcusOnlyWhereNothingIsMirroredOntoThem(Sampling sampling) throws IOException {
+        int width = sampling.mcuWidth() * 5 + 3;
+        int height = sampling.mcuHeight() * 4 + 5;
+        byte[] jpeg = encode(testImage(width, height, sampling == Sampling.GRAY), sampling, 0);
+        JpegCoefficients coefficients = JpegCoefficients.read(jpeg, jpeg.length);
+        assertNotNull(coefficients);
+
+        for (Orientation orientation : Orientation.values()) {
+            Rearrangement rearrangement = new Rearrangement(width, height, 0, 0, width, height, orientation);
+            boolean mirrorsAnAxis = orientation.flipsHorizontally() || orientation.flipsVertically();
+            assertEquals(!mirrorsAnAxis, coefficients.canRearrange(rearrangement), orientation.name());
+            if (!mirrorsAnAxis) {
+                assertMatchesPixelPath(jpeg, rearrangement);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Sampling.class)
+    void refusesCropsOffTheMcuGrid(Sampling sampling) throws IOException {
+        int width = sampling.mcuWidth() * 4;
+        int height = sampling.mcuHeight() * 4;
+        byte[] jpeg = encode(testImage(width, height, sampling == Sampling.GRAY), sampling, 0);
+        JpegCoefficients coefficients = JpegCoefficients.read(jpeg, jpeg.length);
+        assertNotNull(coefficients);
+
+        Rearrangement offGrid = new Rearrangement(width, height, 4, 0, width - 4, height, Orientation.NORMAL);
+        assertFalse(coefficients.canRearrange(offGrid));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Sampling.class)
+    void readsRestartIntervals(Sampling sampling) throws IOException {
+        int width = sampling.mcuWidth() * 7;
+        int height = sampling.mcuHeight() * 3;
+        // One restart interval every 2 MCUs, so intervals end mid-row as well as at row ends
+        byte[] jpeg = encode(testImage(width, height, sampling == Sampling.GRAY), sampling, 2);
+        assertTrue(containsMarker(jpeg, 0xDD), "test image has no DRI segment");
+        assertTrue(containsMarker(jpeg, 0xD0), "test image has no restart markers");
+
+        for (Orientation orientation : Orientation.values()) {
+            assertMatchesPixelPath(jpeg, new Rearrangement(width, height, 0, 0, width, height, orientation));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Sampling.class)
+    void truncatedInputIsDeclinedOrRejected(Sampling sampling) throws IOException {
+        byte[] jpeg = encode(testImage(64, 48, sampling == Sampling.GRAY), sampling, 0);
+        for (int length = 0; length < jpeg.length; length++) {
+            readAndRearrange(jpeg, length);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(Sampling.class)
+    void corruptInputIsDeclinedOrRejected(Sampling sampling) throws IOException {
+        for (int restartInterval : new int[] {0, 1}) {
+            byte[] jpeg = encode(testImage(64, 48, sampling == Sampling.GRAY), sampling, restartInterval);
+            Random random = new Random(sampling.ordinal() * 31L + restartInterval);
+            for (int trial = 0; trial < 2000; trial++) {
+                byte[] corrupt = jpeg.clone();
+                int changes = 1 + random.nextInt(4);
+                for (int i = 0; i < changes; i++) {
+                    int position = 2 + random.nextInt(corrupt.length - 2);
+                    // Half the trials with arbitrary bytes, half with ones that read as markers
+                    corrupt[position] = random.nextBoolean() ? (byte) random.nextInt(256) : (byte) 0xFF;
+                }
+                readAndRearrange(corrupt, corrupt.length);
+            }
+        }
+    }
+
+    @Test
+    void rejectsWhatIsNotAJpeg() {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        try {
+            JpegCoefficients.read(png, png.length);
+            fail("Read a PNG signature as a JPEG");
+        } catch (IOException expected) {
+            // Not a JPEG
+        }
+    }
+
+    @Test
+    void keepsTheHeaderSegmentsThroughARearrangement() throws IOException {
+        byte[] jpeg = encode(testImage(32, 32, false), Sampling.S420, 0);
+        JpegCoefficients coefficients = JpegCoefficients.read(jpeg, jpeg.length);
+        assertNotNull(coefficients);
+        byte[] rotated = write(coefficients.rearrange(new Rearrangement(32, 32, 0, 0, 32, 32, Orientation.ROTATE_90)));
+        byte[] back = write(JpegCoefficients.read(rotated, rotated.length)
+                .rearrange(new Rearrangement(32, 32, 0, 0, 32, 32, Orientation.ROTATE_270)));
+
+        // Four quarter turns of the blocks leave the coefficients, and so the pixels, as they were
+        assertArrayEquals(pixels(decode(jpeg)), pixels(decode(back)));
+    }
+
+    /**
+     * Read {@code data[0..length)} and, when it is accepted, rearrange and write it: a
+     * damaged file may be declined with null or rejected with an IOException, nothing else
+     */
+    private static void readAndRearrange(byte[] data, int length) {
+        try {
+            JpegCoefficients coefficients = JpegCoefficients.read(data, length);
+            if (coefficients == null) {
+                return;
+            }
+            Rearrangement rotation = new Rearrangement(coefficients.width(), coefficients.height(), 0, 0,
+                    coefficients.width(), coefficients.height(), Orientation.TRANSPOSE);
+            if (coefficients.canRearrange(rotation)) {
+                write(coefficients.rearrange(rotation));
+            }
+        } catch (IOException expected) {
+            // Truncated or corrupt
+        } catch (RuntimeException e) {
+            throw new AssertionError("Failed on " + length + " bytes with " + e, e);
+        }
+    }
+
+    private static void assertMatchesPixelPath(byte[] jpeg, Rearrangement rearrangement) throws IOException {
+        JpegCoefficients coefficients = JpegCoefficients.read(jpeg, jpeg.length);
+        assertNotNull(coefficients, "declined a sequential JPEG");
+        assertTrue(coefficients.canRearrange(rearrangement), rearrangement.toString());
+
+        BufferedImage actual = decode(write(coefficients.rearrange(rearrangement)));
+        BufferedImage expected = GEOMETRY.rearrange(decode(jpeg), rearrangement);
+        assertEquals(expected.getWidth(), actual.getWidth(), "width");
+        assertEquals(expected.getHeight(), actual.getHeight(), "height");
+
+        // Luma is stored at full resolution, so only IDCT rounding separates the two; chroma
+        // may also be upsampled differently (a transposed 4:2:2 image is 4:4:0)
+        int[] expectedPixels = pixels(expected);
+        int[] actualPixels = pixels(actual);
+        double lumaTotal = 0;
+        double lumaMax = 0;
+        long channelTotal = 0;
+        int channelMax = 0;
+        for (int i = 0; i < expectedPixels.length; i++) {
+            double lumaDifference = Math.abs(luma(expectedPixels[i]) - luma(actualPixels[i]));
+            lumaTotal += lumaDifference;
+            lumaMax = Math.max(lumaMax, lumaDifference);
+            for (int shift = 0; shift < 24; shift += 8) {
+                int difference = Math.abs(((expectedPixels[i] >> shift) & 0xFF) - ((actualPixels[i] >> shift) & 0xFF));
+                channelTotal += difference;
+                channelMax = Math.max(channelMax, difference);
+            }
+        }
+        double lumaMean = lumaTotal / expectedPixels.length;
+        double channelMean = (double) channelTotal / (expectedPixels.length * 3L);
+        assertTrue(lumaMean < 0.5 && lumaMax <= 3,
+                rearrangement + ": luma differs by " + lumaMean + " on average, " + lumaMax + " at most");
+        assertTrue(channelMean < 2.5 && channelMax <= 16,
+                rearrangement + ": RGB differs by " + channelMean + " on average, " + channelMax + " at most");
+    }
+
+    private static double luma(int rgb) {
+        return 0.299 * ((rgb >> 16) & 0xFF) + 0.587 * ((rgb >> 8) & 0xFF) + 0.114 * (rgb & 0xFF);
+    }
+
+    private static byte[] write(JpegCoefficients coefficients) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        coefficients.write(output);
+        return output.toByteArray();
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(jpeg));
+        assertNotNull(image, "undecodable output");
+        return image;
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+    }
+
+    private static boolean containsMarker(byte[] jpeg, int marker) {
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == marker) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gradients along each axis, so a wrong transpose or flip shows, and a smooth texture,
+     * so the blocks carry AC coefficients whose signs matter
+     */
+    private static BufferedImage testImage(int width, int height, boolean gray) {
+        BufferedImage image = new BufferedImage(width, height, gray ? BufferedImage.TYPE_BYTE_GRAY
+                : BufferedImage.TYPE_3BYTE_BGR);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = 255 * x / width;
+                int g = 255 * y / height;
+                int b = (int) (128 + 90 * Math.sin(x / 5.0) * Math.cos(y / 7.0));
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Baseline JPEG with the luma sampling factors of {@code sampling} and, when
+     * {@code restartInterval} is positive, a restart marker every that many MCUs
+     */
+    private static byte[] encode(BufferedImage image, Sampling sampling, int restartInterval) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(0.9f);
+            IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+            String format = "javax_imageio_jpeg_image_1.0";
+            Element tree = (Element) metadata.getAsTree(format);
+            NodeList components = tree.getElementsByTagName("componentSpec");
+            for (int i = 0; i < components.getLength(); i++) {
+                Element component = (Element) components.item(i);
+                component.setAttribute("HsamplingFactor", String.valueOf(i == 0 ? sampling.h : 1));
+                component.setAttribute("VsamplingFactor", String.valueOf(i == 0 ? sampling.v : 1));
+            }
+            if (restartInterval > 0) {
+                Node markers = tree.getElementsByTagName("markerSequence").item(0);
+                IIOMetadataNode dri = new IIOMetadataNode("dri");
+                dri.setAttribute("interval", String.valueOf(restartInterval));
+                markers.insertBefore(dri, markers.getFirstChild());
+            }
+            metadata.setFromTree(format, tree);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try (ImageOutputStream stream = ImageIO.createImageOutputStream(output)) {
+                writer.setOutput(stream);
+                writer.write(null, new IIOImage(image, null, metadata), param);
+            }
+            return output.toByteArray();
+        } finally {
+            writer.dispose();
+        }
+    }
+}
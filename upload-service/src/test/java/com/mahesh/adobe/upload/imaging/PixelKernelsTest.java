@@ -0,0 +1,185 @@
+package com.mahesh.adobe.upload.imaging;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The vector kernels split every row into whole vectors and a scalar tail, and mask out
+ * alpha lanes only where pixels tile a vector, so they have to give the scalar kernels'
+ * results for any width, band count and alpha position, not just the aligned ones.
+ */
+class PixelKernelsTest {
+
+    /** Odd widths: shorter than a vector, a few lanes past one, and long rows with tails */
+    private static final int[] WIDTHS = {1, 3, 5, 7, 9, 15, 17, 31, 33, 63, 65, 257, 1001};
+
+    /** Byte positions of the three colour channels in packed pixels, alpha in the fourth */
+    private static final int[][] PACKED_LAYOUTS = {{16, 8, 0}, {0, 8, 16}, {24, 16, 8}, {8, 16, 24}};
+
+    private static PixelKernels scalar;
+    private static PixelKernels vector;
+
+    @BeforeAll
+    static void kernels() {
+        // Surefire adds jdk.incubator.vector; without it this would compare the scalar kernels with themselves
+        assertTrue(PixelKernels.isVectorAvailable(), "Vector API module not loaded");
+        scalar = PixelKernels.scalar();
+        vector = PixelKernels.best();
+        assertNotSame(scalar, vector);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5})
+    void lutMatches(int bands) {
+        Random random = new Random(bands);
+        int[] lut = table(random);
+        for (int width : WIDTHS) {
+            // -1: no alpha; then alpha at every position a pixel of this many bands has
+            for (int alphaPosition = -1; alphaPosition < bands; alphaPosition++) {
+                int[] row = samples(width * bands, random);
+                int[] expected = row.clone();
+                int[] actual = row.clone();
+                scalar.lut(expected, row.length, bands, alphaPosition, lut);
+                vector.lut(actual, row.length, bands, alphaPosition, lut);
+                assertArrayEquals(expected, actual, "lut, " + bands + " bands, width " + width
+                        + ", alpha at " + alphaPosition);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 4, 5})
+    void lumaMatches(int bands) {
+        Random random = new Random(10 + bands);
+        for (int width : WIDTHS) {
+            int[] row = samples(width * bands, random);
+            // With and without a zero weight on the last (alpha) position
+            for (boolean alpha : new boolean[]{false, true}) {
+                int[] weights = new int[bands];
+                for (int b = 0; b < bands; b++) {
+                    weights[b] = random.nextInt(257);
+                }
+                if (alpha) {
+                    weights[bands - 1] = 0;
+                }
+                int[] expected = new int[width];
+                int[] actual = new int[width];
+                scalar.luma(row, bands, width, weights, expected);
+                vector.luma(row, bands, width, weights, actual);
+                assertArrayEquals(expected, actual, "luma, " + bands + " bands, width " + width + ", alpha " + alpha);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 4})
+    void permuteMatches(int bands) {
+        Random random = new Random(20 + bands);
+        for (int width : WIDTHS) {
+            int length = width * bands;
+            int[] row = samples(length, random);
+            // A channel swizzle within each pixel, as PointProcessor builds them
+            int[] order = shuffled(bands, random);
+            int[] indexMap = new int[length];
+            for (int i = 0; i < length; i++) {
+                indexMap[i] = i - i % bands + order[i % bands];
+            }
+            int[] expected = new int[length];
+            int[] actual = new int[length];
+            scalar.permute(row, indexMap, length, expected);
+            vector.permute(row, indexMap, length, actual);
+            assertArrayEquals(expected, actual, "permute, " + bands + " bands, width " + width);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 3})
+    void packedLutMatches(int layout) {
+        Random random = new Random(30 + layout);
+        int[] lut = table(random);
+        int[] shifts = PACKED_LAYOUTS[layout];
+        int[][] sources = {shifts, {shifts[2], shifts[1], shifts[0]}};
+        for (int width : WIDTHS) {
+            // Same channel order, or read in reverse as for a swizzled output
+            for (int[] sourceShifts : sources) {
+                for (boolean alpha : new boolean[]{false, true}) {
+                    int[] pixels = packed(width, alpha, shifts, random);
+                    int[] expected = pixels.clone();
+                    int[] actual = pixels.clone();
+                    scalar.packedLut(expected, width, sourceShifts, shifts, lut);
+                    vector.packedLut(actual, width, sourceShifts, shifts, lut);
+                    assertArrayEquals(expected, actual, "packedLut, layout " + layout + ", width " + width
+                            + ", alpha " + alpha);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 3})
+    void packedLumaMatches(int layout) {
+        Random random = new Random(40 + layout);
+        int[] shifts = PACKED_LAYOUTS[layout];
+        int[] weights = {77, 150, 29};
+        for (int width : WIDTHS) {
+            for (boolean alpha : new boolean[]{false, true}) {
+                int[] pixels = packed(width, alpha, shifts, random);
+                int[] expected = new int[width];
+                int[] actual = new int[width];
+                scalar.packedLuma(pixels, width, shifts, weights, expected);
+                vector.packedLuma(pixels, width, shifts, weights, actual);
+                assertArrayEquals(expected, actual, "packedLuma, layout " + layout + ", width " + width
+                        + ", alpha " + alpha);
+            }
+        }
+    }
+
+    /** A 256-entry table that moves every value, so a sample left untouched shows */
+    private static int[] table(Random random) {
+        int[] lut = new int[256];
+        for (int i = 0; i < lut.length; i++) {
+            lut[i] = (i + 1 + random.nextInt(255)) & 0xFF;
+        }
+        return lut;
+    }
+
+    private static int[] samples(int length, Random random) {
+        int[] row = new int[length];
+        for (int i = 0; i < length; i++) {
+            row[i] = random.nextInt(256);
+        }
+        return row;
+    }
+
+    /** Packed pixels with random colour bytes, and random alpha or none */
+    private static int[] packed(int width, boolean alpha, int[] shifts, Random random) {
+        int color = 0xFF << shifts[0] | 0xFF << shifts[1] | 0xFF << shifts[2];
+        int[] pixels = new int[width];
+        for (int x = 0; x < width; x++) {
+            int value = random.nextInt();
+            pixels[x] = alpha ? value : value & color;
+        }
+        return pixels;
+    }
+
+    private static int[] shuffled(int length, Random random) {
+        int[] order = new int[length];
+        for (int i = 0; i < length; i++) {
+            order[i] = i;
+        }
+        for (int i = length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,150 @@
+package com.mahesh.adobe.upload.imaging;
+
+import com.mahesh.adobe.upload.model.PipelineStep;
+import com.mahesh.adobe.upload.service.ImageProcessingService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pooled arrays come back with whatever the last user left in them, so every operation has
+ * to overwrite each element it reads. Running the same work with and without a pool, over
+ * and over so that the pooled side keeps getting dirty arrays, has to give the same pixels.
+ */
+class RasterPoolTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(2);
+
+    /** Large enough that every raster is pooled, small enough to keep the test quick */
+    private static final int WIDTH = 701;
+    private static final int HEIGHT = 467;
+
+    private static final List<List<PipelineStep>> PIPELINES = List.of(
+            List.of(PipelineStep.blur(3f)),
+            List.of(PipelineStep.of(PipelineStep.Operation.SHARPEN)),
+            List.of(PipelineStep.resize(333, 251)),
+            List.of(PipelineStep.resize(1024, 700)),
+            List.of(PipelineStep.of(PipelineStep.Operation.GRAYSCALE)),
+            List.of(PipelineStep.edges(EdgeOptions.defaults())),
+            List.of(PipelineStep.edges(EdgeOptions.of("scharr", "canny", null, null, null))),
+            List.of(PipelineStep.rotate(90), PipelineStep.blur(1.5f)),
+            List.of(PipelineStep.thumbnail(200), PipelineStep.flip("horizontal")),
+            List.of(PipelineStep.blur(2f), PipelineStep.of(PipelineStep.Operation.SHARPEN),
+                    factor("brightness", 1.2f), factor("gamma", 0.8f), PipelineStep.rotate(270),
+                    PipelineStep.crop(10, 20, 300, 400), PipelineStep.resize(150, 200)));
+
+    @AfterAll
+    static void shutdown() {
+        POOL.shutdown();
+    }
+
+    @Test
+    void releasingAnIdleArrayAgainThrows() {
+        RasterPool pool = new RasterPool(64L << 20);
+        int[] ints = pool.ints(100_000);
+        pool.release(ints);
+        assertThrows(IllegalStateException.class, () -> pool.release(ints));
+
+        byte[] bytes = pool.bytes(300_000);
+        pool.release(bytes);
+        assertThrows(IllegalStateException.class, () -> pool.release(bytes));
+
+        // Once handed out again it may be released again
+        assertSame(ints, pool.ints(100_000));
+        pool.release(ints);
+        assertEquals(4L * ints.length + bytes.length, pool.retainedBytes());
+    }
+
+    @Test
+    void arraysDroppedByAFullPoolAreNotTracked() {
+        RasterPool pool = new RasterPool(1);
+        int[] ints = pool.ints(100_000);
+        pool.release(ints);
+        pool.release(ints);
+        assertEquals(2, pool.dropped());
+        assertEquals(0, pool.retainedBytes());
+    }
+
+    @Test
+    void pooledRunsMatchUnpooledRuns() throws Exception {
+        RasterPool rasterPool = new RasterPool(256L << 20);
+        ImageProcessingService pooled = service(rasterPool);
+        ImageProcessingService unpooled = service(new RasterPool(0));
+
+        for (int type : new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_INT_ARGB}) {
+            BufferedImage source = noise(type, new Random(type));
+            for (int round = 0; round < 3; round++) {
+                for (List<PipelineStep> steps : PIPELINES) {
+                    BufferedImage expected = unpooled.runPipeline(copy(source), steps);
+                    BufferedImage input = copy(source);
+                    BufferedImage actual = pooled.runPipeline(input, steps);
+                    String what = "type " + type + ", round " + round + ", " + steps;
+                    assertPixelsEqual(expected, actual, what);
+                    assertArrayEquals(unpooled.imageToByteArray(expected, "png"),
+                            pooled.imageToByteArray(actual, "png"), what);
+                    pooled.recycle(input, actual);
+                }
+            }
+
+            BufferedImage expected = unpooled.applyBlur(copy(source), 4f);
+            BufferedImage actual = pooled.applyBlur(copy(source), 4f);
+            assertPixelsEqual(expected, actual, "blur of type " + type);
+            pooled.recycle(actual);
+        }
+        assertTrue(rasterPool.hits() > 0, "the pooled runs never reused an array");
+    }
+
+    private static ImageProcessingService service(RasterPool rasterPool) {
+        ConvolutionEngine convolutionEngine = new ConvolutionEngine(POOL, rasterPool);
+        return new ImageProcessingService(convolutionEngine, new EdgeDetector(POOL, rasterPool, convolutionEngine),
+                new Resampler(POOL, rasterPool), new PointProcessor(POOL, rasterPool, PixelKernels.best()),
+                new GeometryEngine(POOL, rasterPool), rasterPool,
+                new ImageEncoder(rasterPool, EncodeOptions.Preset.BALANCED.options()));
+    }
+
+    private static PipelineStep factor(String op, float factor) {
+        return new PipelineStep(op, null, null, null, null, factor, null, null, null, null, null, null, null,
+                null, null, null, null);
+    }
+
+    /** Noise over a gradient, so both flat-ish areas and edges are exercised */
+    private static BufferedImage noise(int type, Random random) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int base = (x * 255 / WIDTH + y * 255 / HEIGHT) / 2;
+                int r = Math.min(255, base + random.nextInt(48));
+                int g = Math.min(255, 255 - base + random.nextInt(48));
+                int b = random.nextInt(256);
+                int a = 128 + random.nextInt(128);
+                image.setRGB(x, y, a << 24 | r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage copy(BufferedImage image) {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
+    }
+
+    private static void assertPixelsEqual(BufferedImage expected, BufferedImage actual, String what) {
+        assertEquals(expected.getWidth(), actual.getWidth(), what);
+        assertEquals(expected.getHeight(), actual.getHeight(), what);
+        assertEquals(expected.getType(), actual.getType(), what);
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        assertArrayEquals(expected.getRGB(0, 0, width, height, null, 0, width),
+                actual.getRGB(0, 0, width, height, null, 0, width), what);
+    }
+}
@@ -0,0 +1,181 @@
+package com.mahesh.adobe.upload.service;
+
+import com.mahesh.adobe.upload.imaging.ConvolutionEngine;
+import com.mahesh.adobe.upload.imaging.EdgeDetector;
+import com.mahesh.adobe.upload.imaging.EdgeOptions;
+import com.mahesh.adobe.upload.imaging.EncodeOptions;
+import com.mahesh.adobe.upload.imaging.GeometryEngine;
+import com.mahesh.adobe.upload.imaging.ImageEncoder;
+import com.mahesh.adobe.upload.imaging.PixelKernels;
+import com.mahesh.adobe.upload.imaging.PointProcessor;
+import com.mahesh.adobe.upload.imaging.RasterPool;
+import com.mahesh.adobe.upload.imaging.Resampler;
+import com.mahesh.adobe.upload.model.PipelineStep;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Strip by strip against in one piece: with the halo read above and below every strip, a
+ * tileable pipeline has to produce exactly the pixels it produces on the whole image,
+ * including along the seams and at the image's own top and bottom edges.
+ */
+class TiledImageProcessorTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(2);
+
+    private static final int WIDTH = 613;
+    private static final int HEIGHT = 787;
+
+    /** Small enough for a few dozen strips over the test image */
+    private static final DataSize STRIP_SIZE = DataSize.ofKilobytes(64);
+
+    private static ImageProcessingService service;
+    private static TiledImageProcessor tiled;
+
+    @TempDir
+    static Path directory;
+
+    @BeforeAll
+    static void setUp() {
+        RasterPool rasterPool = new RasterPool(64L << 20);
+        ConvolutionEngine convolutionEngine = new ConvolutionEngine(POOL, rasterPool);
+        service = new ImageProcessingService(convolutionEngine,
+                new EdgeDetector(POOL, rasterPool, convolutionEngine), new Resampler(POOL, rasterPool),
+                new PointProcessor(POOL, rasterPool, PixelKernels.best()), new GeometryEngine(POOL, rasterPool),
+                rasterPool, new ImageEncoder(rasterPool, EncodeOptions.Preset.BALANCED.options()));
+        AdmissionControl admissionControl = new AdmissionControl(true, DataSize.ofMegabytes(256), 8,
+                Duration.ofSeconds(10), new SimpleMeterRegistry());
+        tiled = new TiledImageProcessor(service, admissionControl);
+        ReflectionTestUtils.setField(tiled, "stripSize", STRIP_SIZE);
+    }
+
+    @AfterAll
+    static void shutdown() {
+        POOL.shutdown();
+    }
+
+    static List<Arguments> cases() {
+        List<List<PipelineStep>> pipelines = List.of(
+                List.of(PipelineStep.blur(1f)),
+                List.of(PipelineStep.blur(4.5f)),
+                List.of(PipelineStep.of(PipelineStep.Operation.SHARPEN)),
+                List.of(factor("gamma", 0.7f), PipelineStep.of(PipelineStep.Operation.GRAYSCALE),
+                        PipelineStep.blur(1.5f)),
+                List.of(PipelineStep.edges(EdgeOptions.defaults())),
+                List.of(PipelineStep.edges(EdgeOptions.of("scharr", "orientation", null, null, 2f))),
+                List.of(PipelineStep.blur(2f), PipelineStep.of(PipelineStep.Operation.SHARPEN),
+                        factor("brightness", 1.3f), factor("contrast", 1.2f),
+                        PipelineStep.of(PipelineStep.Operation.GRAYSCALE),
+                        PipelineStep.edges(EdgeOptions.of("sobel", "magnitude", null, null, 1.5f))));
+        List<Arguments> cases = new ArrayList<>();
+        for (String source : List.of("png", "jpg")) {
+            for (boolean alpha : new boolean[]{false, true}) {
+                if (alpha && source.equals("jpg")) {
+                    continue;
+                }
+                for (List<PipelineStep> steps : pipelines) {
+                    cases.add(Arguments.of(source, alpha, steps));
+                }
+            }
+        }
+        return cases;
+    }
+
+    @ParameterizedTest
+    @MethodSource("cases")
+    void stripsMatchTheWholeImage(String sourceFormat, boolean alpha, List<PipelineStep> steps) throws IOException {
+        assertTrue(service.isTileable(steps));
+        Path input = directory.resolve("source-" + alpha + "." + sourceFormat);
+        if (!input.toFile().exists()) {
+            assertTrue(ImageIO.write(source(alpha), sourceFormat, input.toFile()));
+        }
+
+        ByteArrayOutputStream strips = new ByteArrayOutputStream();
+        tiled.process(input, steps, "png", strips);
+
+        BufferedImage whole = service.runPipeline(ImageIO.read(input.toFile()), steps);
+        ByteArrayOutputStream oneStrip = new ByteArrayOutputStream();
+        service.writeImage(whole, "png", oneStrip);
+
+        BufferedImage expected = decode(oneStrip.toByteArray());
+        BufferedImage actual = decode(strips.toByteArray());
+        assertEquals(WIDTH, actual.getWidth());
+        assertEquals(HEIGHT, actual.getHeight());
+        assertEquals(expected.getColorModel().hasAlpha(), actual.getColorModel().hasAlpha());
+        for (int y = 0; y < HEIGHT; y++) {
+            int row = y;
+            assertArrayEquals(samples(expected, y), samples(actual, y), () -> "row " + row + " of " + steps);
+        }
+    }
+
+    /**
+     * A row as packed (A)RGB straight from the raster. A gray result is encoded as a gray PNG
+     * in one piece and as RGB in strips; getRGB would gamma-convert the former.
+     */
+    private static int[] samples(BufferedImage image, int y) {
+        int bands = image.getRaster().getNumBands();
+        int[] row = image.getRaster().getPixels(0, y, WIDTH, 1, (int[]) null);
+        int[] packed = new int[WIDTH];
+        for (int x = 0, p = 0; x < WIDTH; x++, p += bands) {
+            int r = row[p];
+            int g = bands < 3 ? r : row[p + 1];
+            int b = bands < 3 ? r : row[p + 2];
+            int a = bands == 2 || bands == 4 ? row[p + bands - 1] : 255;
+            packed[x] = a << 24 | r << 16 | g << 8 | b;
+        }
+        return packed;
+    }
+
+    private static PipelineStep factor(String op, float factor) {
+        return new PipelineStep(op, null, null, null, null, factor, null, null, null, null, null, null, null,
+                null, null, null, null);
+    }
+
+    /** Noise over a gradient, with sharp horizontal bands that a misplaced seam would smear */
+    private static BufferedImage source(boolean alpha) {
+        Random random = new Random(alpha ? 7 : 3);
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT,
+                alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            int band = (y / 9) % 2 == 0 ? 0 : 96;
+            for (int x = 0; x < WIDTH; x++) {
+                int r = Math.min(255, x * 200 / WIDTH + random.nextInt(40));
+                int g = Math.min(255, band + y * 120 / HEIGHT + random.nextInt(40));
+                int b = random.nextInt(256);
+                int a = alpha ? random.nextInt(256) : 255;
+                image.setRGB(x, y, a << 24 | r << 16 | g << 8 | b);
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage decode(byte[] png) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertNotNull(image);
+        return image;
+    }
+}
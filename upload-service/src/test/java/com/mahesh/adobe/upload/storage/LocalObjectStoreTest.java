@@ -0,0 +1,95 @@
+package com.mahesh.adobe.upload.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Object keys come from clients, so every operation has to refuse a key that could name a
+ * file outside the store's root, or the store's own temporary directory, before touching
+ * the file system.
+ */
+class LocalObjectStoreTest {
+
+    private static final byte[] BODY = "image bytes".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path directory;
+
+    private Path root;
+    private Path outside;
+    private LocalObjectStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        root = directory.resolve("objects");
+        store = new LocalObjectStore(root, "http://localhost/objects", Long.MAX_VALUE, false);
+        outside = Files.write(directory.resolve("secret.txt"), BODY);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "..",
+            "../secret.txt",
+            "images/../../secret.txt",
+            "images/..",
+            "/etc/passwd",
+            "/images/a.jpg",
+            "images//a.jpg",
+            "images/",
+            "",
+            "images\\..\\..\\secret.txt",
+            "..\\secret.txt",
+            "images\\a.jpg",
+            ".",
+            "./images/a.jpg",
+            "images/./a.jpg",
+            ".tmp/object.tmp",
+            "images/.hidden",
+            ".htaccess"
+    })
+    void refusesKeysThatLeaveTheStore(String key) throws IOException {
+        assertThrows(IllegalArgumentException.class, () -> store.put(key, BODY, BODY.length, "image/jpeg"));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.put(key, new ByteArrayInputStream(BODY), BODY.length, "image/jpeg"));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.putStream(key, BODY, BODY.length, new ByteArrayInputStream(new byte[0]), "image/jpeg"));
+        assertThrows(IllegalArgumentException.class, () -> store.open(key));
+        assertThrows(IllegalArgumentException.class, () -> store.size(key));
+        assertThrows(IllegalArgumentException.class, () -> store.delete(key));
+        assertThrows(IllegalArgumentException.class, () -> store.file(key));
+
+        assertArrayEquals(BODY, Files.readAllBytes(outside));
+        try (Stream<Path> files = Files.walk(root)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count(), "a refused put left a file behind");
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"a.jpg", "images/a.jpg", "images/2024/01/a..b.jpg", "images/a.", "images/a b~.png"})
+    void acceptsOrdinaryKeys(String key) throws IOException {
+        store.put(key, BODY, BODY.length, "image/jpeg");
+        assertEquals(root.resolve(key), store.file(key).orElseThrow());
+        assertTrue(store.file(key).orElseThrow().startsWith(root));
+        assertEquals(BODY.length, store.size(key));
+        try (InputStream input = store.open(key)) {
+            assertArrayEquals(BODY, input.readAllBytes());
+        }
+        store.delete(key);
+        assertEquals(-1, store.size(key));
+    }
+}